@@ -99,6 +99,7 @@ export interface OperacaoMapaParada {
   quantidadeGaloes: number;
   lat: number;
   lon: number;
+  horaPrevista?: string | null;
 }
 
 export interface OperacaoMapaPonto {
@@ -126,6 +127,46 @@ export interface OperacaoMapaResponse {
   rotas: OperacaoMapaRota[];
 }
 
+export interface OperacaoReplanejamentoRotaImpactada {
+  rotaId: number;
+  entregadorId: number;
+  statusRota: string;
+  camada: string;
+  totalEntregas: number;
+}
+
+export interface OperacaoReplanejamentoPedidoImpactado {
+  pedidoId: number;
+  entregaId: number;
+  rotaId: number;
+  statusPedido: string;
+  statusEntrega: string;
+}
+
+export interface OperacaoReplanejamentoJobDetalhe {
+  jobId: string;
+  planVersion: number;
+  status: string;
+  cancelRequested: boolean;
+  solicitadoEm: string;
+  iniciadoEm: string | null;
+  finalizadoEm: string | null;
+  erro: string | null;
+  hasRequestPayload: boolean;
+  hasResponsePayload: boolean;
+  requestPayload: Record<string, unknown> | null;
+  responsePayload: Record<string, unknown> | null;
+  rotasImpactadas: OperacaoReplanejamentoRotaImpactada[];
+  pedidosImpactados: OperacaoReplanejamentoPedidoImpactado[];
+}
+
+export interface OperacaoReplanejamentoJobDetalheResponse {
+  atualizadoEm: string;
+  ambiente: string;
+  habilitado: boolean;
+  job: OperacaoReplanejamentoJobDetalhe;
+}
+
 export type ReadinessKey = "health" | "painel" | "eventos" | "mapa";
 export type ReadinessStatus = "unknown" | "ok" | "error";
 
@@ -186,6 +227,13 @@ export interface AtendimentoResponse {
   telefoneNormalizado: string;
   clienteCriado: boolean;
   idempotente: boolean;
+  cotacao?: AtendimentoCotacao | null;
+}
+
+export interface AtendimentoCotacao {
+  entregadorId: number;
+  previsaoInicio: string;
+  previsaoFim: string;
 }
 
 export interface TimelineEvent {
@@ -318,6 +366,7 @@ export interface RoteiroEntregadorParada {
   status: string;
   quantidadeGaloes: number;
   clienteNome: string;
+  horaPrevista?: string | null;
 }
 
 export interface RoteiroEntregadorResponse {
@@ -0,0 +1,68 @@
+package com.aguaviva.api;
+
+import com.aguaviva.api.dto.request.EventoRequestDto;
+import com.aguaviva.service.DispatchEventTypes;
+import com.aguaviva.service.HashSupport;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parsers de path/query do {@link ApiServer} e o hash de idempotencia de POST /api/eventos. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiServerHotPathBenchmark {
+
+    // Mesma configuracao do Gson do ApiServer: o hash depende dos nulos serializados.
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private String pathTimeline = "/api/pedidos/123456/timeline";
+    private String pathRoteiro = "/api/entregadores/42/roteiro";
+    private String pathJob = "/api/operacao/replanejamento/jobs/job-7c1f0a9e-3b7d-4f4e-9a51-0e2d6f1c8b20";
+    private String query = "status=PENDENTE&cursor=abc&limite=50";
+    private String payloadSha = "{\"eventType\":\"PEDIDO_ENTREGUE\",\"rotaId\":17,\"entregaId\":301}";
+    private EventoRequestDto evento = new EventoRequestDto(
+            "evt-ext-000123", DispatchEventTypes.PEDIDO_FALHOU, null, 301, 42, "  cliente ausente  ", null);
+
+    @Benchmark
+    public int parsePedidoIdTimeline() {
+        return ApiServerRequestParsers.parsePedidoIdTimeline(pathTimeline);
+    }
+
+    @Benchmark
+    public int parseEntregadorIdRoteiro() {
+        return ApiServerRequestParsers.parseEntregadorIdRoteiro(pathRoteiro);
+    }
+
+    @Benchmark
+    public String parseJobIdReplanejamento() {
+        return ApiServerRequestParsers.parseJobIdReplanejamento(pathJob);
+    }
+
+    @Benchmark
+    public Integer parseLimiteQuery() {
+        return ApiServerRequestParsers.parseLimiteQuery(query);
+    }
+
+    @Benchmark
+    public String sha256() {
+        return HashSupport.sha256Hex(payloadSha);
+    }
+
+    @Benchmark
+    public String hashEvento() {
+        return ApiServer.buildEventoRequestHash(gson, evento.eventType(), evento);
+    }
+}
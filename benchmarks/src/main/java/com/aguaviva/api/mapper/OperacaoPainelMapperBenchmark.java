@@ -0,0 +1,74 @@
+package com.aguaviva.api.mapper;
+
+import com.aguaviva.api.dto.response.OperacaoPainelResponseDto;
+import com.aguaviva.service.OperacaoPainelService;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Montagem e JSON de GET /api/operacao/painel sem o banco: mapper + Gson do ApiServer, por tamanho de fila. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperacaoPainelMapperBenchmark {
+
+    @Param({"20", "200"})
+    int itensPorFila;
+
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+    private OperacaoPainelService.OperacaoPainelResultado resultado;
+
+    @Setup
+    public void preparar() {
+        List<OperacaoPainelService.RotaEmAndamentoResumo> emAndamento = new ArrayList<>();
+        List<OperacaoPainelService.RotaPlanejadaResumo> planejadas = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            emAndamento.add(new OperacaoPainelService.RotaEmAndamentoResumo(100 + i, i, 4, 1));
+            planejadas.add(new OperacaoPainelService.RotaPlanejadaResumo(200 + i, i, 6));
+        }
+        List<OperacaoPainelService.PendenteElegivelResumo> pendentes = new ArrayList<>();
+        List<OperacaoPainelService.ConfirmadoSecundariaResumo> confirmados = new ArrayList<>();
+        List<OperacaoPainelService.EmRotaPrimariaResumo> emRota = new ArrayList<>();
+        for (int i = 0; i < itensPorFila; i++) {
+            pendentes.add(new OperacaoPainelService.PendenteElegivelResumo(
+                    5000 + i, "2026-10-19T08:" + String.format("%02d", i % 60) + ":00Z", 1 + i % 3, "ASAP"));
+            confirmados.add(
+                    new OperacaoPainelService.ConfirmadoSecundariaResumo(6000 + i, 200 + i % 10, i, 1 + i % 10, 2));
+            emRota.add(new OperacaoPainelService.EmRotaPrimariaResumo(
+                    7000 + i, 100 + i % 10, 9000 + i, 1 + i % 10, 1, "EM_EXECUCAO"));
+        }
+        resultado = new OperacaoPainelService.OperacaoPainelResultado(
+                "2026-10-19T09:00:00Z",
+                "benchmark",
+                new OperacaoPainelService.PedidosPorStatus(itensPorFila, itensPorFila, itensPorFila, 340, 12),
+                new OperacaoPainelService.IndicadoresEntrega(352, 340, 12, 96.59),
+                new OperacaoPainelService.RotasResumo(emAndamento, planejadas),
+                new OperacaoPainelService.FilasResumo(pendentes, confirmados, emRota));
+    }
+
+    @Benchmark
+    public OperacaoPainelResponseDto mapear() {
+        return OperacaoPainelMapper.toResponse(resultado);
+    }
+
+    @Benchmark
+    public String mapearESerializar() {
+        return gson.toJson(OperacaoPainelMapper.toResponse(resultado));
+    }
+}
@@ -0,0 +1,83 @@
+package com.aguaviva.service;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Caminho de CPU de cada POST /api/atendimento/pedidos antes de tocar o banco: normalizacao da requisicao e hash
+ * canonico usado na idempotencia. Fica no pacote do servico para alcancar o normalizador package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtendimentoHotPathBenchmark {
+
+    private String telefone = "(38) 99876-1234";
+    private String origemCanal = " whatsapp ";
+    private String sourceEventId = "  wa-msg-000000001234  ";
+    private String metodoPagamento = " pix ";
+    private String janelaTipo = "hard";
+    private String janelaInicio = "09:00";
+    private String janelaFim = "11:30";
+    private String nomeCliente = "  Maria das Gracas  ";
+    private String endereco = " Rua das Palmeiras, 120 - Centro ";
+
+    @Benchmark
+    public String normalizarTelefone() {
+        return AtendimentoRequestNormalizer.normalizePhone(telefone);
+    }
+
+    @Benchmark
+    public AtendimentoRequestNormalizer.JanelaPedidoInput normalizarJanelaHard() {
+        return AtendimentoRequestNormalizer.normalizeJanelaPedido(janelaTipo, janelaInicio, janelaFim);
+    }
+
+    /** Sequencia completa de normalizacao feita por {@code AtendimentoTelefonicoService} por requisicao. */
+    @Benchmark
+    public String normalizarRequisicaoCompleta() {
+        String sourceEventIdNormalizado = AtendimentoRequestNormalizer.normalizeSourceEventIdOpcional(sourceEventId);
+        String origem = AtendimentoRequestNormalizer.normalizeOrigemCanal(origemCanal, sourceEventIdNormalizado, null);
+        AtendimentoRequestNormalizer.validarConsistenciaCanalEChaves(origem, sourceEventIdNormalizado, null);
+        String telefoneNormalizado = AtendimentoRequestNormalizer.normalizePhone(telefone);
+        String metodo = AtendimentoRequestNormalizer.normalizeMetodoPagamento(metodoPagamento);
+        AtendimentoRequestNormalizer.JanelaPedidoInput janela =
+                AtendimentoRequestNormalizer.normalizeJanelaPedido(janelaTipo, janelaInicio, janelaFim);
+        AtendimentoRequestNormalizer.CadastroClienteInput cadastro =
+                AtendimentoRequestNormalizer.normalizeCadastroClienteInput(nomeCliente, endereco, -16.7210, -43.8610);
+        return AtendimentoTelefonicoService.buildAtendimentoRequestHash(
+                origem, sourceEventIdNormalizado, telefoneNormalizado, 2, 7, metodo, janela, cadastro);
+    }
+
+    @Benchmark
+    public String hashAtendimento(EntradaNormalizada entrada) {
+        return AtendimentoTelefonicoService.buildAtendimentoRequestHash(
+                AtendimentoRequestNormalizer.ORIGEM_CANAL_WHATSAPP,
+                "wa-msg-000000001234",
+                "38998761234",
+                2,
+                7,
+                "PIX",
+                entrada.janela,
+                entrada.cadastro);
+    }
+
+    @State(Scope.Thread)
+    public static class EntradaNormalizada {
+        AtendimentoRequestNormalizer.JanelaPedidoInput janela =
+                AtendimentoRequestNormalizer.normalizeJanelaPedido("HARD", "09:00", "11:30");
+        AtendimentoRequestNormalizer.CadastroClienteInput cadastro =
+                AtendimentoRequestNormalizer.normalizeCadastroClienteInput(
+                        "Maria das Gracas", "Rua das Palmeiras, 120 - Centro", -16.7210, -43.8610);
+    }
+}
@@ -0,0 +1,72 @@
+package com.aguaviva.service;
+
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.MockSolverClient;
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.SolverRequest;
+import com.aguaviva.solver.SolverResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Validacao da resposta do solver feita pelo {@link RotaService} antes de persistir o plano. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotaServiceValidacaoBenchmark {
+
+    @Param({"5", "20"})
+    int entregadores;
+
+    @Param({"50", "500"})
+    int pedidos;
+
+    private SolverResponse resposta;
+    private List<Integer> entregadoresAtivos;
+    private List<Integer> capacidades;
+    private Map<Integer, RotaService.PedidoPlanejavel> pedidosPorId;
+
+    @Setup
+    public void preparar() {
+        entregadoresAtivos = new ArrayList<>(entregadores);
+        capacidades = new ArrayList<>(entregadores);
+        for (int i = 1; i <= entregadores; i++) {
+            entregadoresAtivos.add(i);
+            capacidades.add(pedidos * 3);
+        }
+        List<PedidoSolver> lista = new ArrayList<>(pedidos);
+        pedidosPorId = new HashMap<>();
+        for (int i = 0; i < pedidos; i++) {
+            PedidoSolver pedido =
+                    new PedidoSolver(1000 + i, -16.70 - i * 0.0001, -43.80, 1 + i % 3, "ASAP", null, null, 2);
+            lista.add(pedido);
+            pedidosPorId.put(pedido.getPedidoId(), new RotaService.PedidoPlanejavel(pedido, "CONFIRMADO"));
+        }
+        // O mock distribui em round-robin: resposta valida, sem atalhos de erro na medicao.
+        resposta = new MockSolverClient()
+                .solve(new SolverRequest(
+                        new Coordenada(-16.72, -43.86), pedidos * 3, "08:00", "18:00", entregadoresAtivos, lista));
+    }
+
+    @Benchmark
+    public SolverResponse validarResposta() {
+        RotaService.validarRespostaSolver(resposta, entregadoresAtivos, capacidades, pedidosPorId);
+        return resposta;
+    }
+}
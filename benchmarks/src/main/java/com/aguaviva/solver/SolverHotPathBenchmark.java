@@ -0,0 +1,100 @@
+package com.aguaviva.solver;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ida e volta do contrato com o solver: JSON do {@link SolverRequest}/{@link SolverResponse} com o mesmo Gson do
+ * {@link SolverClient} e a resposta sintetica do {@link MockSolverClient}, por tamanho de ciclo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverHotPathBenchmark {
+
+    private static final int ENTREGADORES = 5;
+
+    @Param({"50", "500"})
+    int pedidos;
+
+    private final Gson gson = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
+    private final MockSolverClient mock = new MockSolverClient();
+    private SolverRequest request;
+    private String requestJson;
+    private String responseJson;
+
+    @Setup
+    public void preparar() {
+        List<Integer> entregadores = new ArrayList<>(ENTREGADORES);
+        List<Integer> capacidades = new ArrayList<>(ENTREGADORES);
+        for (int i = 1; i <= ENTREGADORES; i++) {
+            entregadores.add(i);
+            capacidades.add(pedidos * 2);
+        }
+        List<PedidoSolver> lista = new ArrayList<>(pedidos);
+        for (int i = 0; i < pedidos; i++) {
+            boolean hard = i % 4 == 0;
+            lista.add(new PedidoSolver(
+                    1000 + i,
+                    -16.70 - (i % 37) * 0.001,
+                    -43.80 - (i % 53) * 0.001,
+                    1 + i % 3,
+                    hard ? "HARD" : "ASAP",
+                    hard ? "09:00" : null,
+                    hard ? "11:00" : null,
+                    i % 5 == 0 ? 1 : 2));
+        }
+        request = new SolverRequest(
+                "job-bench-" + pedidos,
+                42L,
+                new Coordenada(-16.72, -43.86),
+                pedidos * 2,
+                capacidades,
+                "08:00",
+                "18:00",
+                entregadores,
+                lista);
+        requestJson = gson.toJson(request);
+        responseJson = gson.toJson(mock.solve(request));
+    }
+
+    @Benchmark
+    public String serializarRequest() {
+        return gson.toJson(request);
+    }
+
+    @Benchmark
+    public SolverRequest desserializarRequest() {
+        return gson.fromJson(requestJson, SolverRequest.class);
+    }
+
+    @Benchmark
+    public SolverResponse desserializarResponse() {
+        return gson.fromJson(responseJson, SolverResponse.class);
+    }
+
+    @Benchmark
+    public SolverResponse mockSolve() {
+        return mock.solve(request);
+    }
+}
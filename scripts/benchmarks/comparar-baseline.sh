@@ -0,0 +1,123 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+usage() {
+  cat <<'USAGE'
+Uso:
+  scripts/benchmarks/comparar-baseline.sh <resultado.json> [--baseline <arquivo>] [--tolerancia <percentual>]
+  scripts/benchmarks/comparar-baseline.sh <resultado.json> --gravar [--baseline <arquivo>]
+
+Compara um resultado JMH (-rf json) com a baseline versionada e falha quando algum
+benchmark ficar mais lento que a baseline alem da tolerancia (modo avgt: score maior = pior).
+Resultado e baseline precisam ser do mesmo JDK; a baseline so e gravada a partir de uma
+rodada no JDK de referencia do projeto.
+
+Flags:
+  --baseline <arquivo>      default benchmarks/baselines/jmh-baseline.json
+  --tolerancia <percentual> default 25
+  --gravar                  grava o resultado como baseline (exige JDK de referencia)
+  -h, --help                mostra ajuda
+USAGE
+}
+
+ROOT_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")/../.." && pwd)"
+BASELINE="${ROOT_DIR}/benchmarks/baselines/jmh-baseline.json"
+TOLERANCIA=25
+RESULTADO=""
+GRAVAR=0
+# Mesma versao exigida pelo enforcer do pom raiz.
+JDK_REFERENCIA=25
+
+while [[ $# -gt 0 ]]; do
+  case "$1" in
+    --baseline)
+      BASELINE="$2"
+      shift
+      ;;
+    --tolerancia)
+      TOLERANCIA="$2"
+      shift
+      ;;
+    --gravar)
+      GRAVAR=1
+      ;;
+    -h|--help)
+      usage
+      exit 0
+      ;;
+    *)
+      if [[ -n "$RESULTADO" ]]; then
+        echo "Argumento invalido: $1" >&2
+        usage
+        exit 1
+      fi
+      RESULTADO="$1"
+      ;;
+  esac
+  shift
+done
+
+if [[ -z "$RESULTADO" ]]; then
+  usage
+  exit 1
+fi
+
+command -v jq >/dev/null || { echo "jq nao encontrado" >&2; exit 1; }
+
+# Versao major do JDK da rodada ("21.0.1" -> 21); vazio se o JSON nao tiver resultados.
+jdk_major() {
+  jq -r '[.[].jdkVersion] | unique | .[0] // "" | split(".")[0]' "$1"
+}
+
+JDK_RESULTADO="$(jdk_major "$RESULTADO")"
+
+if [[ "$GRAVAR" -eq 1 ]]; then
+  if [[ "$JDK_RESULTADO" != "$JDK_REFERENCIA" ]]; then
+    echo "Baseline exige rodada no JDK ${JDK_REFERENCIA}; resultado e do JDK ${JDK_RESULTADO:-desconhecido}" >&2
+    exit 1
+  fi
+  mkdir -p "$(dirname "$BASELINE")"
+  cp "$RESULTADO" "$BASELINE"
+  echo "Baseline gravada em ${BASELINE}"
+  exit 0
+fi
+
+if [[ ! -f "$BASELINE" ]]; then
+  echo "Baseline nao encontrada: ${BASELINE}" >&2
+  echo "Grave uma com --gravar a partir de uma rodada no JDK ${JDK_REFERENCIA} e hardware de referencia" >&2
+  exit 1
+fi
+
+JDK_BASELINE="$(jdk_major "$BASELINE")"
+if [[ "$JDK_RESULTADO" != "$JDK_BASELINE" ]]; then
+  echo "JDK do resultado (${JDK_RESULTADO:-desconhecido}) difere do JDK da baseline (${JDK_BASELINE:-desconhecido})" >&2
+  exit 1
+fi
+
+# Chave = benchmark + params; valor = score medio.
+chaves() {
+  jq -r '.[] | [(.benchmark + ((.params // {}) | to_entries | map("[" + .key + "=" + .value + "]") | join(""))),
+                (.primaryMetric.score | tostring), .primaryMetric.scoreUnit] | @tsv' "$1"
+}
+
+REGRESSOES=0
+while IFS=$'\t' read -r chave score unidade; do
+  base="$(chaves "$BASELINE" | awk -F'\t' -v k="$chave" '$1 == k { print $2 }')"
+  if [[ -z "$base" ]]; then
+    printf 'NOVO      %s %.3f %s\n' "$chave" "$score" "$unidade"
+    continue
+  fi
+  variacao="$(awk -v s="$score" -v b="$base" 'BEGIN { printf "%.1f", (s - b) * 100 / b }')"
+  if awk -v v="$variacao" -v t="$TOLERANCIA" 'BEGIN { exit !(v > t) }'; then
+    status="REGRESSAO"
+    REGRESSOES=$((REGRESSOES + 1))
+  else
+    status="OK"
+  fi
+  printf '%-9s %s %.3f -> %.3f %s (%+.1f%%)\n' "$status" "$chave" "$base" "$score" "$unidade" "$variacao"
+done < <(chaves "$RESULTADO")
+
+if [[ "$REGRESSOES" -gt 0 ]]; then
+  echo "${REGRESSOES} benchmark(s) acima da tolerancia de ${TOLERANCIA}%" >&2
+  exit 1
+fi
@@ -1,10 +1,14 @@
+import gzip
 import os
 import threading
 import uuid
 from datetime import datetime, timezone
+from typing import Callable
 
-from fastapi import FastAPI, HTTPException
+from fastapi import FastAPI, HTTPException, Request, Response
+from fastapi.middleware.gzip import GZipMiddleware
 from fastapi.responses import HTMLResponse
+from fastapi.routing import APIRoute
 
 from models import (
     AsyncSolveAccepted,
@@ -20,7 +24,34 @@ from matrix import get_duration_matrix
 from visualize import build_map
 from vrp import MAX_TRIPS_PER_DRIVER, hhmm_to_seconds, seconds_to_hhmm, solve
 
+
+class GzipRequest(Request):
+    """Descomprime o corpo quando o client envia Content-Encoding: gzip."""
+
+    async def body(self) -> bytes:
+        if not hasattr(self, "_body"):
+            body = await super().body()
+            if "gzip" in self.headers.getlist("Content-Encoding"):
+                body = gzip.decompress(body)
+            self._body = body
+        return self._body
+
+
+class GzipRoute(APIRoute):
+    def get_route_handler(self) -> Callable:
+        original_route_handler = super().get_route_handler()
+
+        async def custom_route_handler(request: Request) -> Response:
+            request = GzipRequest(request.scope, request.receive)
+            return await original_route_handler(request)
+
+        return custom_route_handler
+
+
 app = FastAPI(title="Agua Viva Route Solver", version="1.1.0")
+app.router.route_class = GzipRoute
+# Respostas grandes (rotas/resultados) saem comprimidas quando o client aceita gzip.
+app.add_middleware(GZipMiddleware, minimum_size=1024)
 
 OSRM_URL = os.getenv("OSRM_URL", "http://osrm:5000")
 
@@ -76,6 +107,36 @@ def _is_cancel_requested(job_id: str | None) -> bool:
         return bool(state.get("cancel_requested", False))
 
 
+def _matriz_compativel(matriz: list[list[int]] | None, n: int) -> bool:
+    return matriz is not None and len(matriz) == n and all(len(linha) == n for linha in matriz)
+
+
+def _initial_routes(req: SolverRequest) -> list[list[int]] | None:
+    """Traduz rotas_iniciais (ids) para nos por veiculo virtual.
+
+    Cada viagem vai para o veiculo da viagem de mesma ordem do entregador: as rotas dele sao ordenadas por
+    numero_no_dia e a k-esima semeia a viagem k (o numero absoluto pode comecar acima de 1 quando ja houve
+    viagens no dia). Viagens alem de MAX_TRIPS_PER_DRIVER ficam de fora da semente.
+    """
+    if not req.rotas_iniciais:
+        return None
+    node_by_pedido = {p.pedido_id: i + 1 for i, p in enumerate(req.pedidos)}
+    driver_by_entregador = {e: i for i, e in enumerate(req.entregadores)}
+    routes: list[list[int]] = [[] for _ in range(len(req.entregadores) * MAX_TRIPS_PER_DRIVER)]
+    trips_by_driver: dict[int, int] = {}
+    for rota in sorted(req.rotas_iniciais, key=lambda r: (r.entregador_id, r.numero_no_dia)):
+        driver_index = driver_by_entregador.get(rota.entregador_id)
+        if driver_index is None:
+            continue
+        trip = trips_by_driver.get(driver_index, 0)
+        trips_by_driver[driver_index] = trip + 1
+        if trip >= MAX_TRIPS_PER_DRIVER:
+            continue
+        vehicle = driver_index * MAX_TRIPS_PER_DRIVER + trip
+        routes[vehicle].extend(node_by_pedido[p] for p in rota.pedidos if p in node_by_pedido)
+    return routes if any(routes) else None
+
+
 def _solve_internal(req: SolverRequest, cancel_checker) -> SolverResponse:
     if not req.pedidos:
         return SolverResponse(rotas=[], nao_atendidos=[])
@@ -110,8 +171,11 @@ def _solve_internal(req: SolverRequest, cancel_checker) -> SolverResponse:
     if cancel_checker():
         return SolverResponse(rotas=[], nao_atendidos=[p.pedido_id for p in req.pedidos])
 
-    # Matriz de duracao via OSRM (fallback Haversine)
-    matrix = get_duration_matrix(points, OSRM_URL)
+    # Matriz de duracao: a do request quando compativel, senao OSRM (fallback Haversine)
+    if _matriz_compativel(req.matriz_duracoes, len(points)):
+        matrix = req.matriz_duracoes
+    else:
+        matrix = get_duration_matrix(points, OSRM_URL)
 
     # Resolver
     raw_routes, dropped_nodes = solve(
@@ -123,6 +187,7 @@ def _solve_internal(req: SolverRequest, cancel_checker) -> SolverResponse:
         vehicle_capacities=req.capacidades_entregadores,
         priorities=priorities,
         cancel_checker=cancel_checker,
+        initial_routes=_initial_routes(req),
     )
 
     if cancel_checker():
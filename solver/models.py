@@ -23,6 +23,12 @@ class Pedido(BaseModel):
     prioridade: int = 2               # 1=HARD, 2=ASAP
 
 
+class RotaInicial(BaseModel):
+    entregador_id: int
+    numero_no_dia: int = 1  # viagem do entregador no plano anterior; ordena as viagens dele
+    pedidos: list[int]  # pedido_ids na ordem da rota do plano anterior
+
+
 class SolverRequest(BaseModel):
     job_id: str | None = None
     plan_version: int | None = None
@@ -33,6 +39,10 @@ class SolverRequest(BaseModel):
     horario_fim: str = "18:00"       # "HH:MM"
     entregadores: list[int]          # user IDs dos entregadores ativos
     pedidos: list[Pedido]
+    # NxN em segundos (index 0 = deposito) montada pelo client; quando vem, pula OSRM.
+    matriz_duracoes: list[list[int]] | None = None
+    # Plano anterior (rotas PLANEJADA) usado como solucao inicial da busca.
+    rotas_iniciais: list[RotaInicial] | None = None
 
 
 class Parada(BaseModel):
@@ -1,3 +1,5 @@
+import gzip
+import json
 import time
 import uuid
 
@@ -92,3 +94,53 @@ def test_solve_async_deve_retornar_resultado_consultavel():
     assert status == "CONCLUIDO"
     assert result_body["response"] is not None
     assert result_body["response"]["nao_atendidos"] == []
+
+
+def test_solve_deve_aceitar_corpo_gzip_e_responder_comprimido():
+    corpo = gzip.compress(json.dumps(_payload(job_id=f"job-gzip-{uuid.uuid4().hex}")).encode("utf-8"))
+
+    resp = client.post(
+        "/solve",
+        content=corpo,
+        headers={
+            "Content-Type": "application/json",
+            "Content-Encoding": "gzip",
+            "Accept-Encoding": "gzip",
+        },
+    )
+
+    assert resp.status_code == 200
+    assert resp.json()["nao_atendidos"] == []
+
+
+def test_solve_deve_usar_matriz_do_request_sem_montar_outra(monkeypatch):
+    def falhar(points, osrm_url):
+        raise AssertionError("matriz do request deveria ter sido usada")
+
+    monkeypatch.setattr(main, "get_duration_matrix", falhar)
+    payload = _payload()
+    payload["matriz_duracoes"] = [[0, 60], [60, 0]]
+
+    resp = client.post("/solve", json=payload)
+
+    assert resp.status_code == 200
+    assert resp.json()["nao_atendidos"] == []
+
+
+def test_initial_routes_semeia_cada_viagem_pelo_numero_no_dia(monkeypatch):
+    monkeypatch.setattr(main, "MAX_TRIPS_PER_DRIVER", 2)
+    payload = _payload()
+    payload["entregadores"] = [7, 8]
+    payload["pedidos"] = [dict(payload["pedidos"][0], pedido_id=pedido_id) for pedido_id in (10, 11, 12, 13)]
+    payload["rotas_iniciais"] = [
+        {"entregador_id": 7, "numero_no_dia": 4, "pedidos": [12]},
+        {"entregador_id": 7, "numero_no_dia": 3, "pedidos": [11, 10]},
+        {"entregador_id": 8, "numero_no_dia": 2, "pedidos": [13]},
+        {"entregador_id": 8, "numero_no_dia": 5, "pedidos": [99]},
+        {"entregador_id": 8, "numero_no_dia": 6, "pedidos": [10]},
+    ]
+
+    routes = main._initial_routes(main.SolverRequest(**payload))
+
+    # Viagens do entregador 7 (3 e 4) vao para os veiculos 0 e 1; a terceira do entregador 8 excede o limite.
+    assert routes == [[2, 1], [3], [4], []]
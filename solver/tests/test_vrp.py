@@ -1,4 +1,4 @@
-from vrp import MAX_TRIPS_PER_DRIVER, solve, hhmm_to_seconds, seconds_to_hhmm
+from vrp import MAX_TRIPS_PER_DRIVER, _trim_initial_routes, solve, hhmm_to_seconds, seconds_to_hhmm
 
 
 # ---------- conversao de tempo ----------
@@ -231,3 +231,31 @@ def test_cancel_checker_descarta_todos_os_nos():
 
     assert routes == []
     assert dropped == [1, 2]
+
+
+def test_initial_routes_aceita_plano_anterior_e_respeita_capacidade():
+    matrix = [
+        [0, 300, 300, 300],
+        [300, 0, 300, 300],
+        [300, 300, 0, 300],
+        [300, 300, 300, 0],
+    ]
+    # Plano anterior colocou tudo no entregador 0, mas a capacidade atual so comporta 2 pedidos por rota.
+    routes, dropped = solve(
+        duration_matrix=matrix,
+        demands=[0, 1, 1, 1],
+        time_windows=[(0, 36000)] * 4,
+        num_drivers=2,
+        vehicle_capacity=2,
+        max_seconds=1,
+        initial_routes=[[3, 1, 2], []],
+    )
+    assert dropped == []
+    for _, stops in routes:
+        assert len(stops) <= 2
+
+
+def test_trim_initial_routes_descarta_nos_invalidos_e_repetidos():
+    seeds = _trim_initial_routes([[2, 9, 2, 1], [1, 3]], 2, 4, [0, 1, 1, 1], [5, 5])
+    assert seeds == [[2, 1], [3]]
+    assert _trim_initial_routes([[0, 7]], 1, 4, [0, 1, 1, 1], [5]) is None
@@ -28,6 +28,7 @@ def solve(
     priorities: list[int] | None = None,
     max_seconds: int = 5,
     cancel_checker: Callable[[], bool] | None = None,
+    initial_routes: list[list[int]] | None = None,
 ) -> tuple[list[tuple[int, list[tuple[int, int]]]], list[int]]:
     """
     Resolve CVRPTW (Capacitated Vehicle Routing Problem with Time Windows).
@@ -39,6 +40,8 @@ def solve(
         num_drivers: numero de entregadores fisicos
         vehicle_capacity: carga maxima por viagem
         max_seconds: tempo limite do solver
+        initial_routes: nos por veiculo do plano anterior (warm start); quando
+            inviavel no modelo atual, a busca parte do zero
 
     Returns:
         (rotas, nao_atendidos)
@@ -124,7 +127,15 @@ def solve(
     )
     params.time_limit.FromSeconds(max_seconds)
 
-    solution = routing.SolveWithParameters(params)
+    solution = None
+    seeds = _trim_initial_routes(initial_routes, num_vehicles, n, demands, capacities_by_vehicle)
+    if seeds is not None:
+        routing.CloseModelWithParameters(params)
+        initial = routing.ReadAssignmentFromRoutes(seeds, True)
+        if initial is not None:
+            solution = routing.SolveFromAssignmentWithParameters(initial, params)
+    if solution is None:
+        solution = routing.SolveWithParameters(params)
 
     if cancel_checker and cancel_checker():
         return [], list(range(1, n))
@@ -151,3 +162,33 @@ def solve(
 
     dropped = [i for i in range(1, n) if i not in visited]
     return routes, dropped
+
+
+def _trim_initial_routes(
+    initial_routes: list[list[int]] | None,
+    num_vehicles: int,
+    n: int,
+    demands: list[int],
+    capacities_by_vehicle: list[int],
+) -> list[list[int]] | None:
+    """Descarta nos invalidos/repetidos e corta cada rota na capacidade atual do veiculo."""
+    if not initial_routes:
+        return None
+    seen: set[int] = set()
+    seeds: list[list[int]] = []
+    for v in range(num_vehicles):
+        route = initial_routes[v] if v < len(initial_routes) else []
+        load = 0
+        kept = []
+        for node in route:
+            if node <= 0 or node >= n or node in seen:
+                continue
+            if load + demands[node] > capacities_by_vehicle[v]:
+                break
+            load += demands[node]
+            seen.add(node)
+            kept.append(node)
+        seeds.append(kept)
+    if not seen:
+        return None
+    return seeds
@@ -0,0 +1,73 @@
+-- Migration: 020_add_contadores_entregas_abertas_em_rotas
+-- Descricao:
+-- 1) Adiciona contadores desnormalizados de paradas abertas e carga comprometida em rotas.
+-- 2) Mantem os contadores na mesma transacao via trigger em entregas (insert/update/delete).
+-- 3) Faz backfill dos contadores para rotas existentes.
+
+-- UP
+
+-- ---------------------------------------------------------------------------
+-- Colunas de contadores
+-- ---------------------------------------------------------------------------
+ALTER TABLE rotas
+    ADD COLUMN IF NOT EXISTS entregas_pendentes INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS entregas_em_execucao INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS carga_comprometida_galoes INTEGER NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN rotas.entregas_pendentes IS 'Quantidade de entregas PENDENTE da rota (mantida por trigger)';
+COMMENT ON COLUMN rotas.entregas_em_execucao IS 'Quantidade de entregas EM_EXECUCAO da rota (mantida por trigger)';
+COMMENT ON COLUMN rotas.carga_comprometida_galoes IS 'Soma de galoes das entregas abertas (PENDENTE/EM_EXECUCAO) da rota';
+
+-- ---------------------------------------------------------------------------
+-- Manutencao transacional dos contadores
+-- ---------------------------------------------------------------------------
+CREATE OR REPLACE FUNCTION fn_rotas_contadores_entregas() RETURNS TRIGGER AS $$
+DECLARE
+    galoes INTEGER;
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.status::text IN ('PENDENTE', 'EM_EXECUCAO') THEN
+        SELECT p.quantidade_galoes INTO galoes FROM pedidos p WHERE p.id = OLD.pedido_id;
+        UPDATE rotas
+        SET entregas_pendentes = entregas_pendentes - CASE WHEN OLD.status::text = 'PENDENTE' THEN 1 ELSE 0 END,
+            entregas_em_execucao = entregas_em_execucao - CASE WHEN OLD.status::text = 'EM_EXECUCAO' THEN 1 ELSE 0 END,
+            carga_comprometida_galoes = carga_comprometida_galoes - COALESCE(galoes, 0)
+        WHERE id = OLD.rota_id;
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.status::text IN ('PENDENTE', 'EM_EXECUCAO') THEN
+        SELECT p.quantidade_galoes INTO galoes FROM pedidos p WHERE p.id = NEW.pedido_id;
+        UPDATE rotas
+        SET entregas_pendentes = entregas_pendentes + CASE WHEN NEW.status::text = 'PENDENTE' THEN 1 ELSE 0 END,
+            entregas_em_execucao = entregas_em_execucao + CASE WHEN NEW.status::text = 'EM_EXECUCAO' THEN 1 ELSE 0 END,
+            carga_comprometida_galoes = carga_comprometida_galoes + COALESCE(galoes, 0)
+        WHERE id = NEW.rota_id;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_entregas_contadores_rota ON entregas;
+CREATE TRIGGER trg_entregas_contadores_rota
+    AFTER INSERT OR DELETE OR UPDATE OF status, rota_id, pedido_id ON entregas
+    FOR EACH ROW
+    EXECUTE FUNCTION fn_rotas_contadores_entregas();
+
+-- ---------------------------------------------------------------------------
+-- Backfill
+-- ---------------------------------------------------------------------------
+UPDATE rotas r
+SET entregas_pendentes = COALESCE(agg.pendentes, 0),
+    entregas_em_execucao = COALESCE(agg.em_execucao, 0),
+    carga_comprometida_galoes = COALESCE(agg.carga, 0)
+FROM (
+    SELECT r2.id AS rota_id,
+           COUNT(e.id) FILTER (WHERE e.status::text = 'PENDENTE') AS pendentes,
+           COUNT(e.id) FILTER (WHERE e.status::text = 'EM_EXECUCAO') AS em_execucao,
+           SUM(p.quantidade_galoes) FILTER (WHERE e.status::text IN ('PENDENTE', 'EM_EXECUCAO')) AS carga
+    FROM rotas r2
+    LEFT JOIN entregas e ON e.rota_id = r2.id
+    LEFT JOIN pedidos p ON p.id = e.pedido_id
+    GROUP BY r2.id
+) agg
+WHERE agg.rota_id = r.id;
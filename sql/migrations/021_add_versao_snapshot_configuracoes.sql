@@ -0,0 +1,40 @@
+-- Migration: 021_add_versao_snapshot_configuracoes
+-- Descricao:
+-- 1) Cria contador unico de versao para o snapshot de configuracoes + frota ativa.
+-- 2) Incrementa a versao por trigger (statement-level) em configuracoes e em users (papel/ativo),
+--    na mesma transacao da alteracao, para invalidar caches em memoria da aplicacao.
+
+-- UP
+CREATE TABLE IF NOT EXISTS configuracoes_snapshot_versao (
+    id SMALLINT PRIMARY KEY DEFAULT 1,
+    versao BIGINT NOT NULL DEFAULT 1,
+    atualizado_em TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT chk_configuracoes_snapshot_versao_unica CHECK (id = 1)
+);
+
+INSERT INTO configuracoes_snapshot_versao (id, versao) VALUES (1, 1)
+ON CONFLICT (id) DO NOTHING;
+
+COMMENT ON TABLE configuracoes_snapshot_versao IS 'Versao monotona de configuracoes + entregadores ativos (cache da aplicacao)';
+
+CREATE OR REPLACE FUNCTION fn_incrementar_versao_snapshot_configuracoes() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE configuracoes_snapshot_versao
+    SET versao = versao + 1,
+        atualizado_em = CURRENT_TIMESTAMP
+    WHERE id = 1;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_configuracoes_versao_snapshot ON configuracoes;
+CREATE TRIGGER trg_configuracoes_versao_snapshot
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON configuracoes
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION fn_incrementar_versao_snapshot_configuracoes();
+
+DROP TRIGGER IF EXISTS trg_users_versao_snapshot ON users;
+CREATE TRIGGER trg_users_versao_snapshot
+    AFTER INSERT OR UPDATE OF papel, ativo OR DELETE OR TRUNCATE ON users
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION fn_incrementar_versao_snapshot_configuracoes();
@@ -0,0 +1,13 @@
+-- Migration: 022_add_input_fingerprint_solver_jobs
+-- Descricao: Fingerprint canonico das entradas do solver por job, usado para reaproveitar
+-- o plano do ultimo job concluido quando nada que afeta o planejamento mudou.
+
+-- UP
+ALTER TABLE solver_jobs
+    ADD COLUMN IF NOT EXISTS input_fingerprint VARCHAR(64);
+
+CREATE INDEX IF NOT EXISTS idx_solver_jobs_concluidos_plan_version
+    ON solver_jobs(plan_version DESC)
+    WHERE status = 'CONCLUIDO';
+
+COMMENT ON COLUMN solver_jobs.input_fingerprint IS 'SHA-256 das entradas canonicas do SolverRequest (sem job_id/plan_version)';
@@ -0,0 +1,25 @@
+-- Migration: 023_add_solver_payloads_enderecados_por_hash
+-- Descricao:
+-- 1) Armazena payloads de request/response do solver uma unica vez, por SHA-256 do JSON, comprimidos (gzip).
+-- 2) solver_jobs passa a referenciar os payloads por hash; request_payload/response_payload JSONB ficam
+--    apenas para jobs antigos.
+
+-- UP
+CREATE TABLE IF NOT EXISTS solver_payloads (
+    hash VARCHAR(64) PRIMARY KEY,
+    codificacao VARCHAR(16) NOT NULL DEFAULT 'gzip',
+    tamanho_original INTEGER NOT NULL,
+    conteudo BYTEA NOT NULL,
+    criado_em TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT chk_solver_payloads_codificacao CHECK (codificacao IN ('gzip')),
+    CONSTRAINT chk_solver_payloads_tamanho CHECK (tamanho_original >= 0)
+);
+
+-- Conteudo ja chega comprimido: evita nova tentativa de compressao no TOAST.
+ALTER TABLE solver_payloads ALTER COLUMN conteudo SET STORAGE EXTERNAL;
+
+COMMENT ON TABLE solver_payloads IS 'Payloads JSON do solver enderecados por conteudo (SHA-256) e comprimidos';
+
+ALTER TABLE solver_jobs
+    ADD COLUMN IF NOT EXISTS request_payload_hash VARCHAR(64) REFERENCES solver_payloads(hash),
+    ADD COLUMN IF NOT EXISTS response_payload_hash VARCHAR(64) REFERENCES solver_payloads(hash);
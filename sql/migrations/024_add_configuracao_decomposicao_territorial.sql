@@ -0,0 +1,8 @@
+-- Migration: 024_add_configuracao_decomposicao_territorial
+-- Descricao: Limite de pedidos por territorio para decompor planejamentos grandes (0 = desligado)
+
+-- UP
+INSERT INTO configuracoes (chave, valor, descricao) VALUES
+    ('planejamento_pedidos_por_territorio', '0',
+     'Acima deste numero de pedidos o planejamento e dividido em territorios resolvidos em paralelo (0 = desligado)')
+ON CONFLICT (chave) DO NOTHING;
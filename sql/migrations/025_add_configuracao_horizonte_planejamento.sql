@@ -0,0 +1,8 @@
+-- Migration: 025_add_configuracao_horizonte_planejamento
+-- Descricao: Horizonte rolante do planejamento; pedidos HARD com janela alem dele ficam para ciclos seguintes (0 = desligado)
+
+-- UP
+INSERT INTO configuracoes (chave, valor, descricao) VALUES
+    ('planejamento_horizonte_minutos', '0',
+     'Pedidos PENDENTE com janela HARD iniciando alem deste horizonte (minutos a partir de agora) nao entram no planejamento (0 = desligado)')
+ON CONFLICT (chave) DO NOTHING;
@@ -0,0 +1,34 @@
+-- Migration: 026_create_regioes_planejamento
+-- Descricao:
+-- 1) Regioes de planejamento com um ponto de referencia; cada pedido pertence a regiao de referencia mais proxima
+--    do cliente.
+-- 2) Zona configurada por entregador (users.regiao_planejamento). Com ao menos um entregador ativo com regiao, o
+--    planejamento roda por regiao, com lock consultivo proprio, e regioes independentes replanejam em paralelo.
+--    Sem nenhuma regiao atribuida, o planejamento continua global.
+-- 3) Mudanca de regiao do entregador incrementa a versao do snapshot de configuracoes.
+
+-- UP
+CREATE TABLE IF NOT EXISTS regioes_planejamento (
+    codigo VARCHAR(40) PRIMARY KEY,
+    nome VARCHAR(100) NOT NULL,
+    latitude DECIMAL(10, 8) NOT NULL,
+    longitude DECIMAL(11, 8) NOT NULL,
+    criado_em TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT chk_regioes_planejamento_codigo CHECK (length(trim(codigo)) > 0)
+);
+
+COMMENT ON TABLE regioes_planejamento IS 'Particao geografica do planejamento; pedido vai para a regiao de referencia mais proxima';
+
+ALTER TABLE users
+    ADD COLUMN IF NOT EXISTS regiao_planejamento VARCHAR(40)
+        REFERENCES regioes_planejamento (codigo) ON UPDATE CASCADE ON DELETE SET NULL;
+
+CREATE INDEX IF NOT EXISTS idx_users_regiao_planejamento
+    ON users (regiao_planejamento)
+    WHERE regiao_planejamento IS NOT NULL;
+
+DROP TRIGGER IF EXISTS trg_users_versao_snapshot ON users;
+CREATE TRIGGER trg_users_versao_snapshot
+    AFTER INSERT OR UPDATE OF papel, ativo, regiao_planejamento OR DELETE OR TRUNCATE ON users
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION fn_incrementar_versao_snapshot_configuracoes();
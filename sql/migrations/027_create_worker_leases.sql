@@ -0,0 +1,16 @@
+-- Migration: 027_create_worker_leases
+-- Descricao:
+-- Lease de lideranca do worker de replanejamento entre instancias da API. So a instancia dona do lease vigente
+-- processa o outbox; as demais encaminham o gatilho ao lider por NOTIFY. O lider renova o lease por heartbeat;
+-- se parar de renovar, qualquer instancia assume depois de lease_ate.
+
+-- UP
+CREATE TABLE IF NOT EXISTS worker_leases (
+    nome VARCHAR(64) PRIMARY KEY,
+    dono VARCHAR(128) NOT NULL,
+    lease_ate TIMESTAMP NOT NULL,
+    adquirido_em TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    renovado_em TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE worker_leases IS 'Lideranca por lease dos workers em background (uma linha por worker)';
@@ -0,0 +1,13 @@
+-- Migration: 028_add_lease_dispatch_events
+-- Descricao:
+-- Claim por lease no outbox. O worker reivindica eventos PENDENTE numa transacao curta (claimed_by, lease_until),
+-- roda o solver sem transacao aberta e so entao confirma (PROCESSADO). Enquanto o solver roda, a rodada renova o
+-- lease por heartbeat; se a instancia morrer, o lease vence e outra rodada reivindica os mesmos eventos.
+
+-- UP
+ALTER TABLE dispatch_events
+    ADD COLUMN IF NOT EXISTS claimed_by VARCHAR(128),
+    ADD COLUMN IF NOT EXISTS lease_until TIMESTAMP;
+
+COMMENT ON COLUMN dispatch_events.claimed_by IS 'Rodada do worker que reivindicou o evento (null: livre)';
+COMMENT ON COLUMN dispatch_events.lease_until IS 'Fim do lease da reivindicacao; vencido, o evento volta a ser elegivel';
@@ -0,0 +1,43 @@
+-- Migration: 029_add_trigger_galoes_carga_comprometida
+-- Descricao:
+-- 1) Mantem rotas.carga_comprometida_galoes quando pedidos.quantidade_galoes muda com o pedido ja roteado.
+--    O trigger de entregas (020) so reage a status/rota_id/pedido_id e deixava a carga desatualizada.
+-- 2) Recalcula a carga comprometida das rotas existentes para corrigir desvios ja gravados.
+
+-- UP
+
+CREATE OR REPLACE FUNCTION fn_rotas_carga_galoes_pedido() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE rotas r
+    SET carga_comprometida_galoes = r.carga_comprometida_galoes + (NEW.quantidade_galoes - OLD.quantidade_galoes)
+    FROM entregas e
+    WHERE e.pedido_id = NEW.id
+      AND e.rota_id = r.id
+      AND e.status::text IN ('PENDENTE', 'EM_EXECUCAO');
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_pedidos_carga_comprometida_rota ON pedidos;
+CREATE TRIGGER trg_pedidos_carga_comprometida_rota
+    AFTER UPDATE OF quantidade_galoes ON pedidos
+    FOR EACH ROW
+    WHEN (OLD.quantidade_galoes IS DISTINCT FROM NEW.quantidade_galoes)
+    EXECUTE FUNCTION fn_rotas_carga_galoes_pedido();
+
+-- ---------------------------------------------------------------------------
+-- Backfill
+-- ---------------------------------------------------------------------------
+UPDATE rotas r
+SET carga_comprometida_galoes = COALESCE(agg.carga, 0)
+FROM (
+    SELECT r2.id AS rota_id,
+           SUM(p.quantidade_galoes) FILTER (WHERE e.status::text IN ('PENDENTE', 'EM_EXECUCAO')) AS carga
+    FROM rotas r2
+    LEFT JOIN entregas e ON e.rota_id = r2.id
+    LEFT JOIN pedidos p ON p.id = e.pedido_id
+    GROUP BY r2.id
+) agg
+WHERE agg.rota_id = r.id
+  AND r.carga_comprometida_galoes IS DISTINCT FROM COALESCE(agg.carga, 0);
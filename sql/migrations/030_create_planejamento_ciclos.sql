@@ -0,0 +1,18 @@
+-- Migration: 030_create_planejamento_ciclos
+-- Descricao:
+-- Ciclo de planejamento em andamento por escopo (regiao, ou '' para o planejamento global). O ciclo le o snapshot
+-- e reivindica o escopo numa transacao curta, resolve sem conexao e grava numa transacao nova; entre as duas nao ha
+-- lock nem conexao presos, entao e esta linha que impede um segundo ciclo concorrente no mesmo escopo. A gravacao
+-- so acontece se o job ainda for o registrado aqui. lease_ate volta a NULL no fim do ciclo; se a instancia morrer
+-- no meio, o escopo fica livre quando o lease vencer.
+
+-- UP
+CREATE TABLE IF NOT EXISTS planejamento_ciclos (
+    escopo VARCHAR(64) PRIMARY KEY,
+    plan_version BIGINT NOT NULL,
+    job_id VARCHAR(128) NOT NULL,
+    iniciado_em TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    lease_ate TIMESTAMP
+);
+
+COMMENT ON TABLE planejamento_ciclos IS 'Ciclo de planejamento em andamento por escopo (uma linha por regiao e uma global)';
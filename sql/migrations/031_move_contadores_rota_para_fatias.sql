@@ -0,0 +1,122 @@
+-- Migration: 031_move_contadores_rota_para_fatias
+-- Descricao:
+-- 1) Tira da linha de rotas os contadores de paradas abertas e carga comprometida (020/029). O trigger por
+--    evento de entrega travava a linha da rota ate o commit e serializava eventos de paradas distintas.
+-- 2) Os contadores passam para rotas_contadores, em fatias por rota (entregas.id % 8): eventos de paradas
+--    distintas quase sempre escrevem fatias diferentes. Leitores somam as fatias da rota.
+-- 3) A conclusao da rota deixa de ler contadores: confere as entregas abertas sob o lock da propria rota, tomado
+--    so quando ela pode de fato concluir (ExecucaoEntregaService).
+
+-- UP
+
+-- ---------------------------------------------------------------------------
+-- Tabela de fatias
+-- ---------------------------------------------------------------------------
+CREATE TABLE IF NOT EXISTS rotas_contadores (
+    rota_id INTEGER NOT NULL REFERENCES rotas(id) ON DELETE CASCADE,
+    fatia SMALLINT NOT NULL,
+    entregas_pendentes INTEGER NOT NULL DEFAULT 0,
+    entregas_em_execucao INTEGER NOT NULL DEFAULT 0,
+    carga_comprometida_galoes INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (rota_id, fatia)
+);
+
+COMMENT ON TABLE rotas_contadores IS 'Contadores de entregas abertas e carga por rota, em fatias (somar por rota_id)';
+COMMENT ON COLUMN rotas_contadores.fatia IS 'entregas.id % 8 da entrega que gerou o delta';
+
+-- ---------------------------------------------------------------------------
+-- Manutencao transacional nas fatias
+-- ---------------------------------------------------------------------------
+CREATE OR REPLACE FUNCTION fn_rotas_contadores_somar(
+    p_rota_id INTEGER, p_entrega_id INTEGER, p_pendentes INTEGER, p_em_execucao INTEGER, p_galoes INTEGER
+) RETURNS VOID AS $$
+BEGIN
+    UPDATE rotas_contadores
+    SET entregas_pendentes = entregas_pendentes + p_pendentes,
+        entregas_em_execucao = entregas_em_execucao + p_em_execucao,
+        carga_comprometida_galoes = carga_comprometida_galoes + p_galoes
+    WHERE rota_id = p_rota_id
+      AND fatia = p_entrega_id % 8;
+
+    -- Sem a rota (DELETE em cascata de rotas -> entregas) o delta nao tem onde cair.
+    IF NOT FOUND AND EXISTS (SELECT 1 FROM rotas WHERE id = p_rota_id) THEN
+        INSERT INTO rotas_contadores (
+            rota_id, fatia, entregas_pendentes, entregas_em_execucao, carga_comprometida_galoes)
+        VALUES (p_rota_id, p_entrega_id % 8, p_pendentes, p_em_execucao, p_galoes)
+        ON CONFLICT (rota_id, fatia) DO UPDATE
+        SET entregas_pendentes = rotas_contadores.entregas_pendentes + EXCLUDED.entregas_pendentes,
+            entregas_em_execucao = rotas_contadores.entregas_em_execucao + EXCLUDED.entregas_em_execucao,
+            carga_comprometida_galoes =
+                rotas_contadores.carga_comprometida_galoes + EXCLUDED.carga_comprometida_galoes;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION fn_rotas_contadores_entregas() RETURNS TRIGGER AS $$
+DECLARE
+    galoes INTEGER;
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.status::text IN ('PENDENTE', 'EM_EXECUCAO') THEN
+        SELECT p.quantidade_galoes INTO galoes FROM pedidos p WHERE p.id = OLD.pedido_id;
+        PERFORM fn_rotas_contadores_somar(
+            OLD.rota_id,
+            OLD.id,
+            -CASE WHEN OLD.status::text = 'PENDENTE' THEN 1 ELSE 0 END,
+            -CASE WHEN OLD.status::text = 'EM_EXECUCAO' THEN 1 ELSE 0 END,
+            -COALESCE(galoes, 0));
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.status::text IN ('PENDENTE', 'EM_EXECUCAO') THEN
+        SELECT p.quantidade_galoes INTO galoes FROM pedidos p WHERE p.id = NEW.pedido_id;
+        PERFORM fn_rotas_contadores_somar(
+            NEW.rota_id,
+            NEW.id,
+            CASE WHEN NEW.status::text = 'PENDENTE' THEN 1 ELSE 0 END,
+            CASE WHEN NEW.status::text = 'EM_EXECUCAO' THEN 1 ELSE 0 END,
+            COALESCE(galoes, 0));
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- O trigger trg_entregas_contadores_rota (020) continua o mesmo; so a funcao mudou.
+
+CREATE OR REPLACE FUNCTION fn_rotas_carga_galoes_pedido() RETURNS TRIGGER AS $$
+DECLARE
+    aberta RECORD;
+BEGIN
+    FOR aberta IN
+        SELECT e.id, e.rota_id
+        FROM entregas e
+        WHERE e.pedido_id = NEW.id
+          AND e.status::text IN ('PENDENTE', 'EM_EXECUCAO')
+    LOOP
+        PERFORM fn_rotas_contadores_somar(
+            aberta.rota_id, aberta.id, 0, 0, NEW.quantidade_galoes - OLD.quantidade_galoes);
+    END LOOP;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ---------------------------------------------------------------------------
+-- Backfill a partir das entregas e remocao das colunas da rota
+-- ---------------------------------------------------------------------------
+DELETE FROM rotas_contadores;
+
+INSERT INTO rotas_contadores (rota_id, fatia, entregas_pendentes, entregas_em_execucao, carga_comprometida_galoes)
+SELECT e.rota_id,
+       e.id % 8,
+       COUNT(*) FILTER (WHERE e.status::text = 'PENDENTE'),
+       COUNT(*) FILTER (WHERE e.status::text = 'EM_EXECUCAO'),
+       COALESCE(SUM(p.quantidade_galoes), 0)
+FROM entregas e
+JOIN pedidos p ON p.id = e.pedido_id
+WHERE e.status::text IN ('PENDENTE', 'EM_EXECUCAO')
+GROUP BY e.rota_id, e.id % 8;
+
+ALTER TABLE rotas
+    DROP COLUMN IF EXISTS entregas_pendentes,
+    DROP COLUMN IF EXISTS entregas_em_execucao,
+    DROP COLUMN IF EXISTS carga_comprometida_galoes;
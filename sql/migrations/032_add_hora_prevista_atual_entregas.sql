@@ -0,0 +1,12 @@
+-- Migration: 032_add_hora_prevista_atual_entregas
+-- Descricao:
+-- ETA ao vivo das paradas, recalculada durante a execucao (propagacao apos termino e resequenciamento local).
+-- hora_prevista continua sendo so a estimativa do solver: vw_relatorio_entregador.desvio_medio_min (008) mede o
+-- desvio da hora real contra ela, e nao contra a ultima reestimativa.
+
+-- UP
+ALTER TABLE entregas
+    ADD COLUMN IF NOT EXISTS hora_prevista_atual TIMESTAMP;
+
+COMMENT ON COLUMN entregas.hora_prevista_atual IS
+    'ETA recalculada na execucao da rota; NULL enquanto vale a hora_prevista do solver';
@@ -3,28 +3,41 @@ package com.aguaviva.api;
 import com.aguaviva.api.dto.request.AtendimentoRequestDto;
 import com.aguaviva.api.dto.request.EventoRequestDto;
 import com.aguaviva.api.dto.request.IniciarRotaProntaRequestDto;
+import com.aguaviva.api.dto.request.SimulacaoPlanejamentoRequestDto;
 import com.aguaviva.api.mapper.OperacaoPainelMapper;
+import com.aguaviva.api.mapper.SimulacaoPlanejamentoMapper;
 import com.aguaviva.config.ApiRuntimeConfig;
 import com.aguaviva.repository.ConnectionFactory;
 import com.aguaviva.repository.Database;
 import com.aguaviva.service.AtendimentoTelefonicoResultado;
 import com.aguaviva.service.AtendimentoTelefonicoService;
+import com.aguaviva.service.CapacidadePolicy;
+import com.aguaviva.service.ConfiguracaoSnapshotService;
+import com.aguaviva.service.CoordenacaoReplanejamentoCluster;
+import com.aguaviva.service.CotacaoEntregaService;
 import com.aguaviva.service.DispatchEventTypes;
 import com.aguaviva.service.EventoOperacionalIdempotenciaService;
 import com.aguaviva.service.ExecucaoEntregaResultado;
 import com.aguaviva.service.ExecucaoEntregaService;
+import com.aguaviva.service.HashSupport;
+import com.aguaviva.service.HorizontePlanejamentoService;
+import com.aguaviva.service.MonitorPrazosHard;
 import com.aguaviva.service.OperacaoEventosService;
 import com.aguaviva.service.OperacaoMapaService;
 import com.aguaviva.service.OperacaoPainelService;
 import com.aguaviva.service.OperacaoReplanejamentoService;
 import com.aguaviva.service.PedidoExecucaoService;
 import com.aguaviva.service.PedidoTimelineService;
+import com.aguaviva.service.PlanejamentoResultado;
 import com.aguaviva.service.ReplanejamentoWorkerService;
 import com.aguaviva.service.RotaService;
 import com.aguaviva.service.RoteiroEntregadorService;
+import com.aguaviva.solver.MatrizDuracaoGateway;
+import com.aguaviva.solver.MatrizDuracaoProvider;
 import com.aguaviva.solver.MockSolverClient;
-import com.aguaviva.solver.SolverClient;
+import com.aguaviva.solver.OsrmFonteDuracao;
 import com.aguaviva.solver.SolverGateway;
+import com.aguaviva.solver.SolverPool;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonParseException;
@@ -36,12 +49,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public final class ApiServer {
 
@@ -50,6 +69,9 @@ public final class ApiServer {
     private static final String CORS_ALLOW_METHODS = "GET,POST,OPTIONS";
     private static final String TEST_VERBOSE_PROPERTY = "aguaviva.test.verbose";
 
+    // Janelas tem granularidade de minuto: rodar a cada minuto basta para o horizonte acompanhar o relogio.
+    private static final long INTERVALO_PUXADA_HORIZONTE_SEGUNDOS = 60;
+
     private final Gson gson = new GsonBuilder().serializeNulls().create();
     private final AtendimentoTelefonicoService atendimentoTelefonicoService;
     private final ExecucaoEntregaService execucaoEntregaService;
@@ -62,6 +84,7 @@ public final class ApiServer {
     private final OperacaoEventosService operacaoEventosService;
     private final OperacaoMapaService operacaoMapaService;
     private final OperacaoReplanejamentoService operacaoReplanejamentoService;
+    private final RotaService rotaService;
     private final ApiRateLimitService rateLimitService;
     private final Database database;
     private final boolean startupLogsEnabled;
@@ -78,6 +101,7 @@ public final class ApiServer {
             OperacaoEventosService operacaoEventosService,
             OperacaoMapaService operacaoMapaService,
             OperacaoReplanejamentoService operacaoReplanejamentoService,
+            RotaService rotaService,
             ApiRateLimitService rateLimitService,
             Database database,
             boolean startupLogsEnabled) {
@@ -92,6 +116,8 @@ public final class ApiServer {
         this.operacaoEventosService = Objects.requireNonNull(operacaoEventosService);
         this.operacaoMapaService = Objects.requireNonNull(operacaoMapaService);
         this.operacaoReplanejamentoService = Objects.requireNonNull(operacaoReplanejamentoService);
+        // Opcional: sem RotaService (startForTests) a simulacao de planejamento responde 503.
+        this.rotaService = rotaService;
         this.rateLimitService = Objects.requireNonNull(rateLimitService);
         this.database = Objects.requireNonNull(database);
         this.startupLogsEnabled = startupLogsEnabled;
@@ -101,28 +127,70 @@ public final class ApiServer {
         ApiRuntimeConfig runtimeConfig = ApiRuntimeConfig.fromEnvironment();
         ConnectionFactory connectionFactory = new ConnectionFactory(runtimeConfig.databaseConfig());
         Database database = new Database(connectionFactory);
-        String solverUrl = runtimeConfig.solverUrl();
         int port = runtimeConfig.apiPort();
         boolean mockSolverEnabled = runtimeConfig.featureFlag("mockSolverEnabled", false);
         boolean rateLimitEnabled = runtimeConfig.featureFlag("rateLimitEnabled", false);
+        boolean planejamentoWhatIfEnabled = runtimeConfig.featureFlag("planejamentoWhatIfEnabled", false);
+        boolean coordenacaoClusterEnabled = runtimeConfig.featureFlag("coordenacaoClusterEnabled", false);
 
-        SolverGateway solverGateway = mockSolverEnabled ? new MockSolverClient() : new SolverClient(solverUrl);
-        RotaService rotaService = new RotaService(solverGateway, connectionFactory);
+        SolverGateway solverGateway = mockSolverEnabled
+                ? new MockSolverClient()
+                : comMatrizDuracao(criarSolverPool(runtimeConfig.solverPool()), runtimeConfig.solverMatrix());
+        ConfiguracaoSnapshotService configuracaoSnapshotService = new ConfiguracaoSnapshotService();
+        RotaService rotaService = new RotaService(solverGateway, connectionFactory, configuracaoSnapshotService);
 
-        AtendimentoTelefonicoService atendimentoTelefonicoService = new AtendimentoTelefonicoService(connectionFactory);
-        ExecucaoEntregaService execucaoEntregaService = new ExecucaoEntregaService(connectionFactory);
+        AtendimentoTelefonicoService atendimentoTelefonicoService = new AtendimentoTelefonicoService(
+                connectionFactory,
+                configuracaoSnapshotService,
+                new CotacaoEntregaService(connectionFactory, configuracaoSnapshotService));
+        ExecucaoEntregaService execucaoEntregaService =
+                new ExecucaoEntregaService(connectionFactory, configuracaoSnapshotService);
         EventoOperacionalIdempotenciaService eventoOperacionalIdempotenciaService =
                 new EventoOperacionalIdempotenciaService(connectionFactory);
-        ReplanejamentoWorkerService workerService = new ReplanejamentoWorkerService(
-                connectionFactory,
-                capacidadePolicy -> rotaService.planejarRotasPendentes(capacidadePolicy),
-                rotaService::cancelarPlanejamentosAtivosBestEffort);
+        MonitorPrazosHard monitorPrazosHard = new MonitorPrazosHard(connectionFactory);
+        Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor = capacidadePolicy ->
+                rotaService.planejarRotasPendentes(politicasCandidatas(capacidadePolicy, planejamentoWhatIfEnabled));
+        CoordenacaoReplanejamentoCluster coordenacao =
+                coordenacaoClusterEnabled ? new CoordenacaoReplanejamentoCluster(connectionFactory) : null;
+        ReplanejamentoWorkerService workerService = coordenacao == null
+                ? new ReplanejamentoWorkerService(
+                        connectionFactory,
+                        replanejamentoExecutor,
+                        rotaService::cancelarPlanejamentosAtivosBestEffort,
+                        monitorPrazosHard)
+                : new ReplanejamentoWorkerService(
+                        connectionFactory,
+                        replanejamentoExecutor,
+                        rotaService::cancelarPlanejamentosAtivosBestEffort,
+                        monitorPrazosHard,
+                        coordenacao);
+        if (coordenacao != null) {
+            coordenacao.iniciar(
+                    () -> Thread.startVirtualThread(() -> {
+                        try {
+                            workerService.processarPendentes(0, 100);
+                        } catch (Exception e) {
+                            System.err.println("Falha no worker disparado pelo lider do cluster: " + e.getMessage());
+                        }
+                    }),
+                    rotaService::cancelarSolucaoLocal);
+        }
+        monitorPrazosHard.iniciar(() -> Thread.startVirtualThread(() -> {
+            try {
+                workerService.processarPendentes(0, 100);
+            } catch (Exception e) {
+                System.err.println("Falha no worker disparado por prazo HARD: " + e.getMessage());
+            }
+        }));
+        agendarPuxadaDoHorizonte(
+                new HorizontePlanejamentoService(connectionFactory, configuracaoSnapshotService), workerService);
         PedidoTimelineService pedidoTimelineService = new PedidoTimelineService(connectionFactory);
         PedidoExecucaoService pedidoExecucaoService = new PedidoExecucaoService(connectionFactory);
         RoteiroEntregadorService roteiroEntregadorService = new RoteiroEntregadorService(connectionFactory);
         OperacaoPainelService operacaoPainelService = new OperacaoPainelService(connectionFactory);
         OperacaoEventosService operacaoEventosService = new OperacaoEventosService(connectionFactory);
-        OperacaoMapaService operacaoMapaService = new OperacaoMapaService(connectionFactory);
+        OperacaoMapaService operacaoMapaService =
+                new OperacaoMapaService(connectionFactory, configuracaoSnapshotService);
         OperacaoReplanejamentoService operacaoReplanejamentoService =
                 new OperacaoReplanejamentoService(connectionFactory);
         ApiRateLimitService rateLimitService = new ApiRateLimitService(
@@ -141,6 +209,7 @@ public final class ApiServer {
                 operacaoEventosService,
                 operacaoMapaService,
                 operacaoReplanejamentoService,
+                rotaService,
                 rateLimitService,
                 database,
                 runtimeConfig.startupLogsEnabled());
@@ -154,7 +223,10 @@ public final class ApiServer {
                     + ", rateLimitEnabled="
                     + rateLimitEnabled
                     + ", mockSolverEnabled="
-                    + mockSolverEnabled);
+                    + mockSolverEnabled
+                    + ", coordenacaoClusterEnabled="
+                    + coordenacaoClusterEnabled
+                    + (coordenacao == null ? "" : ", instancia=" + coordenacao.instanciaId()));
         }
         app.start(port);
     }
@@ -169,6 +241,7 @@ public final class ApiServer {
         server.createContext("/api/entregadores", new EntregadorRoteiroHandler());
         server.createContext("/api/operacao", new OperacaoReadOnlyHandler());
         server.createContext("/api/operacao/rotas/prontas/iniciar", new IniciarRotaProntaHandler());
+        server.createContext("/api/operacao/planejamento/simulacoes", new SimulacaoPlanejamentoHandler());
         server.setExecutor(null);
         server.start();
 
@@ -180,7 +253,7 @@ public final class ApiServer {
                     + "/api/entregadores/{entregadorId}/roteiro, "
                     + "/api/operacao/painel, /api/operacao/eventos, /api/operacao/mapa, "
                     + "/api/operacao/replanejamento/jobs, /api/operacao/replanejamento/jobs/{jobId}, "
-                    + "/api/operacao/rotas/prontas/iniciar");
+                    + "/api/operacao/rotas/prontas/iniciar, /api/operacao/planejamento/simulacoes");
         }
         return new RunningServer(server, resolvedPort);
     }
@@ -339,7 +412,7 @@ public final class ApiServer {
                 }
 
                 ScopeRef scopeRef = resolveScope(eventType, req);
-                String requestHash = buildEventoRequestHash(eventType, req);
+                String requestHash = buildEventoRequestHash(gson, eventType, req);
                 EventoOperacionalIdempotenciaService.Resultado resultadoIdempotencia =
                         eventoOperacionalIdempotenciaService.processar(
                                 externalEventId,
@@ -418,6 +491,35 @@ public final class ApiServer {
         }
     }
 
+    private final class SimulacaoPlanejamentoHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCorsPreflight(exchange)) {
+                return;
+            }
+            if (enforceRateLimit(exchange)) {
+                return;
+            }
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                writeJson(exchange, 405, Map.of("erro", "Metodo nao permitido"));
+                return;
+            }
+            if (rotaService == null) {
+                writeJson(exchange, 503, Map.of("erro", "Simulacao de planejamento indisponivel"));
+                return;
+            }
+
+            try {
+                SimulacaoPlanejamentoRequestDto req = parseBody(exchange, SimulacaoPlanejamentoRequestDto.class);
+                writeJson(exchange, 200, rotaService.simularCenarios(SimulacaoPlanejamentoMapper.toCenarios(req)));
+            } catch (IllegalArgumentException e) {
+                writeJson(exchange, 400, Map.of("erro", e.getMessage()));
+            } catch (Exception e) {
+                writeJson(exchange, 500, Map.of("erro", "Falha ao simular planejamento", "detalhe", e.getMessage()));
+            }
+        }
+    }
+
     private final class PedidoOperacionalHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -592,6 +694,68 @@ public final class ApiServer {
         }
     }
 
+    /**
+     * Puxa periodicamente os pedidos adiados pelo horizonte de planejamento que o relogio alcancou e, havendo
+     * algum, aciona o worker. Com o horizonte desligado cada rodada e so uma leitura de configuracao.
+     */
+    private static void agendarPuxadaDoHorizonte(
+            HorizontePlanejamentoService horizontePlanejamentoService,
+            ReplanejamentoWorkerService replanejamentoWorkerService) {
+        ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("horizonte-planejamento").daemon(true).factory());
+        agendador.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        if (horizontePlanejamentoService.puxarPedidosQueEntraramNoHorizonte() > 0) {
+                            replanejamentoWorkerService.processarPendentes(0, 100);
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Falha ao puxar pedidos do horizonte de planejamento: " + e.getMessage());
+                    }
+                },
+                INTERVALO_PUXADA_HORIZONTE_SEGUNDOS,
+                INTERVALO_PUXADA_HORIZONTE_SEGUNDOS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Com o what-if ligado o worker resolve o snapshot tambem sob as demais politicas que descontam a carga
+     * comprometida e grava o melhor plano; a politica consolidada dos eventos vem primeiro e vence os empates.
+     * Politicas que ignoram a carga em rota (CHEIA) nunca entram como alternativa automatica: venceriam quase sempre
+     * sobrecarregando veiculos no meio da rota. Comparar todas continua sendo papel da simulacao.
+     */
+    static List<CapacidadePolicy> politicasCandidatas(CapacidadePolicy consolidada, boolean whatIfEnabled) {
+        if (!whatIfEnabled) {
+            return List.of(consolidada);
+        }
+        List<CapacidadePolicy> politicas = new ArrayList<>(List.of(consolidada));
+        for (CapacidadePolicy politica : CapacidadePolicy.values()) {
+            if (politica != consolidada && politica.consideraCargaComprometida()) {
+                politicas.add(politica);
+            }
+        }
+        return politicas;
+    }
+
+    private static SolverPool criarSolverPool(ApiRuntimeConfig.SolverPoolSettings settings) {
+        Duration hedgeApos = settings.hedgeAfterMs() > 0 ? Duration.ofMillis(settings.hedgeAfterMs()) : null;
+        return new SolverPool(
+                new SolverPool.Config(settings.urls(), Duration.ofMillis(settings.planningBudgetMs()), hedgeApos));
+    }
+
+    private static SolverGateway comMatrizDuracao(
+            SolverGateway solverGateway, ApiRuntimeConfig.SolverMatrixSettings settings) throws IOException {
+        if (!settings.enabled()) {
+            if (settings.cacheFile() != null) {
+                System.err.println("SOLVER_MATRIX_CACHE_FILE ignorado sem OSRM_URL: o solver monta a propria matriz");
+            }
+            return solverGateway;
+        }
+        return new MatrizDuracaoGateway(
+                solverGateway,
+                new MatrizDuracaoProvider(Path.of(settings.cacheFile()), new OsrmFonteDuracao(settings.osrmUrl())));
+    }
+
     private static boolean isPedidoNotFound(IllegalArgumentException e) {
         return e.getMessage() != null && e.getMessage().startsWith("Pedido nao encontrado com id:");
     }
@@ -644,6 +808,7 @@ public final class ApiServer {
                 operacaoEventosService,
                 operacaoMapaService,
                 operacaoReplanejamentoService,
+                null,
                 rateLimitService,
                 database,
                 Boolean.getBoolean(TEST_VERBOSE_PROPERTY));
@@ -703,19 +868,8 @@ public final class ApiServer {
         if (idempotente) {
             return;
         }
-        boolean replanejaPorEvento =
-                DispatchEventTypes.policyForEvent(eventType).replaneja();
-        boolean replanejaPorRiscoJanelaHard = false;
-
-        if (!replanejaPorEvento && DispatchEventTypes.PEDIDO_ENTREGUE.equals(eventType)) {
-            try {
-                replanejaPorRiscoJanelaHard = replanejamentoWorkerService.existePedidoHardEmRisco();
-            } catch (Exception e) {
-                System.err.println("Falha ao avaliar risco de janela HARD: " + e.getMessage());
-            }
-        }
-
-        if (!replanejaPorEvento && !replanejaPorRiscoJanelaHard) {
+        // Risco de janela HARD nao e avaliado aqui: o MonitorPrazosHard dispara o worker no alarme do prazo.
+        if (!DispatchEventTypes.policyForEvent(eventType).replaneja()) {
             return;
         }
 
@@ -740,7 +894,7 @@ public final class ApiServer {
         };
     }
 
-    private String buildEventoRequestHash(String eventType, EventoRequestDto req) {
+    static String buildEventoRequestHash(Gson gson, String eventType, EventoRequestDto req) {
         Map<String, Object> canonical = new LinkedHashMap<>();
         canonical.put("eventType", eventType);
         canonical.put("rotaId", req.rotaId());
@@ -749,22 +903,7 @@ public final class ApiServer {
         canonical.put("motivo", ApiServerRequestParsers.normalizeOptionalText(req.motivo()));
         canonical.put("cobrancaCancelamentoCentavos", req.cobrancaCancelamentoCentavos());
         String payload = gson.toJson(canonical);
-        return sha256(payload);
-    }
-
-    private static String sha256(String value) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder(hash.length * 2);
-            for (byte b : hash) {
-                sb.append(Character.forDigit((b >>> 4) & 0x0F, 16));
-                sb.append(Character.forDigit(b & 0x0F, 16));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("SHA-256 indisponivel no runtime", e);
-        }
+        return HashSupport.sha256Hex(payload);
     }
 
     private record ScopeRef(String scopeType, int scopeId) {}
@@ -0,0 +1,8 @@
+package com.aguaviva.api.dto.request;
+
+import java.util.List;
+
+public record SimulacaoPlanejamentoRequestDto(List<CenarioDto> cenarios) {
+
+    public record CenarioDto(String capacidadePolicy, Integer capacidadeVeiculo, Integer entregadores) {}
+}
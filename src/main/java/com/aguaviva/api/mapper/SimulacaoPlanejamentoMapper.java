@@ -0,0 +1,45 @@
+package com.aguaviva.api.mapper;
+
+import com.aguaviva.api.dto.request.SimulacaoPlanejamentoRequestDto;
+import com.aguaviva.service.CapacidadePolicy;
+import com.aguaviva.service.CenarioPlanejamento;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public final class SimulacaoPlanejamentoMapper {
+
+    private SimulacaoPlanejamentoMapper() {}
+
+    /** Sem cenarios no body, compara todas as politicas de capacidade com a frota atual. */
+    public static List<CenarioPlanejamento> toCenarios(SimulacaoPlanejamentoRequestDto source) {
+        if (source == null || source.cenarios() == null || source.cenarios().isEmpty()) {
+            return Arrays.stream(CapacidadePolicy.values())
+                    .map(CenarioPlanejamento::new)
+                    .toList();
+        }
+        List<CenarioPlanejamento> cenarios = new ArrayList<>(source.cenarios().size());
+        for (SimulacaoPlanejamentoRequestDto.CenarioDto cenario : source.cenarios()) {
+            if (cenario == null) {
+                throw new IllegalArgumentException("cenario nao pode ser nulo");
+            }
+            cenarios.add(new CenarioPlanejamento(
+                    toCapacidadePolicy(cenario.capacidadePolicy()),
+                    cenario.capacidadeVeiculo(),
+                    cenario.entregadores()));
+        }
+        return cenarios;
+    }
+
+    private static CapacidadePolicy toCapacidadePolicy(String valor) {
+        if (valor == null || valor.isBlank()) {
+            throw new IllegalArgumentException("capacidadePolicy obrigatoria");
+        }
+        try {
+            return CapacidadePolicy.valueOf(valor.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("capacidadePolicy invalida: " + valor, e);
+        }
+    }
+}
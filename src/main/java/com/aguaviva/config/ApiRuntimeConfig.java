@@ -10,7 +10,9 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -22,13 +24,17 @@ public record ApiRuntimeConfig(
         int apiPort,
         String solverUrl,
         ConnectionFactory.DatabaseConfig databaseConfig,
-        StructuredConfig structuredConfig) {
+        StructuredConfig structuredConfig,
+        SolverPoolSettings solverPool,
+        SolverMatrixSettings solverMatrix) {
 
     private static final Set<String> STRICT_ENVS =
             Set.of("prod", "production", "staging", "hml", "homolog", "homologacao");
     private static final String DEFAULT_APP_ENV = "local";
     private static final String DEFAULT_API_PORT = "8081";
     private static final String DEFAULT_SOLVER_URL = "http://localhost:8080";
+    private static final String DEFAULT_SOLVER_PLANNING_BUDGET_MS = "5000";
+    private static final String DEFAULT_SOLVER_HEDGE_AFTER_MS = "0";
     private static final String DEFAULT_STRUCTURED_CONFIG_PATH = "config/api-config.local.json";
     private static final Gson GSON = new Gson();
 
@@ -37,6 +43,8 @@ public record ApiRuntimeConfig(
         Objects.requireNonNull(solverUrl, "solverUrl nao pode ser nulo");
         Objects.requireNonNull(databaseConfig, "databaseConfig nao pode ser nulo");
         Objects.requireNonNull(structuredConfig, "structuredConfig nao pode ser nulo");
+        Objects.requireNonNull(solverPool, "solverPool nao pode ser nulo");
+        Objects.requireNonNull(solverMatrix, "solverMatrix nao pode ser nulo");
     }
 
     public static ApiRuntimeConfig fromEnvironment() {
@@ -52,16 +60,25 @@ public record ApiRuntimeConfig(
                 .toLowerCase(Locale.ROOT);
         int apiPort = parsePort(resolveValue("API_PORT", DEFAULT_API_PORT, runtimeEnv, dotenvLookup));
         String solverUrl = resolveValue("SOLVER_URL", DEFAULT_SOLVER_URL, runtimeEnv, dotenvLookup);
-        validateSolverUrl(solverUrl);
+        List<String> solverUrls = parseSolverUrls(solverUrl);
+        SolverPoolSettings solverPool = new SolverPoolSettings(
+                solverUrls,
+                parseMillis(
+                        "SOLVER_PLANNING_BUDGET_MS", DEFAULT_SOLVER_PLANNING_BUDGET_MS, true, runtimeEnv, dotenvLookup),
+                parseMillis("SOLVER_HEDGE_AFTER_MS", DEFAULT_SOLVER_HEDGE_AFTER_MS, false, runtimeEnv, dotenvLookup));
+
+        SolverMatrixSettings solverMatrix = new SolverMatrixSettings(
+                resolveOptional("SOLVER_MATRIX_CACHE_FILE", runtimeEnv, dotenvLookup),
+                resolveOptional("OSRM_URL", runtimeEnv, dotenvLookup));
 
         ConnectionFactory.DatabaseConfig dbConfig = ConnectionFactory.resolveConfig(runtimeEnv, dotenvLookup);
         StructuredConfig structuredConfig = resolveStructuredConfig(runtimeEnv, dotenvLookup);
 
         if (STRICT_ENVS.contains(appEnv)) {
-            validateStrictConfig(appEnv, solverUrl, dbConfig, structuredConfig, runtimeEnv, dotenvLookup);
+            validateStrictConfig(appEnv, solverUrls, dbConfig, structuredConfig, runtimeEnv, dotenvLookup);
         }
 
-        return new ApiRuntimeConfig(appEnv, apiPort, solverUrl, dbConfig, structuredConfig);
+        return new ApiRuntimeConfig(appEnv, apiPort, solverUrl, dbConfig, structuredConfig, solverPool, solverMatrix);
     }
 
     public boolean startupLogsEnabled() {
@@ -78,7 +95,7 @@ public record ApiRuntimeConfig(
 
     private static void validateStrictConfig(
             String appEnv,
-            String solverUrl,
+            List<String> solverUrls,
             ConnectionFactory.DatabaseConfig dbConfig,
             StructuredConfig structuredConfig,
             Map<String, String> runtimeEnv,
@@ -103,8 +120,10 @@ public record ApiRuntimeConfig(
             throw new IllegalStateException(
                     "Ambiente " + appEnv + " nao aceita POSTGRES_HOST local: " + dbConfig.host());
         }
-        if (isLoopbackHost(URI.create(solverUrl).getHost())) {
-            throw new IllegalStateException("Ambiente " + appEnv + " nao aceita SOLVER_URL local: " + solverUrl);
+        for (String solverUrl : solverUrls) {
+            if (isLoopbackHost(URI.create(solverUrl).getHost())) {
+                throw new IllegalStateException("Ambiente " + appEnv + " nao aceita SOLVER_URL local: " + solverUrl);
+            }
         }
         if ("none".equals(structuredConfig.sourcePath())) {
             throw new IllegalStateException("Ambiente " + appEnv + " exige API_CONFIG_FILE configurado");
@@ -231,6 +250,42 @@ public record ApiRuntimeConfig(
         return text;
     }
 
+    private static List<String> parseSolverUrls(String rawValue) {
+        List<String> urls = new ArrayList<>();
+        for (String part : rawValue.split(",")) {
+            String url = normalizeOptional(part);
+            if (url != null) {
+                validateSolverUrl(url);
+                urls.add(url);
+            }
+        }
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("SOLVER_URL sem nenhuma URL valida: " + rawValue);
+        }
+        return List.copyOf(urls);
+    }
+
+    private static long parseMillis(
+            String key,
+            String fallback,
+            boolean exigePositivo,
+            Map<String, String> runtimeEnv,
+            Function<String, String> dotenvLookup) {
+        String rawValue = resolveValue(key, fallback, runtimeEnv, dotenvLookup);
+        try {
+            long millis = Long.parseLong(rawValue);
+            if (exigePositivo && millis == 0) {
+                throw new IllegalStateException(key + " deve ser maior que zero: " + millis);
+            }
+            if (millis < 0) {
+                throw new IllegalStateException(key + " nao pode ser negativo: " + millis);
+            }
+            return millis;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(key + " invalido: " + rawValue, e);
+        }
+    }
+
     private static void validateSolverUrl(String solverUrl) {
         try {
             URI uri = new URI(solverUrl);
@@ -312,6 +367,37 @@ public record ApiRuntimeConfig(
         }
     }
 
+    /**
+     * Replicas do solver (SOLVER_URL separada por virgula), orcamento de planejamento por chamada e atraso
+     * do hedge (0 = desligado).
+     */
+    public record SolverPoolSettings(List<String> urls, long planningBudgetMs, long hedgeAfterMs) {
+        public SolverPoolSettings {
+            Objects.requireNonNull(urls, "urls nao pode ser nulo");
+            if (urls.isEmpty()) {
+                throw new IllegalArgumentException("urls do solver obrigatorio");
+            }
+            urls = List.copyOf(urls);
+            if (planningBudgetMs <= 0) {
+                throw new IllegalArgumentException("planningBudgetMs deve ser maior que zero");
+            }
+            if (hedgeAfterMs < 0) {
+                throw new IllegalArgumentException("hedgeAfterMs nao pode ser negativo");
+            }
+        }
+    }
+
+    /**
+     * Matriz de duracoes montada no Java: arquivo do cache persistente (SOLVER_MATRIX_CACHE_FILE) e OSRM usado
+     * para as celulas faltantes (OSRM_URL). Sem qualquer um dos dois fica desligada e o solver monta a propria
+     * matriz; sem OSRM nao ha o que cachear alem do haversine que o solver ja calcula.
+     */
+    public record SolverMatrixSettings(String cacheFile, String osrmUrl) {
+        public boolean enabled() {
+            return cacheFile != null && osrmUrl != null;
+        }
+    }
+
     public record RateLimitRule(int requests, String window) {
         public RateLimitRule {
             if (requests <= 0) {
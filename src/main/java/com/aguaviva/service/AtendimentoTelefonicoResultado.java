@@ -1,4 +1,15 @@
 package com.aguaviva.service;
 
 public record AtendimentoTelefonicoResultado(
-        int pedidoId, int clienteId, String telefoneNormalizado, boolean clienteCriado, boolean idempotente) {}
+        int pedidoId,
+        int clienteId,
+        String telefoneNormalizado,
+        boolean clienteCriado,
+        boolean idempotente,
+        CotacaoEntregaService.CotacaoEntrega cotacao) {
+
+    public AtendimentoTelefonicoResultado(
+            int pedidoId, int clienteId, String telefoneNormalizado, boolean clienteCriado, boolean idempotente) {
+        this(pedidoId, clienteId, telefoneNormalizado, clienteCriado, idempotente, null);
+    }
+}
@@ -1,9 +1,6 @@
 package com.aguaviva.service;
 
 import com.aguaviva.repository.ConnectionFactory;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -11,24 +8,65 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class AtendimentoTelefonicoService {
 
+    private static final Logger LOGGER = Logger.getLogger(AtendimentoTelefonicoService.class.getName());
+
     private static final String ENDERECO_PENDENTE = "Endereco pendente";
     private static final String METODO_PAGAMENTO_VALE = "VALE";
     private static final String COBERTURA_BBOX_PADRAO = "-43.9600,-16.8200,-43.7800,-16.6200";
 
     private final ConnectionFactory connectionFactory;
     private final DispatchEventService dispatchEventService;
+    private final ConfiguracaoSnapshotService configuracaoSnapshotService;
+    private final CotacaoEntregaService cotacaoEntregaService;
 
     public AtendimentoTelefonicoService(ConnectionFactory connectionFactory) {
         this(connectionFactory, new DispatchEventService());
     }
 
+    public AtendimentoTelefonicoService(
+            ConnectionFactory connectionFactory, ConfiguracaoSnapshotService configuracaoSnapshotService) {
+        this(connectionFactory, new DispatchEventService(), configuracaoSnapshotService, null);
+    }
+
+    /** Com {@code cotacaoEntregaService}, pedidos criados com coordenada voltam com a faixa de chegada estimada. */
+    public AtendimentoTelefonicoService(
+            ConnectionFactory connectionFactory,
+            ConfiguracaoSnapshotService configuracaoSnapshotService,
+            CotacaoEntregaService cotacaoEntregaService) {
+        this(
+                connectionFactory,
+                new DispatchEventService(),
+                configuracaoSnapshotService,
+                Objects.requireNonNull(cotacaoEntregaService, "CotacaoEntregaService nao pode ser nulo"));
+    }
+
     AtendimentoTelefonicoService(ConnectionFactory connectionFactory, DispatchEventService dispatchEventService) {
+        this(connectionFactory, dispatchEventService, new ConfiguracaoSnapshotService(), null);
+    }
+
+    AtendimentoTelefonicoService(
+            ConnectionFactory connectionFactory,
+            DispatchEventService dispatchEventService,
+            ConfiguracaoSnapshotService configuracaoSnapshotService) {
+        this(connectionFactory, dispatchEventService, configuracaoSnapshotService, null);
+    }
+
+    private AtendimentoTelefonicoService(
+            ConnectionFactory connectionFactory,
+            DispatchEventService dispatchEventService,
+            ConfiguracaoSnapshotService configuracaoSnapshotService,
+            CotacaoEntregaService cotacaoEntregaService) {
         this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
         this.dispatchEventService =
                 Objects.requireNonNull(dispatchEventService, "DispatchEventService nao pode ser nulo");
+        this.configuracaoSnapshotService =
+                Objects.requireNonNull(configuracaoSnapshotService, "ConfiguracaoSnapshotService nao pode ser nulo");
+        this.cotacaoEntregaService = cotacaoEntregaService;
     }
 
     public AtendimentoTelefonicoResultado registrarPedido(
@@ -155,6 +193,8 @@ public class AtendimentoTelefonicoService {
         AtendimentoRequestNormalizer.validateQuantidade(quantidadeGaloes);
         AtendimentoRequestNormalizer.validateAtendenteId(atendenteId);
 
+        AtendimentoTelefonicoResultado registrado;
+        ClienteCadastro cadastroCotacao;
         try (Connection conn = connectionFactory.getConnection()) {
             conn.setAutoCommit(false);
             boolean transacaoFinalizada = false;
@@ -249,12 +289,13 @@ public class AtendimentoTelefonicoService {
 
                 conn.commit();
                 transacaoFinalizada = true;
-                return new AtendimentoTelefonicoResultado(
+                registrado = new AtendimentoTelefonicoResultado(
                         insert.pedidoId(),
                         insert.clienteId(),
                         telefoneNormalizado,
                         clienteResolucao.clienteCriado(),
                         insert.idempotente());
+                cadastroCotacao = insert.idempotente() ? null : clienteResolucao.cadastro();
             } catch (Exception e) {
                 if (!transacaoFinalizada) {
                     conn.rollback();
@@ -266,6 +307,44 @@ public class AtendimentoTelefonicoService {
         } catch (SQLException e) {
             throw mapearSqlException(e, "Falha ao registrar pedido via atendimento omnichannel");
         }
+
+        // Cota com a conexao ja devolvida: a recarga da foto da cotacao pega outra conexao do pool.
+        if (cadastroCotacao == null) {
+            return registrado;
+        }
+        return new AtendimentoTelefonicoResultado(
+                registrado.pedidoId(),
+                registrado.clienteId(),
+                registrado.telefoneNormalizado(),
+                registrado.clienteCriado(),
+                registrado.idempotente(),
+                cotarEntrega(registrado.pedidoId(), cadastroCotacao, quantidadeGaloes, janelaPedido));
+    }
+
+    /** Cotacao fora da transacao e tolerante a falha: sem estimativa o pedido segue registrado normalmente. */
+    private CotacaoEntregaService.CotacaoEntrega cotarEntrega(
+            int pedidoId,
+            ClienteCadastro cadastro,
+            int quantidadeGaloes,
+            AtendimentoRequestNormalizer.JanelaPedidoInput janelaPedido) {
+        if (cotacaoEntregaService == null || cadastro.latitude() == null || cadastro.longitude() == null) {
+            return null;
+        }
+        try {
+            return cotacaoEntregaService
+                    .cotar(
+                            cadastro.latitude(),
+                            cadastro.longitude(),
+                            quantidadeGaloes,
+                            janelaPedido.inicio(),
+                            janelaPedido.fim())
+                    .orElse(null);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "event=cotacao_entrega_falhou pedidoId={0} erro={1}", new Object[] {
+                pedidoId, e.getMessage()
+            });
+            return null;
+        }
     }
 
     private String resolveDedupeKey(String origemCanal, String sourceEventId, String manualRequestId) {
@@ -369,7 +448,7 @@ public class AtendimentoTelefonicoService {
         }
     }
 
-    private String buildAtendimentoRequestHash(
+    static String buildAtendimentoRequestHash(
             String origemCanal,
             String dedupeKey,
             String telefoneNormalizado,
@@ -399,7 +478,7 @@ public class AtendimentoTelefonicoService {
                 canonical,
                 "longitude",
                 cadastroClienteInput.longitude() == null ? null : Double.toString(cadastroClienteInput.longitude()));
-        return sha256Hex(canonical.toString());
+        return HashSupport.sha256Hex(canonical.toString());
     }
 
     private static void appendCanonicalField(StringBuilder canonical, String field, String value) {
@@ -435,22 +514,7 @@ public class AtendimentoTelefonicoService {
         if (canonical.length() <= 64) {
             return canonical;
         }
-        return sha256Hex(canonical).substring(0, 64);
-    }
-
-    private static String sha256Hex(String value) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder(hash.length * 2);
-            for (byte b : hash) {
-                sb.append(Character.forDigit((b >>> 4) & 0x0F, 16));
-                sb.append(Character.forDigit(b & 0x0F, 16));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("SHA-256 indisponivel no runtime", e);
-        }
+        return HashSupport.sha256Hex(canonical).substring(0, 64);
     }
 
     private ClienteResolucao obterOuCriarClientePorTelefone(
@@ -577,21 +641,16 @@ public class AtendimentoTelefonicoService {
     }
 
     private CoberturaBbox carregarCoberturaBbox(Connection conn) throws SQLException {
-        String valor = null;
-        String sql = "SELECT valor FROM configuracoes WHERE chave = 'cobertura_bbox' LIMIT 1";
-        try (PreparedStatement stmt = conn.prepareStatement(sql);
-                ResultSet rs = stmt.executeQuery()) {
-            if (rs.next()) {
-                valor = rs.getString("valor");
+        return configuracaoSnapshotService.obter(conn).derivar("atendimento.cobertura_bbox", snapshot -> {
+            String valor = snapshot.valor("cobertura_bbox");
+            if (valor == null || valor.isBlank()) {
+                valor = COBERTURA_BBOX_PADRAO;
             }
-        }
-        if (valor == null || valor.isBlank()) {
-            valor = COBERTURA_BBOX_PADRAO;
-        }
-        return parseBbox(valor);
+            return parseBbox(valor);
+        });
     }
 
-    private CoberturaBbox parseBbox(String raw) {
+    private static CoberturaBbox parseBbox(String raw) {
         String[] parts = raw.split(",");
         if (parts.length != 4) {
             throw new IllegalStateException(
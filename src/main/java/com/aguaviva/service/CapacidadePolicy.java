@@ -2,5 +2,10 @@ package com.aguaviva.service;
 
 public enum CapacidadePolicy {
     CHEIA,
-    REMANESCENTE
+    REMANESCENTE;
+
+    /** Desconta a carga ja comprometida pelas rotas em andamento; CHEIA trata todo veiculo como vazio. */
+    public boolean consideraCargaComprometida() {
+        return this == REMANESCENTE;
+    }
 }
@@ -0,0 +1,24 @@
+package com.aguaviva.service;
+
+import java.util.Objects;
+
+/**
+ * Cenario de what-if do planejamento: politica de capacidade e, opcionalmente, capacidade por veiculo e tamanho da
+ * frota diferentes dos configurados. {@code null} mantem o valor atual.
+ */
+public record CenarioPlanejamento(CapacidadePolicy capacidadePolicy, Integer capacidadeVeiculo, Integer entregadores) {
+
+    public CenarioPlanejamento {
+        Objects.requireNonNull(capacidadePolicy, "capacidadePolicy nao pode ser nulo");
+        if (capacidadeVeiculo != null && capacidadeVeiculo <= 0) {
+            throw new IllegalArgumentException("capacidadeVeiculo deve ser maior que zero");
+        }
+        if (entregadores != null && entregadores <= 0) {
+            throw new IllegalArgumentException("entregadores deve ser maior que zero");
+        }
+    }
+
+    public CenarioPlanejamento(CapacidadePolicy capacidadePolicy) {
+        this(capacidadePolicy, null, null);
+    }
+}
@@ -0,0 +1,94 @@
+package com.aguaviva.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Foto imutavel de configuracoes + entregadores ativos (com a regiao de planejamento de cada um) em uma versao.
+ * Valores derivados (parse de doubles/horarios) sao memoizados por snapshot via {@link #derivar}.
+ */
+public final class ConfiguracaoSnapshot {
+
+    private final long versao;
+    private final Map<String, String> valores;
+    private final List<Integer> entregadoresAtivos;
+    private final Map<Integer, String> regiaoPorEntregador;
+    private final ConcurrentHashMap<String, Object> derivados = new ConcurrentHashMap<>();
+
+    ConfiguracaoSnapshot(long versao, Map<String, String> valores, List<Integer> entregadoresAtivos) {
+        this(versao, valores, entregadoresAtivos, Map.of());
+    }
+
+    ConfiguracaoSnapshot(
+            long versao,
+            Map<String, String> valores,
+            List<Integer> entregadoresAtivos,
+            Map<Integer, String> regiaoPorEntregador) {
+        this.versao = versao;
+        this.valores = Map.copyOf(Objects.requireNonNull(valores, "valores nao pode ser nulo"));
+        this.entregadoresAtivos =
+                List.copyOf(Objects.requireNonNull(entregadoresAtivos, "entregadoresAtivos nao pode ser nulo"));
+        this.regiaoPorEntregador =
+                Map.copyOf(Objects.requireNonNull(regiaoPorEntregador, "regiaoPorEntregador nao pode ser nulo"));
+    }
+
+    public long versao() {
+        return versao;
+    }
+
+    public String valor(String chave) {
+        return valores.get(chave);
+    }
+
+    public Map<String, String> valores() {
+        return valores;
+    }
+
+    public List<Integer> entregadoresAtivos() {
+        return entregadoresAtivos;
+    }
+
+    /** Regioes de planejamento com ao menos um entregador ativo, em ordem alfabetica; vazia = planejamento global. */
+    public List<String> regioesComEntregadores() {
+        return List.copyOf(new TreeSet<>(regiaoPorEntregador.values()));
+    }
+
+    /** Entregadores ativos da regiao, na mesma ordem de {@link #entregadoresAtivos()}. */
+    public List<Integer> entregadoresAtivosDaRegiao(String regiao) {
+        Objects.requireNonNull(regiao, "regiao nao pode ser nula");
+        List<Integer> daRegiao = new ArrayList<>();
+        for (Integer entregadorId : entregadoresAtivos) {
+            if (regiao.equals(regiaoPorEntregador.get(entregadorId))) {
+                daRegiao.add(entregadorId);
+            }
+        }
+        return daRegiao;
+    }
+
+    /** Entregadores ativos sem regiao de planejamento, na mesma ordem de {@link #entregadoresAtivos()}. */
+    public List<Integer> entregadoresAtivosSemRegiao() {
+        List<Integer> semRegiao = new ArrayList<>();
+        for (Integer entregadorId : entregadoresAtivos) {
+            if (!regiaoPorEntregador.containsKey(entregadorId)) {
+                semRegiao.add(entregadorId);
+            }
+        }
+        return semRegiao;
+    }
+
+    /**
+     * Calcula uma unica vez por snapshot o valor derivado identificado por {@code chave}.
+     * Excecoes do parser propagam e nao ficam memoizadas.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T derivar(String chave, Function<ConfiguracaoSnapshot, T> parser) {
+        Objects.requireNonNull(chave, "chave nao pode ser nula");
+        Objects.requireNonNull(parser, "parser nao pode ser nulo");
+        return (T) derivados.computeIfAbsent(chave, ignored -> parser.apply(this));
+    }
+}
@@ -0,0 +1,117 @@
+package com.aguaviva.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache compartilhado de configuracoes + frota ativa (com regiao de planejamento).
+ * Cada leitura custa um lookup por PK em configuracoes_snapshot_versao; o snapshot completo so e
+ * recarregado quando a versao (incrementada por trigger) muda.
+ */
+public class ConfiguracaoSnapshotService {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfiguracaoSnapshotService.class.getName());
+    private static final LongAdder RECARGAS = new LongAdder();
+    private static final long VERSAO_INDISPONIVEL = -1L;
+
+    private final AtomicReference<ConfiguracaoSnapshot> atual = new AtomicReference<>();
+    private volatile boolean versionamentoDisponivel;
+
+    public ConfiguracaoSnapshot obter(Connection conn) throws SQLException {
+        Objects.requireNonNull(conn, "Connection nao pode ser nula");
+
+        if (!versionamentoDisponivel) {
+            versionamentoDisponivel = hasTable(conn, "configuracoes_snapshot_versao");
+            if (!versionamentoDisponivel) {
+                return carregar(conn, VERSAO_INDISPONIVEL);
+            }
+        }
+
+        VersaoLida versao = lerVersao(conn);
+        ConfiguracaoSnapshot snapshot = atual.get();
+        if (snapshot != null && snapshot.versao() == versao.valor() && !versao.escritaPropria()) {
+            return snapshot;
+        }
+
+        ConfiguracaoSnapshot recarregado = carregar(conn, versao.valor());
+        // Versao escrita pela propria transacao ainda nao e visivel para os demais: nao publica no cache.
+        if (!versao.escritaPropria()) {
+            atual.set(recarregado);
+            RECARGAS.increment();
+            LOGGER.log(Level.FINE, "event=configuracao_snapshot_recarregado versao={0}", versao.valor());
+        }
+        return recarregado;
+    }
+
+    public void invalidar() {
+        atual.set(null);
+    }
+
+    private VersaoLida lerVersao(Connection conn) throws SQLException {
+        String sql = "SELECT versao, "
+                + "COALESCE(xmin::text::bigint = (pg_current_xact_id_if_assigned()::text::bigint % 4294967296), false) "
+                + "AS escrita_propria "
+                + "FROM configuracoes_snapshot_versao WHERE id = 1";
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                return new VersaoLida(VERSAO_INDISPONIVEL, true);
+            }
+            return new VersaoLida(rs.getLong("versao"), rs.getBoolean("escrita_propria"));
+        }
+    }
+
+    private ConfiguracaoSnapshot carregar(Connection conn, long versao) throws SQLException {
+        Map<String, String> valores = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT chave, valor FROM configuracoes");
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                String valor = rs.getString("valor");
+                if (valor != null) {
+                    valores.put(rs.getString("chave"), valor);
+                }
+            }
+        }
+
+        List<Integer> entregadores = new ArrayList<>();
+        Map<Integer, String> regiaoPorEntregador = new HashMap<>();
+        String sql = "SELECT id, regiao_planejamento FROM users "
+                + "WHERE papel = 'entregador' AND ativo = true ORDER BY id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int entregadorId = rs.getInt("id");
+                entregadores.add(entregadorId);
+                String regiao = rs.getString("regiao_planejamento");
+                if (regiao != null) {
+                    regiaoPorEntregador.put(entregadorId, regiao);
+                }
+            }
+        }
+
+        return new ConfiguracaoSnapshot(versao, valores, entregadores, regiaoPorEntregador);
+    }
+
+    private boolean hasTable(Connection conn, String table) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.tables WHERE table_name = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private record VersaoLida(long valor, boolean escritaPropria) {}
+}
@@ -0,0 +1,260 @@
+package com.aguaviva.service;
+
+import com.aguaviva.repository.ConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Coordenacao do replanejamento entre instancias da API. A lideranca e um lease em {@code worker_leases}: so a
+ * instancia dona do lease vigente processa o outbox, e as demais encaminham o gatilho ao lider por NOTIFY. O lider
+ * renova o lease por heartbeat; se parar, outra instancia assume depois do vencimento. Cancelamentos de job
+ * publicados por qualquer instancia chegam a todas pelo mesmo canal de escuta e interrompem na hora a espera
+ * local pelo solver.
+ */
+public final class CoordenacaoReplanejamentoCluster implements AutoCloseable {
+
+    static final String CANAL_REPLANEJAMENTO = "replanejamento_solicitado";
+    private static final String LEASE_REPLANEJAMENTO = "replanejamento";
+    private static final Duration LEASE_PADRAO = Duration.ofSeconds(15);
+    private static final int ESPERA_NOTIFICACAO_MS = 1_000;
+    private static final long RECONEXAO_OUVINTE_MS = 2_000L;
+    private static final Logger LOGGER = Logger.getLogger(CoordenacaoReplanejamentoCluster.class.getName());
+    private static final LongAdder LIDERANCAS_ASSUMIDAS = new LongAdder();
+    private static final LongAdder GATILHOS_ENCAMINHADOS = new LongAdder();
+
+    private final ConnectionFactory connectionFactory;
+    private final String instanciaId;
+    private final Duration lease;
+    private final CountDownLatch ouvindo = new CountDownLatch(1);
+    private final Object travaLease = new Object();
+    // Prazo local (System.nanoTime) ate o qual o lease e dado como nosso sem consultar o banco: 2/3 do lease,
+    // contados de antes da escrita, para nunca passar do lease_ate gravado.
+    private volatile long liderAteNanos;
+    private volatile boolean lider;
+    private volatile boolean ativo;
+    private volatile Runnable gatilhoReplanejamento = () -> {};
+    private ScheduledExecutorService heartbeat;
+    private Thread ouvinte;
+
+    public CoordenacaoReplanejamentoCluster(ConnectionFactory connectionFactory) {
+        this(connectionFactory, instanciaPadrao(), LEASE_PADRAO);
+    }
+
+    CoordenacaoReplanejamentoCluster(ConnectionFactory connectionFactory, String instanciaId, Duration lease) {
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
+        this.instanciaId = Objects.requireNonNull(instanciaId, "instanciaId nao pode ser nulo");
+        this.lease = Objects.requireNonNull(lease, "lease nao pode ser nulo");
+        if (instanciaId.isBlank()) {
+            throw new IllegalArgumentException("instanciaId nao pode ser vazio");
+        }
+        if (lease.isNegative() || lease.isZero()) {
+            throw new IllegalArgumentException("lease deve ser positivo");
+        }
+    }
+
+    public String instanciaId() {
+        return instanciaId;
+    }
+
+    /**
+     * Liga o heartbeat do lease e a escuta de NOTIFY.
+     *
+     * @param gatilhoReplanejamento roda no lider quando outra instancia encaminha um gatilho e quando esta instancia
+     *     assume a lideranca (eventos podem ter ficado sem lider); nao deve bloquear
+     * @param cancelarJobLocal recebe cada job_id cancelado por qualquer instancia
+     */
+    public synchronized void iniciar(Runnable gatilhoReplanejamento, Consumer<String> cancelarJobLocal) {
+        Objects.requireNonNull(gatilhoReplanejamento, "gatilhoReplanejamento nao pode ser nulo");
+        Objects.requireNonNull(cancelarJobLocal, "cancelarJobLocal nao pode ser nulo");
+        if (ativo) {
+            return;
+        }
+        ativo = true;
+        this.gatilhoReplanejamento = gatilhoReplanejamento;
+        heartbeat = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("lease-replanejamento").daemon(true).factory());
+        long intervaloMs = Math.max(1L, lease.toMillis() / 3);
+        heartbeat.scheduleWithFixedDelay(this::renovar, 0L, intervaloMs, TimeUnit.MILLISECONDS);
+        ouvinte = Thread.ofPlatform().name("notify-replanejamento").daemon(true).start(() -> ouvir(cancelarJobLocal));
+    }
+
+    /** Lider enquanto o lease local vale; fora dele, tenta assumir ou renovar uma vez no banco. */
+    public boolean isLider() {
+        if (lider && System.nanoTime() - liderAteNanos < 0) {
+            return true;
+        }
+        return renovar();
+    }
+
+    /** Acorda o lider: o worker dele processa o outbox com o evento que esta instancia acabou de gravar. */
+    public void encaminharAoLider() {
+        try (Connection conn = connectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+            stmt.setString(1, CANAL_REPLANEJAMENTO);
+            stmt.setString(2, instanciaId);
+            stmt.execute();
+            GATILHOS_ENCAMINHADOS.increment();
+        } catch (SQLException e) {
+            // O evento continua PENDENTE no outbox; o lider o pega no proximo gatilho.
+            LOGGER.log(
+                    Level.WARNING,
+                    "event=replanejamento_encaminhamento_falhou instancia={0} message={1}",
+                    new Object[] {instanciaId, e.getMessage()});
+        }
+    }
+
+    boolean renovar() {
+        synchronized (travaLease) {
+            return renovarLease();
+        }
+    }
+
+    private boolean renovarLease() {
+        long inicio = System.nanoTime();
+        String sql = "INSERT INTO worker_leases (nome, dono, lease_ate) "
+                + "VALUES (?, ?, LOCALTIMESTAMP + (? * INTERVAL '1 millisecond')) "
+                + "ON CONFLICT (nome) DO UPDATE SET "
+                + "dono = EXCLUDED.dono, "
+                + "lease_ate = EXCLUDED.lease_ate, "
+                + "adquirido_em = CASE WHEN worker_leases.dono = EXCLUDED.dono "
+                + "    THEN worker_leases.adquirido_em ELSE LOCALTIMESTAMP END, "
+                + "renovado_em = LOCALTIMESTAMP "
+                + "WHERE worker_leases.dono = EXCLUDED.dono OR worker_leases.lease_ate < LOCALTIMESTAMP "
+                + "RETURNING dono";
+        boolean assumiu;
+        try (Connection conn = connectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, LEASE_REPLANEJAMENTO);
+            stmt.setString(2, instanciaId);
+            stmt.setLong(3, lease.toMillis());
+            try (ResultSet rs = stmt.executeQuery()) {
+                assumiu = rs.next();
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "event=lease_replanejamento_falhou instancia={0} message={1}", new Object[] {
+                instanciaId, e.getMessage()
+            });
+            assumiu = false;
+        }
+        boolean eraLider = lider;
+        liderAteNanos = inicio + lease.toNanos() * 2 / 3;
+        lider = assumiu;
+        if (assumiu && !eraLider) {
+            LIDERANCAS_ASSUMIDAS.increment();
+            LOGGER.log(Level.INFO, "event=lideranca_replanejamento_assumida instancia={0} total={1}", new Object[] {
+                instanciaId, LIDERANCAS_ASSUMIDAS.sum()
+            });
+            if (ativo) {
+                gatilhoReplanejamento.run();
+            }
+        } else if (!assumiu && eraLider) {
+            LOGGER.log(Level.WARNING, "event=lideranca_replanejamento_perdida instancia={0}", instanciaId);
+        }
+        return assumiu;
+    }
+
+    private void ouvir(Consumer<String> cancelarJobLocal) {
+        while (ativo) {
+            try (Connection conn = connectionFactory.getConnection();
+                    Statement stmt = conn.createStatement()) {
+                stmt.execute("LISTEN " + CANAL_REPLANEJAMENTO);
+                stmt.execute("LISTEN " + RotaSolverJobSupport.CANAL_CANCELAMENTO);
+                PGConnection pgConn = conn.unwrap(PGConnection.class);
+                ouvindo.countDown();
+                while (ativo) {
+                    PGNotification[] notificacoes = pgConn.getNotifications(ESPERA_NOTIFICACAO_MS);
+                    if (notificacoes == null) {
+                        continue;
+                    }
+                    boolean replanejar = false;
+                    for (PGNotification notificacao : notificacoes) {
+                        if (RotaSolverJobSupport.CANAL_CANCELAMENTO.equals(notificacao.getName())) {
+                            cancelarJobLocal.accept(notificacao.getParameter());
+                        } else if (CANAL_REPLANEJAMENTO.equals(notificacao.getName())
+                                && !instanciaId.equals(notificacao.getParameter())) {
+                            replanejar = true;
+                        }
+                    }
+                    // Varios gatilhos no mesmo lote viram uma rodada: o worker coalesce o outbox inteiro.
+                    if (replanejar && isLider()) {
+                        gatilhoReplanejamento.run();
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!ativo) {
+                    return;
+                }
+                LOGGER.log(
+                        Level.WARNING,
+                        "event=notify_replanejamento_reconectando instancia={0} message={1}",
+                        new Object[] {instanciaId, e.getMessage()});
+                try {
+                    Thread.sleep(RECONEXAO_OUVINTE_MS);
+                } catch (InterruptedException interrompido) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    boolean aguardarOuvinte(Duration timeout) throws InterruptedException {
+        return ouvindo.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Para heartbeat e escuta e devolve o lease, para outra instancia assumir sem esperar o vencimento. */
+    @Override
+    public synchronized void close() {
+        ativo = false;
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+        if (ouvinte != null) {
+            try {
+                ouvinte.join(ESPERA_NOTIFICACAO_MS * 2L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ouvinte = null;
+        }
+        if (!lider) {
+            return;
+        }
+        lider = false;
+        try (Connection conn = connectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("UPDATE worker_leases "
+                        + "SET lease_ate = LOCALTIMESTAMP - INTERVAL '1 second' WHERE nome = ? AND dono = ?")) {
+            stmt.setString(1, LEASE_REPLANEJAMENTO);
+            stmt.setString(2, instanciaId);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "event=lease_replanejamento_liberacao_falhou instancia={0} message={1}",
+                    new Object[] {instanciaId, e.getMessage()});
+        }
+    }
+
+    private static String instanciaPadrao() {
+        String host = System.getenv("HOSTNAME");
+        String prefixo = host == null || host.isBlank() ? "api" : host.trim();
+        return prefixo + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
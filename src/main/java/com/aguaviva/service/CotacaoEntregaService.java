@@ -0,0 +1,371 @@
+package com.aguaviva.service;
+
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.FonteDuracao;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cotacao instantanea de horario de entrega na entrada do pedido, sem chamar o solver. Mantem em memoria uma
+ * foto das rotas abertas do dia (paradas em ordem, hora prevista, janelas HARD e carga livre) e estima por
+ * insercao mais barata onde a nova parada caberia: menor desvio em linha reta que respeita a janela do pedido,
+ * o fim do expediente e as janelas HARD das paradas seguintes. A foto e recarregada por TTL; a cotacao e uma
+ * estimativa para o atendente, quem decide a atribuicao continua sendo o replanejamento.
+ */
+public class CotacaoEntregaService {
+
+    private static final Logger LOGGER = Logger.getLogger(CotacaoEntregaService.class.getName());
+    private static final LongAdder COTACOES = new LongAdder();
+    private static final LongAdder RECARGAS = new LongAdder();
+
+    private static final Duration TTL_PADRAO = Duration.ofSeconds(10);
+    private static final Duration MARGEM_MINIMA = Duration.ofMinutes(10);
+    private static final int MARGEM_PERCENTUAL = 20;
+
+    private final ConnectionFactory connectionFactory;
+    private final ConfiguracaoSnapshotService configuracaoSnapshotService;
+    private final Duration ttl;
+    private final Supplier<LocalDateTime> relogio;
+    private volatile FotoPlano foto;
+
+    // Relogio padrao: o do banco, ancorado em cada recarga da foto. As horas previstas e o CURRENT_DATE da consulta
+    // vem do banco; o relogio da JVM so mede o tempo decorrido desde a ancora.
+    private final RelogioBanco relogioBanco;
+
+    public CotacaoEntregaService(
+            ConnectionFactory connectionFactory, ConfiguracaoSnapshotService configuracaoSnapshotService) {
+        this(connectionFactory, configuracaoSnapshotService, TTL_PADRAO, new RelogioBanco());
+    }
+
+    CotacaoEntregaService(
+            ConnectionFactory connectionFactory,
+            ConfiguracaoSnapshotService configuracaoSnapshotService,
+            Duration ttl,
+            Supplier<LocalDateTime> relogio) {
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
+        this.configuracaoSnapshotService =
+                Objects.requireNonNull(configuracaoSnapshotService, "ConfiguracaoSnapshotService nao pode ser nulo");
+        this.ttl = Objects.requireNonNull(ttl, "TTL nao pode ser nulo");
+        this.relogio = Objects.requireNonNull(relogio, "Relogio nao pode ser nulo");
+        this.relogioBanco = relogio instanceof RelogioBanco banco ? banco : null;
+    }
+
+    /**
+     * Cota a chegada de um novo pedido. {@code janelaInicio}/{@code janelaFim} sao a janela HARD do pedido
+     * (ambas nulas para ASAP).
+     *
+     * @return faixa de chegada e entregador provavel, ou vazio quando nenhuma rota aberta comporta o pedido
+     */
+    public Optional<CotacaoEntrega> cotar(
+            double latitude, double longitude, int quantidadeGaloes, LocalTime janelaInicio, LocalTime janelaFim) {
+        FotoPlano plano = fotoAtual();
+        LocalDateTime agora = relogio.get();
+        COTACOES.increment();
+        Optional<Insercao> melhor = melhorInsercao(
+                plano, new Coordenada(latitude, longitude), quantidadeGaloes, janelaInicio, janelaFim, agora);
+        return melhor.map(insercao -> faixa(insercao, agora));
+    }
+
+    /** Descarta a foto atual; a proxima cotacao recarrega do banco. */
+    public void invalidar() {
+        foto = null;
+    }
+
+    private FotoPlano fotoAtual() {
+        FotoPlano atual = foto;
+        if (atual != null && atual.carregadaEm().plus(ttl).isAfter(relogio.get())) {
+            return atual;
+        }
+        synchronized (this) {
+            atual = foto;
+            if (atual != null && atual.carregadaEm().plus(ttl).isAfter(relogio.get())) {
+                return atual;
+            }
+            try (Connection conn = connectionFactory.getConnection()) {
+                if (relogioBanco != null) {
+                    relogioBanco.ancorar(conn);
+                }
+                atual = carregar(conn, relogio.get());
+            } catch (SQLException e) {
+                throw new IllegalStateException("Falha ao carregar plano para cotacao de entrega", e);
+            }
+            foto = atual;
+            RECARGAS.increment();
+            LOGGER.log(Level.FINE, "event=cotacao_plano_recarregado rotas={0} recargas={1}", new Object[] {
+                atual.rotas().size(), RECARGAS.sum()
+            });
+            return atual;
+        }
+    }
+
+    private FotoPlano carregar(Connection conn, LocalDateTime agora) throws SQLException {
+        ConfiguracaoSnapshot configuracao = configuracaoSnapshotService.obter(conn);
+        Map<String, String> valores = configuracao.valores();
+        int capacidade = RotaService.resolverCapacidadeVeiculo(valores);
+        Coordenada deposito = new Coordenada(
+                Double.parseDouble(RotaService.getObrigatorio(valores, "deposito_latitude")),
+                Double.parseDouble(RotaService.getObrigatorio(valores, "deposito_longitude")));
+        LocalTime fimExpediente = LocalTime.parse(RotaService.getObrigatorio(valores, "horario_fim_expediente"));
+
+        String sql = "SELECT r.id AS rota_id, r.entregador_id, r.status::text AS rota_status, "
+                + "e.status::text AS entrega_status, "
+                + "COALESCE(e.hora_prevista_atual, e.hora_prevista) AS hora_prevista, p.quantidade_galoes, "
+                + "p.janela_tipo::text AS janela_tipo, p.janela_fim, c.latitude, c.longitude "
+                + "FROM rotas r "
+                + "JOIN entregas e ON e.rota_id = r.id "
+                + "JOIN pedidos p ON p.id = e.pedido_id "
+                + "JOIN clientes c ON c.id = p.cliente_id "
+                + "WHERE r.data = CURRENT_DATE AND r.status IN ('EM_ANDAMENTO', 'PLANEJADA') "
+                + "ORDER BY r.entregador_id, r.numero_no_dia, e.ordem_na_rota, e.id";
+        Map<Integer, RotaEmMontagem> porRota = new LinkedHashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int rotaId = rs.getInt("rota_id");
+                RotaEmMontagem rota = porRota.get(rotaId);
+                if (rota == null) {
+                    rota = new RotaEmMontagem(
+                            rs.getInt("entregador_id"), "EM_ANDAMENTO".equals(rs.getString("rota_status")));
+                    porRota.put(rotaId, rota);
+                }
+                String status = rs.getString("entrega_status");
+                if ("CANCELADA".equals(status) || "FALHOU".equals(status)) {
+                    continue;
+                }
+                rota.carga += rs.getInt("quantidade_galoes");
+                Object lat = rs.getObject("latitude");
+                Object lon = rs.getObject("longitude");
+                if (!(lat instanceof Number latNum) || !(lon instanceof Number lonNum)) {
+                    // Parada sem coordenada nao da base para o desvio: a rota nao entra na cotacao.
+                    rota.cotavel = false;
+                    continue;
+                }
+                Coordenada ponto = new Coordenada(latNum.doubleValue(), lonNum.doubleValue());
+                if ("ENTREGUE".equals(status)) {
+                    rota.origem = ponto;
+                    continue;
+                }
+                rota.paradas.add(new ParadaCotacao(
+                        ponto,
+                        rs.getObject("hora_prevista", LocalDateTime.class),
+                        "HARD".equals(rs.getString("janela_tipo"))
+                                ? rs.getObject("janela_fim", LocalTime.class)
+                                : null));
+            }
+        }
+
+        List<RotaCotacao> rotas = new ArrayList<>();
+        Set<Integer> comRota = new HashSet<>();
+        for (RotaEmMontagem rota : porRota.values()) {
+            comRota.add(rota.entregadorId);
+            if (rota.cotavel && rota.carga < capacidade) {
+                rotas.add(rota.fechar(deposito, capacidade - rota.carga, agora));
+            }
+        }
+        for (Integer entregadorId : configuracao.entregadoresAtivos()) {
+            if (!comRota.contains(entregadorId)) {
+                rotas.add(new RotaCotacao(entregadorId, true, deposito, capacidade, List.of()));
+            }
+        }
+        return new FotoPlano(agora, deposito, fimExpediente, List.copyOf(rotas));
+    }
+
+    private static Optional<Insercao> melhorInsercao(
+            FotoPlano plano,
+            Coordenada novo,
+            int quantidadeGaloes,
+            LocalTime janelaInicio,
+            LocalTime janelaFim,
+            LocalDateTime agora) {
+        LocalDateTime limite = agora.toLocalDate().atTime(plano.fimExpediente());
+        if (janelaFim != null && janelaFim.isBefore(plano.fimExpediente())) {
+            limite = agora.toLocalDate().atTime(janelaFim);
+        }
+        LocalDateTime abertura =
+                janelaInicio == null ? null : agora.toLocalDate().atTime(janelaInicio);
+
+        Insercao melhor = null;
+        for (RotaCotacao rota : plano.rotas()) {
+            if (rota.cargaLivre() < quantidadeGaloes) {
+                continue;
+            }
+            List<ParadaCotacao> paradas = rota.paradas();
+            for (int posicao = 0; posicao <= paradas.size(); posicao++) {
+                Coordenada anterior =
+                        posicao == 0 ? rota.origem() : paradas.get(posicao - 1).ponto();
+                Coordenada seguinte = posicao == paradas.size()
+                        ? plano.deposito()
+                        : paradas.get(posicao).ponto();
+                LocalDateTime saida = saidaAntesDaPosicao(rota, posicao, plano.deposito(), agora);
+
+                LocalDateTime chegada = saida.plusSeconds(FonteDuracao.duracaoHaversine(anterior, novo));
+                if (abertura != null && chegada.isBefore(abertura)) {
+                    chegada = abertura;
+                }
+                if (chegada.isAfter(limite)) {
+                    continue;
+                }
+
+                double desvio = FonteDuracao.distanciaHaversineMetros(anterior, novo)
+                        + FonteDuracao.distanciaHaversineMetros(novo, seguinte)
+                        - FonteDuracao.distanciaHaversineMetros(anterior, seguinte);
+                if (posicao < paradas.size()
+                        && !seguintesCabemComAtraso(paradas, posicao, chegada, novo, saida, anterior)) {
+                    continue;
+                }
+                if (melhor == null
+                        || desvio < melhor.desvioMetros() - 1
+                        || (Math.abs(desvio - melhor.desvioMetros()) <= 1 && chegada.isBefore(melhor.chegada()))) {
+                    melhor = new Insercao(rota.entregadorId(), chegada, desvio);
+                }
+            }
+        }
+        return Optional.ofNullable(melhor);
+    }
+
+    /** Horario em que o entregador deixaria o ponto anterior a {@code posicao}. */
+    private static LocalDateTime saidaAntesDaPosicao(
+            RotaCotacao rota, int posicao, Coordenada deposito, LocalDateTime agora) {
+        if (posicao > 0) {
+            LocalDateTime saida =
+                    rota.paradas().get(posicao - 1).horaPrevista().plusSeconds(FonteDuracao.TEMPO_SERVICO_S);
+            return saida.isBefore(agora) ? agora : saida;
+        }
+        if (rota.emAndamento() || rota.paradas().isEmpty()) {
+            return agora;
+        }
+        // Rota planejada: parte do deposito a tempo de chegar na primeira parada na hora prevista.
+        ParadaCotacao primeira = rota.paradas().get(0);
+        LocalDateTime saida =
+                primeira.horaPrevista().minusSeconds(FonteDuracao.duracaoHaversine(deposito, primeira.ponto()));
+        return saida.isBefore(agora) ? agora : saida;
+    }
+
+    /** O atraso que a nova parada impoe as seguintes nao pode estourar nenhuma janela HARD adiante. */
+    private static boolean seguintesCabemComAtraso(
+            List<ParadaCotacao> paradas,
+            int posicao,
+            LocalDateTime chegadaNovo,
+            Coordenada novo,
+            LocalDateTime saidaAnterior,
+            Coordenada anterior) {
+        ParadaCotacao seguinte = paradas.get(posicao);
+        LocalDateTime chegadaSemNovo =
+                saidaAnterior.plusSeconds(FonteDuracao.duracaoHaversine(anterior, seguinte.ponto()));
+        LocalDateTime chegadaComNovo = chegadaNovo
+                .plusSeconds(FonteDuracao.TEMPO_SERVICO_S)
+                .plusSeconds(FonteDuracao.duracaoHaversine(novo, seguinte.ponto()));
+        Duration atraso = Duration.between(chegadaSemNovo, chegadaComNovo);
+        if (atraso.isNegative() || atraso.isZero()) {
+            return true;
+        }
+        for (int i = posicao; i < paradas.size(); i++) {
+            ParadaCotacao parada = paradas.get(i);
+            if (parada.janelaFimHard() != null
+                    && parada.horaPrevista()
+                            .plus(atraso)
+                            .isAfter(parada.horaPrevista().toLocalDate().atTime(parada.janelaFimHard()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CotacaoEntrega faixa(Insercao insercao, LocalDateTime agora) {
+        Duration antecedencia = Duration.between(agora, insercao.chegada());
+        Duration margem = antecedencia.multipliedBy(MARGEM_PERCENTUAL).dividedBy(100);
+        if (margem.compareTo(MARGEM_MINIMA) < 0) {
+            margem = MARGEM_MINIMA;
+        }
+        LocalDateTime inicio = insercao.chegada().truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime fim = insercao.chegada().plus(margem).truncatedTo(ChronoUnit.MINUTES);
+        return new CotacaoEntrega(insercao.entregadorId(), inicio.toString(), fim.toString());
+    }
+
+    /** Horario do banco ancorado na ultima recarga, avancado pelo tempo monotonico decorrido desde entao. */
+    private static final class RelogioBanco implements Supplier<LocalDateTime> {
+        private volatile Ancora ancora;
+
+        void ancorar(Connection conn) throws SQLException {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT LOCALTIMESTAMP");
+                    ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                ancora = new Ancora(rs.getObject(1, LocalDateTime.class), System.nanoTime());
+            }
+        }
+
+        @Override
+        public LocalDateTime get() {
+            Ancora atual = ancora;
+            if (atual == null) {
+                throw new IllegalStateException("Relogio do banco ainda nao ancorado");
+            }
+            return atual.horario().plusNanos(System.nanoTime() - atual.nanos());
+        }
+
+        private record Ancora(LocalDateTime horario, long nanos) {}
+    }
+
+    /** Faixa de chegada estimada ({@code LocalDateTime} ISO, minutos) e entregador provavel. */
+    public record CotacaoEntrega(int entregadorId, String previsaoInicio, String previsaoFim) {}
+
+    private record ParadaCotacao(Coordenada ponto, LocalDateTime horaPrevista, LocalTime janelaFimHard) {}
+
+    private record RotaCotacao(
+            int entregadorId, boolean emAndamento, Coordenada origem, int cargaLivre, List<ParadaCotacao> paradas) {}
+
+    private record FotoPlano(
+            LocalDateTime carregadaEm, Coordenada deposito, LocalTime fimExpediente, List<RotaCotacao> rotas) {}
+
+    private record Insercao(int entregadorId, LocalDateTime chegada, double desvioMetros) {}
+
+    private static final class RotaEmMontagem {
+        private final int entregadorId;
+        private final boolean emAndamento;
+        private final List<ParadaCotacao> paradas = new ArrayList<>();
+        private Coordenada origem;
+        private int carga;
+        private boolean cotavel = true;
+
+        private RotaEmMontagem(int entregadorId, boolean emAndamento) {
+            this.entregadorId = entregadorId;
+            this.emAndamento = emAndamento;
+        }
+
+        /** Completa horas previstas ausentes encadeando trechos em linha reta a partir da origem. */
+        private RotaCotacao fechar(Coordenada deposito, int cargaLivre, LocalDateTime agora) {
+            Coordenada inicio = origem == null ? deposito : origem;
+            List<ParadaCotacao> completas = new ArrayList<>(paradas.size());
+            Coordenada anterior = inicio;
+            LocalDateTime relogio = agora;
+            for (ParadaCotacao parada : paradas) {
+                LocalDateTime prevista = parada.horaPrevista() != null
+                        ? parada.horaPrevista()
+                        : relogio.plusSeconds(FonteDuracao.duracaoHaversine(anterior, parada.ponto()));
+                completas.add(new ParadaCotacao(parada.ponto(), prevista, parada.janelaFimHard()));
+                relogio = prevista.plusSeconds(FonteDuracao.TEMPO_SERVICO_S);
+                anterior = parada.ponto();
+            }
+            return new RotaCotacao(entregadorId, emAndamento, inicio, cargaLivre, List.copyOf(completas));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.aguaviva.service;
+
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.RotaSolver;
+import com.aguaviva.solver.SolverGateway;
+import com.aguaviva.solver.SolverRequest;
+import com.aguaviva.solver.SolverResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Decomposicao geografica de um planejamento grande em territorios resolvidos em paralelo.
+ * Os pedidos sao varridos por angulo em torno do deposito (sweep) e cortados em setores com carga parecida;
+ * cada setor recebe entregadores proporcionalmente a sua carga. Como os entregadores sao disjuntos, as rotas
+ * dos territorios se juntam sem conflito; o reparo reenvia os nao atendidos aos entregadores que ficaram sem
+ * rota em seus territorios.
+ */
+final class DecomposicaoTerritorial {
+
+    private DecomposicaoTerritorial() {}
+
+    /**
+     * Resolve direto no gateway quando o request cabe em um territorio; caso contrario, resolve os territorios
+     * em paralelo. Cancelar o future devolvido cancela todos os jobs filhos.
+     */
+    static CompletableFuture<SolverResponse> resolver(
+            SolverGateway gateway, SolverRequest request, int pedidosPorTerritorio) {
+        Objects.requireNonNull(gateway, "gateway nao pode ser nulo");
+        List<SolverRequest> territorios = dividir(request, pedidosPorTerritorio);
+        if (territorios.size() < 2) {
+            return gateway.solveAsync(request);
+        }
+
+        List<CompletableFuture<SolverResponse>> filhos = new CopyOnWriteArrayList<>();
+        CompletableFuture<SolverResponse> resultado = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelado = super.cancel(mayInterruptIfRunning);
+                if (cancelado) {
+                    filhos.forEach(filho -> filho.cancel(true));
+                }
+                return cancelado;
+            }
+        };
+
+        for (SolverRequest territorio : territorios) {
+            filhos.add(gateway.solveAsync(territorio));
+        }
+        CompletableFuture.allOf(filhos.toArray(CompletableFuture[]::new))
+                .thenCompose(ignored -> {
+                    SolverResponse unido =
+                            unir(filhos.stream().map(CompletableFuture::join).toList());
+                    SolverRequest reparo = montarReparo(request, unido);
+                    if (reparo == null || resultado.isDone()) {
+                        return CompletableFuture.completedFuture(unido);
+                    }
+                    CompletableFuture<SolverResponse> filhoReparo = gateway.solveAsync(reparo);
+                    filhos.add(filhoReparo);
+                    return filhoReparo.thenApply(reparado -> aplicarReparo(unido, reparado));
+                })
+                .whenComplete((response, erro) -> {
+                    if (erro != null) {
+                        resultado.completeExceptionally(erro);
+                    } else {
+                        resultado.complete(response);
+                    }
+                });
+        return resultado;
+    }
+
+    /**
+     * Divide o request em {@code ceil(pedidos / pedidosPorTerritorio)} territorios, limitado ao numero de
+     * entregadores. Devolve o proprio request (lista unitaria) quando a decomposicao esta desligada
+     * ({@code pedidosPorTerritorio <= 0}) ou nao se aplica.
+     */
+    static List<SolverRequest> dividir(SolverRequest request, int pedidosPorTerritorio) {
+        Objects.requireNonNull(request, "request nao pode ser nulo");
+        List<PedidoSolver> pedidos = request.getPedidos();
+        List<Integer> entregadores = request.getEntregadores();
+        if (pedidosPorTerritorio <= 0 || pedidos.size() <= pedidosPorTerritorio || entregadores.size() < 2) {
+            return List.of(request);
+        }
+        int quantidade =
+                Math.min(entregadores.size(), (pedidos.size() + pedidosPorTerritorio - 1) / pedidosPorTerritorio);
+
+        List<List<PedidoSolver>> setores = varrerSetores(request, quantidade);
+        int[] entregadoresPorSetor = distribuirEntregadores(setores, entregadores.size());
+
+        List<SolverRequest> territorios = new ArrayList<>(setores.size());
+        int proximoEntregador = 0;
+        for (int t = 0; t < setores.size(); t++) {
+            int fim = proximoEntregador + entregadoresPorSetor[t];
+            List<Integer> capacidades = request.getCapacidadesEntregadores() == null
+                    ? null
+                    : request.getCapacidadesEntregadores().subList(proximoEntregador, fim);
+            SolverRequest territorio = new SolverRequest(
+                    idFilho(request.getJobId(), "t" + (t + 1)),
+                    request.getPlanVersion(),
+                    request.getDeposito(),
+                    request.getCapacidadeVeiculo(),
+                    capacidades,
+                    request.getHorarioInicio(),
+                    request.getHorarioFim(),
+                    entregadores.subList(proximoEntregador, fim),
+                    setores.get(t));
+            if (request.getRotasIniciais() != null) {
+                // Cada territorio parte do trecho do plano anterior que cabe nele.
+                territorio = territorio.comRotasIniciais(request.getRotasIniciais());
+            }
+            territorios.add(territorio);
+            proximoEntregador = fim;
+        }
+        return territorios;
+    }
+
+    private static List<List<PedidoSolver>> varrerSetores(SolverRequest request, int quantidade) {
+        double depositoLat = request.getDeposito().getLat();
+        double depositoLon = request.getDeposito().getLon();
+        List<PedidoSolver> ordenados = new ArrayList<>(request.getPedidos());
+        ordenados.sort(Comparator.comparingDouble((PedidoSolver p) -> angulo(p, depositoLat, depositoLon))
+                .thenComparingInt(PedidoSolver::getPedidoId));
+
+        // Comeca a varredura logo apos o maior vazio angular para nao partir um aglomerado ao meio.
+        int inicio = 0;
+        double maiorVazio = -1;
+        for (int i = 0; i < ordenados.size(); i++) {
+            double atual = angulo(ordenados.get(i), depositoLat, depositoLon);
+            double anterior =
+                    angulo(ordenados.get((i - 1 + ordenados.size()) % ordenados.size()), depositoLat, depositoLon);
+            double vazio = i == 0 ? atual - anterior + 2 * Math.PI : atual - anterior;
+            if (vazio > maiorVazio) {
+                maiorVazio = vazio;
+                inicio = i;
+            }
+        }
+        List<PedidoSolver> varridos = new ArrayList<>(ordenados.size());
+        for (int i = 0; i < ordenados.size(); i++) {
+            varridos.add(ordenados.get((inicio + i) % ordenados.size()));
+        }
+
+        int cargaTotal = varridos.stream().mapToInt(PedidoSolver::getGaloes).sum();
+        List<List<PedidoSolver>> setores = new ArrayList<>(quantidade);
+        List<PedidoSolver> atual = new ArrayList<>();
+        int cargaAcumulada = 0;
+        for (int i = 0; i < varridos.size(); i++) {
+            PedidoSolver pedido = varridos.get(i);
+            atual.add(pedido);
+            cargaAcumulada += pedido.getGaloes();
+            int setoresRestantes = quantidade - setores.size() - 1;
+            int pedidosRestantes = varridos.size() - i - 1;
+            boolean atingiuMeta = cargaAcumulada * (long) quantidade >= (long) cargaTotal * (setores.size() + 1);
+            if (setoresRestantes > 0 && (atingiuMeta || pedidosRestantes == setoresRestantes)) {
+                setores.add(atual);
+                atual = new ArrayList<>();
+            }
+        }
+        setores.add(atual);
+        return setores;
+    }
+
+    private static double angulo(PedidoSolver pedido, double depositoLat, double depositoLon) {
+        return Math.atan2(pedido.getLat() - depositoLat, pedido.getLon() - depositoLon);
+    }
+
+    /** Um entregador por setor e o restante por maior resto da fracao de carga de cada setor. */
+    private static int[] distribuirEntregadores(List<List<PedidoSolver>> setores, int totalEntregadores) {
+        int quantidade = setores.size();
+        int[] distribuicao = new int[quantidade];
+        int[] cargas = new int[quantidade];
+        int cargaTotal = 0;
+        for (int t = 0; t < quantidade; t++) {
+            distribuicao[t] = 1;
+            cargas[t] =
+                    setores.get(t).stream().mapToInt(PedidoSolver::getGaloes).sum();
+            cargaTotal += cargas[t];
+        }
+        int extras = totalEntregadores - quantidade;
+        double[] restos = new double[quantidade];
+        int atribuidos = 0;
+        for (int t = 0; t < quantidade; t++) {
+            double cota = cargaTotal == 0 ? (double) extras / quantidade : (double) extras * cargas[t] / cargaTotal;
+            distribuicao[t] += (int) cota;
+            atribuidos += (int) cota;
+            restos[t] = cota - (int) cota;
+        }
+        while (atribuidos < extras) {
+            int melhor = 0;
+            for (int t = 1; t < quantidade; t++) {
+                if (restos[t] > restos[melhor]) {
+                    melhor = t;
+                }
+            }
+            distribuicao[melhor]++;
+            restos[melhor] = -1;
+            atribuidos++;
+        }
+        return distribuicao;
+    }
+
+    static SolverResponse unir(List<SolverResponse> respostas) {
+        List<RotaSolver> rotas = new ArrayList<>();
+        Set<Integer> naoAtendidos = new LinkedHashSet<>();
+        for (SolverResponse resposta : respostas) {
+            rotas.addAll(resposta.getRotas());
+            naoAtendidos.addAll(resposta.getNaoAtendidos());
+        }
+        return new SolverResponse(rotas, new ArrayList<>(naoAtendidos));
+    }
+
+    /** Request de reparo: nao atendidos de todos os territorios x entregadores que ficaram sem rota. */
+    private static SolverRequest montarReparo(SolverRequest original, SolverResponse unido) {
+        if (unido.getNaoAtendidos().isEmpty()) {
+            return null;
+        }
+        Set<Integer> comRota = new HashSet<>();
+        for (RotaSolver rota : unido.getRotas()) {
+            comRota.add(rota.getEntregadorId());
+        }
+        List<Integer> ociosos = new ArrayList<>();
+        List<Integer> capacidadesOciosos = original.getCapacidadesEntregadores() == null ? null : new ArrayList<>();
+        for (int i = 0; i < original.getEntregadores().size(); i++) {
+            Integer entregadorId = original.getEntregadores().get(i);
+            if (!comRota.contains(entregadorId)) {
+                ociosos.add(entregadorId);
+                if (capacidadesOciosos != null) {
+                    capacidadesOciosos.add(original.getCapacidadesEntregadores().get(i));
+                }
+            }
+        }
+        if (ociosos.isEmpty()) {
+            return null;
+        }
+        Set<Integer> naoAtendidos = new HashSet<>(unido.getNaoAtendidos());
+        List<PedidoSolver> pendentes = original.getPedidos().stream()
+                .filter(pedido -> naoAtendidos.contains(pedido.getPedidoId()))
+                .toList();
+        return new SolverRequest(
+                idFilho(original.getJobId(), "reparo"),
+                original.getPlanVersion(),
+                original.getDeposito(),
+                original.getCapacidadeVeiculo(),
+                capacidadesOciosos,
+                original.getHorarioInicio(),
+                original.getHorarioFim(),
+                ociosos,
+                pendentes);
+    }
+
+    private static SolverResponse aplicarReparo(SolverResponse unido, SolverResponse reparado) {
+        List<RotaSolver> rotas = new ArrayList<>(unido.getRotas());
+        rotas.addAll(reparado.getRotas());
+        return new SolverResponse(rotas, reparado.getNaoAtendidos());
+    }
+
+    private static String idFilho(String jobId, String sufixo) {
+        return jobId == null ? null : jobId + "-" + sufixo;
+    }
+}
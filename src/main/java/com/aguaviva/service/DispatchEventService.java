@@ -1,15 +1,21 @@
 package com.aguaviva.service;
 
 import com.google.gson.Gson;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 public class DispatchEventService {
 
+    // Schema so muda com migration e redeploy: validado uma vez por processo, fora do caminho quente.
+    private static volatile boolean schemaValidado;
+
     private final Gson gson = new Gson();
 
     public long publicar(Connection conn, String eventType, String aggregateType, Long aggregateId, Object payload)
@@ -44,13 +50,80 @@ public class DispatchEventService {
         throw new SQLException("Falha ao inserir evento no outbox");
     }
 
+    public Lote novoLote() {
+        return new Lote(gson);
+    }
+
+    /**
+     * Publica os eventos acumulados no lote com um unico INSERT multi-linha na transacao corrente.
+     * Retorna os ids na ordem de insercao no lote e esvazia o buffer.
+     */
+    public List<Long> publicarLote(Connection conn, Lote lote) throws SQLException {
+        Objects.requireNonNull(conn, "Connection nao pode ser nula");
+        Objects.requireNonNull(lote, "Lote nao pode ser nulo");
+        if (lote.eventos.isEmpty()) {
+            return List.of();
+        }
+        assertSchema(conn);
+
+        int tamanho = lote.eventos.size();
+        String[] eventTypes = new String[tamanho];
+        String[] aggregateTypes = new String[tamanho];
+        Long[] aggregateIds = new Long[tamanho];
+        String[] payloads = new String[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            EventoPendente evento = lote.eventos.get(i);
+            eventTypes[i] = evento.eventType();
+            aggregateTypes[i] = evento.aggregateType();
+            aggregateIds[i] = evento.aggregateId();
+            payloads[i] = evento.payloadJson();
+        }
+
+        String sql = "INSERT INTO dispatch_events (event_type, aggregate_type, aggregate_id, payload) "
+                + "SELECT t.event_type, t.aggregate_type, t.aggregate_id, CAST(t.payload AS jsonb) "
+                + "FROM unnest(?::varchar[], ?::varchar[], ?::bigint[], ?::text[]) WITH ORDINALITY "
+                + "AS t(event_type, aggregate_type, aggregate_id, payload, ordem) "
+                + "ORDER BY t.ordem "
+                + "RETURNING id";
+
+        List<Long> ids = new ArrayList<>(tamanho);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            Array eventTypesArray = conn.createArrayOf("varchar", eventTypes);
+            Array aggregateTypesArray = conn.createArrayOf("varchar", aggregateTypes);
+            Array aggregateIdsArray = conn.createArrayOf("bigint", aggregateIds);
+            Array payloadsArray = conn.createArrayOf("text", payloads);
+            stmt.setArray(1, eventTypesArray);
+            stmt.setArray(2, aggregateTypesArray);
+            stmt.setArray(3, aggregateIdsArray);
+            stmt.setArray(4, payloadsArray);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+
+        if (ids.size() != tamanho) {
+            throw new SQLException("Falha ao inserir lote no outbox: esperado " + tamanho + ", inserido " + ids.size());
+        }
+        // Ids de BIGSERIAL crescem na ordem do INSERT ... ORDER BY.
+        ids.sort(null);
+        lote.eventos.clear();
+        return ids;
+    }
+
     public void assertSchema(Connection conn) throws SQLException {
+        if (schemaValidado) {
+            return;
+        }
         if (!hasTable(conn, "dispatch_events")) {
             throw new IllegalStateException("Schema desatualizado: tabela dispatch_events ausente");
         }
         if (!hasColumn(conn, "dispatch_events", "status")) {
             throw new IllegalStateException("Schema desatualizado: coluna dispatch_events.status ausente");
         }
+        schemaValidado = true;
     }
 
     private boolean hasTable(Connection conn, String table) throws SQLException {
@@ -79,4 +152,36 @@ public class DispatchEventService {
             throw new IllegalArgumentException(fieldName + " nao pode ser nulo ou vazio");
         }
     }
+
+    /**
+     * Buffer de eventos de uma transacao. Valida e serializa o payload no momento da adicao,
+     * deixando para o flush apenas o INSERT.
+     */
+    public static final class Lote {
+
+        private final Gson gson;
+        private final List<EventoPendente> eventos = new ArrayList<>();
+
+        private Lote(Gson gson) {
+            this.gson = gson;
+        }
+
+        public Lote adicionar(String eventType, String aggregateType, Long aggregateId, Object payload) {
+            validateText(eventType, "eventType");
+            validateText(aggregateType, "aggregateType");
+            String payloadJson = payload == null ? "{}" : gson.toJson(payload);
+            eventos.add(new EventoPendente(eventType, aggregateType, aggregateId, payloadJson));
+            return this;
+        }
+
+        public int tamanho() {
+            return eventos.size();
+        }
+
+        public boolean isEmpty() {
+            return eventos.isEmpty();
+        }
+    }
+
+    private record EventoPendente(String eventType, String aggregateType, Long aggregateId, String payloadJson) {}
 }
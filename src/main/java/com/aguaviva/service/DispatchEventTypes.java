@@ -8,6 +8,7 @@ public final class DispatchEventTypes {
     public static final String PEDIDO_ENTREGUE = "PEDIDO_ENTREGUE";
     public static final String PEDIDO_FALHOU = "PEDIDO_FALHOU";
     public static final String PEDIDO_CANCELADO = "PEDIDO_CANCELADO";
+    public static final String PEDIDO_ENTROU_NO_HORIZONTE = "PEDIDO_ENTROU_NO_HORIZONTE";
 
     private DispatchEventTypes() {}
 
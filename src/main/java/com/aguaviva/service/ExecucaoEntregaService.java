@@ -8,30 +8,51 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 public class ExecucaoEntregaService {
 
     private static final String METODO_PAGAMENTO_VALE = "VALE";
     private static final String TIPO_MOVIMENTACAO_DEBITO = "DEBITO";
 
+    // Enum so muda com migration e redeploy: consulta ao catalogo uma vez por processo.
+    private static volatile boolean schemaOperacionalValidado;
+
     private final ConnectionFactory connectionFactory;
     private final PedidoLifecycleService lifecycleService;
     private final DispatchEventService dispatchEventService;
+    private final ConfiguracaoSnapshotService configuracaoSnapshotService;
 
     public ExecucaoEntregaService(ConnectionFactory connectionFactory) {
-        this(connectionFactory, new PedidoLifecycleService(), new DispatchEventService());
+        this(connectionFactory, new ConfiguracaoSnapshotService());
+    }
+
+    public ExecucaoEntregaService(
+            ConnectionFactory connectionFactory, ConfiguracaoSnapshotService configuracaoSnapshotService) {
+        this(connectionFactory, new PedidoLifecycleService(), new DispatchEventService(), configuracaoSnapshotService);
     }
 
     ExecucaoEntregaService(
             ConnectionFactory connectionFactory,
             PedidoLifecycleService lifecycleService,
             DispatchEventService dispatchEventService) {
+        this(connectionFactory, lifecycleService, dispatchEventService, new ConfiguracaoSnapshotService());
+    }
+
+    ExecucaoEntregaService(
+            ConnectionFactory connectionFactory,
+            PedidoLifecycleService lifecycleService,
+            DispatchEventService dispatchEventService,
+            ConfiguracaoSnapshotService configuracaoSnapshotService) {
         this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
         this.lifecycleService = Objects.requireNonNull(lifecycleService, "PedidoLifecycleService nao pode ser nulo");
         this.dispatchEventService =
                 Objects.requireNonNull(dispatchEventService, "DispatchEventService nao pode ser nulo");
+        this.configuracaoSnapshotService =
+                Objects.requireNonNull(configuracaoSnapshotService, "ConfiguracaoSnapshotService nao pode ser nulo");
     }
 
     public ExecucaoEntregaResultado registrarRotaIniciada(int rotaId) {
@@ -171,7 +192,6 @@ public class ExecucaoEntregaService {
                     throw new IllegalStateException("Evento terminal exige entrega em status EM_EXECUCAO");
                 }
 
-                atualizarStatusEntrega(conn, entregaId, entregaStatusDestino, true);
                 int actorEntregadorAuditoria = actorEntregadorId != null ? actorEntregadorId : entrega.entregadorId();
 
                 if ("ENTREGUE".equals(entregaStatusDestino)) {
@@ -187,20 +207,43 @@ public class ExecucaoEntregaService {
                                     : transitionContext);
                 }
 
-                boolean rotaConcluida = atualizarRotaParaConcluidaSeCabivel(conn, entrega.rotaId());
-
-                dispatchEventService.publicar(
-                        conn,
-                        eventType,
-                        "PEDIDO",
-                        (long) entrega.pedidoId(),
-                        new EntregaAtualizadaPayload(
+                DispatchEventService.Lote eventos = dispatchEventService
+                        .novoLote()
+                        .adicionar(
+                                eventType,
+                                "PEDIDO",
+                                (long) entrega.pedidoId(),
+                                new EntregaAtualizadaPayload(
+                                        entrega.rotaId(),
+                                        entrega.idEntrega(),
+                                        entrega.pedidoId(),
+                                        entregaStatusDestino,
+                                        motivo,
+                                        actorEntregadorAuditoria));
+                // Outbox antes de qualquer escrita em paradas irmas ou na rota: o INSERT fica fora das secoes
+                // criticas por rota.
+                dispatchEventService.publicarLote(conn, eventos);
+
+                // Antes do UPDATE de status: so mexem em ordem_na_rota/hora_prevista_atual, que nao acionam o trigger
+                // de contadores. As paradas irmas sao travadas em ordem de id e sem espera; as que outra finalizacao
+                // ja segura ficam de fora, entao dois termos na mesma rota nunca se esperam em ordens opostas.
+                Set<Integer> paradasTravadas = travarParadasAbertasLivres(conn, entrega.rotaId(), entregaId);
+                boolean resequenciada = !"ENTREGUE".equals(entregaStatusDestino)
+                        && ResequenciadorRota.resequenciar(
+                                conn,
                                 entrega.rotaId(),
-                                entrega.idEntrega(),
-                                entrega.pedidoId(),
+                                entregaId,
                                 entregaStatusDestino,
-                                motivo,
-                                actorEntregadorAuditoria));
+                                paradasTravadas,
+                                configuracaoSnapshotService);
+                if (!resequenciada && !"CANCELADA".equals(entregaStatusDestino)) {
+                    PropagadorEta.propagar(conn, entrega.rotaId(), entregaId, paradasTravadas);
+                }
+
+                // O trigger de contadores escreve numa fatia de rotas_contadores, nao na linha da rota; ela so e
+                // travada quando esta pode ser a ultima parada aberta.
+                atualizarStatusEntrega(conn, entregaId, entregaStatusDestino, true);
+                boolean rotaConcluida = atualizarRotaParaConcluidaSeCabivel(conn, entrega.rotaId(), entregaId);
                 if (rotaConcluida) {
                     dispatchEventService.publicar(
                             conn,
@@ -224,6 +267,26 @@ public class ExecucaoEntregaService {
         }
     }
 
+    /** Trava, em ordem de id, as paradas abertas da rota que nenhuma outra transacao segura. */
+    private Set<Integer> travarParadasAbertasLivres(Connection conn, int rotaId, int entregaId) throws SQLException {
+        String sql = "SELECT id FROM entregas "
+                + "WHERE rota_id = ? AND id <> ? "
+                + "AND status::text IN ('PENDENTE', 'EM_EXECUCAO') "
+                + "ORDER BY id "
+                + "FOR UPDATE SKIP LOCKED";
+        Set<Integer> travadas = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rotaId);
+            stmt.setInt(2, entregaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    travadas.add(rs.getInt("id"));
+                }
+            }
+        }
+        return travadas;
+    }
+
     private RotaStatus buscarRotaComLock(Connection conn, int rotaId) throws SQLException {
         String sql = "SELECT id, status::text, entregador_id FROM rotas WHERE id = ? FOR UPDATE";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -254,11 +317,13 @@ public class ExecucaoEntregaService {
         List<EntregaPedidoRef> entregas = buscarEntregasPendentesDaRota(conn, rotaId);
         int pedidoIdReferencia = 0;
         int entregaIdReferencia = 0;
-        for (EntregaPedidoRef ref : entregas) {
-            atualizarStatusEntrega(conn, ref.entregaId(), "EM_EXECUCAO", false);
-            lifecycleService.transicionar(conn, ref.pedidoId(), PedidoStatus.EM_ROTA);
-            pedidoIdReferencia = ref.pedidoId();
-            entregaIdReferencia = ref.entregaId();
+        if (!entregas.isEmpty()) {
+            atualizarEntregasParaEmExecucao(conn, entregas);
+            lifecycleService.transicionarEmLote(
+                    conn, entregas.stream().map(EntregaPedidoRef::pedidoId).toList(), PedidoStatus.EM_ROTA);
+            EntregaPedidoRef ultima = entregas.get(entregas.size() - 1);
+            pedidoIdReferencia = ultima.pedidoId();
+            entregaIdReferencia = ultima.entregaId();
         }
 
         // Em chamadas idempotentes sem novas entregas pendentes, evita duplicar evento no outbox.
@@ -354,7 +419,7 @@ public class ExecucaoEntregaService {
                 + "JOIN pedidos p ON p.id = e.pedido_id "
                 + "JOIN rotas r ON r.id = e.rota_id "
                 + "WHERE e.id = ? "
-                + "FOR UPDATE OF e, p, r";
+                + "FOR UPDATE OF e, p";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, entregaId);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -420,6 +485,16 @@ public class ExecucaoEntregaService {
         }
     }
 
+    private void atualizarEntregasParaEmExecucao(Connection conn, List<EntregaPedidoRef> entregas) throws SQLException {
+        String sql = "UPDATE entregas SET status = ?, atualizado_em = CURRENT_TIMESTAMP WHERE id = ANY (?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            Object[] ids = entregas.stream().map(EntregaPedidoRef::entregaId).toArray();
+            stmt.setObject(1, "EM_EXECUCAO", Types.OTHER);
+            stmt.setArray(2, conn.createArrayOf("integer", ids));
+            stmt.executeUpdate();
+        }
+    }
+
     private void atualizarStatusEntrega(Connection conn, int entregaId, String status, boolean setHoraReal)
             throws SQLException {
         String sql = setHoraReal
@@ -432,39 +507,51 @@ public class ExecucaoEntregaService {
         }
     }
 
-    private boolean atualizarRotaParaConcluidaSeCabivel(Connection conn, int rotaId) throws SQLException {
-        String sql = "SELECT COUNT(*) FILTER (WHERE status::text IN ('PENDENTE', 'EM_EXECUCAO')) AS abertas "
-                + "FROM entregas WHERE rota_id = ?";
-        int abertas;
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Conclui a rota quando nao sobra parada aberta. Uma parada aberta e livre (ninguem finalizando) encerra a
+     * conferencia sem tocar na rota. Senao as finalizacoes concorrentes da mesma rota serializam no lock da linha
+     * dela, e cada uma reconfere as entregas num comando novo: a ultima a pegar o lock ja ve as demais commitadas.
+     */
+    private boolean atualizarRotaParaConcluidaSeCabivel(Connection conn, int rotaId, int entregaId)
+            throws SQLException {
+        String paradaLivre = "SELECT 1 FROM entregas "
+                + "WHERE rota_id = ? AND id <> ? "
+                + "AND status::text IN ('PENDENTE', 'EM_EXECUCAO') "
+                + "LIMIT 1 FOR UPDATE SKIP LOCKED";
+        try (PreparedStatement stmt = conn.prepareStatement(paradaLivre)) {
             stmt.setInt(1, rotaId);
+            stmt.setInt(2, entregaId);
             try (ResultSet rs = stmt.executeQuery()) {
-                rs.next();
-                abertas = rs.getInt("abertas");
+                if (rs.next()) {
+                    return false;
+                }
             }
         }
-
-        if (abertas != 0) {
-            return false;
-        }
-
-        try (PreparedStatement stmt = conn.prepareStatement(
-                "UPDATE rotas SET status = ?, fim = COALESCE(fim, CURRENT_TIMESTAMP) WHERE id = ?")) {
+        buscarRotaComLock(conn, rotaId);
+        String sql = "UPDATE rotas SET status = ?, fim = COALESCE(fim, CURRENT_TIMESTAMP) "
+                + "WHERE id = ? "
+                + "AND status::text <> 'CONCLUIDA' "
+                + "AND NOT EXISTS (SELECT 1 FROM entregas e "
+                + "WHERE e.rota_id = rotas.id AND e.status::text IN ('PENDENTE', 'EM_EXECUCAO'))";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setObject(1, "CONCLUIDA", Types.OTHER);
             stmt.setInt(2, rotaId);
-            stmt.executeUpdate();
+            return stmt.executeUpdate() == 1;
         }
-        return true;
     }
 
     private void assertOperationalSchema(Connection conn) throws SQLException {
         dispatchEventService.assertSchema(conn);
+        if (schemaOperacionalValidado) {
+            return;
+        }
         if (!hasEnumValue(conn, "entrega_status", "EM_EXECUCAO")) {
             throw new IllegalStateException("Schema desatualizado: entrega_status sem valor EM_EXECUCAO");
         }
         if (!hasEnumValue(conn, "entrega_status", "CANCELADA")) {
             throw new IllegalStateException("Schema desatualizado: entrega_status sem valor CANCELADA");
         }
+        schemaOperacionalValidado = true;
     }
 
     private boolean isTerminalStatus(String statusEntrega) {
@@ -0,0 +1,29 @@
+package com.aguaviva.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** SHA-256 em hexadecimal minusculo, usado para hashes de idempotencia e enderecamento de payloads. */
+public final class HashSupport {
+
+    private HashSupport() {}
+
+    public static String sha256Hex(String value) {
+        return sha256Hex(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String sha256Hex(byte[] value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value);
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >>> 4) & 0x0F, 16));
+                sb.append(Character.forDigit(b & 0x0F, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponivel no runtime", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.aguaviva.service;
+
+import com.aguaviva.repository.ConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Horizonte rolante do planejamento: pedidos PENDENTE com janela HARD que abre alem de {@code agora + horizonte}
+ * ficam fora do solver ({@link RotaService}). Este servico, chamado periodicamente, publica
+ * {@link DispatchEventTypes#PEDIDO_ENTROU_NO_HORIZONTE} para os pedidos adiados que o horizonte alcancou, uma vez
+ * por pedido, para que o worker os puxe no proximo ciclo.
+ */
+public class HorizontePlanejamentoService {
+
+    private static final Logger LOGGER = Logger.getLogger(HorizontePlanejamentoService.class.getName());
+    private static final int LIMITE_PEDIDOS_POR_RODADA = 500;
+
+    private final ConnectionFactory connectionFactory;
+    private final ConfiguracaoSnapshotService configuracaoSnapshotService;
+    private final DispatchEventService dispatchEventService;
+
+    public HorizontePlanejamentoService(
+            ConnectionFactory connectionFactory, ConfiguracaoSnapshotService configuracaoSnapshotService) {
+        this(connectionFactory, configuracaoSnapshotService, new DispatchEventService());
+    }
+
+    HorizontePlanejamentoService(
+            ConnectionFactory connectionFactory,
+            ConfiguracaoSnapshotService configuracaoSnapshotService,
+            DispatchEventService dispatchEventService) {
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
+        this.configuracaoSnapshotService =
+                Objects.requireNonNull(configuracaoSnapshotService, "ConfiguracaoSnapshotService nao pode ser nulo");
+        this.dispatchEventService =
+                Objects.requireNonNull(dispatchEventService, "DispatchEventService nao pode ser nulo");
+    }
+
+    /**
+     * Limite do horizonte ({@code agora + minutos}), ou null quando desligado ou quando o horizonte passa da
+     * meia-noite e portanto cobre o resto do dia.
+     */
+    static LocalTime calcularLimite(LocalTime agora, int horizonteMinutos) {
+        Objects.requireNonNull(agora, "agora nao pode ser nulo");
+        if (horizonteMinutos <= 0 || horizonteMinutos >= 24 * 60) {
+            return null;
+        }
+        LocalTime limite = agora.plusMinutes(horizonteMinutos);
+        return limite.isBefore(agora) ? null : limite;
+    }
+
+    /** @return quantidade de pedidos puxados para o horizonte nesta rodada */
+    public int puxarPedidosQueEntraramNoHorizonte() {
+        try (Connection conn = connectionFactory.getConnection()) {
+            return puxarPedidosQueEntraramNoHorizonte(conn, obterHorarioAtualDoBanco(conn));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha ao puxar pedidos do horizonte de planejamento", e);
+        }
+    }
+
+    int puxarPedidosQueEntraramNoHorizonte(LocalTime agora) {
+        Objects.requireNonNull(agora, "agora nao pode ser nulo");
+        try (Connection conn = connectionFactory.getConnection()) {
+            return puxarPedidosQueEntraramNoHorizonte(conn, agora);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha ao puxar pedidos do horizonte de planejamento", e);
+        }
+    }
+
+    private int puxarPedidosQueEntraramNoHorizonte(Connection conn, LocalTime agora) throws SQLException {
+        int horizonteMinutos = RotaService.resolverInteiroOpcional(
+                configuracaoSnapshotService.obter(conn).valores(), RotaService.CHAVE_HORIZONTE_MINUTOS);
+        if (horizonteMinutos <= 0) {
+            return 0;
+        }
+        LocalTime limite = calcularLimite(agora, horizonteMinutos);
+
+        conn.setAutoCommit(false);
+        try {
+            List<Integer> pedidos = buscarPedidosAdiadosAlcancados(conn, limite, horizonteMinutos);
+            if (!pedidos.isEmpty()) {
+                DispatchEventService.Lote lote = dispatchEventService.novoLote();
+                for (Integer pedidoId : pedidos) {
+                    lote.adicionar(
+                            DispatchEventTypes.PEDIDO_ENTROU_NO_HORIZONTE,
+                            "PEDIDO",
+                            (long) pedidoId,
+                            new PedidoNoHorizontePayload(pedidoId, horizonteMinutos));
+                }
+                dispatchEventService.publicarLote(conn, lote);
+                LOGGER.log(Level.INFO, "event=horizonte_pedidos_puxados quantidade={0} limite={1}", new Object[] {
+                    pedidos.size(), limite
+                });
+            }
+            conn.commit();
+            return pedidos.size();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Pedidos PENDENTE HARD sem entrega aberta cuja janela ja esta dentro do horizonte, que foram adiados (a
+     * janela abria alem do horizonte quando o pedido foi criado) e ainda nao foram puxados.
+     */
+    private List<Integer> buscarPedidosAdiadosAlcancados(Connection conn, LocalTime limite, int horizonteMinutos)
+            throws SQLException {
+        String sql = "SELECT p.id "
+                + "FROM pedidos p "
+                + "WHERE p.status::text = 'PENDENTE' "
+                + "AND p.janela_tipo::text = 'HARD' "
+                + "AND p.janela_inicio IS NOT NULL "
+                + (limite == null ? "" : "AND p.janela_inicio <= ? ")
+                + "AND (CAST(p.criado_em AS DATE) < CURRENT_DATE "
+                + "    OR p.janela_inicio > CAST(p.criado_em + (? * INTERVAL '1 minute') AS TIME)) "
+                + "AND NOT EXISTS ("
+                + "    SELECT 1 FROM entregas e "
+                + "    WHERE e.pedido_id = p.id "
+                + "    AND e.status::text IN ('PENDENTE', 'EM_EXECUCAO')"
+                + ") "
+                + "AND NOT EXISTS ("
+                + "    SELECT 1 FROM dispatch_events d "
+                + "    WHERE d.event_type = ? "
+                + "    AND d.aggregate_type = 'PEDIDO' "
+                + "    AND d.aggregate_id = p.id"
+                + ") "
+                + "ORDER BY p.janela_inicio, p.id "
+                + "LIMIT ? "
+                + "FOR UPDATE OF p SKIP LOCKED";
+
+        List<Integer> pedidos = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int indice = 1;
+            if (limite != null) {
+                stmt.setObject(indice++, limite);
+            }
+            stmt.setInt(indice++, horizonteMinutos);
+            stmt.setString(indice++, DispatchEventTypes.PEDIDO_ENTROU_NO_HORIZONTE);
+            stmt.setInt(indice, LIMITE_PEDIDOS_POR_RODADA);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pedidos.add(rs.getInt("id"));
+                }
+            }
+        }
+        return pedidos;
+    }
+
+    private LocalTime obterHorarioAtualDoBanco(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT LOCALTIME");
+                ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new IllegalStateException("Falha ao obter horario atual do banco");
+            }
+            return rs.getObject(1, LocalTime.class);
+        }
+    }
+
+    private record PedidoNoHorizontePayload(int pedidoId, int horizonteMinutos) {}
+}
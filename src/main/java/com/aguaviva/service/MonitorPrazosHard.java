@@ -0,0 +1,446 @@
+package com.aguaviva.service;
+
+import com.aguaviva.repository.ConnectionFactory;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Indice em memoria dos prazos HARD em aberto, ordenado pelo momento em que cada pedido entra no horizonte de
+ * risco ({@code janela_fim - horizonte}). Carregado no startup e mantido pelo outbox ({@code dispatch_events}):
+ * cada evento recarrega so os pedidos que tocou. O despertador dorme ate o proximo alarme; quando ele vence, o
+ * pedido e conferido no banco e, se ainda estiver sem entrega aberta, o gatilho de replanejamento dispara uma vez.
+ * O risco so e baixado quando a rodada que o consumiu grava o plano; em falha ou preempcao ele volta a valer.
+ * Substitui a consulta de risco que o worker fazia a cada rodada. Horarios vem do relogio do banco, o mesmo das
+ * janelas e do outbox.
+ */
+public final class MonitorPrazosHard implements ReplanejamentoWorkerService.RiscoJanelaHard, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(MonitorPrazosHard.class.getName());
+    private static final long INTERVALO_OUTBOX_MS = 2_000L;
+    private static final int LOTE_OUTBOX = 500;
+    // Faixas de ids do outbox puladas pelo cursor: podem ser transacoes ainda abertas que commitam fora de ordem.
+    // Sao relidas a cada sincronizacao ate aparecerem ou ate a janela vencer (sequencia consumida por rollback).
+    private static final Duration JANELA_LACUNA = Duration.ofMinutes(5);
+    private static final int MAX_LACUNAS = 10_000;
+
+    private final ConnectionFactory connectionFactory;
+    private final Duration horizonteRisco;
+    // Null: relogio do banco (LOCALTIMESTAMP).
+    private final Supplier<LocalDateTime> relogio;
+    private final PriorityQueue<Prazo> fila =
+            new PriorityQueue<>(Comparator.comparing(Prazo::alarme).thenComparingInt(Prazo::pedidoId));
+    // Entrada vigente por pedido; entradas da fila que nao batem com o mapa estao obsoletas e sao descartadas.
+    private final Map<Integer, Prazo> porPedido = new HashMap<>();
+    // Primeiro id da faixa -> faixa.
+    private final TreeMap<Long, Lacuna> lacunas = new TreeMap<>();
+    private boolean lacunasCheias;
+    // Pedidos que alarmaram e aguardam uma rodada; passam para emReplanejamento quando o worker consome o risco.
+    private final Set<Integer> emRisco = new LinkedHashSet<>();
+    private final Set<Integer> emReplanejamento = new LinkedHashSet<>();
+
+    private Runnable gatilho = () -> {};
+    private long ultimoEventoId;
+    private LocalDate diaCarregado;
+    private ScheduledExecutorService agendador;
+    private ScheduledFuture<?> despertador;
+
+    public MonitorPrazosHard(ConnectionFactory connectionFactory) {
+        this(
+                connectionFactory,
+                Duration.ofMinutes(ReplanejamentoWorkerService.HARD_WINDOW_RISCO_HORIZONTE_MINUTOS),
+                null);
+    }
+
+    /** @param relogio relogio controlado pelos testes; null usa o relogio do banco */
+    MonitorPrazosHard(ConnectionFactory connectionFactory, Duration horizonteRisco, Supplier<LocalDateTime> relogio) {
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
+        this.horizonteRisco = Objects.requireNonNull(horizonteRisco, "horizonteRisco nao pode ser nulo");
+        this.relogio = relogio;
+        if (horizonteRisco.isNegative()) {
+            throw new IllegalArgumentException("horizonteRisco nao pode ser negativo");
+        }
+    }
+
+    record Prazo(int pedidoId, LocalDateTime alarme, LocalDateTime fim) {}
+
+    private record Lacuna(long ultimoId, LocalDateTime vistaEm) {}
+
+    /** Carrega o indice e passa a acompanhar o outbox em background. */
+    public synchronized void iniciar(Runnable gatilho) {
+        Objects.requireNonNull(gatilho, "gatilho nao pode ser nulo");
+        if (agendador != null) {
+            throw new IllegalStateException("Monitor de prazos HARD ja iniciado");
+        }
+        definirGatilho(gatilho);
+        LocalDateTime agora = carregar();
+        agendador = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("monitor-prazos-hard").daemon(true).factory());
+        agendador.scheduleWithFixedDelay(
+                () -> executarComSeguranca(this::sincronizarOutbox),
+                INTERVALO_OUTBOX_MS,
+                INTERVALO_OUTBOX_MS,
+                TimeUnit.MILLISECONDS);
+        rearmar(agora);
+    }
+
+    /**
+     * Entrega o risco sinalizado pelos alarmes a rodada que vai replanejar com capacidade remanescente. O risco
+     * fica reservado ate {@link #confirmarRisco()} ou {@link #devolverRisco()}.
+     */
+    @Override
+    public synchronized boolean consumirRisco() {
+        if (emRisco.isEmpty()) {
+            return false;
+        }
+        emReplanejamento.addAll(emRisco);
+        emRisco.clear();
+        return true;
+    }
+
+    /** A rodada que consumiu o risco gravou o plano. */
+    @Override
+    public synchronized void confirmarRisco() {
+        emReplanejamento.clear();
+    }
+
+    /** A rodada que consumiu o risco falhou, foi preemptada ou perdeu o lease: a proxima rodada o consome de novo. */
+    @Override
+    public synchronized void devolverRisco() {
+        if (emReplanejamento.isEmpty()) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "event=prazo_hard_risco_devolvido pedidos={0}", emReplanejamento);
+        emRisco.addAll(emReplanejamento);
+        emReplanejamento.clear();
+    }
+
+    synchronized void definirGatilho(Runnable gatilho) {
+        this.gatilho = Objects.requireNonNull(gatilho, "gatilho nao pode ser nulo");
+    }
+
+    synchronized int prazosMonitorados() {
+        return porPedido.size();
+    }
+
+    /**
+     * Recarrega todos os prazos HARD em aberto do dia. O cursor do outbox recua um lote a partir do evento atual:
+     * eventos de transacoes que ainda nao tinham commitado sao lidos ou viram lacuna, e reaplicar os demais e
+     * idempotente.
+     *
+     * @return horario do banco usado na carga
+     */
+    synchronized LocalDateTime carregar() {
+        LocalDateTime agora;
+        try (Connection conn = connectionFactory.getConnection()) {
+            agora = agora(conn);
+            try (PreparedStatement stmt =
+                    conn.prepareStatement("SELECT GREATEST(COALESCE(MAX(id), 0) - ?, 0) FROM dispatch_events")) {
+                stmt.setInt(1, LOTE_OUTBOX);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    ultimoEventoId = rs.getLong(1);
+                }
+            }
+            porPedido.clear();
+            fila.clear();
+            lacunas.clear();
+            lacunasCheias = false;
+            diaCarregado = agora.toLocalDate();
+            String sql = "SELECT id, janela_fim FROM pedidos "
+                    + "WHERE status::text IN ('PENDENTE', 'CONFIRMADO') "
+                    + "AND janela_tipo::text = 'HARD' "
+                    + "AND janela_fim IS NOT NULL";
+            try (PreparedStatement stmt = conn.prepareStatement(sql);
+                    ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    registrar(rs.getInt("id"), rs.getObject("janela_fim", LocalTime.class), agora);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha ao carregar prazos HARD", e);
+        }
+        LOGGER.log(Level.INFO, "event=prazos_hard_carregados quantidade={0}", porPedido.size());
+        return agora;
+    }
+
+    /** Aplica os eventos do outbox gravados desde a ultima leitura, reconfere as lacunas e rearma o despertador. */
+    synchronized void sincronizarOutbox() {
+        LocalDateTime agora;
+        try (Connection conn = connectionFactory.getConnection()) {
+            agora = agora(conn);
+            if (agora.toLocalDate().equals(diaCarregado)) {
+                aplicarOutbox(conn, agora);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha ao sincronizar prazos HARD com o outbox", e);
+        }
+        if (!agora.toLocalDate().equals(diaCarregado)) {
+            agora = carregar();
+        }
+        rearmar(agora);
+    }
+
+    private void aplicarOutbox(Connection conn, LocalDateTime agora) throws SQLException {
+        Set<Integer> tocados = new LinkedHashSet<>();
+        lerLacunas(conn, tocados, agora);
+        int lidos;
+        do {
+            lidos = lerEventos(conn, tocados, agora);
+            if (!tocados.isEmpty()) {
+                recarregarPedidos(conn, tocados, agora);
+                tocados.clear();
+            }
+        } while (lidos == LOTE_OUTBOX);
+    }
+
+    /** Dispara o gatilho se algum alarme vencido ainda corresponde a um pedido HARD sem entrega aberta. */
+    synchronized void verificarAlarmes() {
+        LocalDateTime agora;
+        try (Connection conn = connectionFactory.getConnection()) {
+            agora = agora(conn);
+            List<Integer> vencidos = new ArrayList<>();
+            while (!fila.isEmpty() && !fila.peek().alarme().isAfter(agora)) {
+                Prazo prazo = fila.poll();
+                if (!prazo.equals(porPedido.get(prazo.pedidoId()))) {
+                    continue;
+                }
+                // Cada entrada alarma uma vez; o pedido segue em emRisco ate uma rodada gravar o plano.
+                porPedido.remove(prazo.pedidoId());
+                if (prazo.fim().isAfter(agora)) {
+                    vencidos.add(prazo.pedidoId());
+                }
+            }
+            if (!vencidos.isEmpty()) {
+                List<Integer> confirmados = confirmarEmRisco(conn, vencidos);
+                if (!confirmados.isEmpty()) {
+                    LOGGER.log(Level.INFO, "event=prazo_hard_em_risco pedidos={0}", confirmados);
+                    emRisco.addAll(confirmados);
+                    gatilho.run();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha ao confirmar prazos HARD em risco", e);
+        }
+        rearmar(agora);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (agendador != null) {
+            agendador.shutdownNow();
+        }
+    }
+
+    private LocalDateTime agora(Connection conn) throws SQLException {
+        if (relogio != null) {
+            return relogio.get();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT LOCALTIMESTAMP");
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getObject(1, LocalDateTime.class);
+        }
+    }
+
+    private void registrar(int pedidoId, LocalTime janelaFim, LocalDateTime agora) {
+        LocalDateTime fim = diaCarregado.atTime(janelaFim);
+        if (!fim.isAfter(agora)) {
+            porPedido.remove(pedidoId);
+            return;
+        }
+        Prazo prazo = new Prazo(pedidoId, fim.minus(horizonteRisco), fim);
+        if (prazo.equals(porPedido.get(pedidoId))) {
+            return;
+        }
+        porPedido.put(pedidoId, prazo);
+        fila.add(prazo);
+    }
+
+    private int lerEventos(Connection conn, Set<Integer> tocados, LocalDateTime agora) throws SQLException {
+        String sql = "SELECT d.id, "
+                + "CASE WHEN d.aggregate_type = 'PEDIDO' THEN d.aggregate_id ELSE e.pedido_id END AS pedido_id "
+                + "FROM dispatch_events d "
+                + "LEFT JOIN entregas e ON d.aggregate_type = 'ENTREGA' AND e.id = d.aggregate_id "
+                + "WHERE d.id > ? "
+                + "ORDER BY d.id "
+                + "LIMIT ?";
+        int lidos = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, ultimoEventoId);
+            stmt.setInt(2, LOTE_OUTBOX);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lidos++;
+                    long eventoId = rs.getLong("id");
+                    if (eventoId > ultimoEventoId + 1) {
+                        registrarLacuna(ultimoEventoId + 1, eventoId - 1, agora);
+                    }
+                    ultimoEventoId = eventoId;
+                    long pedidoId = rs.getLong("pedido_id");
+                    if (!rs.wasNull()) {
+                        tocados.add((int) pedidoId);
+                    }
+                }
+            }
+        }
+        return lidos;
+    }
+
+    private void registrarLacuna(long primeiroId, long ultimoId, LocalDateTime agora) {
+        if (lacunas.size() >= MAX_LACUNAS) {
+            // Avisa uma vez ate a fila de lacunas voltar a ter espaco.
+            if (!lacunasCheias) {
+                lacunasCheias = true;
+                LOGGER.log(
+                        Level.WARNING,
+                        "event=prazos_hard_lacunas_descartadas primeiro_id={0} max_lacunas={1}",
+                        new Object[] {primeiroId, MAX_LACUNAS});
+            }
+            return;
+        }
+        lacunasCheias = false;
+        lacunas.put(primeiroId, new Lacuna(ultimoId, agora));
+    }
+
+    /** Tira da faixa o id que apareceu, partindo-a em ate duas. */
+    private void preencherLacuna(long eventoId) {
+        Map.Entry<Long, Lacuna> faixa = lacunas.floorEntry(eventoId);
+        if (faixa == null || faixa.getValue().ultimoId() < eventoId) {
+            return;
+        }
+        Lacuna lacuna = lacunas.remove(faixa.getKey());
+        if (faixa.getKey() < eventoId) {
+            lacunas.put(faixa.getKey(), new Lacuna(eventoId - 1, lacuna.vistaEm()));
+        }
+        if (eventoId < lacuna.ultimoId()) {
+            lacunas.put(eventoId + 1, lacuna);
+        }
+    }
+
+    /** Le os eventos das lacunas que ja commitaram e esquece as que passaram da janela. */
+    private void lerLacunas(Connection conn, Set<Integer> tocados, LocalDateTime agora) throws SQLException {
+        lacunas.values().removeIf(lacuna -> lacuna.vistaEm().plus(JANELA_LACUNA).isBefore(agora));
+        if (lacunas.isEmpty()) {
+            return;
+        }
+        Long[] primeiros = lacunas.keySet().toArray(new Long[0]);
+        Long[] ultimos = lacunas.values().stream().map(Lacuna::ultimoId).toArray(Long[]::new);
+        String sql = "SELECT d.id, "
+                + "CASE WHEN d.aggregate_type = 'PEDIDO' THEN d.aggregate_id ELSE e.pedido_id END AS pedido_id "
+                + "FROM dispatch_events d "
+                + "JOIN unnest(?::bigint[], ?::bigint[]) AS l(primeiro_id, ultimo_id) "
+                + "ON d.id BETWEEN l.primeiro_id AND l.ultimo_id "
+                + "LEFT JOIN entregas e ON d.aggregate_type = 'ENTREGA' AND e.id = d.aggregate_id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("bigint", primeiros));
+            stmt.setArray(2, conn.createArrayOf("bigint", ultimos));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    preencherLacuna(rs.getLong("id"));
+                    long pedidoId = rs.getLong("pedido_id");
+                    if (!rs.wasNull()) {
+                        tocados.add((int) pedidoId);
+                    }
+                }
+            }
+        }
+    }
+
+    private void recarregarPedidos(Connection conn, Set<Integer> pedidos, LocalDateTime agora) throws SQLException {
+        String sql = "SELECT id, janela_fim FROM pedidos "
+                + "WHERE id = ANY (?) "
+                + "AND status::text IN ('PENDENTE', 'CONFIRMADO') "
+                + "AND janela_tipo::text = 'HARD' "
+                + "AND janela_fim IS NOT NULL";
+        Set<Integer> abertos = new LinkedHashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            Array ids = conn.createArrayOf("integer", pedidos.toArray());
+            stmt.setArray(1, ids);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int pedidoId = rs.getInt("id");
+                    abertos.add(pedidoId);
+                    registrar(pedidoId, rs.getObject("janela_fim", LocalTime.class), agora);
+                }
+            }
+        }
+        for (Integer pedidoId : pedidos) {
+            if (!abertos.contains(pedidoId)) {
+                porPedido.remove(pedidoId);
+                emRisco.remove(pedidoId);
+            }
+        }
+    }
+
+    private List<Integer> confirmarEmRisco(Connection conn, List<Integer> pedidos) throws SQLException {
+        String sql = "SELECT p.id FROM pedidos p "
+                + "WHERE p.id = ANY (?) "
+                + "AND p.status::text IN ('PENDENTE', 'CONFIRMADO') "
+                + "AND p.janela_tipo::text = 'HARD' "
+                + "AND NOT EXISTS ("
+                + "    SELECT 1 FROM entregas e "
+                + "    WHERE e.pedido_id = p.id "
+                + "    AND e.status::text IN ('PENDENTE', 'EM_EXECUCAO')"
+                + ") "
+                + "ORDER BY p.id";
+        List<Integer> emRiscoConfirmado = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("integer", pedidos.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    emRiscoConfirmado.add(rs.getInt("id"));
+                }
+            }
+        }
+        return emRiscoConfirmado;
+    }
+
+    private void rearmar(LocalDateTime agora) {
+        if (agendador == null || agendador.isShutdown()) {
+            return;
+        }
+        if (despertador != null) {
+            despertador.cancel(false);
+        }
+        Prazo proximo = fila.peek();
+        if (proximo == null) {
+            despertador = null;
+            return;
+        }
+        long espera = Math.max(0L, Duration.between(agora, proximo.alarme()).toMillis());
+        despertador =
+                agendador.schedule(() -> executarComSeguranca(this::verificarAlarmes), espera, TimeUnit.MILLISECONDS);
+    }
+
+    private static void executarComSeguranca(Runnable tarefa) {
+        try {
+            tarefa.run();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "event=monitor_prazos_hard_falhou erro={0}", e.getMessage());
+        }
+    }
+}
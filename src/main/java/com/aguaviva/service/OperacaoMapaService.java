@@ -15,9 +15,17 @@ import java.util.Objects;
 public class OperacaoMapaService {
 
     private final ConnectionFactory connectionFactory;
+    private final ConfiguracaoSnapshotService configuracaoSnapshotService;
 
     public OperacaoMapaService(ConnectionFactory connectionFactory) {
+        this(connectionFactory, new ConfiguracaoSnapshotService());
+    }
+
+    public OperacaoMapaService(
+            ConnectionFactory connectionFactory, ConfiguracaoSnapshotService configuracaoSnapshotService) {
         this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
+        this.configuracaoSnapshotService =
+                Objects.requireNonNull(configuracaoSnapshotService, "ConfiguracaoSnapshotService nao pode ser nulo");
     }
 
     public OperacaoMapaResultado consultarMapa() {
@@ -48,18 +56,12 @@ public class OperacaoMapaService {
     }
 
     private DepositoResumo consultarDeposito(Connection conn) throws SQLException {
-        String sql =
-                "SELECT chave, valor FROM configuracoes WHERE chave IN ('deposito_latitude', 'deposito_longitude')";
-        Map<String, String> valores = new LinkedHashMap<>();
-        try (PreparedStatement stmt = conn.prepareStatement(sql);
-                ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                valores.put(rs.getString("chave"), rs.getString("valor"));
-            }
-        }
+        return configuracaoSnapshotService.obter(conn).derivar("mapa.deposito", OperacaoMapaService::parseDeposito);
+    }
 
-        String latRaw = valores.get("deposito_latitude");
-        String lonRaw = valores.get("deposito_longitude");
+    private static DepositoResumo parseDeposito(ConfiguracaoSnapshot snapshot) {
+        String latRaw = snapshot.valor("deposito_latitude");
+        String lonRaw = snapshot.valor("deposito_longitude");
         if (latRaw == null || lonRaw == null) {
             throw new IllegalStateException("Configuracoes de deposito nao encontradas");
         }
@@ -79,6 +81,7 @@ public class OperacaoMapaService {
                 + "e.id AS entrega_id, "
                 + "e.ordem_na_rota, "
                 + "e.status::text AS status_entrega, "
+                + "COALESCE(e.hora_prevista_atual, e.hora_prevista) AS hora_prevista, "
                 + "p.id AS pedido_id, "
                 + "p.quantidade_galoes, "
                 + "c.latitude, "
@@ -118,6 +121,7 @@ public class OperacaoMapaService {
                     continue;
                 }
 
+                LocalDateTime horaPrevista = rs.getObject("hora_prevista", LocalDateTime.class);
                 rota.paradas.add(new ParadaMapaResumo(
                         rs.getInt("pedido_id"),
                         rs.getInt("entrega_id"),
@@ -125,7 +129,8 @@ public class OperacaoMapaService {
                         rs.getString("status_entrega"),
                         rs.getInt("quantidade_galoes"),
                         latNum.doubleValue(),
-                        lonNum.doubleValue()));
+                        lonNum.doubleValue(),
+                        horaPrevista == null ? null : horaPrevista.toString()));
             }
         }
 
@@ -185,7 +190,8 @@ public class OperacaoMapaService {
             String statusEntrega,
             int quantidadeGaloes,
             double lat,
-            double lon) {}
+            double lon,
+            String horaPrevista) {}
 
     public record PontoMapaResumo(
             String tipo, Integer pedidoId, Integer entregaId, Integer ordemNaRota, double lat, double lon) {}
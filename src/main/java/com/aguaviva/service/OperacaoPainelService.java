@@ -95,12 +95,11 @@ public class OperacaoPainelService {
     }
 
     private List<RotaEmAndamentoResumo> consultarRotasEmAndamento(Connection conn) throws SQLException {
-        String sql = "SELECT r.id AS rota_id, "
-                + "r.entregador_id, "
-                + "COALESCE(SUM(CASE WHEN e.status::text = 'PENDENTE' THEN 1 ELSE 0 END), 0) AS pendentes, "
-                + "COALESCE(SUM(CASE WHEN e.status::text = 'EM_EXECUCAO' THEN 1 ELSE 0 END), 0) AS em_execucao "
+        String sql = "SELECT r.id AS rota_id, r.entregador_id, "
+                + "COALESCE(SUM(c.entregas_pendentes), 0) AS pendentes, "
+                + "COALESCE(SUM(c.entregas_em_execucao), 0) AS em_execucao "
                 + "FROM rotas r "
-                + "LEFT JOIN entregas e ON e.rota_id = r.id "
+                + "LEFT JOIN rotas_contadores c ON c.rota_id = r.id "
                 + "WHERE r.data = CURRENT_DATE "
                 + "AND r.status::text = 'EM_ANDAMENTO' "
                 + "GROUP BY r.id, r.entregador_id "
@@ -120,11 +119,9 @@ public class OperacaoPainelService {
     }
 
     private List<RotaPlanejadaResumo> consultarRotasPlanejadas(Connection conn) throws SQLException {
-        String sql = "SELECT r.id AS rota_id, "
-                + "r.entregador_id, "
-                + "COALESCE(SUM(CASE WHEN e.status::text = 'PENDENTE' THEN 1 ELSE 0 END), 0) AS pendentes "
+        String sql = "SELECT r.id AS rota_id, r.entregador_id, COALESCE(SUM(c.entregas_pendentes), 0) AS pendentes "
                 + "FROM rotas r "
-                + "LEFT JOIN entregas e ON e.rota_id = r.id "
+                + "LEFT JOIN rotas_contadores c ON c.rota_id = r.id "
                 + "WHERE r.data = CURRENT_DATE "
                 + "AND r.status::text = 'PLANEJADA' "
                 + "GROUP BY r.id, r.entregador_id "
@@ -1,6 +1,9 @@
 package com.aguaviva.service;
 
 import com.aguaviva.repository.ConnectionFactory;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -36,16 +39,12 @@ public class OperacaoReplanejamentoService {
                 return new OperacaoReplanejamentoResultado(LocalDateTime.now().toString(), ambiente, false, List.of());
             }
 
-            boolean hasRequestPayload = hasColumn(conn, "solver_jobs", "request_payload");
-            boolean hasResponsePayload = hasColumn(conn, "solver_jobs", "response_payload");
+            ColunasPayload colunas = resolverColunasPayload(conn);
+            // Listagem so expoe a presenca dos payloads; o conteudo e carregado apenas no detalhe.
             String sql = "SELECT job_id, plan_version, status::text AS status, cancel_requested, "
                     + "solicitado_em, iniciado_em, finalizado_em, erro, "
-                    + (hasRequestPayload
-                            ? "CASE WHEN request_payload IS NOT NULL THEN true ELSE false END AS has_request_payload, "
-                            : "false AS has_request_payload, ")
-                    + (hasResponsePayload
-                            ? "CASE WHEN response_payload IS NOT NULL THEN true ELSE false END AS has_response_payload "
-                            : "false AS has_response_payload ")
+                    + colunas.expressaoPresenca("request") + " AS has_request_payload, "
+                    + colunas.expressaoPresenca("response") + " AS has_response_payload "
                     + "FROM solver_jobs "
                     + "ORDER BY solicitado_em DESC, job_id DESC "
                     + "LIMIT ?";
@@ -90,9 +89,7 @@ public class OperacaoReplanejamentoService {
                 throw new IllegalArgumentException("feed de replanejamento indisponivel no schema atual");
             }
 
-            boolean hasRequestPayload = hasColumn(conn, "solver_jobs", "request_payload");
-            boolean hasResponsePayload = hasColumn(conn, "solver_jobs", "response_payload");
-            SolverJobDetalhe job = buscarJobDetalhado(conn, jobIdSolicitado, hasRequestPayload, hasResponsePayload);
+            SolverJobDetalhe job = buscarJobDetalhado(conn, jobIdSolicitado, resolverColunasPayload(conn));
 
             return new OperacaoReplanejamentoJobDetalheResultado(
                     LocalDateTime.now().toString(), ambiente, true, job);
@@ -101,17 +98,14 @@ public class OperacaoReplanejamentoService {
         }
     }
 
-    private SolverJobDetalhe buscarJobDetalhado(
-            Connection conn, String jobIdSolicitado, boolean hasRequestPayload, boolean hasResponsePayload)
+    private SolverJobDetalhe buscarJobDetalhado(Connection conn, String jobIdSolicitado, ColunasPayload colunas)
             throws SQLException {
         String sql = "SELECT job_id, plan_version, status::text AS status, cancel_requested, "
                 + "solicitado_em, iniciado_em, finalizado_em, erro, "
-                + (hasRequestPayload
-                        ? "CASE WHEN request_payload IS NOT NULL THEN true ELSE false END AS has_request_payload, "
-                        : "false AS has_request_payload, ")
-                + (hasResponsePayload
-                        ? "CASE WHEN response_payload IS NOT NULL THEN true ELSE false END AS has_response_payload "
-                        : "false AS has_response_payload ")
+                + colunas.expressaoPresenca("request") + " AS has_request_payload, "
+                + colunas.expressaoPresenca("response") + " AS has_response_payload, "
+                + colunas.expressaoHash("request") + " AS request_payload_hash, "
+                + colunas.expressaoHash("response") + " AS response_payload_hash "
                 + "FROM solver_jobs WHERE job_id = ?";
 
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -126,6 +120,29 @@ public class OperacaoReplanejamentoService {
                 LocalDateTime finalizadoEm = rs.getObject("finalizado_em", LocalDateTime.class);
                 String jobId = rs.getString("job_id");
 
+                boolean hasRequestPayload = rs.getBoolean("has_request_payload");
+                boolean hasResponsePayload = rs.getBoolean("has_response_payload");
+                String requestPayloadHash = rs.getString("request_payload_hash");
+                String responsePayloadHash = rs.getString("response_payload_hash");
+                String status = rs.getString("status");
+                boolean cancelRequested = rs.getBoolean("cancel_requested");
+                String solicitadoEm =
+                        rs.getObject("solicitado_em", LocalDateTime.class).toString();
+                String erro = rs.getString("erro");
+
+                JsonElement requestPayload = hasRequestPayload
+                        ? carregarPayload(conn, jobId, requestPayloadHash, colunas.legadoRequest(), "request_payload")
+                        : JsonNull.INSTANCE;
+                if (requestPayloadHash != null && requestPayload.isJsonObject()) {
+                    // O payload armazenado nao carrega os identificadores do job (ver RotaSolverJobSupport).
+                    requestPayload.getAsJsonObject().addProperty("job_id", jobId);
+                    requestPayload.getAsJsonObject().addProperty("plan_version", planVersion);
+                }
+                JsonElement responsePayload = hasResponsePayload
+                        ? carregarPayload(
+                                conn, jobId, responsePayloadHash, colunas.legadoResponse(), "response_payload")
+                        : JsonNull.INSTANCE;
+
                 List<RotaImpactadaResumo> rotasImpactadas = List.of();
                 List<PedidoImpactadoResumo> pedidosImpactados = List.of();
                 if (hasJobIdColumns(conn)) {
@@ -139,20 +156,45 @@ public class OperacaoReplanejamentoService {
                 return new SolverJobDetalhe(
                         jobId,
                         planVersion,
-                        rs.getString("status"),
-                        rs.getBoolean("cancel_requested"),
-                        rs.getObject("solicitado_em", LocalDateTime.class).toString(),
+                        status,
+                        cancelRequested,
+                        solicitadoEm,
                         iniciadoEm == null ? null : iniciadoEm.toString(),
                         finalizadoEm == null ? null : finalizadoEm.toString(),
-                        rs.getString("erro"),
-                        rs.getBoolean("has_request_payload"),
-                        rs.getBoolean("has_response_payload"),
+                        erro,
+                        hasRequestPayload,
+                        hasResponsePayload,
+                        requestPayload,
+                        responsePayload,
                         rotasImpactadas,
                         pedidosImpactados);
             }
         }
     }
 
+    private JsonElement carregarPayload(
+            Connection conn, String jobId, String hash, boolean hasColunaLegado, String colunaLegado)
+            throws SQLException {
+        String json = SolverPayloadSupport.carregar(conn, hash);
+        if (json == null && hasColunaLegado) {
+            String sql = "SELECT " + colunaLegado + "::text FROM solver_jobs WHERE job_id = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, jobId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    json = rs.next() ? rs.getString(1) : null;
+                }
+            }
+        }
+        return json == null ? JsonNull.INSTANCE : JsonParser.parseString(json);
+    }
+
+    private ColunasPayload resolverColunasPayload(Connection conn) throws SQLException {
+        return new ColunasPayload(
+                hasColumn(conn, "solver_jobs", "request_payload"),
+                hasColumn(conn, "solver_jobs", "response_payload"),
+                SolverPayloadSupport.hasPayloadStore(conn));
+    }
+
     private List<RotaImpactadaResumo> buscarRotasImpactadasPorPlanVersion(Connection conn, long planVersion)
             throws SQLException {
         String sql = "SELECT r.id AS rota_id, r.entregador_id, r.status::text AS status_rota, "
@@ -344,6 +386,8 @@ public class OperacaoReplanejamentoService {
             String erro,
             boolean hasRequestPayload,
             boolean hasResponsePayload,
+            JsonElement requestPayload,
+            JsonElement responsePayload,
             List<RotaImpactadaResumo> rotasImpactadas,
             List<PedidoImpactadoResumo> pedidosImpactados) {
         public SolverJobDetalhe {
@@ -352,6 +396,24 @@ public class OperacaoReplanejamentoService {
         }
     }
 
+    private record ColunasPayload(boolean legadoRequest, boolean legadoResponse, boolean payloadStore) {
+
+        String expressaoPresenca(String tipo) {
+            boolean legado = "request".equals(tipo) ? legadoRequest : legadoResponse;
+            if (legado && payloadStore) {
+                return "(" + tipo + "_payload_hash IS NOT NULL OR " + tipo + "_payload IS NOT NULL)";
+            }
+            if (payloadStore) {
+                return "(" + tipo + "_payload_hash IS NOT NULL)";
+            }
+            return legado ? "(" + tipo + "_payload IS NOT NULL)" : "false";
+        }
+
+        String expressaoHash(String tipo) {
+            return payloadStore ? tipo + "_payload_hash" : "NULL::varchar";
+        }
+    }
+
     public record RotaImpactadaResumo(
             int rotaId, int entregadorId, String statusRota, String camada, int totalEntregas) {}
 
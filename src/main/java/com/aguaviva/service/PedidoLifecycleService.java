@@ -3,12 +3,21 @@ package com.aguaviva.service;
 import com.aguaviva.domain.pedido.PedidoStateMachine;
 import com.aguaviva.domain.pedido.PedidoStatus;
 import com.aguaviva.domain.pedido.PedidoTransitionResult;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Porta unica de transicao de status de pedido no service layer.
@@ -44,6 +53,57 @@ public class PedidoLifecycleService {
         return transition;
     }
 
+    public Map<Integer, PedidoTransitionResult> transicionarEmLote(
+            Connection conn, List<Integer> pedidoIds, PedidoStatus statusDestino) throws SQLException {
+        return transicionarEmLote(conn, pedidoIds, statusDestino, TransitionContext.vazio());
+    }
+
+    /**
+     * Versao set-based de {@link #transicionar}: trava todos os pedidos em um unico SELECT ... FOR UPDATE
+     * (ordenado por id), valida todas as transicoes em memoria e persiste em um unico UPDATE.
+     * Tudo ou nada: qualquer transicao invalida aborta o lote antes de escrever.
+     * Retorna o resultado por pedido na ordem de entrada.
+     */
+    public Map<Integer, PedidoTransitionResult> transicionarEmLote(
+            Connection conn, List<Integer> pedidoIds, PedidoStatus statusDestino, TransitionContext context)
+            throws SQLException {
+        Objects.requireNonNull(conn, "Connection nao pode ser nula");
+        Objects.requireNonNull(pedidoIds, "PedidoIds nao pode ser nulo");
+        Objects.requireNonNull(statusDestino, "Status destino nao pode ser nulo");
+
+        Set<Integer> idsUnicos = new LinkedHashSet<>();
+        for (Integer pedidoId : pedidoIds) {
+            if (pedidoId == null || pedidoId <= 0) {
+                throw new IllegalArgumentException("PedidoId deve ser maior que zero");
+            }
+            if (!idsUnicos.add(pedidoId)) {
+                throw new IllegalArgumentException("PedidoId duplicado no lote: " + pedidoId);
+            }
+        }
+        if (idsUnicos.isEmpty()) {
+            return Map.of();
+        }
+
+        TransitionContext safeContext = context == null ? TransitionContext.vazio() : context;
+
+        Map<Integer, PedidoStatus> statusAtuais = buscarStatusAtuaisComLock(conn, idsUnicos);
+        Map<Integer, PedidoTransitionResult> resultados = new LinkedHashMap<>();
+        for (Integer pedidoId : idsUnicos) {
+            PedidoStatus statusAtual = statusAtuais.get(pedidoId);
+            if (statusAtual == null) {
+                throw new IllegalArgumentException("Pedido nao encontrado com id: " + pedidoId);
+            }
+            resultados.put(pedidoId, PedidoStateMachine.transicionar(statusAtual, statusDestino));
+        }
+
+        if (statusDestino == PedidoStatus.CANCELADO && hasCancelamentoColumns(conn)) {
+            persistirCancelamentoEmLote(conn, statusDestino, resultados, safeContext);
+        } else {
+            persistirStatusEmLote(conn, idsUnicos, statusDestino);
+        }
+        return Collections.unmodifiableMap(resultados);
+    }
+
     private PedidoStatus buscarStatusAtualComLock(Connection conn, int pedidoId) throws SQLException {
         String sql = "SELECT status::text FROM pedidos WHERE id = ? FOR UPDATE";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -69,6 +129,82 @@ public class PedidoLifecycleService {
         }
     }
 
+    private Map<Integer, PedidoStatus> buscarStatusAtuaisComLock(Connection conn, Set<Integer> pedidoIds)
+            throws SQLException {
+        String sql = "SELECT id, status::text FROM pedidos WHERE id = ANY (?) ORDER BY id FOR UPDATE";
+        Map<Integer, PedidoStatus> result = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("integer", pedidoIds.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(
+                            rs.getInt(1), PedidoStatus.valueOf(rs.getString(2).toUpperCase()));
+                }
+            }
+        }
+        return result;
+    }
+
+    private void persistirStatusEmLote(Connection conn, Set<Integer> pedidoIds, PedidoStatus statusDestino)
+            throws SQLException {
+        String sql = "UPDATE pedidos SET status = ?, atualizado_em = CURRENT_TIMESTAMP WHERE id = ANY (?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setObject(1, statusDestino.name(), Types.OTHER);
+            stmt.setArray(2, conn.createArrayOf("integer", pedidoIds.toArray()));
+            int updated = stmt.executeUpdate();
+            if (updated != pedidoIds.size()) {
+                throw new SQLException("Falha ao atualizar status em lote: esperado "
+                        + pedidoIds.size()
+                        + " pedidos, atualizado "
+                        + updated);
+            }
+        }
+    }
+
+    private void persistirCancelamentoEmLote(
+            Connection conn,
+            PedidoStatus statusDestino,
+            Map<Integer, PedidoTransitionResult> transicoes,
+            TransitionContext context)
+            throws SQLException {
+        List<Integer> ids = new ArrayList<>(transicoes.size());
+        List<Integer> valores = new ArrayList<>(transicoes.size());
+        List<String> cobrancaStatus = new ArrayList<>(transicoes.size());
+        for (Map.Entry<Integer, PedidoTransitionResult> entry : transicoes.entrySet()) {
+            CobrancaCancelamento cobranca = CobrancaCancelamento.from(entry.getValue(), context);
+            ids.add(entry.getKey());
+            valores.add(cobranca.valorCentavos());
+            cobrancaStatus.add(cobranca.status());
+        }
+
+        String sql = "UPDATE pedidos p SET "
+                + "status = ?, "
+                + "atualizado_em = CURRENT_TIMESTAMP, "
+                + "cancelado_em = CURRENT_TIMESTAMP, "
+                + "motivo_cancelamento = ?, "
+                + "cobranca_cancelamento_centavos = v.valor, "
+                + "cobranca_status = v.cobranca::cobranca_cancelamento_status "
+                + "FROM unnest(?::int[], ?::int[], ?::text[]) AS v(id, valor, cobranca) "
+                + "WHERE p.id = v.id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            Array idsArray = conn.createArrayOf("integer", ids.toArray());
+            Array valoresArray = conn.createArrayOf("integer", valores.toArray());
+            Array cobrancaArray = conn.createArrayOf("text", cobrancaStatus.toArray());
+            stmt.setObject(1, statusDestino.name(), Types.OTHER);
+            stmt.setString(2, context.motivoCancelamento());
+            stmt.setArray(3, idsArray);
+            stmt.setArray(4, valoresArray);
+            stmt.setArray(5, cobrancaArray);
+            int updated = stmt.executeUpdate();
+            if (updated != ids.size()) {
+                throw new SQLException("Falha ao atualizar cancelamento em lote: esperado "
+                        + ids.size()
+                        + " pedidos, atualizado "
+                        + updated);
+            }
+        }
+    }
+
     private void persistirCancelamento(
             Connection conn,
             int pedidoId,
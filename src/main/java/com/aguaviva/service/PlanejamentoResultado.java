@@ -1,3 +1,35 @@
 package com.aguaviva.service;
 
-public record PlanejamentoResultado(int rotasCriadas, int entregasCriadas, int pedidosNaoAtendidos) {}
+/**
+ * Resultado de um ciclo de planejamento.
+ * {@code planoReaproveitado} indica que as entradas eram identicas as do ultimo job concluido e o plano
+ * PLANEJADO existente foi mantido sem chamar o solver. {@code preemptado} indica que o ciclo foi descartado por
+ * uma solicitacao mais recente e nada foi gravado. {@code repetir} indica que nada foi gravado e ninguem mais vai
+ * replanejar: o escopo estava ocupado ou o estado mudou durante o solver a ponto de invalidar o plano; quem pediu
+ * o ciclo deve pedir outro.
+ */
+public record PlanejamentoResultado(
+        int rotasCriadas,
+        int entregasCriadas,
+        int pedidosNaoAtendidos,
+        boolean planoReaproveitado,
+        boolean preemptado,
+        boolean repetir) {
+
+    public PlanejamentoResultado(int rotasCriadas, int entregasCriadas, int pedidosNaoAtendidos) {
+        this(rotasCriadas, entregasCriadas, pedidosNaoAtendidos, false, false, false);
+    }
+
+    public PlanejamentoResultado(
+            int rotasCriadas, int entregasCriadas, int pedidosNaoAtendidos, boolean planoReaproveitado) {
+        this(rotasCriadas, entregasCriadas, pedidosNaoAtendidos, planoReaproveitado, false, false);
+    }
+
+    public static PlanejamentoResultado descartadoPorPreempcao() {
+        return new PlanejamentoResultado(0, 0, 0, false, true, false);
+    }
+
+    public static PlanejamentoResultado adiadoParaNovaTentativa() {
+        return new PlanejamentoResultado(0, 0, 0, false, false, true);
+    }
+}
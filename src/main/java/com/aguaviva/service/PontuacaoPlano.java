@@ -0,0 +1,79 @@
+package com.aguaviva.service;
+
+import com.aguaviva.solver.Parada;
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.RotaSolver;
+import com.aguaviva.solver.SolverResponse;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pontuacao de um plano devolvido pelo solver para comparar cenarios resolvidos sobre o mesmo snapshot. A ordem e
+ * lexicografica: menos pedidos nao atendidos, depois menos paradas HARD previstas apos o fim da janela, depois
+ * menor tempo total (soma, por rota, do inicio do expediente ate a ultima parada prevista).
+ *
+ * <p>Nao atendidos contam contra a uniao dos pedidos elegiveis de todos os cenarios comparados: um cenario de
+ * capacidade menor deixa CONFIRMADOS fora do proprio request, e esses pedidos tambem pesam contra ele.
+ */
+final class PontuacaoPlano {
+
+    private static final Comparator<Pontuacao> ORDEM = Comparator.comparingInt(Pontuacao::naoAtendidos)
+            .thenComparingInt(Pontuacao::violacoesHard)
+            .thenComparingInt(Pontuacao::tempoTotalMinutos);
+
+    private PontuacaoPlano() {}
+
+    /**
+     * @param pedidosPorId uniao dos pedidos elegiveis de todos os cenarios comparados; os nao atendidos informados
+     *     pelo solver contam mesmo fora dela
+     */
+    static Pontuacao pontuar(SolverResponse response, Map<Integer, PedidoSolver> pedidosPorId, String horarioInicio) {
+        LocalTime inicio = LocalTime.parse(horarioInicio);
+        Set<Integer> naoAtendidos = new HashSet<>(pedidosPorId.keySet());
+        naoAtendidos.addAll(response.getNaoAtendidos());
+        int violacoesHard = 0;
+        int tempoTotalMinutos = 0;
+        for (RotaSolver rota : response.getRotas()) {
+            LocalTime ultima = null;
+            for (Parada parada : rota.getParadas()) {
+                naoAtendidos.remove(parada.getPedidoId());
+                if (parada.getHoraPrevista() == null) {
+                    continue;
+                }
+                LocalTime prevista = LocalTime.parse(parada.getHoraPrevista());
+                PedidoSolver pedido = pedidosPorId.get(parada.getPedidoId());
+                if (pedido != null
+                        && "HARD".equals(pedido.getJanelaTipo())
+                        && pedido.getJanelaFim() != null
+                        && prevista.isAfter(LocalTime.parse(pedido.getJanelaFim()))) {
+                    violacoesHard++;
+                }
+                if (ultima == null || prevista.isAfter(ultima)) {
+                    ultima = prevista;
+                }
+            }
+            if (ultima != null && ultima.isAfter(inicio)) {
+                tempoTotalMinutos += (int) Duration.between(inicio, ultima).toMinutes();
+            }
+        }
+        return new Pontuacao(naoAtendidos.size(), violacoesHard, tempoTotalMinutos);
+    }
+
+    /** Indice da melhor pontuacao; empate fica com o primeiro cenario (a politica pedida pelo worker). */
+    static int melhor(List<Pontuacao> pontuacoes) {
+        int melhor = 0;
+        for (int i = 1; i < pontuacoes.size(); i++) {
+            if (ORDEM.compare(pontuacoes.get(i), pontuacoes.get(melhor)) < 0) {
+                melhor = i;
+            }
+        }
+        return melhor;
+    }
+
+    record Pontuacao(int naoAtendidos, int violacoesHard, int tempoTotalMinutos) {}
+}
@@ -0,0 +1,148 @@
+package com.aguaviva.service;
+
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.FonteDuracao;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recalcula a {@code hora_prevista_atual} das paradas seguintes de uma rota quando uma entrega termina, sem chamar o
+ * solver. Cada trecho e deslocamento em linha reta mais o tempo de servico, com o mesmo fallback do solver
+ * ({@link FonteDuracao#duracaoHaversine}); a cadeia parte da hora real de termino e do local da parada concluida,
+ * pula as paradas ja finalizadas e usa o inicio das janelas HARD como piso. A espera que o plano embutia antes de
+ * uma janela nao e reaproveitada. O resultado e gravado num unico UPDATE; {@code hora_prevista} fica com a
+ * estimativa do solver, base do desvio no relatorio do entregador.
+ */
+final class PropagadorEta {
+
+    private static final LongAdder ETAS_ATUALIZADAS = new LongAdder();
+
+    private PropagadorEta() {}
+
+    /**
+     * Propaga a partir da entrega que acabou de terminar. Deve rodar na mesma transacao do termino: a hora real
+     * de referencia e o {@code LOCALTIMESTAMP} da transacao, o mesmo gravado em {@code hora_real}. Paradas abertas
+     * fora de {@code paradasTravadas} estao sendo finalizadas por outra transacao: a cadeia passa direto por elas.
+     *
+     * @return quantidade de paradas com ETA alterada
+     */
+    static int propagar(Connection conn, int rotaId, int entregaConcluidaId, Set<Integer> paradasTravadas)
+            throws SQLException {
+        List<ParadaEta> paradas = new ArrayList<>();
+        LocalDateTime agora = null;
+        String sql = "SELECT e.id, e.status::text AS status, "
+                + "COALESCE(e.hora_prevista_atual, e.hora_prevista) AS hora_prevista, "
+                + "p.janela_tipo::text AS janela_tipo, p.janela_inicio, c.latitude, c.longitude, "
+                + "LOCALTIMESTAMP AS agora "
+                + "FROM entregas e "
+                + "JOIN pedidos p ON p.id = e.pedido_id "
+                + "JOIN clientes c ON c.id = p.cliente_id "
+                + "WHERE e.rota_id = ? "
+                + "ORDER BY e.ordem_na_rota, e.id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rotaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    agora = rs.getObject("agora", LocalDateTime.class);
+                    Object lat = rs.getObject("latitude");
+                    Object lon = rs.getObject("longitude");
+                    paradas.add(new ParadaEta(
+                            rs.getInt("id"),
+                            rs.getString("status"),
+                            rs.getObject("hora_prevista", LocalDateTime.class),
+                            "HARD".equals(rs.getString("janela_tipo"))
+                                    ? rs.getObject("janela_inicio", LocalTime.class)
+                                    : null,
+                            lat instanceof Number latNum && lon instanceof Number lonNum
+                                    ? new Coordenada(latNum.doubleValue(), lonNum.doubleValue())
+                                    : null));
+                }
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        List<Timestamp> horas = new ArrayList<>();
+        calcular(paradas, entregaConcluidaId, paradasTravadas, agora, ids, horas);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        String update = "UPDATE entregas e SET hora_prevista_atual = v.hora_prevista "
+                + "FROM UNNEST(?::int[], ?::timestamp[]) AS v(id, hora_prevista) "
+                + "WHERE e.id = v.id";
+        try (PreparedStatement stmt = conn.prepareStatement(update)) {
+            stmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+            stmt.setArray(2, conn.createArrayOf("timestamp", horas.toArray()));
+            stmt.executeUpdate();
+        }
+        ETAS_ATUALIZADAS.add(ids.size());
+        return ids.size();
+    }
+
+    /** Preenche {@code ids}/{@code horas} com as paradas abertas apos a concluida cuja ETA mudou. */
+    private static void calcular(
+            List<ParadaEta> paradas,
+            int entregaConcluidaId,
+            Set<Integer> paradasTravadas,
+            LocalDateTime horaReal,
+            List<Integer> ids,
+            List<Timestamp> horas) {
+        int inicio = -1;
+        for (int i = 0; i < paradas.size(); i++) {
+            if (paradas.get(i).entregaId() == entregaConcluidaId) {
+                inicio = i;
+                break;
+            }
+        }
+        if (inicio < 0 || horaReal == null || paradas.get(inicio).coordenada() == null) {
+            return;
+        }
+
+        // O servico da parada concluida ja terminou na hora real; nas seguintes ele entra antes do deslocamento.
+        Coordenada posicao = paradas.get(inicio).coordenada();
+        LocalDateTime saida = horaReal;
+        for (int i = inicio + 1; i < paradas.size(); i++) {
+            ParadaEta parada = paradas.get(i);
+            if (!parada.aberta() || !paradasTravadas.contains(parada.entregaId())) {
+                continue;
+            }
+            if (parada.coordenada() == null) {
+                // Sem coordenada nao ha trecho estimavel: para aqui.
+                return;
+            }
+            LocalDateTime eta = saida.plusSeconds(FonteDuracao.duracaoHaversine(posicao, parada.coordenada()));
+            if (parada.janelaInicioHard() != null) {
+                LocalDateTime abertura = eta.toLocalDate().atTime(parada.janelaInicioHard());
+                if (eta.isBefore(abertura)) {
+                    eta = abertura;
+                }
+            }
+            if (!eta.equals(parada.horaPrevista())) {
+                ids.add(parada.entregaId());
+                horas.add(Timestamp.valueOf(eta));
+            }
+            posicao = parada.coordenada();
+            saida = eta.plusSeconds(FonteDuracao.TEMPO_SERVICO_S);
+        }
+    }
+
+    private record ParadaEta(
+            int entregaId,
+            String status,
+            LocalDateTime horaPrevista,
+            LocalTime janelaInicioHard,
+            Coordenada coordenada) {
+        boolean aberta() {
+            return "PENDENTE".equals(status) || "EM_EXECUCAO".equals(status);
+        }
+    }
+}
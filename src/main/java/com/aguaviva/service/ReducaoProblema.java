@@ -0,0 +1,250 @@
+package com.aguaviva.service;
+
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.FonteDuracao;
+import com.aguaviva.solver.Parada;
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.RotaSolver;
+import com.aguaviva.solver.SolverRequest;
+import com.aguaviva.solver.SolverResponse;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Pre-passe que encolhe o problema antes do solver: descarta pedidos comprovadamente inviaveis (com motivo) e
+ * junta pedidos no mesmo ponto com janelas compativeis numa parada composta, expandida de volta na resposta.
+ */
+final class ReducaoProblema {
+
+    static final String MOTIVO_CARGA_ACIMA_DA_CAPACIDADE = "CARGA_ACIMA_DA_CAPACIDADE";
+    static final String MOTIVO_JANELA_INVALIDA = "JANELA_INVALIDA";
+    static final String MOTIVO_JANELA_FORA_DO_EXPEDIENTE = "JANELA_FORA_DO_EXPEDIENTE";
+    static final String MOTIVO_JANELA_INALCANCAVEL = "JANELA_INALCANCAVEL";
+
+    // Limite otimista para a prova de inviabilidade: a mesma linha reta do fallback do solver, mas a 100 km/h em
+    // vez de 30, mais o tempo de servico. Nenhuma rota real chega antes disso.
+    private static final double VELOCIDADE_MAXIMA_M_POR_S = 100_000d / 3600;
+    private static final DateTimeFormatter HHMM = DateTimeFormatter.ofPattern("HH:mm");
+
+    private ReducaoProblema() {}
+
+    /**
+     * Resultado do pre-passe.
+     *
+     * @param request request reduzido enviado ao solver
+     * @param composicao id da parada composta (primeiro pedido do grupo) -> pedidos originais na ordem FIFO
+     * @param descartados pedido_id -> motivo, na ordem do request original
+     */
+    record Reducao(
+            SolverRequest request, Map<Integer, List<PedidoSolver>> composicao, Map<Integer, String> descartados) {
+
+        /** Desfaz as paradas compostas e devolve os descartados como nao atendidos. */
+        SolverResponse expandir(SolverResponse resposta) {
+            Objects.requireNonNull(resposta, "resposta nao pode ser nula");
+            List<RotaSolver> rotas = new ArrayList<>(resposta.getRotas().size());
+            for (RotaSolver rota : resposta.getRotas()) {
+                List<Parada> paradas = new ArrayList<>();
+                for (Parada parada : rota.getParadas()) {
+                    List<PedidoSolver> membros = composicao.get(parada.getPedidoId());
+                    if (membros == null) {
+                        paradas.add(new Parada(
+                                paradas.size() + 1,
+                                parada.getPedidoId(),
+                                parada.getLat(),
+                                parada.getLon(),
+                                parada.getHoraPrevista()));
+                        continue;
+                    }
+                    for (PedidoSolver membro : membros) {
+                        paradas.add(new Parada(
+                                paradas.size() + 1,
+                                membro.getPedidoId(),
+                                parada.getLat(),
+                                parada.getLon(),
+                                parada.getHoraPrevista()));
+                    }
+                }
+                rotas.add(new RotaSolver(rota.getEntregadorId(), rota.getNumeroNoDia(), paradas));
+            }
+            Set<Integer> naoAtendidos = new LinkedHashSet<>();
+            for (Integer pedidoId : resposta.getNaoAtendidos()) {
+                List<PedidoSolver> membros = composicao.get(pedidoId);
+                if (membros == null) {
+                    naoAtendidos.add(pedidoId);
+                } else {
+                    membros.forEach(membro -> naoAtendidos.add(membro.getPedidoId()));
+                }
+            }
+            naoAtendidos.addAll(descartados.keySet());
+            return new SolverResponse(rotas, new ArrayList<>(naoAtendidos));
+        }
+
+        int pedidosRemovidos() {
+            int unidos = composicao.values().stream()
+                    .mapToInt(membros -> membros.size() - 1)
+                    .sum();
+            return unidos + descartados.size();
+        }
+    }
+
+    static Reducao reduzir(SolverRequest request) {
+        Objects.requireNonNull(request, "request nao pode ser nulo");
+        LocalTime inicioExpediente = LocalTime.parse(request.getHorarioInicio());
+        LocalTime fimExpediente = LocalTime.parse(request.getHorarioFim());
+        List<Integer> capacidades = request.getCapacidadesEntregadores() == null
+                ? Collections.nCopies(request.getEntregadores().size(), request.getCapacidadeVeiculo())
+                : request.getCapacidadesEntregadores();
+        // Carga acima da capacidade nominal de qualquer veiculo nunca cabe, em nenhum ciclo.
+        int maiorCapacidade = Math.max(
+                request.getCapacidadeVeiculo(),
+                capacidades.stream().mapToInt(Integer::intValue).max().orElse(0));
+        // Junta so o que cabe em qualquer veiculo com capacidade: a parada composta nunca perde opcoes de veiculo.
+        int menorCapacidadePositiva = capacidades.stream()
+                .mapToInt(Integer::intValue)
+                .filter(capacidade -> capacidade > 0)
+                .min()
+                .orElse(0);
+
+        Map<Integer, String> descartados = new LinkedHashMap<>();
+        Map<String, List<Grupo>> gruposPorPonto = new LinkedHashMap<>();
+        List<Grupo> grupos = new ArrayList<>();
+        for (PedidoSolver pedido : request.getPedidos()) {
+            if (pedido.getGaloes() > maiorCapacidade) {
+                descartados.put(pedido.getPedidoId(), MOTIVO_CARGA_ACIMA_DA_CAPACIDADE);
+                continue;
+            }
+            LocalTime[] janela = janela(pedido, inicioExpediente, fimExpediente);
+            if (janela == null) {
+                descartados.put(pedido.getPedidoId(), MOTIVO_JANELA_INVALIDA);
+                continue;
+            }
+            if (janela[1].isBefore(inicioExpediente) || janela[0].isAfter(fimExpediente)) {
+                descartados.put(pedido.getPedidoId(), MOTIVO_JANELA_FORA_DO_EXPEDIENTE);
+                continue;
+            }
+            if (janela[1].isBefore(chegadaMaisCedo(request.getDeposito(), pedido, inicioExpediente))) {
+                descartados.put(pedido.getPedidoId(), MOTIVO_JANELA_INALCANCAVEL);
+                continue;
+            }
+
+            String ponto = pedido.getLat() + ";" + pedido.getLon();
+            List<Grupo> noPonto = gruposPorPonto.computeIfAbsent(ponto, ignored -> new ArrayList<>());
+            Grupo destino = null;
+            for (Grupo grupo : noPonto) {
+                if (grupo.aceita(pedido, janela, menorCapacidadePositiva)) {
+                    destino = grupo;
+                    break;
+                }
+            }
+            if (destino == null) {
+                destino = new Grupo(janela);
+                noPonto.add(destino);
+                grupos.add(destino);
+            }
+            destino.adicionar(pedido, janela);
+        }
+
+        if (descartados.isEmpty() && grupos.size() == request.getPedidos().size()) {
+            return new Reducao(request, Map.of(), Map.of());
+        }
+
+        List<PedidoSolver> reduzidos = new ArrayList<>(grupos.size());
+        Map<Integer, List<PedidoSolver>> composicao = new LinkedHashMap<>();
+        for (Grupo grupo : grupos) {
+            PedidoSolver parada = grupo.paraSolver();
+            reduzidos.add(parada);
+            if (grupo.membros.size() > 1) {
+                composicao.put(parada.getPedidoId(), List.copyOf(grupo.membros));
+            }
+        }
+        SolverRequest reduzido = new SolverRequest(
+                request.getJobId(),
+                request.getPlanVersion(),
+                request.getDeposito(),
+                request.getCapacidadeVeiculo(),
+                request.getCapacidadesEntregadores(),
+                request.getHorarioInicio(),
+                request.getHorarioFim(),
+                request.getEntregadores(),
+                reduzidos);
+        return new Reducao(reduzido, Map.copyOf(composicao), Collections.unmodifiableMap(descartados));
+    }
+
+    /** Janela efetiva [inicio, fim]; ASAP (ou HARD sem horarios) vale o expediente inteiro. Null se invalida. */
+    private static LocalTime[] janela(PedidoSolver pedido, LocalTime inicioExpediente, LocalTime fimExpediente) {
+        if (!"HARD".equals(pedido.getJanelaTipo())
+                || pedido.getJanelaInicio() == null
+                || pedido.getJanelaFim() == null) {
+            return new LocalTime[] {inicioExpediente, fimExpediente};
+        }
+        try {
+            LocalTime inicio = LocalTime.parse(pedido.getJanelaInicio());
+            LocalTime fim = LocalTime.parse(pedido.getJanelaFim());
+            return fim.isBefore(inicio) ? null : new LocalTime[] {inicio, fim};
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static LocalTime chegadaMaisCedo(Coordenada deposito, PedidoSolver pedido, LocalTime inicioExpediente) {
+        double metros =
+                FonteDuracao.distanciaHaversineMetros(deposito, new Coordenada(pedido.getLat(), pedido.getLon()));
+        long segundos = (long) (metros / VELOCIDADE_MAXIMA_M_POR_S) + FonteDuracao.TEMPO_SERVICO_S;
+        return inicioExpediente.plus(Duration.ofSeconds(segundos));
+    }
+
+    private static final class Grupo {
+        private final List<PedidoSolver> membros = new ArrayList<>();
+        private LocalTime inicio;
+        private LocalTime fim;
+        private boolean hard;
+        private int galoes;
+        private int prioridade = Integer.MAX_VALUE;
+
+        private Grupo(LocalTime[] janela) {
+            this.inicio = janela[0];
+            this.fim = janela[1];
+        }
+
+        private boolean aceita(PedidoSolver pedido, LocalTime[] janela, int capacidadeLimite) {
+            LocalTime novoInicio = inicio.isAfter(janela[0]) ? inicio : janela[0];
+            LocalTime novoFim = fim.isBefore(janela[1]) ? fim : janela[1];
+            return !novoFim.isBefore(novoInicio) && galoes + pedido.getGaloes() <= capacidadeLimite;
+        }
+
+        private void adicionar(PedidoSolver pedido, LocalTime[] janela) {
+            membros.add(pedido);
+            inicio = inicio.isAfter(janela[0]) ? inicio : janela[0];
+            fim = fim.isBefore(janela[1]) ? fim : janela[1];
+            hard |= "HARD".equals(pedido.getJanelaTipo()) && pedido.getJanelaInicio() != null;
+            galoes += pedido.getGaloes();
+            prioridade = Math.min(prioridade, pedido.getPrioridade());
+        }
+
+        private PedidoSolver paraSolver() {
+            PedidoSolver primeiro = membros.get(0);
+            if (membros.size() == 1) {
+                return primeiro;
+            }
+            return new PedidoSolver(
+                    primeiro.getPedidoId(),
+                    primeiro.getLat(),
+                    primeiro.getLon(),
+                    galoes,
+                    hard ? "HARD" : "ASAP",
+                    hard ? inicio.format(HHMM) : null,
+                    hard ? fim.format(HHMM) : null,
+                    prioridade);
+        }
+    }
+}
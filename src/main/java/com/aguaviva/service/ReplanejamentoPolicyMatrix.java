@@ -12,6 +12,8 @@ public final class ReplanejamentoPolicyMatrix {
     private static final Map<String, ReplanejamentoEventPolicy> POLICIES = Map.of(
             DispatchEventTypes.PEDIDO_CRIADO,
             new ReplanejamentoEventPolicy(ReplanejamentoTriggerKind.PRIMARIO, CapacidadePolicy.CHEIA),
+            DispatchEventTypes.PEDIDO_ENTROU_NO_HORIZONTE,
+            new ReplanejamentoEventPolicy(ReplanejamentoTriggerKind.PRIMARIO, CapacidadePolicy.CHEIA),
             DispatchEventTypes.PEDIDO_FALHOU,
             new ReplanejamentoEventPolicy(ReplanejamentoTriggerKind.SECUNDARIO, CapacidadePolicy.REMANESCENTE),
             DispatchEventTypes.PEDIDO_CANCELADO,
@@ -7,27 +7,57 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Time;
+import java.time.Duration;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class ReplanejamentoWorkerService {
 
-    private static final long ADVISORY_LOCK_KEY = 114_011L;
+    // Lease da rodada em worker_leases: exclui rodadas concorrentes sem segurar conexao durante o solver.
+    private static final String LEASE_RODADA = "outbox_replanejamento";
+    private static final Duration LEASE_OUTBOX = Duration.ofSeconds(30);
+    private static final Logger LOGGER = Logger.getLogger(ReplanejamentoWorkerService.class.getName());
+    private static final ScheduledExecutorService RENOVACAO_LEASE = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("lease-outbox").daemon(true).factory());
     // Em cenarios com solver frio/lento, o lock pode ficar ocupado por varios segundos.
     // Mantemos retentativa mais longa para evitar deixar eventos pendentes sem processamento.
     private static final int MAX_TENTATIVAS_LOCK_OCUPADO = 60;
     private static final long RETRY_LOCK_SLEEP_MS = 75L;
     private static final long RETRY_LOCK_SLEEP_MAX_MS = 500L;
-    private static final int HARD_WINDOW_RISCO_HORIZONTE_MINUTOS = 30;
+    static final int HARD_WINDOW_RISCO_HORIZONTE_MINUTOS = 30;
 
     private final ConnectionFactory connectionFactory;
     private final Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor;
     private final DispatchEventService dispatchEventService;
     private final Runnable onWorkerLockBusy;
+    // Null: o risco de janela HARD e consultado no banco a cada rodada.
+    private final RiscoJanelaHard riscoJanelaHard;
+    // Null: instancia unica, sem lease de lideranca.
+    private final CoordenacaoReplanejamentoCluster coordenacao;
+
+    /**
+     * Fonte do risco de janela HARD avaliado pela rodada. O risco consumido fica reservado ate a rodada confirmar
+     * o plano gravado ou devolve-lo em falha, preempcao ou perda do lease.
+     */
+    @FunctionalInterface
+    public interface RiscoJanelaHard {
+        boolean consumirRisco();
+
+        default void confirmarRisco() {}
+
+        default void devolverRisco() {}
+    }
 
     public ReplanejamentoWorkerService(
             ConnectionFactory connectionFactory, Supplier<PlanejamentoResultado> replanejamentoExecutor) {
@@ -50,14 +80,51 @@ public class ReplanejamentoWorkerService {
             ConnectionFactory connectionFactory,
             Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor,
             Runnable onWorkerLockBusy) {
-        this(connectionFactory, replanejamentoExecutor, new DispatchEventService(), onWorkerLockBusy);
+        this(connectionFactory, replanejamentoExecutor, new DispatchEventService(), onWorkerLockBusy, null, null);
+    }
+
+    /**
+     * @param riscoJanelaHard fonte do risco de janela HARD (ex.: {@link MonitorPrazosHard}), no
+     *     lugar da consulta ao banco a cada rodada
+     */
+    public ReplanejamentoWorkerService(
+            ConnectionFactory connectionFactory,
+            Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor,
+            Runnable onWorkerLockBusy,
+            RiscoJanelaHard riscoJanelaHard) {
+        this(
+                connectionFactory,
+                replanejamentoExecutor,
+                new DispatchEventService(),
+                onWorkerLockBusy,
+                Objects.requireNonNull(riscoJanelaHard, "riscoJanelaHard nao pode ser nulo"),
+                null);
+    }
+
+    /**
+     * @param coordenacao lease de lideranca entre instancias: fora do lider, {@link #processarPendentes} so
+     *     encaminha o gatilho ao lider e nao consome o outbox
+     */
+    public ReplanejamentoWorkerService(
+            ConnectionFactory connectionFactory,
+            Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor,
+            Runnable onWorkerLockBusy,
+            RiscoJanelaHard riscoJanelaHard,
+            CoordenacaoReplanejamentoCluster coordenacao) {
+        this(
+                connectionFactory,
+                replanejamentoExecutor,
+                new DispatchEventService(),
+                onWorkerLockBusy,
+                Objects.requireNonNull(riscoJanelaHard, "riscoJanelaHard nao pode ser nulo"),
+                Objects.requireNonNull(coordenacao, "coordenacao nao pode ser nulo"));
     }
 
     ReplanejamentoWorkerService(
             ConnectionFactory connectionFactory,
             Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor,
             DispatchEventService dispatchEventService) {
-        this(connectionFactory, replanejamentoExecutor, dispatchEventService, () -> {});
+        this(connectionFactory, replanejamentoExecutor, dispatchEventService, () -> {}, null, null);
     }
 
     ReplanejamentoWorkerService(
@@ -65,12 +132,24 @@ public class ReplanejamentoWorkerService {
             Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor,
             DispatchEventService dispatchEventService,
             Runnable onWorkerLockBusy) {
+        this(connectionFactory, replanejamentoExecutor, dispatchEventService, onWorkerLockBusy, null, null);
+    }
+
+    private ReplanejamentoWorkerService(
+            ConnectionFactory connectionFactory,
+            Function<CapacidadePolicy, PlanejamentoResultado> replanejamentoExecutor,
+            DispatchEventService dispatchEventService,
+            Runnable onWorkerLockBusy,
+            RiscoJanelaHard riscoJanelaHard,
+            CoordenacaoReplanejamentoCluster coordenacao) {
         this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
         this.replanejamentoExecutor =
                 Objects.requireNonNull(replanejamentoExecutor, "ReplanejamentoExecutor nao pode ser nulo");
         this.dispatchEventService =
                 Objects.requireNonNull(dispatchEventService, "DispatchEventService nao pode ser nulo");
         this.onWorkerLockBusy = Objects.requireNonNull(onWorkerLockBusy, "onWorkerLockBusy nao pode ser nulo");
+        this.riscoJanelaHard = riscoJanelaHard;
+        this.coordenacao = coordenacao;
     }
 
     public ReplanejamentoWorkerResultado processarPendentes(int debounceSegundos, int limiteEventos) {
@@ -80,15 +159,21 @@ public class ReplanejamentoWorkerService {
         if (limiteEventos <= 0) {
             throw new IllegalArgumentException("limiteEventos deve ser maior que zero");
         }
+        if (coordenacao != null && !coordenacao.isLider()) {
+            coordenacao.encaminharAoLider();
+            return new ReplanejamentoWorkerResultado(0, false, 0, 0, 0);
+        }
 
         boolean preempcaoSolicitada = false;
         for (int tentativa = 1; tentativa <= MAX_TENTATIVAS_LOCK_OCUPADO; tentativa++) {
             WorkerAttempt tentativaWorker = processarUmaTentativa(debounceSegundos, limiteEventos);
-            if (!tentativaWorker.lockOcupado()) {
+            if (tentativaWorker.resultado() != null) {
                 return tentativaWorker.resultado();
             }
 
-            if (!preempcaoSolicitada) {
+            // Lock ocupado pede a preempcao do ciclo em curso; nova tentativa pedida pelo planejamento so espera o
+            // backoff.
+            if (tentativaWorker.lockOcupado() && !preempcaoSolicitada) {
                 onWorkerLockBusy.run();
                 preempcaoSolicitada = true;
             }
@@ -123,58 +208,95 @@ public class ReplanejamentoWorkerService {
         }
     }
 
+    /**
+     * Uma rodada do worker sem transacao aberta durante o solver: reivindica o lease da rodada e os eventos em
+     * comandos curtos, roda o replanejamento com o lease renovado por heartbeat e so entao confirma os eventos. Em
+     * falha os eventos sao devolvidos ao outbox; se a instancia morrer, o lease vence e outra rodada os reivindica.
+     */
     private WorkerAttempt processarUmaTentativa(int debounceSegundos, int limiteEventos) {
+        String rodadaId = UUID.randomUUID().toString();
+        List<DispatchEventRef> eventos;
+        boolean hardWindowEmRisco;
         try (Connection conn = connectionFactory.getConnection()) {
-            conn.setAutoCommit(false);
+            dispatchEventService.assertSchema(conn);
+            if (!adquirirLeaseRodada(conn, rodadaId)) {
+                return WorkerAttempt.lockBusy();
+            }
             try {
-                dispatchEventService.assertSchema(conn);
-
-                if (!tryAcquireWorkerLock(conn)) {
-                    conn.commit();
-                    return WorkerAttempt.lockBusy();
-                }
-
-                List<DispatchEventRef> eventos =
-                        buscarEventosPendentesComDebounce(conn, debounceSegundos, limiteEventos);
-                LocalTime referencia = obterHorarioAtualDoBanco(conn);
-                boolean hardWindowEmRisco =
-                        existePedidoHardEmRisco(conn, referencia, HARD_WINDOW_RISCO_HORIZONTE_MINUTOS);
-                if (eventos.isEmpty() && !hardWindowEmRisco) {
-                    conn.commit();
-                    return WorkerAttempt.withResult(new ReplanejamentoWorkerResultado(0, false, 0, 0, 0));
-                }
-
-                ReplanejamentoPolicyMatrix.ReplanejamentoEventPolicy politicaLote =
-                        ReplanejamentoPolicyMatrix.consolidate(eventos.stream()
-                                .map(DispatchEventRef::eventType)
-                                .toList());
-                boolean deveReplanejar = hardWindowEmRisco || politicaLote.replaneja();
-                CapacidadePolicy capacidadePolicy =
-                        hardWindowEmRisco ? CapacidadePolicy.REMANESCENTE : politicaLote.capacidadePolicy();
-
-                PlanejamentoResultado planejamento = new PlanejamentoResultado(0, 0, 0);
-                if (deveReplanejar) {
-                    planejamento = replanejamentoExecutor.apply(capacidadePolicy);
-                }
-
-                marcarEventosProcessados(conn, eventos);
-                conn.commit();
-
-                return WorkerAttempt.withResult(new ReplanejamentoWorkerResultado(
-                        eventos.size(),
-                        deveReplanejar,
-                        planejamento.rotasCriadas(),
-                        planejamento.entregasCriadas(),
-                        planejamento.pedidosNaoAtendidos()));
-            } catch (Exception e) {
-                conn.rollback();
+                eventos = reivindicarEventos(conn, rodadaId, debounceSegundos, limiteEventos);
+                hardWindowEmRisco = riscoJanelaHard != null
+                        ? riscoJanelaHard.consumirRisco()
+                        : existePedidoHardEmRisco(
+                                conn, obterHorarioAtualDoBanco(conn), HARD_WINDOW_RISCO_HORIZONTE_MINUTOS);
+            } catch (SQLException | RuntimeException e) {
+                liberarRodada(rodadaId);
                 throw e;
-            } finally {
-                conn.setAutoCommit(true);
             }
         } catch (SQLException e) {
             throw new IllegalStateException("Falha ao processar worker de replanejamento", e);
         }
+
+        if (eventos.isEmpty() && !hardWindowEmRisco) {
+            liberarRodada(rodadaId);
+            return WorkerAttempt.withResult(new ReplanejamentoWorkerResultado(0, false, 0, 0, 0));
+        }
+
+        ReplanejamentoPolicyMatrix.ReplanejamentoEventPolicy politicaLote = ReplanejamentoPolicyMatrix.consolidate(
+                eventos.stream().map(DispatchEventRef::eventType).toList());
+        boolean deveReplanejar = hardWindowEmRisco || politicaLote.replaneja();
+        CapacidadePolicy capacidadePolicy =
+                hardWindowEmRisco ? CapacidadePolicy.REMANESCENTE : politicaLote.capacidadePolicy();
+
+        PlanejamentoResultado planejamento = new PlanejamentoResultado(0, 0, 0);
+        if (deveReplanejar) {
+            long intervaloMs = LEASE_OUTBOX.toMillis() / 3;
+            ScheduledFuture<?> heartbeat = RENOVACAO_LEASE.scheduleWithFixedDelay(
+                    () -> renovarLeases(rodadaId), intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+            try {
+                planejamento = replanejamentoExecutor.apply(capacidadePolicy);
+            } catch (RuntimeException e) {
+                heartbeat.cancel(false);
+                liberarRodada(rodadaId);
+                devolverRiscoConsumido(hardWindowEmRisco);
+                throw e;
+            }
+            heartbeat.cancel(false);
+            if (planejamento.preemptado()) {
+                // Quem preemptou replaneja em seguida: devolve os eventos para entrarem na rodada dele, em vez de
+                // confirma-los sem plano gravado.
+                liberarRodada(rodadaId);
+                devolverRiscoConsumido(hardWindowEmRisco);
+                return WorkerAttempt.withResult(new ReplanejamentoWorkerResultado(0, false, 0, 0, 0));
+            }
+            if (planejamento.repetir()) {
+                // Ninguem mais vai replanejar: devolve os eventos e a propria rodada tenta de novo.
+                liberarRodada(rodadaId);
+                devolverRiscoConsumido(hardWindowEmRisco);
+                return WorkerAttempt.retry();
+            }
+        }
+
+        try {
+            confirmarEventos(rodadaId, eventos);
+        } catch (RuntimeException e) {
+            devolverRiscoConsumido(hardWindowEmRisco);
+            throw e;
+        }
+        if (hardWindowEmRisco && riscoJanelaHard != null) {
+            riscoJanelaHard.confirmarRisco();
+        }
+        return WorkerAttempt.withResult(new ReplanejamentoWorkerResultado(
+                eventos.size(),
+                deveReplanejar,
+                planejamento.rotasCriadas(),
+                planejamento.entregasCriadas(),
+                planejamento.pedidosNaoAtendidos()));
+    }
+
+    private void devolverRiscoConsumido(boolean hardWindowEmRisco) {
+        if (hardWindowEmRisco && riscoJanelaHard != null) {
+            riscoJanelaHard.devolverRisco();
+        }
     }
 
     private boolean aguardarRetryLock(int tentativa) {
@@ -188,31 +310,49 @@ public class ReplanejamentoWorkerService {
         }
     }
 
-    private boolean tryAcquireWorkerLock(Connection conn) throws SQLException {
-        String sql = "SELECT pg_try_advisory_xact_lock(?)";
+    private boolean adquirirLeaseRodada(Connection conn, String rodadaId) throws SQLException {
+        String sql = "INSERT INTO worker_leases (nome, dono, lease_ate) "
+                + "VALUES (?, ?, LOCALTIMESTAMP + (? * INTERVAL '1 millisecond')) "
+                + "ON CONFLICT (nome) DO UPDATE SET "
+                + "dono = EXCLUDED.dono, "
+                + "lease_ate = EXCLUDED.lease_ate, "
+                + "adquirido_em = LOCALTIMESTAMP, "
+                + "renovado_em = LOCALTIMESTAMP "
+                + "WHERE worker_leases.lease_ate < LOCALTIMESTAMP "
+                + "RETURNING dono";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, ADVISORY_LOCK_KEY);
+            stmt.setString(1, LEASE_RODADA);
+            stmt.setString(2, rodadaId);
+            stmt.setLong(3, LEASE_OUTBOX.toMillis());
             try (ResultSet rs = stmt.executeQuery()) {
-                rs.next();
-                return rs.getBoolean(1);
+                return rs.next();
             }
         }
     }
 
-    private List<DispatchEventRef> buscarEventosPendentesComDebounce(
-            Connection conn, int debounceSegundos, int limiteEventos) throws SQLException {
-        String sql = "SELECT id, event_type "
-                + "FROM dispatch_events "
-                + "WHERE status = 'PENDENTE' "
-                + "AND available_em <= (CURRENT_TIMESTAMP - (? * INTERVAL '1 second')) "
-                + "ORDER BY created_em, id "
-                + "LIMIT ? "
-                + "FOR UPDATE SKIP LOCKED";
+    private List<DispatchEventRef> reivindicarEventos(
+            Connection conn, String rodadaId, int debounceSegundos, int limiteEventos) throws SQLException {
+        // Lease vencido conta como livre: e o caminho de retomada quando a rodada dona morreu.
+        String sql = "UPDATE dispatch_events d "
+                + "SET claimed_by = ?, lease_until = LOCALTIMESTAMP + (? * INTERVAL '1 millisecond') "
+                + "FROM ("
+                + "    SELECT id FROM dispatch_events "
+                + "    WHERE status = 'PENDENTE' "
+                + "    AND available_em <= (CURRENT_TIMESTAMP - (? * INTERVAL '1 second')) "
+                + "    AND (lease_until IS NULL OR lease_until < LOCALTIMESTAMP) "
+                + "    ORDER BY created_em, id "
+                + "    LIMIT ? "
+                + "    FOR UPDATE SKIP LOCKED"
+                + ") livres "
+                + "WHERE d.id = livres.id "
+                + "RETURNING d.id, d.event_type";
 
         List<DispatchEventRef> result = new ArrayList<>();
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, debounceSegundos);
-            stmt.setInt(2, limiteEventos);
+            stmt.setString(1, rodadaId);
+            stmt.setLong(2, LEASE_OUTBOX.toMillis());
+            stmt.setInt(3, debounceSegundos);
+            stmt.setInt(4, limiteEventos);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     result.add(new DispatchEventRef(rs.getLong("id"), rs.getString("event_type")));
@@ -222,13 +362,57 @@ public class ReplanejamentoWorkerService {
         return result;
     }
 
+    private void renovarLeases(String rodadaId) {
+        try (Connection conn = connectionFactory.getConnection();
+                PreparedStatement stmtRodada = conn.prepareStatement("UPDATE worker_leases "
+                        + "SET lease_ate = LOCALTIMESTAMP + (? * INTERVAL '1 millisecond'), renovado_em = LOCALTIMESTAMP "
+                        + "WHERE nome = ? AND dono = ? AND lease_ate >= LOCALTIMESTAMP");
+                PreparedStatement stmtEventos = conn.prepareStatement("UPDATE dispatch_events "
+                        + "SET lease_until = LOCALTIMESTAMP + (? * INTERVAL '1 millisecond') "
+                        + "WHERE claimed_by = ? AND status = 'PENDENTE'")) {
+            stmtRodada.setLong(1, LEASE_OUTBOX.toMillis());
+            stmtRodada.setString(2, LEASE_RODADA);
+            stmtRodada.setString(3, rodadaId);
+            stmtRodada.executeUpdate();
+            stmtEventos.setLong(1, LEASE_OUTBOX.toMillis());
+            stmtEventos.setString(2, rodadaId);
+            stmtEventos.executeUpdate();
+        } catch (SQLException e) {
+            // Proxima batida tenta de novo; o lease so vence se falhar por um prazo inteiro.
+            LOGGER.log(Level.WARNING, "event=lease_outbox_renovacao_falhou rodada={0} message={1}", new Object[] {
+                rodadaId, e.getMessage()
+            });
+        }
+    }
+
+    private void confirmarEventos(String rodadaId, List<DispatchEventRef> eventos) {
+        try (Connection conn = connectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                marcarEventosProcessados(conn, eventos);
+                liberarLeaseRodada(conn, rodadaId);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            liberarRodada(rodadaId);
+            throw new IllegalStateException("Falha ao confirmar eventos do worker de replanejamento", e);
+        }
+    }
+
     private void marcarEventosProcessados(Connection conn, List<DispatchEventRef> eventos) throws SQLException {
         if (eventos.isEmpty()) {
             return;
         }
 
-        String sql =
-                "UPDATE dispatch_events SET status = 'PROCESSADO', processed_em = CURRENT_TIMESTAMP WHERE id = ANY (?)";
+        // Sem filtro por claimed_by: se o lease venceu e outra rodada pegou o evento, o plano desta rodada ja
+        // considerou o pedido e confirmar de novo e inofensivo.
+        String sql = "UPDATE dispatch_events SET status = 'PROCESSADO', processed_em = CURRENT_TIMESTAMP, "
+                + "claimed_by = NULL, lease_until = NULL WHERE id = ANY (?)";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             Object[] ids = eventos.stream().map(DispatchEventRef::id).toArray();
             Array sqlArray = conn.createArrayOf("bigint", ids);
@@ -237,6 +421,39 @@ public class ReplanejamentoWorkerService {
         }
     }
 
+    /** Devolve os eventos ainda reivindicados ao outbox e solta o lease da rodada, para retentativa imediata. */
+    private void liberarRodada(String rodadaId) {
+        try (Connection conn = connectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE dispatch_events "
+                    + "SET claimed_by = NULL, lease_until = NULL WHERE claimed_by = ? AND status = 'PENDENTE'")) {
+                stmt.setString(1, rodadaId);
+                stmt.executeUpdate();
+                liberarLeaseRodada(conn, rodadaId);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // Sem liberar, eventos e rodada voltam a ficar elegiveis quando o lease vencer.
+            LOGGER.log(Level.WARNING, "event=lease_outbox_liberacao_falhou rodada={0} message={1}", new Object[] {
+                rodadaId, e.getMessage()
+            });
+        }
+    }
+
+    private void liberarLeaseRodada(Connection conn, String rodadaId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE worker_leases SET lease_ate = LOCALTIMESTAMP - INTERVAL '1 second' WHERE nome = ? AND dono = ?")) {
+            stmt.setString(1, LEASE_RODADA);
+            stmt.setString(2, rodadaId);
+            stmt.executeUpdate();
+        }
+    }
+
     private boolean existePedidoHardEmRisco(Connection conn, LocalTime referencia, int horizonteMinutos)
             throws SQLException {
         if (horizonteMinutos < 0) {
@@ -311,6 +528,10 @@ public class ReplanejamentoWorkerService {
             return new WorkerAttempt(true, null);
         }
 
+        static WorkerAttempt retry() {
+            return new WorkerAttempt(false, null);
+        }
+
         static WorkerAttempt withResult(ReplanejamentoWorkerResultado resultado) {
             return new WorkerAttempt(false, resultado);
         }
@@ -0,0 +1,286 @@
+package com.aguaviva.service;
+
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.FonteDuracao;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Re-sequenciamento local das paradas abertas de uma rota em andamento quando uma parada falha ou e cancelada,
+ * sem passar pelo solver. Busca local 2-opt + Or-opt a partir da posicao atual do entregador (a ultima parada
+ * visitada, ENTREGUE ou FALHOU, ou o deposito), com tempos do fallback do solver ({@link FonteDuracao}); uma parada
+ * cancelada nao move o entregador. A nova ordem so e aceita se nao piora
+ * atrasos de janela HARD e encurta o percurso. Atribuicao e capacidade continuam com o replanejamento global.
+ */
+final class ResequenciadorRota {
+
+    private static final Logger LOGGER = Logger.getLogger(ResequenciadorRota.class.getName());
+    private static final LongAdder ROTAS_RESEQUENCIADAS = new LongAdder();
+
+    private static final int MAX_RODADAS = 50;
+    private static final int MAX_SEGMENTO_OR_OPT = 3;
+
+    private ResequenciadorRota() {}
+
+    /**
+     * Reordena as paradas abertas da rota a partir da entrega finalizada. Deve rodar na transacao do termino,
+     * antes do UPDATE de status. So mexe nas paradas de {@code paradasTravadas}; as demais abertas estao sendo
+     * finalizadas por outra transacao e ficam de fora. Quando a ordem muda, grava {@code ordem_na_rota} e {@code hora_prevista_atual} num
+     * unico UPDATE, reaproveitando os numeros de ordem das paradas abertas.
+     *
+     * @param statusDestino status que a entrega finalizada vai receber; so FALHOU poe o entregador nela
+     * @param paradasTravadas paradas abertas da rota ja travadas por esta transacao
+     * @return true quando a sequencia foi alterada
+     */
+    static boolean resequenciar(
+            Connection conn,
+            int rotaId,
+            int entregaFinalizadaId,
+            String statusDestino,
+            Set<Integer> paradasTravadas,
+            ConfiguracaoSnapshotService configuracaoSnapshotService)
+            throws SQLException {
+        String sql = "SELECT e.id, e.ordem_na_rota, e.status::text AS status, e.hora_real, "
+                + "p.janela_tipo::text AS janela_tipo, p.janela_inicio, p.janela_fim, "
+                + "c.latitude, c.longitude, LOCALTIMESTAMP AS agora "
+                + "FROM entregas e "
+                + "JOIN pedidos p ON p.id = e.pedido_id "
+                + "JOIN clientes c ON c.id = p.cliente_id "
+                + "WHERE e.rota_id = ? "
+                + "ORDER BY e.ordem_na_rota, e.id";
+        Parada finalizada = null;
+        Parada ultimaVisitada = null;
+        LocalDateTime horaRealUltimaVisitada = null;
+        List<Parada> abertas = new ArrayList<>();
+        LocalDateTime agora = null;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rotaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    agora = rs.getObject("agora", LocalDateTime.class);
+                    Object lat = rs.getObject("latitude");
+                    Object lon = rs.getObject("longitude");
+                    boolean hard = "HARD".equals(rs.getString("janela_tipo"));
+                    Parada parada = new Parada(
+                            rs.getInt("id"),
+                            rs.getInt("ordem_na_rota"),
+                            lat instanceof Number latNum ? latNum.doubleValue() : Double.NaN,
+                            lon instanceof Number lonNum ? lonNum.doubleValue() : Double.NaN,
+                            hard ? rs.getObject("janela_inicio", LocalTime.class) : null,
+                            hard ? rs.getObject("janela_fim", LocalTime.class) : null);
+                    String status = rs.getString("status");
+                    if (parada.entregaId() == entregaFinalizadaId) {
+                        finalizada = parada;
+                    } else if ("PENDENTE".equals(status) || "EM_EXECUCAO".equals(status)) {
+                        if (paradasTravadas.contains(parada.entregaId())) {
+                            abertas.add(parada);
+                        }
+                    } else if ("ENTREGUE".equals(status) || "FALHOU".equals(status)) {
+                        // A visita mais recente pela hora real; sem hora real, a de maior ordem.
+                        LocalDateTime horaReal = rs.getObject("hora_real", LocalDateTime.class);
+                        if (horaRealUltimaVisitada == null
+                                || (horaReal != null && !horaReal.isBefore(horaRealUltimaVisitada))) {
+                            ultimaVisitada = parada;
+                            horaRealUltimaVisitada = horaReal;
+                        }
+                    }
+                }
+            }
+        }
+        if (finalizada == null || abertas.size() < 2) {
+            return false;
+        }
+        Parada origem;
+        if ("FALHOU".equals(statusDestino)) {
+            origem = finalizada;
+        } else if (ultimaVisitada != null) {
+            origem = ultimaVisitada;
+        } else {
+            origem = deposito(configuracaoSnapshotService.obter(conn).valores());
+        }
+        if (origem == null || !origem.temCoordenada()) {
+            return false;
+        }
+        for (Parada parada : abertas) {
+            if (!parada.temCoordenada()) {
+                return false;
+            }
+        }
+
+        List<Parada> melhor = melhorarSequencia(origem, abertas, agora);
+        if (melhor.equals(abertas)) {
+            return false;
+        }
+
+        Object[] ids = new Object[melhor.size()];
+        Object[] ordens = new Object[melhor.size()];
+        Object[] horas = new Object[melhor.size()];
+        LocalDateTime[] etas = calcularEtas(origem, melhor, agora);
+        for (int i = 0; i < melhor.size(); i++) {
+            ids[i] = melhor.get(i).entregaId();
+            // A parada na posicao i herda o i-esimo numero de ordem das abertas: finalizadas nao mudam de lugar.
+            ordens[i] = abertas.get(i).ordemNaRota();
+            horas[i] = Timestamp.valueOf(etas[i]);
+        }
+        String update = "UPDATE entregas e SET ordem_na_rota = v.ordem, hora_prevista_atual = v.hora_prevista "
+                + "FROM UNNEST(?::int[], ?::int[], ?::timestamp[]) AS v(id, ordem, hora_prevista) "
+                + "WHERE e.id = v.id";
+        try (PreparedStatement stmt = conn.prepareStatement(update)) {
+            stmt.setArray(1, conn.createArrayOf("integer", ids));
+            stmt.setArray(2, conn.createArrayOf("integer", ordens));
+            stmt.setArray(3, conn.createArrayOf("timestamp", horas));
+            stmt.executeUpdate();
+        }
+        ROTAS_RESEQUENCIADAS.increment();
+        LOGGER.log(Level.INFO, "event=rota_resequenciada rotaId={0} paradas={1} total={2}", new Object[] {
+            rotaId, melhor.size(), ROTAS_RESEQUENCIADAS.sum()
+        });
+        return true;
+    }
+
+    private static Parada deposito(Map<String, String> configuracoes) {
+        String latitude = configuracoes.get("deposito_latitude");
+        String longitude = configuracoes.get("deposito_longitude");
+        if (latitude == null || longitude == null) {
+            return null;
+        }
+        try {
+            return new Parada(0, 0, Double.parseDouble(latitude), Double.parseDouble(longitude), null, null);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Busca local ate nao haver movimento 2-opt ou Or-opt que melhore (atrasos HARD, distancia). */
+    static List<Parada> melhorarSequencia(Parada origem, List<Parada> paradas, LocalDateTime inicio) {
+        List<Parada> atual = new ArrayList<>(paradas);
+        Custo custoAtual = custo(origem, atual, inicio);
+        int n = atual.size();
+        for (int rodada = 0; rodada < MAX_RODADAS; rodada++) {
+            boolean melhorou = false;
+            // 2-opt: inverte o trecho [i, k].
+            for (int i = 0; i < n - 1 && !melhorou; i++) {
+                for (int k = i + 1; k < n && !melhorou; k++) {
+                    List<Parada> candidata = new ArrayList<>(atual);
+                    Collections.reverse(candidata.subList(i, k + 1));
+                    Custo custo = custo(origem, candidata, inicio);
+                    if (custo.melhorQue(custoAtual)) {
+                        atual = candidata;
+                        custoAtual = custo;
+                        melhorou = true;
+                    }
+                }
+            }
+            // Or-opt: move um trecho de 1 a 3 paradas para outra posicao.
+            for (int tamanho = 1; tamanho <= MAX_SEGMENTO_OR_OPT && !melhorou; tamanho++) {
+                for (int i = 0; i + tamanho <= n && !melhorou; i++) {
+                    List<Parada> segmento = new ArrayList<>(atual.subList(i, i + tamanho));
+                    List<Parada> resto = new ArrayList<>(atual);
+                    resto.subList(i, i + tamanho).clear();
+                    for (int destino = 0; destino <= resto.size() && !melhorou; destino++) {
+                        if (destino == i) {
+                            continue;
+                        }
+                        List<Parada> candidata = new ArrayList<>(resto);
+                        candidata.addAll(destino, segmento);
+                        Custo custo = custo(origem, candidata, inicio);
+                        if (custo.melhorQue(custoAtual)) {
+                            atual = candidata;
+                            custoAtual = custo;
+                            melhorou = true;
+                        }
+                    }
+                }
+            }
+            if (!melhorou) {
+                break;
+            }
+        }
+        return atual;
+    }
+
+    private static Custo custo(Parada origem, List<Parada> sequencia, LocalDateTime inicio) {
+        double distancia = 0;
+        long atrasoHardS = 0;
+        Parada anterior = origem;
+        LocalDateTime relogio = inicio;
+        for (Parada parada : sequencia) {
+            double metros = distanciaMetros(anterior, parada);
+            distancia += metros;
+            relogio = chegada(relogio, metros, parada);
+            if (parada.janelaFim() != null) {
+                LocalDateTime fim = relogio.toLocalDate().atTime(parada.janelaFim());
+                if (relogio.isAfter(fim)) {
+                    atrasoHardS += Duration.between(fim, relogio).toSeconds();
+                }
+            }
+            relogio = relogio.plusSeconds(FonteDuracao.TEMPO_SERVICO_S);
+            anterior = parada;
+        }
+        return new Custo(atrasoHardS, distancia);
+    }
+
+    private static LocalDateTime[] calcularEtas(Parada origem, List<Parada> sequencia, LocalDateTime inicio) {
+        LocalDateTime[] etas = new LocalDateTime[sequencia.size()];
+        Parada anterior = origem;
+        LocalDateTime relogio = inicio;
+        for (int i = 0; i < sequencia.size(); i++) {
+            Parada parada = sequencia.get(i);
+            relogio = chegada(relogio, distanciaMetros(anterior, parada), parada);
+            etas[i] = relogio;
+            relogio = relogio.plusSeconds(FonteDuracao.TEMPO_SERVICO_S);
+            anterior = parada;
+        }
+        return etas;
+    }
+
+    /** Chegada na parada; espera a abertura da janela HARD quando chega cedo. */
+    private static LocalDateTime chegada(LocalDateTime saida, double metros, Parada parada) {
+        LocalDateTime chegada = saida.plusSeconds((long) (metros / FonteDuracao.VELOCIDADE_HAVERSINE_M_POR_S));
+        if (parada.janelaInicio() != null) {
+            LocalDateTime abertura = chegada.toLocalDate().atTime(parada.janelaInicio());
+            if (chegada.isBefore(abertura)) {
+                return abertura;
+            }
+        }
+        return chegada;
+    }
+
+    private static double distanciaMetros(Parada a, Parada b) {
+        return FonteDuracao.distanciaHaversineMetros(a.coordenada(), b.coordenada());
+    }
+
+    record Parada(int entregaId, int ordemNaRota, double lat, double lon, LocalTime janelaInicio, LocalTime janelaFim) {
+        boolean temCoordenada() {
+            return !Double.isNaN(lat) && !Double.isNaN(lon);
+        }
+
+        Coordenada coordenada() {
+            return new Coordenada(lat, lon);
+        }
+    }
+
+    private record Custo(long atrasoHardS, double distancia) {
+        boolean melhorQue(Custo outro) {
+            if (atrasoHardS != outro.atrasoHardS) {
+                return atrasoHardS < outro.atrasoHardS;
+            }
+            // Folga de 1 m evita trocar entre sequencias equivalentes por arredondamento.
+            return distancia < outro.distancia - 1;
+        }
+    }
+}
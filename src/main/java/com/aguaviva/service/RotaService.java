@@ -5,6 +5,7 @@ import com.aguaviva.repository.ConnectionFactory;
 import com.aguaviva.solver.Coordenada;
 import com.aguaviva.solver.Parada;
 import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.RotaInicial;
 import com.aguaviva.solver.RotaSolver;
 import com.aguaviva.solver.SolverClient;
 import com.aguaviva.solver.SolverGateway;
@@ -13,12 +14,14 @@ import com.aguaviva.solver.SolverResponse;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -26,14 +29,22 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,15 +53,51 @@ public class RotaService {
 
     private static final DateTimeFormatter HH_MM = DateTimeFormatter.ofPattern("HH:mm");
     static final long PLANEJAMENTO_LOCK_KEY = 61001L;
+    private static final String ESCOPO_GLOBAL = "";
+    // Escopo residual da particao por regiao: entregadores sem regiao e pedidos cuja regiao mais proxima nao tem
+    // entregador. Nao e codigo de regiao valido (users.regiao_planejamento referencia regioes_planejamento).
+    static final String ESCOPO_SEM_REGIAO = "*sem-regiao*";
     private static final int MAX_SOLVER_JOBS_CANCELAMENTO = 8;
+    private static final int MAX_CENARIOS_SIMULACAO = 8;
+    // Regiao de referencia mais proxima do cliente (distancia equiretangular; desempate pelo codigo).
+    private static final String SQL_REGIAO_DO_CLIENTE = "(SELECT rp.codigo FROM regioes_planejamento rp "
+            + "ORDER BY power(rp.latitude - c.latitude, 2) "
+            + "+ power((rp.longitude - c.longitude) * cos(radians(c.latitude)), 2), rp.codigo LIMIT 1)";
+    // Mesma regra, so entre as regioes com entregador ativo.
+    private static final String SQL_REGIAO_ATENDIDA_DO_CLIENTE = "(SELECT rp.codigo FROM regioes_planejamento rp "
+            + "WHERE EXISTS (SELECT 1 FROM users ur WHERE ur.papel = 'entregador' AND ur.ativo = true "
+            + "AND ur.regiao_planejamento = rp.codigo) "
+            + "ORDER BY power(rp.latitude - c.latitude, 2) "
+            + "+ power((rp.longitude - c.longitude) * cos(radians(c.latitude)), 2), rp.codigo LIMIT 1)";
+    // Escopo do pedido na particao por regiao: a regiao mais proxima quando ela tem entregador; senao o escopo
+    // residual, se houver entregador sem regiao para atende-lo, ou a regiao atendida mais proxima.
+    private static final String SQL_ESCOPO_DO_PEDIDO = "(CASE WHEN EXISTS (SELECT 1 FROM users us "
+            + "WHERE us.papel = 'entregador' AND us.ativo = true AND us.regiao_planejamento IS NULL) "
+            + "AND " + SQL_REGIAO_DO_CLIENTE + " IS DISTINCT FROM " + SQL_REGIAO_ATENDIDA_DO_CLIENTE + " "
+            + "THEN '" + ESCOPO_SEM_REGIAO + "' ELSE " + SQL_REGIAO_ATENDIDA_DO_CLIENTE + " END)";
+    private static final String SQL_ESCOPO_DO_ENTREGADOR =
+            "COALESCE(u.regiao_planejamento, '" + ESCOPO_SEM_REGIAO + "')";
+    private static final String CHAVE_PEDIDOS_POR_TERRITORIO = "planejamento_pedidos_por_territorio";
+    static final String CHAVE_HORIZONTE_MINUTOS = "planejamento_horizonte_minutos";
     private static final Logger LOGGER = Logger.getLogger(RotaService.class.getName());
     private static final LongAdder CANCELAMENTO_DISCOVERY_FAILURES = new LongAdder();
-
-    private final AtomicReference<String> activeJobId = new AtomicReference<>();
+    private static final LongAdder PLANOS_REAPROVEITADOS = new LongAdder();
+    private static final LongAdder PEDIDOS_REDUZIDOS_PRE_SOLVER = new LongAdder();
+    private static final LongAdder SIMULACOES = new LongAdder();
+    private static final LongAdder PLANOS_INVALIDADOS = new LongAdder();
+    // Acima do prazo de uma chamada ao solver: so vence sozinho se a instancia morrer no meio do ciclo.
+    private static final Duration LEASE_CICLO = Duration.ofMinutes(5);
+    private static final String MOTIVO_PREEMPCAO = "Job preemptado por solicitacao mais recente";
+    private static final String MOTIVO_PLANO_INVALIDADO = "Estado mudou durante a resolucao e invalidou o plano";
+
+    // Job ativo por escopo de planejamento (regiao, ou ESCOPO_GLOBAL): um novo ciclo so preempta o do mesmo escopo.
+    private final ConcurrentHashMap<String, String> jobsAtivosPorEscopo = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<?>> solucoesEmAndamento = new ConcurrentHashMap<>();
 
     private final SolverGateway solverClient;
     private final ConnectionFactory connectionFactory;
     private final PedidoLifecycleService pedidoLifecycleService;
+    private final ConfiguracaoSnapshotService configuracaoSnapshotService;
     private final Gson gson = new GsonBuilder()
             .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
             .serializeNulls()
@@ -64,28 +111,50 @@ public class RotaService {
         this(solverClient, connectionFactory, new PedidoLifecycleService());
     }
 
+    public RotaService(
+            SolverGateway solverClient,
+            ConnectionFactory connectionFactory,
+            ConfiguracaoSnapshotService configuracaoSnapshotService) {
+        this(solverClient, connectionFactory, new PedidoLifecycleService(), configuracaoSnapshotService);
+    }
+
     RotaService(
             SolverGateway solverClient,
             ConnectionFactory connectionFactory,
             PedidoLifecycleService pedidoLifecycleService) {
+        this(solverClient, connectionFactory, pedidoLifecycleService, new ConfiguracaoSnapshotService());
+    }
+
+    RotaService(
+            SolverGateway solverClient,
+            ConnectionFactory connectionFactory,
+            PedidoLifecycleService pedidoLifecycleService,
+            ConfiguracaoSnapshotService configuracaoSnapshotService) {
         this.solverClient = Objects.requireNonNull(solverClient, "SolverClient nao pode ser nulo");
         this.connectionFactory = Objects.requireNonNull(connectionFactory, "ConnectionFactory nao pode ser nulo");
         this.pedidoLifecycleService =
                 Objects.requireNonNull(pedidoLifecycleService, "PedidoLifecycleService nao pode ser nulo");
+        this.configuracaoSnapshotService =
+                Objects.requireNonNull(configuracaoSnapshotService, "ConfiguracaoSnapshotService nao pode ser nulo");
     }
 
     public void cancelarPlanejamentosAtivosBestEffort() {
         Set<String> jobIds = new LinkedHashSet<>();
 
-        String jobAtivoLocal = activeJobId.getAndSet(null);
-        if (jobAtivoLocal != null && !jobAtivoLocal.isBlank()) {
-            jobIds.add(jobAtivoLocal);
+        for (String escopo : List.copyOf(jobsAtivosPorEscopo.keySet())) {
+            String jobAtivoLocal = jobsAtivosPorEscopo.remove(escopo);
+            if (jobAtivoLocal != null && !jobAtivoLocal.isBlank()) {
+                jobIds.add(jobAtivoLocal);
+            }
         }
 
         try (Connection conn = connectionFactory.getConnection()) {
             if (RotaSolverJobSupport.hasSolverJobsSchema(conn)) {
-                jobIds.addAll(RotaSolverJobSupport.marcarCancelamentoSolicitadoEmJobsAtivos(
-                        conn, MAX_SOLVER_JOBS_CANCELAMENTO));
+                List<String> marcados = RotaSolverJobSupport.marcarCancelamentoSolicitadoEmJobsAtivos(
+                        conn, MAX_SOLVER_JOBS_CANCELAMENTO);
+                jobIds.addAll(marcados);
+                // Jobs de outras instancias: a dona interrompe a espera ao receber o NOTIFY.
+                RotaSolverJobSupport.notificarCancelamento(conn, marcados);
             }
         } catch (SQLException e) {
             CANCELAMENTO_DISCOVERY_FAILURES.increment();
@@ -96,7 +165,7 @@ public class RotaService {
         }
 
         for (String jobId : jobIds) {
-            solverClient.cancelBestEffort(jobId);
+            cancelarSolucaoBestEffort(jobId);
         }
     }
 
@@ -105,199 +174,649 @@ public class RotaService {
     }
 
     public PlanejamentoResultado planejarRotasPendentes(CapacidadePolicy capacidadePolicy) {
-        CapacidadePolicy capacidadeResolvida =
-                Objects.requireNonNull(capacidadePolicy, "capacidadePolicy nao pode ser nulo");
-        String currentJobId = null;
-        boolean solverJobsEnabled = false;
+        return planejarRotasPendentes(
+                List.of(Objects.requireNonNull(capacidadePolicy, "capacidadePolicy nao pode ser nulo")));
+    }
+
+    /**
+     * Resolve o mesmo snapshot sob cada politica em paralelo e grava o plano de melhor {@link PontuacaoPlano}.
+     * A primeira politica e a de referencia: fingerprint do cache de plano, job registrado e desempate.
+     *
+     * <p>Com entregadores atribuidos a regioes de planejamento, cada regiao e planejada em paralelo, na propria
+     * transacao e sob o proprio lock; uma regiao ocupada por outro no fica de fora deste ciclo sem bloquear as
+     * demais. Entregadores sem regiao formam o escopo residual {@link #ESCOPO_SEM_REGIAO}, junto com os pedidos
+     * cuja regiao mais proxima nao tem entregador; sem esse escopo, tais pedidos vao para a regiao atendida mais
+     * proxima.
+     */
+    public PlanejamentoResultado planejarRotasPendentes(List<CapacidadePolicy> politicas) {
+        Objects.requireNonNull(politicas, "politicas nao pode ser nulo");
+        if (politicas.isEmpty() || politicas.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("politicas deve conter ao menos uma politica nao nula");
+        }
+        List<String> regioes;
+        try (Connection conn = connectionFactory.getConnection()) {
+            ConfiguracaoSnapshot snapshot = configuracaoSnapshotService.obter(conn);
+            regioes = new ArrayList<>(snapshot.regioesComEntregadores());
+            if (!regioes.isEmpty() && !snapshot.entregadoresAtivosSemRegiao().isEmpty()) {
+                regioes.add(ESCOPO_SEM_REGIAO);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha de banco ao planejar rotas", e);
+        }
+        if (regioes.isEmpty()) {
+            return planejarEscopo(politicas, null);
+        }
+        if (regioes.size() == 1) {
+            return planejarEscopo(politicas, regioes.get(0));
+        }
+        return planejarRegioesEmParalelo(politicas, regioes);
+    }
+
+    private PlanejamentoResultado planejarRegioesEmParalelo(List<CapacidadePolicy> politicas, List<String> regioes) {
+        List<CompletableFuture<PlanejamentoResultado>> porRegiao = new ArrayList<>(regioes.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String regiao : regioes) {
+                porRegiao.add(CompletableFuture.supplyAsync(() -> planejarEscopo(politicas, regiao), executor));
+            }
+        }
+        int rotasCriadas = 0;
+        int entregasCriadas = 0;
+        int pedidosNaoAtendidos = 0;
+        boolean preemptado = false;
+        boolean repetir = false;
+        RuntimeException primeiraFalha = null;
+        for (int i = 0; i < regioes.size(); i++) {
+            try {
+                PlanejamentoResultado resultado = porRegiao.get(i).join();
+                rotasCriadas += resultado.rotasCriadas();
+                entregasCriadas += resultado.entregasCriadas();
+                pedidosNaoAtendidos += resultado.pedidosNaoAtendidos();
+                preemptado |= resultado.preemptado();
+                repetir |= resultado.repetir();
+            } catch (CompletionException e) {
+                // As demais regioes ja gravaram seus planos; a falha de uma nao desfaz as outras.
+                RuntimeException falha = e.getCause() instanceof RuntimeException runtime
+                        ? runtime
+                        : new IllegalStateException("Falha ao planejar rotas", e.getCause());
+                LOGGER.log(Level.WARNING, "event=planejamento_regiao_falhou regiao={0} message={1}", new Object[] {
+                    regioes.get(i), falha.getMessage()
+                });
+                if (primeiraFalha == null) {
+                    primeiraFalha = falha;
+                }
+            }
+        }
+        if (primeiraFalha != null) {
+            throw primeiraFalha;
+        }
+        LOGGER.log(
+                Level.INFO,
+                "event=planejamento_regioes regioes={0} rotas={1} entregas={2} nao_atendidos={3}",
+                new Object[] {regioes, rotasCriadas, entregasCriadas, pedidosNaoAtendidos});
+        // Regiao preemptada e replanejada por quem a preemptou: a rodada so conta como preemptada se nenhuma regiao
+        // gravou plano. Ja uma regiao que pede nova tentativa nao tem quem a replaneje, entao a rodada inteira repete.
+        return new PlanejamentoResultado(
+                rotasCriadas,
+                entregasCriadas,
+                pedidosNaoAtendidos,
+                false,
+                preemptado && !repetir && rotasCriadas == 0,
+                repetir);
+    }
+
+    /**
+     * Um ciclo de planejamento sobre a regiao informada; {@code regiao} nula planeja a frota inteira. Roda em tres
+     * passos para nao segurar conexao, transacao nem lock enquanto o solver trabalha: le o snapshot e reivindica o
+     * escopo por lease numa transacao curta ({@link #prepararCiclo}); resolve sem conexao; e grava numa transacao
+     * nova ({@link #gravarPlano}), que so apaga a camada PLANEJADA e insere o plano se o ciclo ainda for o vigente do
+     * escopo e o estado atual nao violar o plano vencedor. O lease e liberado no fim, com ou sem plano.
+     */
+    private PlanejamentoResultado planejarEscopo(List<CapacidadePolicy> politicas, String regiao) {
+        PreparacaoCiclo preparacao = prepararCiclo(politicas, regiao);
+        CicloPlanejamento ciclo = preparacao.ciclo();
+        if (ciclo == null) {
+            return preparacao.resultado();
+        }
+        String jobId = ciclo.jobId();
+        boolean solverJobsEnabled = ciclo.solverJobsEnabled();
+        try {
+            if (solverJobsEnabled) {
+                RotaSolverJobSupport.registrarSolverJobEmExecucao(
+                        connectionFactory,
+                        gson,
+                        jobId,
+                        ciclo.planVersion(),
+                        ciclo.requests().get(0),
+                        ciclo.inputFingerprint());
+            }
 
+            List<SolverResponse> respostas = aguardarSolucao(
+                    jobId, resolverCandidatos(ciclo.requests(), ciclo.cfg().pedidosPorTerritorio()));
+            if (!isCurrentJobActive(ciclo.escopo(), jobId)) {
+                throw new PlanejamentoPreemptadoException(MOTIVO_PREEMPCAO);
+            }
+            List<CandidatoPlano> candidatos = ciclo.candidatos();
+            List<SolverResponse> expandidas = new ArrayList<>(candidatos.size());
+            List<PontuacaoPlano.Pontuacao> pontuacoes = new ArrayList<>(candidatos.size());
+            Map<Integer, PedidoSolver> elegiveis = indexarPedidosElegiveis(candidatos);
+            for (int i = 0; i < candidatos.size(); i++) {
+                SolverResponse expandida = ciclo.reducoes().get(i).expandir(respostas.get(i));
+                expandidas.add(expandida);
+                pontuacoes.add(
+                        PontuacaoPlano.pontuar(expandida, elegiveis, ciclo.cfg().horarioInicio()));
+            }
+            int escolhido = PontuacaoPlano.melhor(pontuacoes);
+            if (candidatos.size() > 1) {
+                LOGGER.log(
+                        Level.INFO,
+                        "event=planejamento_what_if job_id={0} regiao={1} politica={2} pontuacoes={3}",
+                        new Object[] {
+                            jobId, ciclo.escopo(), candidatos.get(escolhido).politica(), pontuacoes
+                        });
+            }
+            SolverResponse solverResponse = expandidas.get(escolhido);
+            CandidatoPlano vencedor = candidatos.get(escolhido);
+            // Contra o snapshot resolvido: aqui uma violacao e erro do solver, nao mudanca de estado.
+            validarRespostaSolver(
+                    solverResponse,
+                    vencedor.request().getEntregadores(),
+                    vencedor.capacidades(),
+                    indexarPedidosPorId(vencedor.pedidos()));
+            if (solverJobsEnabled && escolhido != 0) {
+                RotaSolverJobSupport.registrarRequestEscolhido(connectionFactory, gson, jobId, vencedor.request());
+            }
+
+            PlanejamentoResultado resultado = gravarPlano(ciclo, vencedor, solverResponse);
+            if (solverJobsEnabled) {
+                RotaSolverJobSupport.finalizarSolverJob(
+                        connectionFactory, gson, jobId, "CONCLUIDO", null, solverResponse);
+            }
+            return resultado;
+        } catch (PlanejamentoPreemptadoException e) {
+            if (solverJobsEnabled) {
+                RotaSolverJobSupport.finalizarSolverJob(
+                        connectionFactory, gson, jobId, "CANCELADO", e.getMessage(), null);
+            }
+            return PlanejamentoResultado.descartadoPorPreempcao();
+        } catch (PlanoInvalidadoException e) {
+            if (solverJobsEnabled) {
+                RotaSolverJobSupport.finalizarSolverJob(
+                        connectionFactory, gson, jobId, "CANCELADO", e.getMessage(), null);
+            }
+            return PlanejamentoResultado.adiadoParaNovaTentativa();
+        } catch (InterruptedException e) {
+            if (solverJobsEnabled) {
+                RotaSolverJobSupport.finalizarSolverJob(
+                        connectionFactory, gson, jobId, "FALHOU", "Thread interrompida ao chamar solver", null);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Thread interrompida ao chamar solver", e);
+        } catch (Exception e) {
+            if (solverJobsEnabled) {
+                RotaSolverJobSupport.finalizarSolverJob(connectionFactory, gson, jobId, "FALHOU", e.getMessage(), null);
+            }
+            throw new IllegalStateException("Falha ao planejar rotas", e);
+        } finally {
+            clearActiveJob(ciclo.escopo(), jobId);
+            liberarEscopo(ciclo.escopo(), jobId);
+        }
+    }
+
+    /**
+     * Passo 1: sob o lock do escopo, le o snapshot, monta os requests e reivindica o escopo em
+     * {@code planejamento_ciclos}. A camada PLANEJADA do escopo e lida como ja apagada, sem apagar nada; a transacao
+     * termina antes de o solver ser chamado.
+     */
+    private PreparacaoCiclo prepararCiclo(List<CapacidadePolicy> politicas, String regiao) {
+        String escopo = regiao == null ? ESCOPO_GLOBAL : regiao;
         try (Connection conn = connectionFactory.getConnection()) {
             conn.setAutoCommit(false);
             try {
-                if (!tentarAdquirirLockPlanejamento(conn)) {
+                if (!tentarAdquirirLockPlanejamento(conn, regiao)) {
+                    conn.commit();
+                    return PreparacaoCiclo.encerrado(PlanejamentoResultado.adiadoParaNovaTentativa());
+                }
+                if (isEscopoEmPlanejamento(conn, regiao)) {
+                    // Outro ciclo deste escopo (ou o global) esta resolvendo: este nao disputa nem o preempta. O
+                    // outro pode ter lido o snapshot antes dos eventos deste, entao quem pediu tenta de novo.
                     conn.commit();
-                    return new PlanejamentoResultado(0, 0, 0);
+                    return PreparacaoCiclo.encerrado(PlanejamentoResultado.adiadoParaNovaTentativa());
                 }
 
-                solverJobsEnabled = RotaSolverJobSupport.hasSolverJobsSchema(conn);
+                boolean solverJobsEnabled = RotaSolverJobSupport.hasSolverJobsSchema(conn);
                 boolean planVersionEnabled = RotaSolverJobSupport.hasPlanVersionColumns(conn);
                 boolean jobIdEnabled = RotaSolverJobSupport.hasJobIdColumns(conn);
-                long planVersion =
-                        (solverJobsEnabled || planVersionEnabled) ? RotaSolverJobSupport.nextPlanVersion(conn) : 1L;
-                currentJobId = buildJobId(planVersion);
-                String previousJobId = activeJobId.getAndSet(currentJobId);
-                if (previousJobId != null && !previousJobId.equals(currentJobId)) {
-                    solverClient.cancelBestEffort(previousJobId);
-                }
 
-                ConfiguracaoRoteirizacao cfg = carregarConfiguracao(conn);
-                List<Integer> entregadoresAtivos = buscarEntregadoresAtivos(conn);
+                ConfiguracaoSnapshot snapshot = configuracaoSnapshotService.obter(conn);
+                ConfiguracaoRoteirizacao cfg = carregarConfiguracao(snapshot);
+                List<Integer> entregadoresAtivos = entregadoresDoEscopo(snapshot, regiao);
                 if (entregadoresAtivos.isEmpty()) {
                     conn.commit();
-                    return new PlanejamentoResultado(0, 0, 0);
+                    return PreparacaoCiclo.encerrado(new PlanejamentoResultado(0, 0, 0));
                 }
 
-                List<Integer> capacidadesEntregadores = calcularCapacidadesPorPolitica(
-                        conn, entregadoresAtivos, cfg.capacidadeVeiculo(), capacidadeResolvida);
-                int capacidadeLivreTotal = capacidadesEntregadores.stream()
-                        .mapToInt(Integer::intValue)
-                        .sum();
+                List<List<Integer>> capacidadesPorPolitica = new ArrayList<>(politicas.size());
+                for (CapacidadePolicy politica : politicas) {
+                    capacidadesPorPolitica.add(calcularCapacidadesPorPolitica(
+                            conn, entregadoresAtivos, cfg.capacidadeVeiculo(), politica));
+                }
 
                 if (!existePedidoSemEntregaAbertaParaPlanejar(conn)) {
                     conn.commit();
-                    return new PlanejamentoResultado(0, 0, 0);
+                    return PreparacaoCiclo.encerrado(new PlanejamentoResultado(0, 0, 0));
+                }
+
+                long planVersion =
+                        (solverJobsEnabled || planVersionEnabled) ? RotaSolverJobSupport.nextPlanVersion(conn) : 1L;
+                String jobId = buildJobId(planVersion);
+                // O cache de plano compara com a camada PLANEJADA inteira do dia: so vale no planejamento global.
+                PlanoReaproveitavel planoReaproveitavel =
+                        regiao == null ? buscarPlanoReaproveitavel(conn, solverJobsEnabled, jobIdEnabled) : null;
+                List<RotaInicial> rotasIniciais = buscarRotasIniciais(conn, planVersionEnabled, regiao);
+                LocalTime limite = limiteHorizonte(conn, cfg.horizonteMinutos());
+                List<CandidatoPlano> candidatos = new ArrayList<>(politicas.size());
+                for (int i = 0; i < politicas.size(); i++) {
+                    List<Integer> capacidades = capacidadesPorPolitica.get(i);
+                    List<PedidoPlanejavel> pedidos =
+                            buscarPedidosParaSolver(conn, somar(capacidades), limite, true, regiao);
+                    if (pedidos.isEmpty()) {
+                        continue;
+                    }
+                    String jobIdCandidato = candidatos.isEmpty() ? jobId : jobId + "-cenario-" + i;
+                    candidatos.add(new CandidatoPlano(
+                            politicas.get(i),
+                            capacidades,
+                            pedidos,
+                            montarRequest(
+                                    jobIdCandidato,
+                                    planVersion,
+                                    cfg,
+                                    cfg.capacidadeVeiculo(),
+                                    capacidades,
+                                    entregadoresAtivos,
+                                    pedidos)));
+                }
+                if (candidatos.isEmpty()) {
+                    conn.commit();
+                    return PreparacaoCiclo.encerrado(new PlanejamentoResultado(0, 0, 0));
                 }
 
-                limparCamadaSecundariaPlanejada(conn);
-                List<PedidoPlanejavel> pedidosPlanejaveis = buscarPedidosParaSolver(conn, capacidadeLivreTotal);
-                if (pedidosPlanejaveis.isEmpty()) {
+                SolverRequest request = candidatos.get(0).request();
+                String inputFingerprint = RotaSolverJobSupport.calcularInputFingerprint(gson, request);
+                if (planoReaproveitavel != null && inputFingerprint.equals(planoReaproveitavel.inputFingerprint())) {
+                    // Entradas identicas ao ultimo job concluido e plano intacto: mantem o plano gravado.
                     conn.commit();
-                    return new PlanejamentoResultado(0, 0, 0);
+                    PLANOS_REAPROVEITADOS.increment();
+                    LOGGER.log(Level.INFO, "event=planejamento_cache_hit job_id={0} fingerprint={1}", new Object[] {
+                        planoReaproveitavel.jobId(), inputFingerprint
+                    });
+                    return PreparacaoCiclo.encerrado(new PlanejamentoResultado(
+                            0, 0, Math.max(0, request.getPedidos().size() - planoReaproveitavel.entregas()), true));
                 }
 
-                int rotasCriadas = 0;
-                int entregasCriadas = 0;
+                List<ReducaoProblema.Reducao> reducoes = new ArrayList<>(candidatos.size());
+                List<SolverRequest> requests = new ArrayList<>(candidatos.size());
+                for (CandidatoPlano candidato : candidatos) {
+                    ReducaoProblema.Reducao reducao = ReducaoProblema.reduzir(candidato.request());
+                    registrarReducao(candidato.request().getJobId(), reducao);
+                    SolverRequest reduzido = reducao.request();
+                    if (!rotasIniciais.isEmpty()) {
+                        // Fora do fingerprint: o plano anterior so orienta a busca, nao muda a entrada do problema.
+                        reduzido = reduzido.comRotasIniciais(rotasIniciais);
+                    }
+                    reducoes.add(reducao);
+                    requests.add(reduzido);
+                }
 
-                List<PedidoSolver> pedidosParaSolver = pedidosPlanejaveis.stream()
-                        .map(PedidoPlanejavel::pedidoSolver)
-                        .toList();
+                reivindicarEscopo(conn, escopo, planVersion, jobId);
+                conn.commit();
 
-                SolverRequest request = new SolverRequest(
-                        currentJobId,
+                String jobAnteriorLocal = jobsAtivosPorEscopo.put(escopo, jobId);
+                if (jobAnteriorLocal != null) {
+                    cancelarSolucaoBestEffort(jobAnteriorLocal);
+                }
+                return PreparacaoCiclo.pronto(new CicloPlanejamento(
+                        escopo,
+                        regiao,
+                        jobId,
                         planVersion,
-                        new Coordenada(cfg.depositoLat(), cfg.depositoLon()),
-                        cfg.capacidadeVeiculo(),
-                        capacidadesEntregadores,
-                        cfg.horarioInicio(),
-                        cfg.horarioFim(),
-                        entregadoresAtivos,
-                        pedidosParaSolver);
-
-                if (solverJobsEnabled) {
-                    RotaSolverJobSupport.registrarSolverJobEmExecucao(
-                            connectionFactory, gson, currentJobId, planVersion, request);
+                        solverJobsEnabled,
+                        planVersionEnabled,
+                        jobIdEnabled,
+                        cfg,
+                        limite,
+                        candidatos,
+                        reducoes,
+                        requests,
+                        inputFingerprint));
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha de banco ao planejar rotas", e);
+        }
+    }
+
+    /**
+     * Passo 3: numa transacao nova e sob o lock do escopo, confere que o ciclo ainda e o vigente e valida o plano
+     * contra o estado atual: entregadores ainda na frota do escopo, pedidos ainda elegiveis e carga de cada rota
+     * dentro da capacidade atual. Mudancas que nao violam o plano (uma entrega concluida que libera capacidade, um
+     * pedido novo) nao o descartam; os pedidos novos entram no proximo ciclo. So entao troca a camada PLANEJADA do
+     * escopo pelo plano. Um plano violado e descartado com {@link PlanoInvalidadoException}, para novo ciclo.
+     */
+    private PlanejamentoResultado gravarPlano(
+            CicloPlanejamento ciclo, CandidatoPlano vencedor, SolverResponse solverResponse) throws SQLException {
+        try (Connection conn = connectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                adquirirLockPlanejamento(conn, ciclo.regiao());
+                if (isPlanejamentoPreemptado(conn, ciclo.escopo(), ciclo.jobId(), ciclo.solverJobsEnabled())
+                        || !isCicloVigente(conn, ciclo.escopo(), ciclo.jobId())) {
+                    throw new PlanejamentoPreemptadoException(MOTIVO_PREEMPCAO);
                 }
 
-                SolverResponse solverResponse = solverClient.solve(request);
-                if (isPlanejamentoPreemptado(conn, currentJobId, solverJobsEnabled)) {
-                    throw new PlanejamentoPreemptadoException();
+                ConfiguracaoSnapshot snapshot = configuracaoSnapshotService.obter(conn);
+                ConfiguracaoRoteirizacao cfg = carregarConfiguracao(snapshot);
+                List<Integer> entregadoresAtivos = entregadoresDoEscopo(snapshot, ciclo.regiao());
+                List<Integer> capacidades = calcularCapacidadesPorPolitica(
+                        conn, entregadoresAtivos, cfg.capacidadeVeiculo(), vencedor.politica());
+                limparCamadaSecundariaPlanejada(conn, ciclo.regiao());
+                List<PedidoPlanejavel> pedidos =
+                        buscarPedidosParaSolver(conn, somar(capacidades), ciclo.limite(), false, ciclo.regiao());
+                Map<Integer, PedidoPlanejavel> pedidosPorId = indexarPedidosPorId(pedidos);
+                try {
+                    validarRespostaSolver(solverResponse, entregadoresAtivos, capacidades, pedidosPorId);
+                } catch (IllegalStateException e) {
+                    // O plano ja passou pela validacao contra o snapshot resolvido: o que falha aqui mudou depois.
+                    PLANOS_INVALIDADOS.increment();
+                    LOGGER.log(
+                            Level.INFO,
+                            "event=planejamento_plano_invalidado job_id={0} regiao={1} motivo={2} total={3}",
+                            new Object[] {ciclo.jobId(), ciclo.escopo(), e.getMessage(), PLANOS_INVALIDADOS.sum()});
+                    throw new PlanoInvalidadoException(MOTIVO_PLANO_INVALIDADO + ": " + e.getMessage());
                 }
-                Map<Integer, PedidoPlanejavel> pedidosPorId = indexarPedidosPorId(pedidosPlanejaveis);
-                validarRespostaSolver(solverResponse, entregadoresAtivos, capacidadesEntregadores, pedidosPorId);
 
+                int rotasCriadas = 0;
+                int entregasCriadas = 0;
                 for (RotaSolver rota : solverResponse.getRotas()) {
                     int rotaId = inserirRota(
                             conn,
                             rota.getEntregadorId(),
                             rota.getNumeroNoDia(),
-                            planVersion,
-                            planVersionEnabled,
-                            currentJobId,
-                            jobIdEnabled);
+                            ciclo.planVersion(),
+                            ciclo.planVersionEnabled(),
+                            ciclo.jobId(),
+                            ciclo.jobIdEnabled());
                     rotasCriadas++;
 
                     for (Parada parada : rota.getParadas()) {
                         inserirEntrega(
-                                conn, parada, rotaId, planVersion, planVersionEnabled, currentJobId, jobIdEnabled);
+                                conn,
+                                parada,
+                                rotaId,
+                                ciclo.planVersion(),
+                                ciclo.planVersionEnabled(),
+                                ciclo.jobId(),
+                                ciclo.jobIdEnabled());
                         confirmarPedidoSeNecessario(conn, pedidosPorId.get(parada.getPedidoId()));
                         entregasCriadas++;
                     }
                 }
 
                 conn.commit();
-                if (solverJobsEnabled) {
-                    RotaSolverJobSupport.finalizarSolverJob(
-                            connectionFactory, gson, currentJobId, "CONCLUIDO", null, solverResponse);
-                }
                 return new PlanejamentoResultado(
                         rotasCriadas,
                         entregasCriadas,
                         solverResponse.getNaoAtendidos().size());
-            } catch (PlanejamentoPreemptadoException e) {
-                conn.rollback();
-                if (solverJobsEnabled && currentJobId != null) {
-                    RotaSolverJobSupport.finalizarSolverJob(
-                            connectionFactory,
-                            gson,
-                            currentJobId,
-                            "CANCELADO",
-                            "Job preemptado por solicitacao mais recente",
-                            null);
-                }
-                return new PlanejamentoResultado(0, 0, 0);
-            } catch (InterruptedException e) {
-                conn.rollback();
-                if (solverJobsEnabled && currentJobId != null) {
-                    RotaSolverJobSupport.finalizarSolverJob(
-                            connectionFactory,
-                            gson,
-                            currentJobId,
-                            "FALHOU",
-                            "Thread interrompida ao chamar solver",
-                            null);
-                }
-                Thread.currentThread().interrupt();
-                throw new IllegalStateException("Thread interrompida ao chamar solver", e);
-            } catch (Exception e) {
+            } catch (SQLException | RuntimeException e) {
                 conn.rollback();
-                if (solverJobsEnabled && currentJobId != null) {
-                    RotaSolverJobSupport.finalizarSolverJob(
-                            connectionFactory, gson, currentJobId, "FALHOU", e.getMessage(), null);
-                }
-                throw new IllegalStateException("Falha ao planejar rotas", e);
+                throw e;
             } finally {
-                if (currentJobId != null) {
-                    clearActiveJob(currentJobId);
-                }
                 conn.setAutoCommit(true);
             }
-        } catch (SQLException e) {
-            throw new IllegalStateException("Falha de banco ao planejar rotas", e);
         }
     }
 
-    private ConfiguracaoRoteirizacao carregarConfiguracao(Connection conn) throws SQLException {
-        String sql = "SELECT chave, valor FROM configuracoes WHERE chave IN "
-                + "('capacidade_veiculo', 'horario_inicio_expediente', 'horario_fim_expediente', "
-                + "'deposito_latitude', 'deposito_longitude', 'frota_perfil_ativo', "
-                + "'capacidade_frota_moto', 'capacidade_frota_carro')";
+    private static List<Integer> entregadoresDoEscopo(ConfiguracaoSnapshot snapshot, String regiao) {
+        if (regiao == null) {
+            return snapshot.entregadoresAtivos();
+        }
+        return ESCOPO_SEM_REGIAO.equals(regiao)
+                ? snapshot.entregadoresAtivosSemRegiao()
+                : snapshot.entregadoresAtivosDaRegiao(regiao);
+    }
+
+    /**
+     * Ha ciclo com lease vigente que exclua este: o do proprio escopo ou o global, para uma regiao; qualquer um, para
+     * o global. Espelha os locks de {@link #tentarAdquirirLockPlanejamento} durante a resolucao.
+     */
+    private static boolean isEscopoEmPlanejamento(Connection conn, String regiao) throws SQLException {
+        String sql = "SELECT 1 FROM planejamento_ciclos "
+                + "WHERE lease_ate >= LOCALTIMESTAMP"
+                + (regiao == null ? "" : " AND escopo IN (?, '" + ESCOPO_GLOBAL + "')")
+                + " LIMIT 1";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (regiao != null) {
+                stmt.setString(1, regiao);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /** Registra o ciclo como o vigente do escopo; roda sob o lock do escopo, depois de {@link #isEscopoEmPlanejamento}. */
+    private static void reivindicarEscopo(Connection conn, String escopo, long planVersion, String jobId)
+            throws SQLException {
+        String sql = "INSERT INTO planejamento_ciclos (escopo, plan_version, job_id, iniciado_em, lease_ate) "
+                + "VALUES (?, ?, ?, LOCALTIMESTAMP, LOCALTIMESTAMP + (? * INTERVAL '1 millisecond')) "
+                + "ON CONFLICT (escopo) DO UPDATE SET "
+                + "plan_version = EXCLUDED.plan_version, "
+                + "job_id = EXCLUDED.job_id, "
+                + "iniciado_em = EXCLUDED.iniciado_em, "
+                + "lease_ate = EXCLUDED.lease_ate";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, escopo);
+            stmt.setLong(2, planVersion);
+            stmt.setString(3, jobId);
+            stmt.setLong(4, LEASE_CICLO.toMillis());
+            stmt.executeUpdate();
+        }
+    }
 
-        Map<String, String> configs = new HashMap<>();
+    /** O escopo ainda e deste job: nenhum outro ciclo o reivindicou depois de um lease vencido. */
+    private static boolean isCicloVigente(Connection conn, String escopo, String jobId) throws SQLException {
+        try (PreparedStatement stmt =
+                conn.prepareStatement("SELECT job_id FROM planejamento_ciclos WHERE escopo = ? FOR UPDATE")) {
+            stmt.setString(1, escopo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && jobId.equals(rs.getString("job_id"));
+            }
+        }
+    }
 
-        try (Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
+    private void liberarEscopo(String escopo, String jobId) {
+        String sql = "UPDATE planejamento_ciclos SET lease_ate = NULL WHERE escopo = ? AND job_id = ?";
+        try (Connection conn = connectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, escopo);
+            stmt.setString(2, jobId);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // O lease vence sozinho; ate la o escopo so fica sem novos ciclos.
+            LOGGER.log(
+                    Level.WARNING,
+                    "event=planejamento_escopo_nao_liberado regiao={0} job_id={1} message={2}",
+                    new Object[] {escopo, jobId, e.getMessage()});
+        }
+    }
 
-            while (rs.next()) {
-                configs.put(rs.getString("chave"), rs.getString("valor"));
+    /**
+     * What-if somente leitura: resolve o snapshot atual sob cada cenario em paralelo e devolve a pontuacao de cada
+     * um. Roda numa transacao READ ONLY, sem lock de planejamento; os pedidos da camada PLANEJADA entram como no
+     * ciclo real, que a refaz, mas nada e apagado nem gravado.
+     */
+    public SimulacaoPlanejamentoResultado simularCenarios(List<CenarioPlanejamento> cenarios) {
+        Objects.requireNonNull(cenarios, "cenarios nao pode ser nulo");
+        if (cenarios.isEmpty() || cenarios.size() > MAX_CENARIOS_SIMULACAO) {
+            throw new IllegalArgumentException("Simulacao exige de 1 a " + MAX_CENARIOS_SIMULACAO + " cenarios");
+        }
+        if (cenarios.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("cenarios nao pode conter item nulo");
+        }
+
+        String prefixoJob = "simulacao-" + UUID.randomUUID();
+        ConfiguracaoRoteirizacao cfg;
+        List<CandidatoPlano> candidatos = new ArrayList<>(cenarios.size());
+        List<Integer> capacidadesVeiculo = new ArrayList<>(cenarios.size());
+        try (Connection conn = connectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET TRANSACTION READ ONLY");
+                }
+                ConfiguracaoSnapshot snapshot = configuracaoSnapshotService.obter(conn);
+                cfg = carregarConfiguracao(snapshot);
+                LocalTime limite = limiteHorizonte(conn, cfg.horizonteMinutos());
+                for (int i = 0; i < cenarios.size(); i++) {
+                    CenarioPlanejamento cenario = cenarios.get(i);
+                    List<Integer> entregadores = ajustarFrota(snapshot.entregadoresAtivos(), cenario.entregadores());
+                    int capacidadeVeiculo =
+                            cenario.capacidadeVeiculo() == null ? cfg.capacidadeVeiculo() : cenario.capacidadeVeiculo();
+                    List<Integer> capacidades = calcularCapacidadesPorPolitica(
+                            conn, entregadores, capacidadeVeiculo, cenario.capacidadePolicy());
+                    List<PedidoPlanejavel> pedidos =
+                            buscarPedidosParaSolver(conn, somar(capacidades), limite, true, null);
+                    candidatos.add(new CandidatoPlano(
+                            cenario.capacidadePolicy(),
+                            capacidades,
+                            pedidos,
+                            montarRequest(
+                                    prefixoJob + "-" + i,
+                                    null,
+                                    cfg,
+                                    capacidadeVeiculo,
+                                    capacidades,
+                                    entregadores,
+                                    pedidos)));
+                    capacidadesVeiculo.add(capacidadeVeiculo);
+                }
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
             }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Falha de banco ao simular planejamento", e);
         }
 
+        List<ReducaoProblema.Reducao> reducoes = new ArrayList<>(candidatos.size());
+        for (CandidatoPlano candidato : candidatos) {
+            reducoes.add(ReducaoProblema.reduzir(candidato.request()));
+        }
+        List<SolverResponse> respostas;
+        try {
+            respostas = resolverCandidatos(
+                            reducoes.stream()
+                                    .map(ReducaoProblema.Reducao::request)
+                                    .toList(),
+                            cfg.pedidosPorTerritorio())
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Thread interrompida ao simular planejamento", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Falha ao simular planejamento", e.getCause());
+        }
+
+        List<PontuacaoPlano.Pontuacao> pontuacoes = new ArrayList<>(candidatos.size());
+        List<SimulacaoPlanejamentoResultado.AvaliacaoCenario> avaliacoes = new ArrayList<>(candidatos.size());
+        Map<Integer, PedidoSolver> elegiveis = indexarPedidosElegiveis(candidatos);
+        for (int i = 0; i < candidatos.size(); i++) {
+            CandidatoPlano candidato = candidatos.get(i);
+            SolverResponse resposta = reducoes.get(i).expandir(respostas.get(i));
+            PontuacaoPlano.Pontuacao pontuacao = PontuacaoPlano.pontuar(resposta, elegiveis, cfg.horarioInicio());
+            pontuacoes.add(pontuacao);
+            avaliacoes.add(new SimulacaoPlanejamentoResultado.AvaliacaoCenario(
+                    candidato.politica().name(),
+                    capacidadesVeiculo.get(i),
+                    candidato.request().getEntregadores().size(),
+                    somar(candidato.capacidades()),
+                    candidato.pedidos().size(),
+                    resposta.getRotas().size(),
+                    resposta.getRotas().stream()
+                            .mapToInt(rota -> rota.getParadas().size())
+                            .sum(),
+                    pontuacao.naoAtendidos(),
+                    pontuacao.violacoesHard(),
+                    pontuacao.tempoTotalMinutos()));
+        }
+        int melhor = PontuacaoPlano.melhor(pontuacoes);
+        SIMULACOES.increment();
+        LOGGER.log(
+                Level.INFO,
+                "event=planejamento_simulado job_id={0} cenarios={1} melhor={2} total={3}",
+                new Object[] {prefixoJob, candidatos.size(), melhor, SIMULACOES.sum()});
+        return new SimulacaoPlanejamentoResultado(melhor, List.copyOf(avaliacoes));
+    }
+
+    private ConfiguracaoRoteirizacao carregarConfiguracao(ConfiguracaoSnapshot snapshot) {
+        return snapshot.derivar("rota.configuracao_roteirizacao", RotaService::parseConfiguracao);
+    }
+
+    private static ConfiguracaoRoteirizacao parseConfiguracao(ConfiguracaoSnapshot snapshot) {
+        Map<String, String> configs = snapshot.valores();
         int capacidadeResolvida = resolverCapacidadeVeiculo(configs);
         return new ConfiguracaoRoteirizacao(
                 capacidadeResolvida,
                 getObrigatorio(configs, "horario_inicio_expediente"),
                 getObrigatorio(configs, "horario_fim_expediente"),
                 Double.parseDouble(getObrigatorio(configs, "deposito_latitude")),
-                Double.parseDouble(getObrigatorio(configs, "deposito_longitude")));
+                Double.parseDouble(getObrigatorio(configs, "deposito_longitude")),
+                resolverInteiroOpcional(configs, CHAVE_PEDIDOS_POR_TERRITORIO),
+                resolverInteiroOpcional(configs, CHAVE_HORIZONTE_MINUTOS));
     }
 
-    private List<Integer> buscarEntregadoresAtivos(Connection conn) throws SQLException {
-        String sql = "SELECT id FROM users WHERE papel = 'entregador' AND ativo = true ORDER BY id";
-        List<Integer> ids = new ArrayList<>();
+    /** 0 (ou chave ausente) desliga o recurso: decomposicao geografica, horizonte de planejamento. */
+    static int resolverInteiroOpcional(Map<String, String> configs, String chave) {
+        String valor = configs.get(chave);
+        if (valor == null || valor.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(valor.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Configuracao invalida para " + chave + ": " + valor, e);
+        }
+    }
 
-        try (PreparedStatement stmt = conn.prepareStatement(sql);
+    private static LocalTime limiteHorizonte(Connection conn, int horizonteMinutos) throws SQLException {
+        if (horizonteMinutos <= 0) {
+            return null;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT LOCALTIME");
                 ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                ids.add(rs.getInt("id"));
-            }
+            rs.next();
+            return HorizontePlanejamentoService.calcularLimite(rs.getObject(1, LocalTime.class), horizonteMinutos);
         }
-
-        return ids;
     }
 
-    private List<PedidoPlanejavel> buscarPedidosParaSolver(Connection conn, int capacidadeLivreTotal)
+    private List<PedidoPlanejavel> buscarPedidosParaSolver(
+            Connection conn,
+            int capacidadeLivreTotal,
+            LocalTime limiteHorizonte,
+            boolean ignorarCamadaPlanejada,
+            String regiao)
             throws SQLException {
         // FIFO global (criado_em, id): PENDENTE elegivel + CONFIRMADO sem entrega aberta.
+        // Com horizonte, PENDENTE HARD que abre depois do limite fica para um ciclo seguinte; CONFIRMADO ja foi
+        // planejado e nunca sai do plano por causa do horizonte.
+        // ignorarCamadaPlanejada enxerga o snapshot como apos limparCamadaSecundariaPlanejada do mesmo escopo, sem
+        // apagar nada.
+        // Com regiao, so entram pedidos do escopo (SQL_ESCOPO_DO_PEDIDO): a regiao de referencia mais proxima do
+        // cliente, ou o escopo residual.
         String sql = "SELECT "
                 + "p.id AS pedido_id, "
                 + "p.status::text AS pedido_status, "
@@ -317,35 +836,56 @@ public class RotaService {
                 + "    SELECT 1 FROM entregas e2 "
                 + "    WHERE e2.pedido_id = p.id "
                 + "    AND e2.status::text IN ('PENDENTE', 'EM_EXECUCAO')"
+                + (ignorarCamadaPlanejada
+                        ? "    AND NOT EXISTS (SELECT 1 FROM rotas r WHERE r.id = e2.rota_id "
+                                + "AND r.data = CURRENT_DATE AND r.status::text = 'PLANEJADA'"
+                                + filtroCamadaDoEscopo(regiao)
+                                + ")"
+                        : "")
                 + ") "
+                + (limiteHorizonte == null
+                        ? ""
+                        : "AND (p.status::text <> 'PENDENTE' OR p.janela_tipo::text <> 'HARD' "
+                                + "OR p.janela_inicio IS NULL OR p.janela_inicio <= ?) ")
+                + (regiao == null ? "" : "AND " + SQL_ESCOPO_DO_PEDIDO + " = ? ")
                 + "ORDER BY p.criado_em, p.id";
 
         List<PedidoPlanejavel> elegiveis = new ArrayList<>();
 
-        try (PreparedStatement stmt = conn.prepareStatement(sql);
-                ResultSet rs = stmt.executeQuery()) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int indice = 1;
+            if (ignorarCamadaPlanejada && regiao != null) {
+                stmt.setString(indice++, regiao);
+            }
+            if (limiteHorizonte != null) {
+                stmt.setObject(indice++, limiteHorizonte);
+            }
+            if (regiao != null) {
+                stmt.setString(indice, regiao);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Double lat = toNullableDouble(rs, "latitude");
+                    Double lon = toNullableDouble(rs, "longitude");
 
-            while (rs.next()) {
-                Double lat = toNullableDouble(rs, "latitude");
-                Double lon = toNullableDouble(rs, "longitude");
+                    if (lat == null || lon == null) {
+                        continue;
+                    }
 
-                if (lat == null || lon == null) {
-                    continue;
+                    LocalTime janelaInicio = rs.getObject("janela_inicio", LocalTime.class);
+                    LocalTime janelaFim = rs.getObject("janela_fim", LocalTime.class);
+
+                    PedidoSolver pedidoSolver = new PedidoSolver(
+                            rs.getInt("pedido_id"),
+                            lat,
+                            lon,
+                            rs.getInt("quantidade_galoes"),
+                            rs.getString("janela_tipo"),
+                            formatTime(janelaInicio),
+                            formatTime(janelaFim),
+                            rs.getInt("prioridade"));
+                    elegiveis.add(new PedidoPlanejavel(pedidoSolver, rs.getString("pedido_status")));
                 }
-
-                LocalTime janelaInicio = rs.getObject("janela_inicio", LocalTime.class);
-                LocalTime janelaFim = rs.getObject("janela_fim", LocalTime.class);
-
-                PedidoSolver pedidoSolver = new PedidoSolver(
-                        rs.getInt("pedido_id"),
-                        lat,
-                        lon,
-                        rs.getInt("quantidade_galoes"),
-                        rs.getString("janela_tipo"),
-                        formatTime(janelaInicio),
-                        formatTime(janelaFim),
-                        rs.getInt("prioridade"));
-                elegiveis.add(new PedidoPlanejavel(pedidoSolver, rs.getString("pedido_status")));
             }
         }
 
@@ -371,22 +911,127 @@ public class RotaService {
         }
     }
 
-    private void limparCamadaSecundariaPlanejada(Connection conn) throws SQLException {
+    private void registrarReducao(String jobId, ReducaoProblema.Reducao reducao) {
+        reducao.descartados()
+                .forEach((pedidoId, motivo) -> LOGGER.log(
+                        Level.INFO,
+                        "event=pedido_descartado_pre_solver job_id={0} pedido_id={1} motivo={2}",
+                        new Object[] {jobId, pedidoId, motivo}));
+        int removidos = reducao.pedidosRemovidos();
+        if (removidos > 0) {
+            PEDIDOS_REDUZIDOS_PRE_SOLVER.add(removidos);
+            LOGGER.log(
+                    Level.INFO,
+                    "event=planejamento_reduzido job_id={0} paradas_compostas={1} descartados={2} nos_solver={3}",
+                    new Object[] {
+                        jobId,
+                        reducao.composicao().size(),
+                        reducao.descartados().size(),
+                        reducao.request().getPedidos().size()
+                    });
+        }
+    }
+
+    private PlanoReaproveitavel buscarPlanoReaproveitavel(
+            Connection conn, boolean solverJobsEnabled, boolean jobIdEnabled) throws SQLException {
+        if (!solverJobsEnabled || !jobIdEnabled || !RotaSolverJobSupport.hasInputFingerprintColumn(conn)) {
+            return null;
+        }
+        Optional<RotaSolverJobSupport.JobConcluido> ultimo = RotaSolverJobSupport.buscarUltimoJobConcluido(conn);
+        if (ultimo.isEmpty() || ultimo.get().inputFingerprint() == null) {
+            return null;
+        }
+        String jobId = ultimo.get().jobId();
+        if (!RotaSolverJobSupport.isPlanoDoJobIntacto(conn, jobId)) {
+            return null;
+        }
+        return new PlanoReaproveitavel(
+                jobId, ultimo.get().inputFingerprint(), RotaSolverJobSupport.contarEntregasDoJob(conn, jobId));
+    }
+
+    /**
+     * Rotas PLANEJADA do dia na versao de plano mais recente, com as entregas pendentes na ordem da rota, para
+     * servir de solucao inicial ao proximo planejamento. Precisa rodar antes da limpeza da camada secundaria.
+     * Com regiao, cada regiao tem a propria versao de plano: filtra pelos entregadores do escopo.
+     */
+    private List<RotaInicial> buscarRotasIniciais(Connection conn, boolean planVersionEnabled, String regiao)
+            throws SQLException {
+        String sql = "SELECT r.id AS rota_id, r.entregador_id, r.numero_no_dia, e.pedido_id "
+                + "FROM rotas r "
+                + "JOIN entregas e ON e.rota_id = r.id "
+                + "WHERE r.data = CURRENT_DATE "
+                + "AND r.status::text = 'PLANEJADA' "
+                + "AND e.status::text = 'PENDENTE' "
+                + (regiao != null
+                        ? "AND r.entregador_id IN (SELECT u.id FROM users u WHERE "
+                                + SQL_ESCOPO_DO_ENTREGADOR
+                                + " = ?) "
+                        : planVersionEnabled
+                                ? "AND r.plan_version = (SELECT MAX(plan_version) FROM rotas "
+                                        + "WHERE data = CURRENT_DATE AND status::text = 'PLANEJADA') "
+                                : "")
+                + "ORDER BY r.entregador_id, r.numero_no_dia, e.ordem_na_rota";
+        // Uma rota inicial por viagem: o solver usa numero_no_dia para semear a viagem certa do entregador.
+        Map<Integer, RotaInicialEmMontagem> porRota = new LinkedHashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (regiao != null) {
+                stmt.setString(1, regiao);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int entregadorId = rs.getInt("entregador_id");
+                    int numeroNoDia = rs.getInt("numero_no_dia");
+                    porRota.computeIfAbsent(
+                                    rs.getInt("rota_id"),
+                                    ignored -> new RotaInicialEmMontagem(entregadorId, numeroNoDia, new ArrayList<>()))
+                            .pedidos()
+                            .add(rs.getInt("pedido_id"));
+                }
+            }
+        }
+        List<RotaInicial> rotasIniciais = new ArrayList<>(porRota.size());
+        porRota.values()
+                .forEach(rota ->
+                        rotasIniciais.add(new RotaInicial(rota.entregadorId(), rota.numeroNoDia(), rota.pedidos())));
+        return rotasIniciais;
+    }
+
+    /**
+     * Apaga a camada PLANEJADA do dia. Com regiao, apaga so a dos entregadores do escopo; a dos entregadores sem
+     * regiao (inclusive plano global anterior a particao) e refeita pelo escopo residual.
+     */
+    private void limparCamadaSecundariaPlanejada(Connection conn, String regiao) throws SQLException {
+        String filtroRegiao = filtroCamadaDoEscopo(regiao);
         String deleteEntregas = "DELETE FROM entregas e "
                 + "USING rotas r "
                 + "WHERE e.rota_id = r.id "
                 + "AND r.data = CURRENT_DATE "
-                + "AND r.status::text = 'PLANEJADA'";
+                + "AND r.status::text = 'PLANEJADA'"
+                + filtroRegiao;
         try (PreparedStatement stmt = conn.prepareStatement(deleteEntregas)) {
+            if (regiao != null) {
+                stmt.setString(1, regiao);
+            }
             stmt.executeUpdate();
         }
 
-        String deleteRotas = "DELETE FROM rotas WHERE data = CURRENT_DATE AND status::text = 'PLANEJADA'";
+        String deleteRotas =
+                "DELETE FROM rotas r WHERE r.data = CURRENT_DATE AND r.status::text = 'PLANEJADA'" + filtroRegiao;
         try (PreparedStatement stmt = conn.prepareStatement(deleteRotas)) {
+            if (regiao != null) {
+                stmt.setString(1, regiao);
+            }
             stmt.executeUpdate();
         }
     }
 
+    /** Rotas {@code r} da camada PLANEJADA que o ciclo do escopo refaz; com regiao, consome um parametro. */
+    private static String filtroCamadaDoEscopo(String regiao) {
+        return regiao == null
+                ? ""
+                : " AND r.entregador_id IN (SELECT u.id FROM users u WHERE " + SQL_ESCOPO_DO_ENTREGADOR + " = ?)";
+    }
+
     private int inserirRota(
             Connection conn,
             int entregadorId,
@@ -444,7 +1089,7 @@ public class RotaService {
         throw new SQLException("Falha ao inserir rota apos tentativas");
     }
 
-    private void validarRespostaSolver(
+    static void validarRespostaSolver(
             SolverResponse solverResponse,
             List<Integer> entregadoresAtivos,
             List<Integer> capacidadesEntregadores,
@@ -496,7 +1141,7 @@ public class RotaService {
         }
     }
 
-    private Map<Integer, Integer> mapearCapacidadePorEntregador(
+    private static Map<Integer, Integer> mapearCapacidadePorEntregador(
             List<Integer> entregadoresAtivos, List<Integer> capacidadesEntregadores) {
         if (entregadoresAtivos.size() != capacidadesEntregadores.size()) {
             throw new IllegalStateException("Configuracao invalida: capacidades por entregador inconsistente");
@@ -592,13 +1237,11 @@ public class RotaService {
 
     private List<Integer> calcularCapacidadesRemanescentesPorEntregador(
             Connection conn, List<Integer> entregadoresAtivos, int capacidadePadrao) throws SQLException {
-        String sql = "SELECT r.entregador_id, COALESCE(SUM(p.quantidade_galoes), 0) AS carga_comprometida "
+        String sql = "SELECT r.entregador_id, COALESCE(SUM(c.carga_comprometida_galoes), 0) AS carga_comprometida "
                 + "FROM rotas r "
-                + "JOIN entregas e ON e.rota_id = r.id "
-                + "JOIN pedidos p ON p.id = e.pedido_id "
+                + "JOIN rotas_contadores c ON c.rota_id = r.id "
                 + "WHERE r.data = CURRENT_DATE "
                 + "AND r.status::text = 'EM_ANDAMENTO' "
-                + "AND e.status::text IN ('PENDENTE', 'EM_EXECUCAO') "
                 + "GROUP BY r.entregador_id";
 
         Map<Integer, Integer> cargaComprometidaPorEntregador = new HashMap<>();
@@ -689,7 +1332,7 @@ public class RotaService {
         return time.format(HH_MM);
     }
 
-    private static String getObrigatorio(Map<String, String> configs, String chave) {
+    static String getObrigatorio(Map<String, String> configs, String chave) {
         String valor = configs.get(chave);
         if (valor == null || valor.isBlank()) {
             throw new IllegalStateException("Configuracao obrigatoria ausente: " + chave);
@@ -697,7 +1340,7 @@ public class RotaService {
         return valor;
     }
 
-    private static int resolverCapacidadeVeiculo(Map<String, String> configs) {
+    static int resolverCapacidadeVeiculo(Map<String, String> configs) {
         int capacidadePadrao =
                 parseCapacidadePositiva(getObrigatorio(configs, "capacidade_veiculo"), "capacidade_veiculo");
         String perfil = configs.getOrDefault("frota_perfil_ativo", "PADRAO");
@@ -732,7 +1375,116 @@ public class RotaService {
         }
     }
 
-    private boolean tentarAdquirirLockPlanejamento(Connection conn) throws SQLException {
+    private static SolverRequest montarRequest(
+            String jobId,
+            Long planVersion,
+            ConfiguracaoRoteirizacao cfg,
+            int capacidadeVeiculo,
+            List<Integer> capacidades,
+            List<Integer> entregadores,
+            List<PedidoPlanejavel> pedidos) {
+        return new SolverRequest(
+                jobId,
+                planVersion,
+                new Coordenada(cfg.depositoLat(), cfg.depositoLon()),
+                capacidadeVeiculo,
+                capacidades,
+                cfg.horarioInicio(),
+                cfg.horarioFim(),
+                entregadores,
+                pedidos.stream().map(PedidoPlanejavel::pedidoSolver).toList());
+    }
+
+    /**
+     * Resolve os requests em paralelo; cancelar o future devolvido cancela todos os jobs. Request sem pedido ou
+     * sem entregador nao vai ao solver.
+     */
+    private CompletableFuture<List<SolverResponse>> resolverCandidatos(
+            List<SolverRequest> requests, int pedidosPorTerritorio) {
+        List<CompletableFuture<SolverResponse>> filhos = new ArrayList<>(requests.size());
+        for (SolverRequest request : requests) {
+            if (request.getPedidos().isEmpty() || request.getEntregadores().isEmpty()) {
+                List<Integer> naoAtendidos = request.getPedidos().stream()
+                        .map(PedidoSolver::getPedidoId)
+                        .toList();
+                filhos.add(CompletableFuture.completedFuture(new SolverResponse(List.of(), naoAtendidos)));
+            } else {
+                filhos.add(DecomposicaoTerritorial.resolver(solverClient, request, pedidosPorTerritorio));
+            }
+        }
+        CompletableFuture<List<SolverResponse>> resultado = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelado = super.cancel(mayInterruptIfRunning);
+                if (cancelado) {
+                    filhos.forEach(filho -> filho.cancel(true));
+                }
+                return cancelado;
+            }
+        };
+        CompletableFuture.allOf(filhos.toArray(CompletableFuture[]::new)).whenComplete((ignored, erro) -> {
+            if (erro != null) {
+                resultado.completeExceptionally(
+                        erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro);
+            } else {
+                resultado.complete(filhos.stream().map(CompletableFuture::join).toList());
+            }
+        });
+        return resultado;
+    }
+
+    /** Frota do cenario: os primeiros N ativos ou os ativos mais entregadores hipoteticos (ids negativos). */
+    private static List<Integer> ajustarFrota(List<Integer> entregadoresAtivos, Integer tamanho) {
+        if (tamanho == null || tamanho == entregadoresAtivos.size()) {
+            return entregadoresAtivos;
+        }
+        if (tamanho < entregadoresAtivos.size()) {
+            return List.copyOf(entregadoresAtivos.subList(0, tamanho));
+        }
+        List<Integer> frota = new ArrayList<>(entregadoresAtivos);
+        for (int hipotetico = -1; frota.size() < tamanho; hipotetico--) {
+            frota.add(hipotetico);
+        }
+        return frota;
+    }
+
+    private static int somar(List<Integer> capacidades) {
+        return capacidades.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private static Map<Integer, PedidoSolver> indexarPedidosSolver(List<PedidoPlanejavel> pedidos) {
+        Map<Integer, PedidoSolver> index = new HashMap<>();
+        for (PedidoPlanejavel item : pedidos) {
+            index.put(item.pedidoSolver().getPedidoId(), item.pedidoSolver());
+        }
+        return index;
+    }
+
+    /** Uniao dos pedidos elegiveis dos cenarios, base comum para pontuar todos. */
+    private static Map<Integer, PedidoSolver> indexarPedidosElegiveis(List<CandidatoPlano> candidatos) {
+        Map<Integer, PedidoSolver> index = new HashMap<>();
+        for (CandidatoPlano candidato : candidatos) {
+            index.putAll(indexarPedidosSolver(candidato.pedidos()));
+        }
+        return index;
+    }
+
+    /**
+     * Global: lock exclusivo em {@link #PLANEJAMENTO_LOCK_KEY}. Regiao: o mesmo lock em modo compartilhado (exclui
+     * apenas um planejamento global concorrente) mais um lock exclusivo da regiao no espaco de duas chaves.
+     */
+    private boolean tentarAdquirirLockPlanejamento(Connection conn, String regiao) throws SQLException {
+        if (regiao != null) {
+            String sql = "SELECT pg_try_advisory_xact_lock_shared(?) AND pg_try_advisory_xact_lock(?, hashtext(?))";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, PLANEJAMENTO_LOCK_KEY);
+                stmt.setInt(2, (int) PLANEJAMENTO_LOCK_KEY);
+                stmt.setString(3, regiao);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() && rs.getBoolean(1);
+                }
+            }
+        }
         try (PreparedStatement stmt = conn.prepareStatement("SELECT pg_try_advisory_xact_lock(?)")) {
             stmt.setLong(1, PLANEJAMENTO_LOCK_KEY);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -744,13 +1496,85 @@ public class RotaService {
         }
     }
 
+    /** Versao bloqueante de {@link #tentarAdquirirLockPlanejamento}, para a gravacao do plano ja resolvido. */
+    private void adquirirLockPlanejamento(Connection conn, String regiao) throws SQLException {
+        if (regiao != null) {
+            String sql = "SELECT pg_advisory_xact_lock_shared(?), pg_advisory_xact_lock(?, hashtext(?))";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, PLANEJAMENTO_LOCK_KEY);
+                stmt.setInt(2, (int) PLANEJAMENTO_LOCK_KEY);
+                stmt.setString(3, regiao);
+                stmt.execute();
+            }
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+            stmt.setLong(1, PLANEJAMENTO_LOCK_KEY);
+            stmt.execute();
+        }
+    }
+
+    /**
+     * Resolve pela API assincrona do solver; o future fica registrado por job para que preempcao e
+     * cancelamento interrompam a espera e cancelem o job remoto. Roda entre as duas transacoes do ciclo: o
+     * submit/poll/cancel nao segura conexao do pool nem lock de planejamento.
+     */
+    private <T> T aguardarSolucao(String jobId, CompletableFuture<T> solucao) throws IOException, InterruptedException {
+        solucoesEmAndamento.put(jobId, solucao);
+        try {
+            return solucao.get();
+        } catch (CancellationException e) {
+            throw new PlanejamentoPreemptadoException(MOTIVO_PREEMPCAO);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof CancellationException) {
+                throw new PlanejamentoPreemptadoException(MOTIVO_PREEMPCAO);
+            }
+            if (causa instanceof IOException io) {
+                throw io;
+            }
+            if (causa instanceof InterruptedException interrompido) {
+                throw interrompido;
+            }
+            if (causa instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Falha ao chamar solver", causa);
+        } catch (InterruptedException e) {
+            solucao.cancel(true);
+            throw e;
+        } finally {
+            solucoesEmAndamento.remove(jobId, solucao);
+        }
+    }
+
+    /**
+     * Interrompe a espera local pelo job, se esta instancia estiver resolvendo-o; usado ao receber o cancelamento
+     * publicado por outra instancia, que ja pediu o cancelamento ao solver.
+     */
+    public boolean cancelarSolucaoLocal(String jobId) {
+        if (jobId == null || jobId.isBlank()) {
+            return false;
+        }
+        CompletableFuture<?> solucao = solucoesEmAndamento.get(jobId);
+        return solucao != null && solucao.cancel(true);
+    }
+
+    private void cancelarSolucaoBestEffort(String jobId) {
+        CompletableFuture<?> solucao = solucoesEmAndamento.get(jobId);
+        if (solucao != null && solucao.cancel(true)) {
+            return;
+        }
+        solverClient.cancelBestEffort(jobId);
+    }
+
     private static String buildJobId(long planVersion) {
         return "job-plan-" + planVersion + "-" + UUID.randomUUID();
     }
 
-    private boolean isPlanejamentoPreemptado(Connection conn, String jobId, boolean solverJobsEnabled)
+    private boolean isPlanejamentoPreemptado(Connection conn, String escopo, String jobId, boolean solverJobsEnabled)
             throws SQLException {
-        if (!isCurrentJobActive(jobId)) {
+        if (!isCurrentJobActive(escopo, jobId)) {
             return true;
         }
         if (!solverJobsEnabled) {
@@ -759,23 +1583,78 @@ public class RotaService {
         return RotaSolverJobSupport.isCancelamentoSolicitadoNoBanco(conn, jobId);
     }
 
-    private boolean isCurrentJobActive(String jobId) {
+    private boolean isCurrentJobActive(String escopo, String jobId) {
         if (jobId == null || jobId.isBlank()) {
             return false;
         }
-        return jobId.equals(activeJobId.get());
+        return jobId.equals(jobsAtivosPorEscopo.get(escopo));
     }
 
-    private void clearActiveJob(String currentJobId) {
-        activeJobId.compareAndSet(currentJobId, null);
+    private void clearActiveJob(String escopo, String currentJobId) {
+        jobsAtivosPorEscopo.remove(escopo, currentJobId);
     }
 
     private static final class PlanejamentoPreemptadoException extends RuntimeException {
         private static final long serialVersionUID = 1L;
+
+        PlanejamentoPreemptadoException(String motivo) {
+            super(motivo);
+        }
+    }
+
+    private static final class PlanoInvalidadoException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PlanoInvalidadoException(String motivo) {
+            super(motivo);
+        }
     }
 
     private record ConfiguracaoRoteirizacao(
-            int capacidadeVeiculo, String horarioInicio, String horarioFim, double depositoLat, double depositoLon) {}
+            int capacidadeVeiculo,
+            String horarioInicio,
+            String horarioFim,
+            double depositoLat,
+            double depositoLon,
+            int pedidosPorTerritorio,
+            int horizonteMinutos) {}
+
+    record PedidoPlanejavel(PedidoSolver pedidoSolver, String statusPedido) {}
+
+    private record CandidatoPlano(
+            CapacidadePolicy politica,
+            List<Integer> capacidades,
+            List<PedidoPlanejavel> pedidos,
+            SolverRequest request) {}
+
+    private record PlanoReaproveitavel(String jobId, String inputFingerprint, int entregas) {}
+
+    private record RotaInicialEmMontagem(int entregadorId, int numeroNoDia, List<Integer> pedidos) {}
+
+    /** Tudo o que o passo de resolucao e o de gravacao precisam do snapshot lido em {@link #prepararCiclo}. */
+    private record CicloPlanejamento(
+            String escopo,
+            String regiao,
+            String jobId,
+            long planVersion,
+            boolean solverJobsEnabled,
+            boolean planVersionEnabled,
+            boolean jobIdEnabled,
+            ConfiguracaoRoteirizacao cfg,
+            LocalTime limite,
+            List<CandidatoPlano> candidatos,
+            List<ReducaoProblema.Reducao> reducoes,
+            List<SolverRequest> requests,
+            String inputFingerprint) {}
+
+    /** Ciclo pronto para resolver, ou o resultado de um ciclo que terminou ja na leitura do snapshot. */
+    private record PreparacaoCiclo(CicloPlanejamento ciclo, PlanejamentoResultado resultado) {
+        static PreparacaoCiclo pronto(CicloPlanejamento ciclo) {
+            return new PreparacaoCiclo(ciclo, null);
+        }
 
-    private record PedidoPlanejavel(PedidoSolver pedidoSolver, String statusPedido) {}
+        static PreparacaoCiclo encerrado(PlanejamentoResultado resultado) {
+            return new PreparacaoCiclo(null, resultado);
+        }
+    }
 }
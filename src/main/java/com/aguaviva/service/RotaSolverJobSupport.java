@@ -4,6 +4,7 @@ import com.aguaviva.repository.ConnectionFactory;
 import com.aguaviva.solver.SolverRequest;
 import com.aguaviva.solver.SolverResponse;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -12,12 +13,14 @@ import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 final class RotaSolverJobSupport {
 
+    static final String CANAL_CANCELAMENTO = "planejamento_cancelado";
     private static final Logger LOGGER = Logger.getLogger(RotaSolverJobSupport.class.getName());
     private static final LongAdder FINALIZACAO_JOB_FAILURES = new LongAdder();
 
@@ -103,15 +106,116 @@ final class RotaSolverJobSupport {
         return jobIds;
     }
 
+    /**
+     * Avisa as demais instancias por NOTIFY (entregue no commit da transacao de {@code conn}) para interromperem
+     * na hora a espera local pelos jobs cancelados, em vez de so perceberem no fim da resolucao.
+     */
+    static void notificarCancelamento(Connection conn, List<String> jobIds) throws SQLException {
+        if (jobIds.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt =
+                conn.prepareStatement("SELECT pg_notify(?, job_id) FROM UNNEST(?::text[]) AS job_id")) {
+            stmt.setString(1, CANAL_CANCELAMENTO);
+            stmt.setArray(2, conn.createArrayOf("text", jobIds.toArray()));
+            stmt.execute();
+        }
+    }
+
+    static boolean hasInputFingerprintColumn(Connection conn) throws SQLException {
+        return hasColumn(conn, "solver_jobs", "input_fingerprint");
+    }
+
+    /**
+     * SHA-256 das entradas que determinam o plano: deposito, capacidades, expediente, frota e pedidos
+     * (na ordem FIFO enviada ao solver). job_id e plan_version ficam de fora.
+     */
+    static String calcularInputFingerprint(Gson gson, SolverRequest request) {
+        EntradaCanonica entrada = new EntradaCanonica(
+                request.getDeposito(),
+                request.getCapacidadeVeiculo(),
+                request.getCapacidadesEntregadores(),
+                request.getHorarioInicio(),
+                request.getHorarioFim(),
+                request.getEntregadores(),
+                request.getPedidos());
+        return HashSupport.sha256Hex(gson.toJson(entrada));
+    }
+
+    static int contarEntregasDoJob(Connection conn, String jobId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM entregas WHERE job_id = ?")) {
+            stmt.setString(1, jobId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    static Optional<JobConcluido> buscarUltimoJobConcluido(Connection conn) throws SQLException {
+        String sql = "SELECT job_id, input_fingerprint FROM solver_jobs "
+                + "WHERE status::text = 'CONCLUIDO' "
+                + "ORDER BY plan_version DESC "
+                + "LIMIT 1";
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            return Optional.of(new JobConcluido(rs.getString("job_id"), rs.getString("input_fingerprint")));
+        }
+    }
+
+    /**
+     * Plano intacto: a camada PLANEJADA do dia e exatamente a do job, nenhuma rota do job saiu de
+     * PLANEJADA e nenhuma entrega do job saiu de PENDENTE.
+     */
+    static boolean isPlanoDoJobIntacto(Connection conn, String jobId) throws SQLException {
+        String sql = "SELECT "
+                + "(SELECT COUNT(*) FROM rotas r "
+                + "  WHERE r.data = CURRENT_DATE AND r.status::text = 'PLANEJADA' "
+                + "  AND r.job_id IS DISTINCT FROM ?) AS planejadas_de_outro_job, "
+                + "(SELECT COUNT(*) FROM rotas r "
+                + "  WHERE r.job_id = ? AND r.status::text <> 'PLANEJADA') AS rotas_alteradas, "
+                + "(SELECT COUNT(*) FROM entregas e "
+                + "  WHERE e.job_id = ? AND e.status::text <> 'PENDENTE') AS entregas_alteradas";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, jobId);
+            stmt.setString(2, jobId);
+            stmt.setString(3, jobId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong("planejadas_de_outro_job") == 0
+                        && rs.getLong("rotas_alteradas") == 0
+                        && rs.getLong("entregas_alteradas") == 0;
+            }
+        }
+    }
+
     static void registrarSolverJobEmExecucao(
             ConnectionFactory connectionFactory, Gson gson, String jobId, long planVersion, SolverRequest request)
             throws SQLException {
+        registrarSolverJobEmExecucao(connectionFactory, gson, jobId, planVersion, request, null);
+    }
+
+    static void registrarSolverJobEmExecucao(
+            ConnectionFactory connectionFactory,
+            Gson gson,
+            String jobId,
+            long planVersion,
+            SolverRequest request,
+            String inputFingerprint)
+            throws SQLException {
         try (Connection conn = connectionFactory.getConnection()) {
             if (!hasSolverJobsSchema(conn)) {
                 return;
             }
-            boolean hasRequestPayload = hasColumn(conn, "solver_jobs", "request_payload");
-            String requestPayload = gson.toJson(request);
+            boolean payloadStore = SolverPayloadSupport.hasPayloadStore(conn);
+            boolean hasRequestPayload = !payloadStore && hasColumn(conn, "solver_jobs", "request_payload");
+            String requestPayloadHash = payloadStore
+                    ? SolverPayloadSupport.armazenar(conn, requestPayloadSemIdentificadores(gson, request))
+                    : null;
+            String requestPayload = hasRequestPayload ? gson.toJson(request) : null;
             String sql =
                     "INSERT INTO solver_jobs (job_id, plan_version, status, cancel_requested, solicitado_em, iniciado_em, finalizado_em, erro) "
                             + "VALUES (?, ?, ?, false, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, NULL, NULL) "
@@ -136,6 +240,20 @@ final class RotaSolverJobSupport {
                                 + "finalizado_em = NULL, "
                                 + "erro = NULL, "
                                 + "request_payload = EXCLUDED.request_payload";
+            } else if (payloadStore) {
+                sql =
+                        "INSERT INTO solver_jobs (job_id, plan_version, status, cancel_requested, solicitado_em, iniciado_em, finalizado_em, erro, request_payload_hash) "
+                                + "VALUES (?, ?, ?, false, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, NULL, NULL, ?) "
+                                + "ON CONFLICT (job_id) DO UPDATE SET "
+                                + "plan_version = EXCLUDED.plan_version, "
+                                + "status = EXCLUDED.status, "
+                                + "cancel_requested = false, "
+                                + "solicitado_em = CURRENT_TIMESTAMP, "
+                                + "iniciado_em = CURRENT_TIMESTAMP, "
+                                + "finalizado_em = NULL, "
+                                + "erro = NULL, "
+                                + "request_payload_hash = EXCLUDED.request_payload_hash, "
+                                + "response_payload_hash = NULL";
             }
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setString(1, jobId);
@@ -143,9 +261,55 @@ final class RotaSolverJobSupport {
                 stmt.setObject(3, "EM_EXECUCAO", Types.OTHER);
                 if (hasRequestPayload) {
                     stmt.setString(4, requestPayload);
+                } else if (payloadStore) {
+                    stmt.setString(4, requestPayloadHash);
+                }
+                stmt.executeUpdate();
+            }
+
+            if (inputFingerprint != null && hasInputFingerprintColumn(conn)) {
+                try (PreparedStatement stmt =
+                        conn.prepareStatement("UPDATE solver_jobs SET input_fingerprint = ? WHERE job_id = ?")) {
+                    stmt.setString(1, inputFingerprint);
+                    stmt.setString(2, jobId);
+                    stmt.executeUpdate();
                 }
+            }
+        }
+    }
+
+    /**
+     * Troca o request gravado em {@link #registrarSolverJobEmExecucao} pelo do cenario escolhido, quando o job
+     * resolveu mais de uma politica e a vencedora nao foi a de referencia.
+     */
+    static void registrarRequestEscolhido(
+            ConnectionFactory connectionFactory, Gson gson, String jobId, SolverRequest request) {
+        try (Connection conn = connectionFactory.getConnection()) {
+            if (!hasSolverJobsSchema(conn)) {
+                return;
+            }
+            String sql;
+            String valor;
+            if (SolverPayloadSupport.hasPayloadStore(conn)) {
+                sql = "UPDATE solver_jobs SET request_payload_hash = ? WHERE job_id = ?";
+                valor = SolverPayloadSupport.armazenar(conn, requestPayloadSemIdentificadores(gson, request));
+            } else if (hasColumn(conn, "solver_jobs", "request_payload")) {
+                sql = "UPDATE solver_jobs SET request_payload = CAST(? AS jsonb) WHERE job_id = ?";
+                valor = gson.toJson(request);
+            } else {
+                return;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, valor);
+                stmt.setString(2, jobId);
                 stmt.executeUpdate();
             }
+        } catch (SQLException e) {
+            FINALIZACAO_JOB_FAILURES.increment();
+            LOGGER.log(
+                    Level.FINE,
+                    "event=solver_job_request_update_failed job_id={0} sql_state={1} message={2}",
+                    new Object[] {jobId, e.getSQLState(), e.getMessage()});
         }
     }
 
@@ -160,7 +324,8 @@ final class RotaSolverJobSupport {
             if (!hasSolverJobsSchema(conn)) {
                 return;
             }
-            boolean hasResponsePayload = hasColumn(conn, "solver_jobs", "response_payload");
+            boolean payloadStore = SolverPayloadSupport.hasPayloadStore(conn);
+            boolean hasResponsePayload = !payloadStore && hasColumn(conn, "solver_jobs", "response_payload");
             String responsePayload = response == null ? null : gson.toJson(response);
             String sql = "UPDATE solver_jobs "
                     + "SET status = ?, finalizado_em = CURRENT_TIMESTAMP, erro = ?, "
@@ -172,7 +337,16 @@ final class RotaSolverJobSupport {
                         + "cancel_requested = CASE WHEN ? = 'CANCELADO' THEN true ELSE cancel_requested END, "
                         + "response_payload = CASE WHEN ? IS NULL THEN NULL ELSE CAST(? AS jsonb) END "
                         + "WHERE job_id = ?";
+            } else if (payloadStore) {
+                sql = "UPDATE solver_jobs "
+                        + "SET status = ?, finalizado_em = CURRENT_TIMESTAMP, erro = ?, "
+                        + "cancel_requested = CASE WHEN ? = 'CANCELADO' THEN true ELSE cancel_requested END, "
+                        + "response_payload_hash = ? "
+                        + "WHERE job_id = ?";
             }
+            String responsePayloadHash = payloadStore && responsePayload != null
+                    ? SolverPayloadSupport.armazenar(conn, responsePayload)
+                    : null;
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setObject(1, status, Types.OTHER);
                 stmt.setString(2, erro);
@@ -181,6 +355,9 @@ final class RotaSolverJobSupport {
                     stmt.setString(4, responsePayload);
                     stmt.setString(5, responsePayload);
                     stmt.setString(6, jobId);
+                } else if (payloadStore) {
+                    stmt.setString(4, responsePayloadHash);
+                    stmt.setString(5, jobId);
                 } else {
                     stmt.setString(4, jobId);
                 }
@@ -195,6 +372,17 @@ final class RotaSolverJobSupport {
         }
     }
 
+    /**
+     * job_id e plan_version ja sao colunas de solver_jobs; sem eles, requests de versoes consecutivas com as
+     * mesmas entradas compartilham o mesmo payload armazenado.
+     */
+    private static String requestPayloadSemIdentificadores(Gson gson, SolverRequest request) {
+        JsonObject payload = gson.toJsonTree(request).getAsJsonObject();
+        payload.remove("job_id");
+        payload.remove("plan_version");
+        return gson.toJson(payload);
+    }
+
     private static boolean hasTable(Connection conn, String tabela) throws SQLException {
         String sql = "SELECT 1 FROM information_schema.tables WHERE table_name = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -215,4 +403,15 @@ final class RotaSolverJobSupport {
             }
         }
     }
+
+    record JobConcluido(String jobId, String inputFingerprint) {}
+
+    private record EntradaCanonica(
+            Object deposito,
+            int capacidadeVeiculo,
+            List<Integer> capacidadesEntregadores,
+            String horarioInicio,
+            String horarioFim,
+            List<Integer> entregadores,
+            List<?> pedidos) {}
 }
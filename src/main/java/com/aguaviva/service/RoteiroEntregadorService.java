@@ -5,6 +5,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -37,7 +38,8 @@ public class RoteiroEntregadorService {
                     + "e.ordem_na_rota, "
                     + "e.status::text AS entrega_status, "
                     + "p.quantidade_galoes, "
-                    + "COALESCE(c.nome, '') AS cliente_nome "
+                    + "COALESCE(c.nome, '') AS cliente_nome, "
+                    + "COALESCE(e.hora_prevista_atual, e.hora_prevista) AS hora_prevista "
                     + "FROM entregas e "
                     + "JOIN pedidos p ON p.id = e.pedido_id "
                     + "LEFT JOIN clientes c ON c.id = p.cliente_id "
@@ -47,13 +49,15 @@ public class RoteiroEntregadorService {
                 stmt.setInt(1, rota.rotaId());
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
+                        LocalDateTime horaPrevista = rs.getObject("hora_prevista", LocalDateTime.class);
                         ParadaResumo parada = new ParadaResumo(
                                 rs.getInt("entrega_id"),
                                 rs.getInt("pedido_id"),
                                 rs.getInt("ordem_na_rota"),
                                 rs.getString("entrega_status"),
                                 rs.getInt("quantidade_galoes"),
-                                rs.getString("cliente_nome"));
+                                rs.getString("cliente_nome"),
+                                horaPrevista == null ? null : horaPrevista.toString());
 
                         if ("PENDENTE".equals(parada.status()) || "EM_EXECUCAO".equals(parada.status())) {
                             paradasPendentesExecucao.add(parada);
@@ -106,5 +110,11 @@ public class RoteiroEntregadorService {
     public record RotaResumo(int rotaId, String status) {}
 
     public record ParadaResumo(
-            int entregaId, int pedidoId, int ordemNaRota, String status, int quantidadeGaloes, String clienteNome) {}
+            int entregaId,
+            int pedidoId,
+            int ordemNaRota,
+            String status,
+            int quantidadeGaloes,
+            String clienteNome,
+            String horaPrevista) {}
 }
@@ -0,0 +1,22 @@
+package com.aguaviva.service;
+
+import java.util.List;
+
+/**
+ * Resultado de uma simulacao de planejamento: cada cenario resolvido sobre o mesmo snapshot, com a pontuacao usada
+ * para escolher o melhor ({@code melhorCenario} e o indice em {@code cenarios}). Nada e gravado em rotas.
+ */
+public record SimulacaoPlanejamentoResultado(int melhorCenario, List<AvaliacaoCenario> cenarios) {
+
+    public record AvaliacaoCenario(
+            String capacidadePolicy,
+            int capacidadeVeiculo,
+            int entregadores,
+            int capacidadeTotal,
+            int pedidos,
+            int rotas,
+            int entregas,
+            int naoAtendidos,
+            int violacoesHard,
+            int tempoTotalMinutos) {}
+}
@@ -0,0 +1,98 @@
+package com.aguaviva.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Payloads do solver enderecados por conteudo: cada JSON distinto e gravado uma unica vez em
+ * solver_payloads (gzip), e solver_jobs guarda apenas o hash.
+ */
+final class SolverPayloadSupport {
+
+    private SolverPayloadSupport() {}
+
+    static boolean hasPayloadStore(Connection conn) throws SQLException {
+        return hasTable(conn, "solver_payloads")
+                && hasColumn(conn, "solver_jobs", "request_payload_hash")
+                && hasColumn(conn, "solver_jobs", "response_payload_hash");
+    }
+
+    /** Grava o payload se ainda nao existir e devolve o hash que o identifica. */
+    static String armazenar(Connection conn, String json) throws SQLException {
+        byte[] original = json.getBytes(StandardCharsets.UTF_8);
+        String hash = HashSupport.sha256Hex(original);
+        String sql = "INSERT INTO solver_payloads (hash, codificacao, tamanho_original, conteudo) "
+                + "VALUES (?, 'gzip', ?, ?) "
+                + "ON CONFLICT (hash) DO NOTHING";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, hash);
+            stmt.setInt(2, original.length);
+            stmt.setBytes(3, comprimir(original));
+            stmt.executeUpdate();
+        }
+        return hash;
+    }
+
+    static String carregar(Connection conn, String hash) throws SQLException {
+        if (hash == null) {
+            return null;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT conteudo FROM solver_payloads WHERE hash = ?")) {
+            stmt.setString(1, hash);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new String(descomprimir(rs.getBytes("conteudo")), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static byte[] comprimir(byte[] original) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, original.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(original);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao comprimir payload do solver", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] descomprimir(byte[] comprimido) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(comprimido))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao descomprimir payload do solver", e);
+        }
+    }
+
+    private static boolean hasTable(Connection conn, String tabela) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.tables WHERE table_name = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tabela);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String tabela, String coluna) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.columns WHERE table_name = ? AND column_name = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tabela);
+            stmt.setString(2, coluna);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.aguaviva.solver;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Calcula duracoes de viagem (segundos) de cada origem para cada destino. */
+@FunctionalInterface
+public interface FonteDuracao {
+
+    /** Tempo de servico por parada (SERVICE_TIME_S em vrp.py). */
+    int TEMPO_SERVICO_S = 120;
+
+    /** Velocidade do fallback do solver (FALLBACK_SPEED_KMH em matrix.py). */
+    double VELOCIDADE_HAVERSINE_M_POR_S = 30_000d / 3600;
+
+    /** Celula sem rota na fonte: quem consome cai no haversine e nao persiste o valor. */
+    int SEM_ROTA = -1;
+
+    /** @return duracoes em segundos, ou {@link #SEM_ROTA} nas celulas que a fonte nao conseguiu calcular */
+    int[][] calcular(List<Coordenada> origens, List<Coordenada> destinos) throws IOException, InterruptedException;
+
+    /** Identifica a origem das duracoes; o cache persistente e descartado quando ela muda. */
+    default String identificador() {
+        return getClass().getName();
+    }
+
+    /** Mesmo fallback do solver (matrix.py): distancia haversine a 30 km/h. */
+    static FonteDuracao haversine() {
+        return new FonteDuracao() {
+            @Override
+            public int[][] calcular(List<Coordenada> origens, List<Coordenada> destinos) {
+                int[][] duracoes = new int[origens.size()][destinos.size()];
+                for (int i = 0; i < origens.size(); i++) {
+                    for (int j = 0; j < destinos.size(); j++) {
+                        duracoes[i][j] = duracaoHaversine(origens.get(i), destinos.get(j));
+                    }
+                }
+                return duracoes;
+            }
+
+            @Override
+            public String identificador() {
+                return "haversine";
+            }
+        };
+    }
+
+    static int duracaoHaversine(Coordenada origem, Coordenada destino) {
+        return (int) (distanciaHaversineMetros(origem, destino) / VELOCIDADE_HAVERSINE_M_POR_S);
+    }
+
+    static double distanciaHaversineMetros(Coordenada origem, Coordenada destino) {
+        double lat1 = Math.toRadians(origem.getLat());
+        double lat2 = Math.toRadians(destino.getLat());
+        double dlat = lat2 - lat1;
+        double dlon = Math.toRadians(destino.getLon() - origem.getLon());
+        double a = Math.pow(Math.sin(dlat / 2), 2) + Math.cos(lat1) * Math.cos(lat2) * Math.pow(Math.sin(dlon / 2), 2);
+        return 2 * 6_371_000d * Math.asin(Math.sqrt(a));
+    }
+}
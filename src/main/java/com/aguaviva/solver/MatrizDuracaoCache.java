@@ -0,0 +1,221 @@
+package com.aguaviva.solver;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tabela hash (enderecamento aberto, sondagem linear) de duracoes por par de coordenadas, mapeada em memoria
+ * sobre um arquivo: sobrevive a restarts sem fase de carga. Cresce dobrando a capacidade (rehash para arquivo
+ * temporario + move atomico) quando passa de 60% de ocupacao. O cabecalho guarda a assinatura da fonte das
+ * duracoes: um arquivo gravado por outra fonte (ex.: haversine antes de configurar o OSRM) e descartado.
+ *
+ * <p>Layout: cabecalho de 24 bytes (magic, versao, capacidade, ocupados, assinatura da fonte) + slots de 24 bytes
+ * (origem, destino, duracao, estado).
+ */
+final class MatrizDuracaoCache implements AutoCloseable {
+
+    static final int CAPACIDADE_INICIAL_PADRAO = 1 << 16;
+
+    private static final Logger LOGGER = Logger.getLogger(MatrizDuracaoCache.class.getName());
+    private static final int MAGIC = 0x41564d44; // "AVMD"
+    private static final int VERSAO = 2;
+    private static final int TAMANHO_CABECALHO = 24;
+    private static final int TAMANHO_SLOT = 24;
+    private static final double OCUPACAO_MAXIMA = 0.6;
+    private static final int SLOT_OCUPADO = 1;
+
+    private final Path arquivo;
+    private final long assinaturaFonte;
+    private FileChannel canal;
+    private MappedByteBuffer mapa;
+    private int capacidade;
+    private int ocupados;
+
+    MatrizDuracaoCache(Path arquivo, String fonte) throws IOException {
+        this(arquivo, fonte, CAPACIDADE_INICIAL_PADRAO);
+    }
+
+    MatrizDuracaoCache(Path arquivo, String fonte, int capacidadeInicial) throws IOException {
+        this.arquivo = Objects.requireNonNull(arquivo, "arquivo nao pode ser nulo");
+        this.assinaturaFonte = assinatura(Objects.requireNonNull(fonte, "fonte nao pode ser nula"));
+        if (Integer.bitCount(capacidadeInicial) != 1) {
+            throw new IllegalArgumentException("capacidadeInicial deve ser potencia de 2");
+        }
+        Path diretorio = arquivo.toAbsolutePath().getParent();
+        if (diretorio != null) {
+            Files.createDirectories(diretorio);
+        }
+        if (!abrirExistente()) {
+            criar(arquivo, capacidadeInicial, assinaturaFonte);
+            abrirExistente();
+        }
+    }
+
+    /** Chave de uma coordenada arredondada a 1e-5 grau (~1m): lat nos 32 bits altos, lon nos baixos. */
+    static long chave(double lat, double lon) {
+        long latQ = Math.round(lat * 100_000d);
+        long lonQ = Math.round(lon * 100_000d);
+        return (latQ << 32) | (lonQ & 0xffffffffL);
+    }
+
+    /** @return duracao em segundos, ou -1 quando o par ainda nao foi calculado */
+    synchronized int buscar(long origem, long destino) {
+        int mascara = capacidade - 1;
+        for (int slot = indice(origem, destino, mascara); ; slot = (slot + 1) & mascara) {
+            int base = posicao(slot);
+            if (mapa.getInt(base + 20) != SLOT_OCUPADO) {
+                return -1;
+            }
+            if (mapa.getLong(base) == origem && mapa.getLong(base + 8) == destino) {
+                return mapa.getInt(base + 16);
+            }
+        }
+    }
+
+    synchronized void gravar(long origem, long destino, int duracao) throws IOException {
+        if (duracao < 0) {
+            throw new IllegalArgumentException("duracao nao pode ser negativa");
+        }
+        if (ocupados + 1 > capacidade * OCUPACAO_MAXIMA) {
+            crescer();
+        }
+        if (inserir(mapa, capacidade, origem, destino, duracao)) {
+            ocupados++;
+            mapa.putInt(12, ocupados);
+        }
+    }
+
+    synchronized int tamanho() {
+        return ocupados;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (canal != null) {
+            mapa.force();
+            canal.close();
+            canal = null;
+        }
+    }
+
+    private boolean abrirExistente() throws IOException {
+        if (!Files.exists(arquivo) || Files.size(arquivo) < TAMANHO_CABECALHO) {
+            return false;
+        }
+        FileChannel aberto = FileChannel.open(arquivo, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapeado = aberto.map(FileChannel.MapMode.READ_WRITE, 0, aberto.size());
+        mapeado.order(ByteOrder.LITTLE_ENDIAN);
+        int capacidadeLida = mapeado.getInt(8);
+        boolean valido = mapeado.getInt(0) == MAGIC
+                && mapeado.getInt(4) == VERSAO
+                && Integer.bitCount(capacidadeLida) == 1
+                && aberto.size() == TAMANHO_CABECALHO + (long) capacidadeLida * TAMANHO_SLOT;
+        if (!valido) {
+            aberto.close();
+            LOGGER.log(Level.WARNING, "event=matriz_cache_invalido arquivo={0}", arquivo);
+            return false;
+        }
+        if (mapeado.getLong(16) != assinaturaFonte) {
+            aberto.close();
+            LOGGER.log(Level.INFO, "event=matriz_cache_fonte_trocada arquivo={0}", arquivo);
+            return false;
+        }
+        this.canal = aberto;
+        this.mapa = mapeado;
+        this.capacidade = capacidadeLida;
+        this.ocupados = mapeado.getInt(12);
+        return true;
+    }
+
+    private void crescer() throws IOException {
+        int novaCapacidade = capacidade << 1;
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        criar(temporario, novaCapacidade, assinaturaFonte);
+        try (FileChannel novoCanal = FileChannel.open(temporario, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer novoMapa = novoCanal.map(FileChannel.MapMode.READ_WRITE, 0, novoCanal.size());
+            novoMapa.order(ByteOrder.LITTLE_ENDIAN);
+            for (int slot = 0; slot < capacidade; slot++) {
+                int base = posicao(slot);
+                if (mapa.getInt(base + 20) == SLOT_OCUPADO) {
+                    inserir(
+                            novoMapa,
+                            novaCapacidade,
+                            mapa.getLong(base),
+                            mapa.getLong(base + 8),
+                            mapa.getInt(base + 16));
+                }
+            }
+            novoMapa.putInt(12, ocupados);
+            novoMapa.force();
+        }
+        canal.close();
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        abrirExistente();
+        LOGGER.log(Level.FINE, "event=matriz_cache_crescimento capacidade={0}", novaCapacidade);
+    }
+
+    private static void criar(Path destino, int capacidade, long assinaturaFonte) throws IOException {
+        try (FileChannel novo = FileChannel.open(
+                destino,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long tamanho = TAMANHO_CABECALHO + (long) capacidade * TAMANHO_SLOT;
+            MappedByteBuffer cabecalho = novo.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+            cabecalho.order(ByteOrder.LITTLE_ENDIAN);
+            cabecalho.putInt(0, MAGIC);
+            cabecalho.putInt(4, VERSAO);
+            cabecalho.putInt(8, capacidade);
+            cabecalho.putInt(12, 0);
+            cabecalho.putLong(16, assinaturaFonte);
+            cabecalho.force();
+        }
+    }
+
+    /** @return true quando o par era novo */
+    private static boolean inserir(MappedByteBuffer alvo, int capacidade, long origem, long destino, int duracao) {
+        int mascara = capacidade - 1;
+        for (int slot = indice(origem, destino, mascara); ; slot = (slot + 1) & mascara) {
+            int base = posicao(slot);
+            boolean ocupado = alvo.getInt(base + 20) == SLOT_OCUPADO;
+            if (ocupado && (alvo.getLong(base) != origem || alvo.getLong(base + 8) != destino)) {
+                continue;
+            }
+            alvo.putLong(base, origem);
+            alvo.putLong(base + 8, destino);
+            alvo.putInt(base + 16, duracao);
+            alvo.putInt(base + 20, SLOT_OCUPADO);
+            return !ocupado;
+        }
+    }
+
+    /** FNV-1a 64 bits do identificador da fonte. */
+    private static long assinatura(String fonte) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : fonte.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int indice(long origem, long destino, int mascara) {
+        long h = origem * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(destino * 0xC2B2AE3D27D4EB4FL, 31);
+        h ^= h >>> 29;
+        return (int) h & mascara;
+    }
+
+    private static int posicao(int slot) {
+        return TAMANHO_CABECALHO + slot * TAMANHO_SLOT;
+    }
+}
@@ -0,0 +1,69 @@
+package com.aguaviva.solver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Anexa ao request a matriz de duracoes vinda do {@link MatrizDuracaoProvider} antes de delegar ao solver.
+ * Se a matriz nao puder ser montada, o request segue sem ela e o solver monta a propria (OSRM/haversine).
+ */
+public final class MatrizDuracaoGateway implements SolverGateway {
+
+    private static final Logger LOGGER = Logger.getLogger(MatrizDuracaoGateway.class.getName());
+    private static final LongAdder FALHAS_MATRIZ = new LongAdder();
+
+    private final SolverGateway delegate;
+    private final MatrizDuracaoProvider provider;
+
+    public MatrizDuracaoGateway(SolverGateway delegate, MatrizDuracaoProvider provider) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate nao pode ser nulo");
+        this.provider = Objects.requireNonNull(provider, "provider nao pode ser nulo");
+    }
+
+    @Override
+    public SolverResponse solve(SolverRequest request) throws IOException, InterruptedException {
+        return delegate.solve(comMatriz(request));
+    }
+
+    @Override
+    public CompletableFuture<SolverResponse> solveAsync(SolverRequest request) {
+        try {
+            return delegate.solveAsync(comMatriz(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void cancelBestEffort(String jobId) {
+        delegate.cancelBestEffort(jobId);
+    }
+
+    private SolverRequest comMatriz(SolverRequest request) throws InterruptedException {
+        Objects.requireNonNull(request, "request nao pode ser nulo");
+        if (request.getPedidos().isEmpty() || request.getMatrizDuracoes() != null) {
+            return request;
+        }
+        List<Coordenada> pontos = new ArrayList<>(request.getPedidos().size() + 1);
+        pontos.add(request.getDeposito());
+        for (PedidoSolver pedido : request.getPedidos()) {
+            pontos.add(new Coordenada(pedido.getLat(), pedido.getLon()));
+        }
+        try {
+            return request.comMatrizDuracoes(provider.montar(pontos));
+        } catch (IOException | RuntimeException e) {
+            FALHAS_MATRIZ.increment();
+            LOGGER.log(Level.WARNING, "event=matriz_duracao_indisponivel job_id={0} erro={1}", new Object[] {
+                request.getJobId(), e.toString()
+            });
+            return request;
+        }
+    }
+}
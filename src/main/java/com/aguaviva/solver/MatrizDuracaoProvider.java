@@ -0,0 +1,170 @@
+package com.aguaviva.solver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Monta a matriz NxN de duracoes (index 0 = deposito) a partir do cache persistente por par de coordenadas,
+ * calculando na {@link FonteDuracao} somente as celulas que faltam. Celulas sem rota na fonte usam o haversine
+ * so nesta matriz: nao vao para o cache, e a fonte e consultada de novo na proxima montagem.
+ */
+public final class MatrizDuracaoProvider implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(MatrizDuracaoProvider.class.getName());
+    private static final LongAdder CELULAS_DO_CACHE = new LongAdder();
+    private static final LongAdder CELULAS_CALCULADAS = new LongAdder();
+
+    private final MatrizDuracaoCache cache;
+    private final FonteDuracao fonte;
+
+    public MatrizDuracaoProvider(Path arquivoCache, FonteDuracao fonte) throws IOException {
+        this(
+                new MatrizDuracaoCache(
+                        arquivoCache,
+                        Objects.requireNonNull(fonte, "fonte nao pode ser nula").identificador()),
+                fonte);
+    }
+
+    MatrizDuracaoProvider(MatrizDuracaoCache cache, FonteDuracao fonte) {
+        this.cache = Objects.requireNonNull(cache, "cache nao pode ser nulo");
+        this.fonte = Objects.requireNonNull(fonte, "fonte nao pode ser nula");
+    }
+
+    public int[][] montar(List<Coordenada> pontos) throws IOException, InterruptedException {
+        Objects.requireNonNull(pontos, "pontos nao pode ser nulo");
+        int n = pontos.size();
+        long[] chaves = new long[n];
+        for (int i = 0; i < n; i++) {
+            chaves[i] = MatrizDuracaoCache.chave(
+                    pontos.get(i).getLat(), pontos.get(i).getLon());
+        }
+
+        int[][] matriz = new int[n][n];
+        boolean[][] faltando = new boolean[n][n];
+        int[] faltandoPorPonto = new int[n];
+        int totalFaltando = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (chaves[i] == chaves[j]) {
+                    continue;
+                }
+                int duracao = cache.buscar(chaves[i], chaves[j]);
+                if (duracao >= 0) {
+                    matriz[i][j] = duracao;
+                } else {
+                    faltando[i][j] = true;
+                    faltandoPorPonto[i]++;
+                    faltandoPorPonto[j]++;
+                    totalFaltando++;
+                }
+            }
+        }
+
+        int doCache = n * n - totalFaltando;
+        if (totalFaltando > 0) {
+            preencherFaltantes(pontos, chaves, matriz, faltando, faltandoPorPonto, totalFaltando);
+        }
+        CELULAS_DO_CACHE.add(doCache);
+        CELULAS_CALCULADAS.add(totalFaltando);
+        LOGGER.log(Level.FINE, "event=matriz_duracao_montada pontos={0} do_cache={1} calculadas={2}", new Object[] {
+            n, doCache, totalFaltando
+        });
+        return matriz;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.close();
+    }
+
+    /**
+     * Escolhe (guloso) os pontos que cobrem todas as celulas faltantes — normalmente so os clientes novos — e
+     * busca duas faixas na fonte: linhas desses pontos para todos e colunas de todos os demais para eles.
+     */
+    private void preencherFaltantes(
+            List<Coordenada> pontos,
+            long[] chaves,
+            int[][] matriz,
+            boolean[][] faltando,
+            int[] faltandoPorPonto,
+            int totalFaltando)
+            throws IOException, InterruptedException {
+        int n = pontos.size();
+        boolean[] coberto = new boolean[n];
+        int restantes = totalFaltando;
+        while (restantes > 0) {
+            int escolhido = 0;
+            for (int i = 1; i < n; i++) {
+                if (faltandoPorPonto[i] > faltandoPorPonto[escolhido]) {
+                    escolhido = i;
+                }
+            }
+            coberto[escolhido] = true;
+            for (int k = 0; k < n; k++) {
+                if (faltando[escolhido][k] && !coberto[k]) {
+                    faltandoPorPonto[k]--;
+                    restantes--;
+                }
+                if (k != escolhido && faltando[k][escolhido] && !coberto[k]) {
+                    faltandoPorPonto[k]--;
+                    restantes--;
+                }
+            }
+            faltandoPorPonto[escolhido] = 0;
+        }
+
+        List<Integer> cobertos = new ArrayList<>();
+        List<Integer> demais = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            (coberto[i] ? cobertos : demais).add(i);
+        }
+
+        int[][] linhas = fonte.calcular(selecionar(pontos, cobertos), pontos);
+        for (int a = 0; a < cobertos.size(); a++) {
+            int i = cobertos.get(a);
+            for (int j = 0; j < n; j++) {
+                if (faltando[i][j]) {
+                    preencher(pontos, chaves, matriz, i, j, linhas[a][j]);
+                }
+            }
+        }
+
+        if (demais.isEmpty()) {
+            return;
+        }
+        int[][] colunas = fonte.calcular(selecionar(pontos, demais), selecionar(pontos, cobertos));
+        for (int a = 0; a < demais.size(); a++) {
+            int i = demais.get(a);
+            for (int b = 0; b < cobertos.size(); b++) {
+                int j = cobertos.get(b);
+                if (faltando[i][j]) {
+                    preencher(pontos, chaves, matriz, i, j, colunas[a][b]);
+                }
+            }
+        }
+    }
+
+    private void preencher(List<Coordenada> pontos, long[] chaves, int[][] matriz, int i, int j, int duracao)
+            throws IOException {
+        if (duracao == FonteDuracao.SEM_ROTA) {
+            matriz[i][j] = FonteDuracao.duracaoHaversine(pontos.get(i), pontos.get(j));
+            return;
+        }
+        matriz[i][j] = duracao;
+        cache.gravar(chaves[i], chaves[j], duracao);
+    }
+
+    private static List<Coordenada> selecionar(List<Coordenada> pontos, List<Integer> indices) {
+        List<Coordenada> selecionados = new ArrayList<>(indices.size());
+        for (int indice : indices) {
+            selecionados.add(pontos.get(indice));
+        }
+        return selecionados;
+    }
+}
@@ -0,0 +1,99 @@
+package com.aguaviva.solver;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Duracoes via servico table do OSRM, pedindo apenas o retangulo origens x destinos.
+ * Celulas sem rota (null) voltam como {@link FonteDuracao#SEM_ROTA}.
+ */
+public final class OsrmFonteDuracao implements FonteDuracao {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final HttpClient httpClient;
+    private final String osrmUrl;
+    private final Gson gson = new Gson();
+
+    public OsrmFonteDuracao(String osrmUrl) {
+        Objects.requireNonNull(osrmUrl, "URL do OSRM nao pode ser nula");
+        if (osrmUrl.isBlank()) {
+            throw new IllegalArgumentException("URL do OSRM nao pode ser vazia");
+        }
+        this.osrmUrl = osrmUrl;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(TIMEOUT)
+                .build();
+    }
+
+    @Override
+    public int[][] calcular(List<Coordenada> origens, List<Coordenada> destinos)
+            throws IOException, InterruptedException {
+        if (origens.isEmpty() || destinos.isEmpty()) {
+            return new int[origens.size()][destinos.size()];
+        }
+        StringJoiner coordenadas = new StringJoiner(";");
+        StringJoiner sources = new StringJoiner(";");
+        StringJoiner destinations = new StringJoiner(";");
+        int indice = 0;
+        for (Coordenada origem : origens) {
+            coordenadas.add(formatar(origem));
+            sources.add(Integer.toString(indice++));
+        }
+        for (Coordenada destino : destinos) {
+            coordenadas.add(formatar(destino));
+            destinations.add(Integer.toString(indice++));
+        }
+
+        HttpRequest httpReq = HttpRequest.newBuilder()
+                .uri(URI.create(osrmUrl + "/table/v1/driving/" + coordenadas + "?annotations=duration&sources="
+                        + sources + "&destinations=" + destinations))
+                .timeout(TIMEOUT)
+                .GET()
+                .build();
+        HttpResponse<String> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofString());
+        if (httpResp.statusCode() != 200) {
+            throw new IOException("OSRM retornou status " + httpResp.statusCode() + ": " + httpResp.body());
+        }
+        JsonObject corpo = gson.fromJson(httpResp.body(), JsonObject.class);
+        if (corpo == null || !"Ok".equals(corpo.has("code") ? corpo.get("code").getAsString() : null)) {
+            throw new IOException("OSRM nao retornou tabela valida: " + httpResp.body());
+        }
+
+        JsonArray linhas = corpo.getAsJsonArray("durations");
+        if (linhas == null || linhas.size() != origens.size()) {
+            throw new IOException("OSRM retornou tabela com dimensao inesperada");
+        }
+        int[][] duracoes = new int[origens.size()][destinos.size()];
+        for (int i = 0; i < origens.size(); i++) {
+            JsonArray linha = linhas.get(i).getAsJsonArray();
+            for (int j = 0; j < destinos.size(); j++) {
+                JsonElement celula = linha.get(j);
+                duracoes[i][j] = celula == null || celula.isJsonNull() ? SEM_ROTA : (int) celula.getAsDouble();
+            }
+        }
+        return duracoes;
+    }
+
+    @Override
+    public String identificador() {
+        return "osrm " + osrmUrl;
+    }
+
+    private static String formatar(Coordenada coordenada) {
+        return String.format(Locale.ROOT, "%.6f,%.6f", coordenada.getLon(), coordenada.getLat());
+    }
+}
@@ -0,0 +1,43 @@
+package com.aguaviva.solver;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Rota de um plano anterior enviada ao solver como ponto de partida da busca (warm start). O numero no dia
+ * identifica a viagem do entregador: o solver ordena por ele para semear cada viagem no veiculo virtual certo.
+ */
+public final class RotaInicial {
+
+    private final int entregadorId;
+    private final int numeroNoDia;
+    private final List<Integer> pedidos;
+
+    public RotaInicial(int entregadorId, int numeroNoDia, List<Integer> pedidos) {
+        Objects.requireNonNull(pedidos, "Pedidos nao pode ser nulo");
+        if (numeroNoDia <= 0) {
+            throw new IllegalArgumentException("numeroNoDia deve ser maior que zero");
+        }
+        this.entregadorId = entregadorId;
+        this.numeroNoDia = numeroNoDia;
+        this.pedidos = List.copyOf(pedidos);
+    }
+
+    public int getEntregadorId() {
+        return entregadorId;
+    }
+
+    public int getNumeroNoDia() {
+        return numeroNoDia;
+    }
+
+    public List<Integer> getPedidos() {
+        return pedidos;
+    }
+
+    @Override
+    public String toString() {
+        return "RotaInicial{entregadorId=" + entregadorId + ", numeroNoDia=" + numeroNoDia + ", pedidos="
+                + pedidos.size() + "}";
+    }
+}
@@ -0,0 +1,189 @@
+package com.aguaviva.solver;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Solver simulado para benchmark de preempcao: responde como o {@link MockSolverClient}, mas so depois de uma
+ * latencia sorteada, falha numa fracao configuravel das chamadas e respeita cancelamento cooperativo (cancelar o
+ * future ou {@link #cancelBestEffort} pelo job_id encerra a chamada sem resposta, como o cancelamento do solver
+ * real). Conta chamadas concluidas, falhas, canceladas e o tempo de solver descartado.
+ */
+public final class SimuladorSolverGateway implements SolverGateway {
+
+    private final SolverGateway respostas;
+    private final Latencia latencia;
+    private final double taxaFalha;
+    private final Random aleatorio;
+    private final ScheduledExecutorService relogio;
+    private final Map<String, CompletableFuture<SolverResponse>> emAndamento = new ConcurrentHashMap<>();
+    private final LongAdder iniciados = new LongAdder();
+    private final LongAdder concluidos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+    private final LongAdder cancelados = new LongAdder();
+    private final LongAdder msDescartados = new LongAdder();
+
+    public SimuladorSolverGateway(Config config) {
+        this(new MockSolverClient(), config);
+    }
+
+    SimuladorSolverGateway(SolverGateway respostas, Config config) {
+        this.respostas = Objects.requireNonNull(respostas, "respostas nao pode ser nulo");
+        Objects.requireNonNull(config, "config nao pode ser nulo");
+        this.latencia = config.latencia();
+        this.taxaFalha = config.taxaFalha();
+        this.aleatorio = new Random(config.semente());
+        this.relogio = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("solver-simulado").daemon(true).factory());
+    }
+
+    @Override
+    public SolverResponse solve(SolverRequest request) throws IOException, InterruptedException {
+        CompletableFuture<SolverResponse> resultado = solveAsync(request);
+        try {
+            return resultado.get();
+        } catch (InterruptedException e) {
+            resultado.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Falha no solver simulado", e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<SolverResponse> solveAsync(SolverRequest request) {
+        Objects.requireNonNull(request, "request nao pode ser nulo");
+        long duracaoMs;
+        boolean falhar;
+        synchronized (aleatorio) {
+            duracaoMs = Math.max(0L, latencia.sortear(aleatorio).toMillis());
+            falhar = aleatorio.nextDouble() < taxaFalha;
+        }
+        iniciados.increment();
+        long inicio = System.nanoTime();
+        String jobId = request.getJobId();
+
+        CompletableFuture<SolverResponse> resultado = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelado = super.cancel(mayInterruptIfRunning);
+                if (cancelado) {
+                    cancelados.increment();
+                    msDescartados.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+                }
+                return cancelado;
+            }
+        };
+        ScheduledFuture<?> termino = relogio.schedule(
+                () -> {
+                    // Conta antes de completar: quem aguarda o future le as estatisticas logo em seguida.
+                    if (falhar) {
+                        falhas.increment();
+                        msDescartados.add(duracaoMs);
+                        if (!resultado.completeExceptionally(new IOException("Falha simulada do solver"))) {
+                            falhas.decrement();
+                            msDescartados.add(-duracaoMs);
+                        }
+                        return;
+                    }
+                    try {
+                        SolverResponse resposta = respostas.solve(request);
+                        concluidos.increment();
+                        if (!resultado.complete(resposta)) {
+                            concluidos.decrement();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        resultado.completeExceptionally(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        resultado.completeExceptionally(e);
+                    }
+                },
+                duracaoMs,
+                TimeUnit.MILLISECONDS);
+        if (jobId != null) {
+            emAndamento.put(jobId, resultado);
+        }
+        resultado.whenComplete((resposta, erro) -> {
+            if (erro instanceof CancellationException) {
+                termino.cancel(false);
+            }
+            if (jobId != null) {
+                emAndamento.remove(jobId, resultado);
+            }
+        });
+        return resultado;
+    }
+
+    @Override
+    public void cancelBestEffort(String jobId) {
+        if (jobId == null) {
+            return;
+        }
+        CompletableFuture<SolverResponse> resultado = emAndamento.get(jobId);
+        if (resultado != null) {
+            resultado.cancel(true);
+        }
+    }
+
+    public Estatisticas estatisticas() {
+        return new Estatisticas(iniciados.sum(), concluidos.sum(), falhas.sum(), cancelados.sum(), msDescartados.sum());
+    }
+
+    /** Distribuicao da latencia de uma chamada; sorteada sob o gerador semeado do simulador. */
+    @FunctionalInterface
+    public interface Latencia {
+
+        Duration sortear(Random aleatorio);
+
+        static Latencia fixa(Duration duracao) {
+            Objects.requireNonNull(duracao, "duracao nao pode ser nulo");
+            return aleatorio -> duracao;
+        }
+
+        static Latencia uniforme(Duration minima, Duration maxima) {
+            long minimaMs = minima.toMillis();
+            long maximaMs = maxima.toMillis();
+            if (minimaMs < 0 || maximaMs < minimaMs) {
+                throw new IllegalArgumentException("Latencia uniforme exige 0 <= minima <= maxima");
+            }
+            return aleatorio -> Duration.ofMillis(minimaMs + (long) (aleatorio.nextDouble() * (maximaMs - minimaMs)));
+        }
+
+        /** Cauda longa tipica do solver: mediana fixa e dispersao {@code sigma} no log da latencia. */
+        static Latencia logNormal(Duration mediana, double sigma) {
+            long medianaMs = mediana.toMillis();
+            if (medianaMs <= 0 || sigma < 0) {
+                throw new IllegalArgumentException("Latencia log-normal exige mediana positiva e sigma >= 0");
+            }
+            return aleatorio -> Duration.ofMillis(Math.round(medianaMs * Math.exp(sigma * aleatorio.nextGaussian())));
+        }
+    }
+
+    public record Config(Latencia latencia, double taxaFalha, long semente) {
+        public Config {
+            Objects.requireNonNull(latencia, "latencia nao pode ser nulo");
+            if (taxaFalha < 0 || taxaFalha > 1) {
+                throw new IllegalArgumentException("taxaFalha deve estar entre 0 e 1");
+            }
+        }
+    }
+
+    /** {@code msDescartados}: tempo de solver gasto em chamadas canceladas ou que falharam. */
+    public record Estatisticas(long iniciados, long concluidos, long falhas, long cancelados, long msDescartados) {}
+}
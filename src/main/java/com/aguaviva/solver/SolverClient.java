@@ -3,42 +3,85 @@ package com.aguaviva.solver;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public final class SolverClient implements SolverGateway {
 
     private static final Logger LOGGER = Logger.getLogger(SolverClient.class.getName());
     private static final LongAdder CANCEL_BEST_EFFORT_FAILURES = new LongAdder();
+    private static final long POLL_INICIAL_MILLIS = 50L;
+    private static final long POLL_MAXIMO_MILLIS = 1_000L;
+    private static final double POLL_FATOR_CRESCIMENTO = 1.5;
+    private static final Duration PRAZO_PADRAO = Duration.ofMinutes(2);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final String GZIP = "gzip";
 
     private final HttpClient httpClient;
     private final String solverUrl;
+    private final Duration prazo;
     private final Gson gson;
 
     public SolverClient(String solverUrl) {
+        this(solverUrl, PRAZO_PADRAO);
+    }
+
+    /**
+     * @param prazo limite de cada requisicao HTTP e da chamada assincrona completa; um worker travado
+     *     no solver nunca segura o planejamento alem disso
+     */
+    public SolverClient(String solverUrl, Duration prazo) {
         Objects.requireNonNull(solverUrl, "URL do solver nao pode ser nula");
         if (solverUrl.isBlank()) {
             throw new IllegalArgumentException("URL do solver nao pode ser vazia");
         }
+        Objects.requireNonNull(prazo, "prazo nao pode ser nulo");
+        if (prazo.isNegative() || prazo.isZero()) {
+            throw new IllegalArgumentException("prazo deve ser maior que zero");
+        }
         this.solverUrl = solverUrl;
+        this.prazo = prazo;
         // FastAPI/Uvicorn em HTTP claro pode rejeitar corpo quando o client tenta upgrade h2c.
         // Forcamos HTTP/1.1 para evitar perda de body e garantir compatibilidade.
-        this.httpClient =
-                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
         this.gson = new GsonBuilder()
                 .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
                 .create();
     }
 
+    public String getSolverUrl() {
+        return solverUrl;
+    }
+
     /**
      * Envia pedidos ao solver Python e retorna as rotas otimizadas.
      *
@@ -46,38 +89,228 @@ public final class SolverClient implements SolverGateway {
      * @throws InterruptedException se a thread for interrompida
      */
     public SolverResponse solve(SolverRequest request) throws IOException, InterruptedException {
-        String body = gson.toJson(request);
+        HttpRequest httpReq = requisicaoJson("/solve", prazo, request);
 
-        HttpRequest httpReq = HttpRequest.newBuilder()
-                .uri(URI.create(solverUrl + "/solve"))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(body))
-                .build();
-
-        HttpResponse<String> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<InputStream> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofInputStream());
 
         if (httpResp.statusCode() != 200) {
-            throw new IOException("Solver retornou status " + httpResp.statusCode() + ": " + httpResp.body());
+            throw new IOException("Solver retornou status " + httpResp.statusCode() + ": " + lerTexto(httpResp));
         }
 
-        return gson.fromJson(httpResp.body(), SolverResponse.class);
+        return lerJson(httpResp, SolverResponse.class);
     }
 
-    public SolverAsyncAccepted submitAsync(SolverRequest request) throws IOException, InterruptedException {
-        String body = gson.toJson(request);
+    /**
+     * Submete via /solve/async e coleta o resultado em /result com polling adaptativo (50ms crescendo ate 1s),
+     * sem manter thread bloqueada entre consultas. Cancelar o future envia /cancel ao solver.
+     */
+    @Override
+    public CompletableFuture<SolverResponse> solveAsync(SolverRequest request) {
+        return solveAsync(request, prazo);
+    }
+
+    /**
+     * Como {@link #solveAsync(SolverRequest)}, mas completa com {@link TimeoutException} (e cancela o job no
+     * solver) se o resultado nao chegar dentro de {@code prazoChamada}.
+     */
+    public CompletableFuture<SolverResponse> solveAsync(SolverRequest request, Duration prazoChamada) {
+        Objects.requireNonNull(request, "request nao pode ser nulo");
+        Objects.requireNonNull(prazoChamada, "prazoChamada nao pode ser nulo");
+        AtomicReference<String> jobIdAceito = new AtomicReference<>();
+        CompletableFuture<SolverResponse> resultado = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelado = super.cancel(mayInterruptIfRunning);
+                if (cancelado) {
+                    cancelarAsync(jobIdAceito.get());
+                }
+                return cancelado;
+            }
+        };
+
+        HttpRequest httpReq;
+        try {
+            httpReq = requisicaoJson("/solve/async", prazoChamada, request);
+        } catch (IOException e) {
+            resultado.completeExceptionally(e);
+            return resultado;
+        }
+
+        httpClient.sendAsync(httpReq, HttpResponse.BodyHandlers.ofInputStream()).whenComplete((httpResp, erro) -> {
+            if (erro != null) {
+                resultado.completeExceptionally(causa(erro));
+                return;
+            }
+            SolverAsyncAccepted aceito;
+            try {
+                if (httpResp.statusCode() != 200 && httpResp.statusCode() != 202) {
+                    resultado.completeExceptionally(new IOException(
+                            "Solver async retornou status " + httpResp.statusCode() + ": " + lerTexto(httpResp)));
+                    return;
+                }
+                aceito = lerJson(httpResp, SolverAsyncAccepted.class);
+            } catch (IOException | RuntimeException e) {
+                resultado.completeExceptionally(e);
+                return;
+            }
+            String jobId = aceito == null ? null : aceito.getJobId();
+            if (jobId == null || jobId.isBlank()) {
+                resultado.completeExceptionally(new IOException("Solver async nao retornou job_id"));
+                return;
+            }
+            jobIdAceito.set(jobId);
+            if (resultado.isCancelled()) {
+                // Cancelado antes do aceite: o cancel() acima ainda nao conhecia o job_id.
+                cancelarAsync(jobId);
+                return;
+            }
+            agendarConsulta(jobId, POLL_INICIAL_MILLIS, resultado);
+        });
+
+        resultado.orTimeout(prazoChamada.toMillis(), TimeUnit.MILLISECONDS).whenComplete((response, erro) -> {
+            if (erro instanceof TimeoutException) {
+                LOGGER.log(Level.WARNING, "event=solver_prazo_excedido url={0} job_id={1} prazo_ms={2}", new Object[] {
+                    solverUrl, jobIdAceito.get(), prazoChamada.toMillis()
+                });
+                cancelarAsync(jobIdAceito.get());
+            }
+        });
+        return resultado;
+    }
+
+    private void agendarConsulta(String jobId, long delayMillis, CompletableFuture<SolverResponse> resultado) {
+        CompletableFuture.runAsync(
+                () -> consultarResultado(jobId, delayMillis, resultado),
+                CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void consultarResultado(String jobId, long delayAtual, CompletableFuture<SolverResponse> resultado) {
+        if (resultado.isDone()) {
+            return;
+        }
+        String encoded = URLEncoder.encode(jobId, StandardCharsets.UTF_8);
+        HttpRequest httpReq = requisicao("/result/" + encoded, prazo).GET().build();
 
-        HttpRequest httpReq = HttpRequest.newBuilder()
-                .uri(URI.create(solverUrl + "/solve/async"))
+        httpClient.sendAsync(httpReq, HttpResponse.BodyHandlers.ofInputStream()).whenComplete((httpResp, erro) -> {
+            if (erro != null) {
+                resultado.completeExceptionally(causa(erro));
+                return;
+            }
+            SolverJobResult jobResult;
+            try {
+                if (httpResp.statusCode() == 404) {
+                    httpResp.body().close();
+                    resultado.completeExceptionally(new IOException("Job nao encontrado no solver: " + jobId));
+                    return;
+                }
+                if (httpResp.statusCode() != 200) {
+                    resultado.completeExceptionally(new IOException("Consulta de resultado retornou status "
+                            + httpResp.statusCode() + ": " + lerTexto(httpResp)));
+                    return;
+                }
+                jobResult = lerJson(httpResp, SolverJobResult.class);
+            } catch (IOException | RuntimeException e) {
+                resultado.completeExceptionally(e);
+                return;
+            }
+
+            String status = jobResult == null ? null : jobResult.getStatus();
+            if ("CONCLUIDO".equals(status)) {
+                SolverResponse response = jobResult.getResponse();
+                resultado.complete(response == null ? new SolverResponse(null, null) : response);
+            } else if ("CANCELADO".equals(status)) {
+                resultado.completeExceptionally(new CancellationException("Job cancelado no solver: " + jobId));
+            } else if ("FALHOU".equals(status)) {
+                resultado.completeExceptionally(
+                        new IOException("Solver falhou no job " + jobId + ": " + jobResult.getErro()));
+            } else {
+                long proximoDelay = Math.min(POLL_MAXIMO_MILLIS, Math.round(delayAtual * POLL_FATOR_CRESCIMENTO));
+                agendarConsulta(jobId, proximoDelay, resultado);
+            }
+        });
+    }
+
+    private void cancelarAsync(String jobId) {
+        if (jobId == null || jobId.isBlank()) {
+            return;
+        }
+        String encoded = URLEncoder.encode(jobId, StandardCharsets.UTF_8);
+        HttpRequest httpReq = requisicao("/cancel/" + encoded, prazo)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        httpClient.sendAsync(httpReq, HttpResponse.BodyHandlers.discarding()).whenComplete((httpResp, erro) -> {
+            if (erro != null || (httpResp.statusCode() != 200 && httpResp.statusCode() != 404)) {
+                CANCEL_BEST_EFFORT_FAILURES.increment();
+                LOGGER.log(
+                        Level.WARNING,
+                        "event=solver_cancel_best_effort_failed job_id={0} error_type=async message={1}",
+                        new Object[] {jobId, erro != null ? causa(erro).getMessage() : "status " + httpResp.statusCode()
+                        });
+            }
+        });
+    }
+
+    private HttpRequest.Builder requisicao(String path, Duration timeout) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(solverUrl + path))
+                .timeout(timeout)
+                .header("Accept-Encoding", GZIP);
+    }
+
+    /**
+     * Serializa o payload direto num GZIPOutputStream: o JSON descomprimido nunca existe inteiro em memoria,
+     * apenas o buffer comprimido que vai para o publisher (com Content-Length, sem chunked).
+     */
+    private HttpRequest requisicaoJson(String path, Duration timeout, Object payload) throws IOException {
+        ByteArrayOutputStream comprimido = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(comprimido), StandardCharsets.UTF_8)) {
+            gson.toJson(payload, writer);
+        }
+        return requisicao(path, timeout)
                 .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Encoding", GZIP)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(comprimido.toByteArray()))
                 .build();
+    }
+
+    /** Faz o parse em streaming do corpo (descomprimindo se o solver respondeu gzip) e fecha a conexao. */
+    private <T> T lerJson(HttpResponse<InputStream> httpResp, Class<T> tipo) throws IOException {
+        try (Reader reader = leitor(httpResp);
+                JsonReader jsonReader = gson.newJsonReader(reader)) {
+            return gson.fromJson(jsonReader, tipo);
+        }
+    }
+
+    private String lerTexto(HttpResponse<InputStream> httpResp) throws IOException {
+        try (Reader reader = leitor(httpResp)) {
+            StringWriter texto = new StringWriter();
+            reader.transferTo(texto);
+            return texto.toString();
+        }
+    }
 
-        HttpResponse<String> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofString());
+    private static Reader leitor(HttpResponse<InputStream> httpResp) throws IOException {
+        InputStream corpo = httpResp.body();
+        boolean gzip = httpResp.headers()
+                .firstValue("Content-Encoding")
+                .map(GZIP::equalsIgnoreCase)
+                .orElse(false);
+        return new InputStreamReader(gzip ? new GZIPInputStream(corpo) : corpo, StandardCharsets.UTF_8);
+    }
+
+    private static Throwable causa(Throwable erro) {
+        return erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+    }
+
+    public SolverAsyncAccepted submitAsync(SolverRequest request) throws IOException, InterruptedException {
+        HttpRequest httpReq = requisicaoJson("/solve/async", prazo, request);
+
+        HttpResponse<InputStream> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofInputStream());
         if (httpResp.statusCode() != 200 && httpResp.statusCode() != 202) {
-            throw new IOException("Solver async retornou status " + httpResp.statusCode() + ": " + httpResp.body());
+            throw new IOException("Solver async retornou status " + httpResp.statusCode() + ": " + lerTexto(httpResp));
         }
 
-        return gson.fromJson(httpResp.body(), SolverAsyncAccepted.class);
+        return lerJson(httpResp, SolverAsyncAccepted.class);
     }
 
     public boolean cancel(String jobId) throws IOException, InterruptedException {
@@ -87,18 +320,19 @@ public final class SolverClient implements SolverGateway {
         }
 
         String encoded = URLEncoder.encode(jobId, StandardCharsets.UTF_8);
-        HttpRequest httpReq = HttpRequest.newBuilder()
-                .uri(URI.create(solverUrl + "/cancel/" + encoded))
+        HttpRequest httpReq = requisicao("/cancel/" + encoded, prazo)
                 .POST(HttpRequest.BodyPublishers.noBody())
                 .build();
 
-        HttpResponse<String> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<InputStream> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofInputStream());
         if (httpResp.statusCode() == 404) {
+            httpResp.body().close();
             return false;
         }
         if (httpResp.statusCode() != 200) {
-            throw new IOException("Cancelamento retornou status " + httpResp.statusCode() + ": " + httpResp.body());
+            throw new IOException("Cancelamento retornou status " + httpResp.statusCode() + ": " + lerTexto(httpResp));
         }
+        httpResp.body().close();
         return true;
     }
 
@@ -109,21 +343,19 @@ public final class SolverClient implements SolverGateway {
         }
 
         String encoded = URLEncoder.encode(jobId, StandardCharsets.UTF_8);
-        HttpRequest httpReq = HttpRequest.newBuilder()
-                .uri(URI.create(solverUrl + "/result/" + encoded))
-                .GET()
-                .build();
+        HttpRequest httpReq = requisicao("/result/" + encoded, prazo).GET().build();
 
-        HttpResponse<String> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<InputStream> httpResp = httpClient.send(httpReq, HttpResponse.BodyHandlers.ofInputStream());
         if (httpResp.statusCode() == 404) {
+            httpResp.body().close();
             return null;
         }
         if (httpResp.statusCode() != 200) {
             throw new IOException(
-                    "Consulta de resultado retornou status " + httpResp.statusCode() + ": " + httpResp.body());
+                    "Consulta de resultado retornou status " + httpResp.statusCode() + ": " + lerTexto(httpResp));
         }
 
-        return gson.fromJson(httpResp.body(), SolverJobResult.class);
+        return lerJson(httpResp, SolverJobResult.class);
     }
 
     public void cancelBestEffort(String jobId) {
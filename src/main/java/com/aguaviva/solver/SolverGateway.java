@@ -1,10 +1,27 @@
 package com.aguaviva.solver;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 public interface SolverGateway {
 
     SolverResponse solve(SolverRequest request) throws IOException, InterruptedException;
 
+    /**
+     * Resolve sem bloquear a thread chamadora ate o fim da otimizacao.
+     * Cancelar o future solicita o cancelamento do job no solver. Implementacoes sem API assincrona
+     * resolvem de forma sincrona e devolvem um future ja concluido.
+     */
+    default CompletableFuture<SolverResponse> solveAsync(SolverRequest request) {
+        try {
+            return CompletableFuture.completedFuture(solve(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     void cancelBestEffort(String jobId);
 }
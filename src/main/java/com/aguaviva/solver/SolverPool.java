@@ -0,0 +1,307 @@
+package com.aguaviva.solver;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gateway sobre varias replicas locais do solver.
+ * Escolhe a replica com menos chamadas em andamento, aplica prazo por chamada derivado do orcamento de
+ * planejamento, abre o circuito de replicas que falham em sequencia (falha rapida quando nenhuma esta
+ * saudavel) e, se configurado, dispara uma segunda tentativa (hedge) em outra replica quando a primeira demora.
+ */
+public final class SolverPool implements SolverGateway {
+
+    static final int FALHAS_PARA_ABRIR_CIRCUITO = 3;
+    static final Duration ESPERA_CIRCUITO_ABERTO = Duration.ofSeconds(10);
+    // Matriz de distancias (OSRM, timeout de 10s no solver) + serializacao/fila antes do OR-Tools.
+    private static final Duration FOLGA_PRAZO = Duration.ofSeconds(15);
+
+    private static final Logger LOGGER = Logger.getLogger(SolverPool.class.getName());
+    private static final LongAdder FALHAS_RAPIDAS = new LongAdder();
+    private static final LongAdder HEDGES_DISPARADOS = new LongAdder();
+
+    private final List<Replica> replicas;
+    private final Duration prazoChamada;
+    private final Duration hedgeApos;
+    private final LongSupplier relogioNanos;
+    private final AtomicInteger rodizio = new AtomicInteger();
+
+    public SolverPool(Config config) {
+        this(criarClients(config), prazoParaOrcamento(config.orcamentoPlanejamento()), config.hedgeApos());
+    }
+
+    SolverPool(List<SolverClient> clients, Duration prazoChamada, Duration hedgeApos) {
+        this(clients, prazoChamada, hedgeApos, System::nanoTime);
+    }
+
+    SolverPool(List<SolverClient> clients, Duration prazoChamada, Duration hedgeApos, LongSupplier relogioNanos) {
+        Objects.requireNonNull(clients, "clients nao pode ser nulo");
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("SolverPool exige ao menos uma replica");
+        }
+        this.replicas = clients.stream().map(Replica::new).toList();
+        this.prazoChamada = Objects.requireNonNull(prazoChamada, "prazoChamada nao pode ser nulo");
+        this.hedgeApos = hedgeApos;
+        this.relogioNanos = Objects.requireNonNull(relogioNanos, "relogioNanos nao pode ser nulo");
+    }
+
+    /** Prazo de uma chamada: orcamento do OR-Tools mais a folga de matriz/fila do solver. */
+    public static Duration prazoParaOrcamento(Duration orcamentoPlanejamento) {
+        Objects.requireNonNull(orcamentoPlanejamento, "orcamentoPlanejamento nao pode ser nulo");
+        return orcamentoPlanejamento.plus(FOLGA_PRAZO);
+    }
+
+    @Override
+    public SolverResponse solve(SolverRequest request) throws IOException, InterruptedException {
+        CompletableFuture<SolverResponse> resultado = solveAsync(request);
+        try {
+            return resultado.get();
+        } catch (InterruptedException e) {
+            resultado.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) {
+                throw io;
+            }
+            if (causa instanceof TimeoutException) {
+                throw new IOException("Prazo do solver excedido (" + prazoChamada.toMillis() + "ms)", causa);
+            }
+            if (causa instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Falha ao chamar solver", causa);
+        }
+    }
+
+    @Override
+    public CompletableFuture<SolverResponse> solveAsync(SolverRequest request) {
+        Objects.requireNonNull(request, "request nao pode ser nulo");
+        Replica primaria = selecionarReplica(null);
+        if (primaria == null) {
+            FALHAS_RAPIDAS.increment();
+            return CompletableFuture.failedFuture(
+                    new IOException("Nenhuma replica do solver disponivel: circuito aberto em todas"));
+        }
+
+        List<CompletableFuture<SolverResponse>> tentativas = new CopyOnWriteArrayList<>();
+        AtomicInteger tentativasPendentes = new AtomicInteger();
+        CompletableFuture<SolverResponse> resultado = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelado = super.cancel(mayInterruptIfRunning);
+                if (cancelado) {
+                    tentativas.forEach(tentativa -> tentativa.cancel(true));
+                }
+                return cancelado;
+            }
+        };
+
+        disparar(primaria, request, resultado, tentativas, tentativasPendentes, true);
+        if (hedgeApos != null && replicas.size() > 1) {
+            CompletableFuture.delayedExecutor(hedgeApos.toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> {
+                        if (resultado.isDone()) {
+                            return;
+                        }
+                        Replica secundaria = selecionarReplica(primaria);
+                        if (secundaria != null) {
+                            HEDGES_DISPARADOS.increment();
+                            disparar(secundaria, request, resultado, tentativas, tentativasPendentes, false);
+                        }
+                    });
+        }
+        return resultado;
+    }
+
+    /** O job pode estar em qualquer replica (inclusive em duas, com hedge): o cancelamento vai para todas. */
+    @Override
+    public void cancelBestEffort(String jobId) {
+        for (Replica replica : replicas) {
+            replica.client.cancelBestEffort(jobId);
+        }
+    }
+
+    int chamadasEmAndamento(int indiceReplica) {
+        return replicas.get(indiceReplica).emAndamento.get();
+    }
+
+    boolean isCircuitoAberto(int indiceReplica) {
+        return !replicas.get(indiceReplica).disponivel(relogioNanos.getAsLong());
+    }
+
+    private void disparar(
+            Replica replica,
+            SolverRequest request,
+            CompletableFuture<SolverResponse> resultado,
+            List<CompletableFuture<SolverResponse>> tentativas,
+            AtomicInteger tentativasPendentes,
+            boolean permiteFailover) {
+        tentativasPendentes.incrementAndGet();
+        replica.emAndamento.incrementAndGet();
+        CompletableFuture<SolverResponse> chamada = replica.client.solveAsync(request, prazoChamada);
+        tentativas.add(chamada);
+        if (resultado.isCancelled()) {
+            chamada.cancel(true);
+        }
+
+        chamada.whenComplete((response, erro) -> {
+            replica.emAndamento.decrementAndGet();
+            Throwable causa = causa(erro);
+            if (causa == null) {
+                replica.registrarSucesso();
+                if (resultado.complete(response)) {
+                    cancelarDemais(tentativas, chamada);
+                }
+                tentativasPendentes.decrementAndGet();
+                return;
+            }
+            if (causa instanceof CancellationException) {
+                // Cancelamento (local ou no solver) nao diz nada sobre a saude da replica.
+                if (resultado.completeExceptionally(causa)) {
+                    cancelarDemais(tentativas, chamada);
+                }
+                tentativasPendentes.decrementAndGet();
+                return;
+            }
+
+            registrarFalha(replica, causa);
+            if (permiteFailover && !resultado.isDone()) {
+                Replica alternativa = selecionarReplica(replica);
+                if (alternativa != null) {
+                    disparar(alternativa, request, resultado, tentativas, tentativasPendentes, false);
+                }
+            }
+            if (tentativasPendentes.decrementAndGet() == 0) {
+                resultado.completeExceptionally(causa);
+            }
+        });
+    }
+
+    private synchronized Replica selecionarReplica(Replica excluida) {
+        long agora = relogioNanos.getAsLong();
+        int inicio = Math.floorMod(rodizio.getAndIncrement(), replicas.size());
+        Replica escolhida = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica candidata = replicas.get((inicio + i) % replicas.size());
+            if (candidata == excluida || !candidata.disponivel(agora)) {
+                continue;
+            }
+            if (escolhida == null || candidata.emAndamento.get() < escolhida.emAndamento.get()) {
+                escolhida = candidata;
+            }
+        }
+        if (escolhida != null) {
+            escolhida.reservar();
+        }
+        return escolhida;
+    }
+
+    private void registrarFalha(Replica replica, Throwable causa) {
+        if (replica.registrarFalha(relogioNanos.getAsLong())) {
+            LOGGER.log(Level.WARNING, "event=solver_circuito_aberto url={0} espera_ms={1} erro={2}", new Object[] {
+                replica.client.getSolverUrl(), ESPERA_CIRCUITO_ABERTO.toMillis(), causa.toString()
+            });
+        }
+    }
+
+    private static void cancelarDemais(
+            List<CompletableFuture<SolverResponse>> tentativas, CompletableFuture<SolverResponse> vencedora) {
+        for (CompletableFuture<SolverResponse> tentativa : tentativas) {
+            if (tentativa != vencedora && !tentativa.isDone()) {
+                tentativa.cancel(true);
+            }
+        }
+    }
+
+    private static Throwable causa(Throwable erro) {
+        return erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+    }
+
+    private static List<SolverClient> criarClients(Config config) {
+        Objects.requireNonNull(config, "config nao pode ser nulo");
+        Duration prazo = prazoParaOrcamento(config.orcamentoPlanejamento());
+        List<SolverClient> clients = new ArrayList<>();
+        for (String url : config.urls()) {
+            clients.add(new SolverClient(url, prazo));
+        }
+        return clients;
+    }
+
+    /**
+     * @param hedgeApos atraso para disparar a segunda tentativa; {@code null} desliga o hedge
+     */
+    public record Config(List<String> urls, Duration orcamentoPlanejamento, Duration hedgeApos) {
+        public Config {
+            Objects.requireNonNull(urls, "urls nao pode ser nulo");
+            if (urls.isEmpty()) {
+                throw new IllegalArgumentException("urls do solver nao pode ser vazio");
+            }
+            urls = List.copyOf(urls);
+            Objects.requireNonNull(orcamentoPlanejamento, "orcamentoPlanejamento nao pode ser nulo");
+            if (orcamentoPlanejamento.isNegative() || orcamentoPlanejamento.isZero()) {
+                throw new IllegalArgumentException("orcamentoPlanejamento deve ser maior que zero");
+            }
+            if (hedgeApos != null && (hedgeApos.isNegative() || hedgeApos.isZero())) {
+                throw new IllegalArgumentException("hedgeApos deve ser maior que zero quando informado");
+            }
+        }
+    }
+
+    /** Circuito por replica: fechado, aberto por ESPERA_CIRCUITO_ABERTO, depois meia-aberto com uma sonda. */
+    private static final class Replica {
+        private final SolverClient client;
+        private final AtomicInteger emAndamento = new AtomicInteger();
+        private int falhasConsecutivas;
+        private long abertoAteNanos;
+        private boolean sondaEmAndamento;
+
+        private Replica(SolverClient client) {
+            this.client = Objects.requireNonNull(client, "client nao pode ser nulo");
+        }
+
+        synchronized boolean disponivel(long agoraNanos) {
+            if (falhasConsecutivas < FALHAS_PARA_ABRIR_CIRCUITO) {
+                return true;
+            }
+            return agoraNanos - abertoAteNanos >= 0 && !sondaEmAndamento;
+        }
+
+        synchronized void reservar() {
+            if (falhasConsecutivas >= FALHAS_PARA_ABRIR_CIRCUITO) {
+                sondaEmAndamento = true;
+            }
+        }
+
+        synchronized void registrarSucesso() {
+            falhasConsecutivas = 0;
+            sondaEmAndamento = false;
+        }
+
+        /** @return true quando esta falha abriu (ou reabriu) o circuito */
+        synchronized boolean registrarFalha(long agoraNanos) {
+            falhasConsecutivas++;
+            sondaEmAndamento = false;
+            if (falhasConsecutivas >= FALHAS_PARA_ABRIR_CIRCUITO) {
+                abertoAteNanos = agoraNanos + ESPERA_CIRCUITO_ABERTO.toNanos();
+                return true;
+            }
+            return false;
+        }
+    }
+}
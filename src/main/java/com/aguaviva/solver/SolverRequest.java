@@ -1,7 +1,10 @@
 package com.aguaviva.solver;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 public final class SolverRequest {
 
@@ -14,6 +17,10 @@ public final class SolverRequest {
     private final String horarioFim;
     private final List<Integer> entregadores;
     private final List<PedidoSolver> pedidos;
+    // Opcional: NxN em segundos (index 0 = deposito, depois pedidos na ordem); o solver pula OSRM quando vem.
+    private final int[][] matrizDuracoes;
+    // Opcional: rotas do plano anterior usadas como solucao inicial da busca (warm start).
+    private final List<RotaInicial> rotasIniciais;
 
     public SolverRequest(
             String jobId,
@@ -44,6 +51,22 @@ public final class SolverRequest {
         this.horarioFim = horarioFim;
         this.entregadores = List.copyOf(entregadores);
         this.pedidos = List.copyOf(pedidos);
+        this.matrizDuracoes = null;
+        this.rotasIniciais = null;
+    }
+
+    private SolverRequest(SolverRequest base, int[][] matrizDuracoes, List<RotaInicial> rotasIniciais) {
+        this.jobId = base.jobId;
+        this.planVersion = base.planVersion;
+        this.deposito = base.deposito;
+        this.capacidadeVeiculo = base.capacidadeVeiculo;
+        this.capacidadesEntregadores = base.capacidadesEntregadores;
+        this.horarioInicio = base.horarioInicio;
+        this.horarioFim = base.horarioFim;
+        this.entregadores = base.entregadores;
+        this.pedidos = base.pedidos;
+        this.matrizDuracoes = matrizDuracoes;
+        this.rotasIniciais = rotasIniciais;
     }
 
     public SolverRequest(
@@ -104,6 +127,57 @@ public final class SolverRequest {
         return pedidos;
     }
 
+    public int[][] getMatrizDuracoes() {
+        return matrizDuracoes;
+    }
+
+    /**
+     * Copia deste request carregando a matriz de duracoes pronta.
+     *
+     * @throws IllegalArgumentException se a matriz nao for (pedidos + 1) x (pedidos + 1)
+     */
+    public SolverRequest comMatrizDuracoes(int[][] matrizDuracoes) {
+        Objects.requireNonNull(matrizDuracoes, "matrizDuracoes nao pode ser nula");
+        int n = pedidos.size() + 1;
+        if (matrizDuracoes.length != n) {
+            throw new IllegalArgumentException("matrizDuracoes deve ser " + n + "x" + n);
+        }
+        for (int[] linha : matrizDuracoes) {
+            if (linha == null || linha.length != n) {
+                throw new IllegalArgumentException("matrizDuracoes deve ser " + n + "x" + n);
+            }
+        }
+        return new SolverRequest(this, matrizDuracoes, rotasIniciais);
+    }
+
+    public List<RotaInicial> getRotasIniciais() {
+        return rotasIniciais;
+    }
+
+    /**
+     * Copia deste request carregando as rotas do plano anterior como solucao inicial. Entregadores e pedidos
+     * que nao fazem parte deste request sao descartados; sem nada aproveitavel, o campo fica vazio (null).
+     */
+    public SolverRequest comRotasIniciais(List<RotaInicial> rotasIniciais) {
+        Objects.requireNonNull(rotasIniciais, "rotasIniciais nao pode ser nula");
+        Set<Integer> entregadoresDoRequest = new HashSet<>(entregadores);
+        Set<Integer> pedidosDoRequest = new HashSet<>();
+        pedidos.forEach(pedido -> pedidosDoRequest.add(pedido.getPedidoId()));
+        List<RotaInicial> aproveitadas = new ArrayList<>();
+        for (RotaInicial rota : rotasIniciais) {
+            if (!entregadoresDoRequest.contains(rota.getEntregadorId())) {
+                continue;
+            }
+            List<Integer> pedidosDaRota = rota.getPedidos().stream()
+                    .filter(pedidosDoRequest::contains)
+                    .toList();
+            if (!pedidosDaRota.isEmpty()) {
+                aproveitadas.add(new RotaInicial(rota.getEntregadorId(), rota.getNumeroNoDia(), pedidosDaRota));
+            }
+        }
+        return new SolverRequest(this, matrizDuracoes, aproveitadas.isEmpty() ? null : List.copyOf(aproveitadas));
+    }
+
     private static String normalizeOptional(String value) {
         if (value == null || value.isBlank()) {
             return null;
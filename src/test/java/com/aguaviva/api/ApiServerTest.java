@@ -16,6 +16,7 @@ import com.aguaviva.repository.ConnectionFactory;
 import com.aguaviva.repository.UserRepository;
 import com.aguaviva.service.AtendimentoTelefonicoResultado;
 import com.aguaviva.service.AtendimentoTelefonicoService;
+import com.aguaviva.service.CapacidadePolicy;
 import com.aguaviva.service.EventoOperacionalIdempotenciaService;
 import com.aguaviva.service.ExecucaoEntregaService;
 import com.aguaviva.service.PedidoTimelineService;
@@ -196,6 +197,17 @@ class ApiServerTest {
         return clienteRepository.save(cliente).getId();
     }
 
+    @Test
+    void naoDeveIncluirPoliticaQueIgnoraCargaComprometidaComoAlternativaDoWhatIfAoVivo() {
+        assertEquals(
+                List.of(CapacidadePolicy.REMANESCENTE),
+                ApiServer.politicasCandidatas(CapacidadePolicy.REMANESCENTE, true));
+        assertEquals(
+                List.of(CapacidadePolicy.CHEIA, CapacidadePolicy.REMANESCENTE),
+                ApiServer.politicasCandidatas(CapacidadePolicy.CHEIA, true));
+        assertEquals(List.of(CapacidadePolicy.CHEIA), ApiServer.politicasCandidatas(CapacidadePolicy.CHEIA, false));
+    }
+
     @Test
     void deveRegistrarPedidoManualQuandoExternalCallIdAusenteViaHttp() throws Exception {
         int atendenteId = criarAtendenteId("api-manual@teste.com");
@@ -0,0 +1,328 @@
+package com.aguaviva.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.domain.user.Password;
+import com.aguaviva.domain.user.User;
+import com.aguaviva.domain.user.UserPapel;
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.repository.UserRepository;
+import com.aguaviva.service.AtendimentoTelefonicoService;
+import com.aguaviva.service.EventoOperacionalIdempotenciaService;
+import com.aguaviva.service.ExecucaoEntregaService;
+import com.aguaviva.service.PedidoTimelineService;
+import com.aguaviva.service.ReplanejamentoWorkerResultado;
+import com.aguaviva.service.ReplanejamentoWorkerService;
+import com.aguaviva.service.RotaService;
+import com.aguaviva.solver.SimuladorSolverGateway;
+import com.aguaviva.support.TestConnectionFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmark de preempcao: rajadas de pedidos pela API com o solver simulado (latencia e falhas sorteadas). Mede
+ * replanejamentos concluidos, preemptados e com falha, o tempo de solver descartado e o frescor do plano (do
+ * POST do pedido ate ele aparecer numa rota planejada). Tamanho ajustavel via -Dbenchmark.preempcao.rajadas,
+ * -Dbenchmark.preempcao.pedidosPorRajada, -Dbenchmark.preempcao.intervaloMs, -Dbenchmark.preempcao.latenciaMs e
+ * -Dbenchmark.preempcao.taxaFalha; os numeros so sao impressos com -Daguaviva.test.verbose=true.
+ */
+@Tag("integration")
+class ReplanejamentoPreempcaoBenchmarkTest {
+
+    private static final int RAJADAS = Integer.getInteger("benchmark.preempcao.rajadas", 3);
+    private static final int PEDIDOS_POR_RAJADA = Integer.getInteger("benchmark.preempcao.pedidosPorRajada", 4);
+    private static final int INTERVALO_MS = Integer.getInteger("benchmark.preempcao.intervaloMs", 250);
+    private static final int LATENCIA_MS = Integer.getInteger("benchmark.preempcao.latenciaMs", 400);
+    private static final double TAXA_FALHA =
+            Double.parseDouble(System.getProperty("benchmark.preempcao.taxaFalha", "0.1"));
+    private static final int ENTREGADORES = 3;
+    private static final boolean VERBOSE = Boolean.getBoolean("aguaviva.test.verbose");
+    private static final Gson GSON = new Gson();
+
+    private static ConnectionFactory factory;
+    private static UserRepository userRepository;
+
+    @BeforeAll
+    static void setUp() {
+        factory = TestConnectionFactory.newConnectionFactory();
+        userRepository = new UserRepository(factory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void limparAntes() throws Exception {
+        limparBanco();
+        atualizarConfiguracao("capacidade_veiculo", "5");
+        atualizarConfiguracao("frota_perfil_ativo", "PADRAO");
+    }
+
+    @AfterEach
+    void limparDepois() throws Exception {
+        limparBanco();
+    }
+
+    @Test
+    void devePlanejarTodosOsPedidosDasRajadasComPreempcaoDoSolverSimulado() throws Exception {
+        int atendenteId = userRepository
+                .save(new User(
+                        "Atendente",
+                        "bench-preempcao@teste.com",
+                        Password.fromPlainText("senha123"),
+                        UserPapel.ATENDENTE))
+                .getId();
+        for (int i = 1; i <= ENTREGADORES; i++) {
+            userRepository.save(new User(
+                    "Entregador " + i,
+                    "bench-preempcao-ent" + i + "@teste.com",
+                    Password.fromPlainText("senha123"),
+                    UserPapel.ENTREGADOR));
+        }
+
+        SimuladorSolverGateway simulador = new SimuladorSolverGateway(new SimuladorSolverGateway.Config(
+                SimuladorSolverGateway.Latencia.logNormal(Duration.ofMillis(LATENCIA_MS), 0.5), TAXA_FALHA, 49L));
+        RotaService rotaService = new RotaService(simulador, factory);
+        AtomicInteger workersEmVoo = new AtomicInteger();
+        // Conta as rodadas disparadas pela API: o teste so termina quando a ultima soltar o lease do outbox.
+        ReplanejamentoWorkerService worker =
+                new ReplanejamentoWorkerService(
+                        factory,
+                        capacidadePolicy -> rotaService.planejarRotasPendentes(List.of(capacidadePolicy)),
+                        rotaService::cancelarPlanejamentosAtivosBestEffort) {
+                    @Override
+                    public ReplanejamentoWorkerResultado processarPendentes(int debounceSegundos, int limiteEventos) {
+                        workersEmVoo.incrementAndGet();
+                        try {
+                            return super.processarPendentes(debounceSegundos, limiteEventos);
+                        } finally {
+                            workersEmVoo.decrementAndGet();
+                        }
+                    }
+                };
+
+        Map<Integer, Long> criadoEmNanos = new ConcurrentHashMap<>();
+        Map<Integer, Long> planejadoEmNanos = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(PEDIDOS_POR_RAJADA + 1);
+        HttpClient client = HttpClient.newHttpClient();
+        try (ApiServer.RunningServer running = ApiServer.startForTests(
+                0,
+                new AtendimentoTelefonicoService(factory),
+                new ExecucaoEntregaService(factory),
+                worker,
+                new PedidoTimelineService(factory),
+                new EventoOperacionalIdempotenciaService(factory),
+                factory)) {
+            Future<?> observador = executor.submit(() -> observarPlano(planejadoEmNanos, RAJADAS * PEDIDOS_POR_RAJADA));
+
+            long inicioTotal = System.nanoTime();
+            for (int rajada = 0; rajada < RAJADAS; rajada++) {
+                CountDownLatch largada = new CountDownLatch(1);
+                List<Future<?>> envios = new ArrayList<>(PEDIDOS_POR_RAJADA);
+                for (int i = 0; i < PEDIDOS_POR_RAJADA; i++) {
+                    int sequencia = rajada * PEDIDOS_POR_RAJADA + i;
+                    envios.add(executor.submit(() -> {
+                        largada.await(3, TimeUnit.SECONDS);
+                        long enviadoEm = System.nanoTime();
+                        int pedidoId = criarPedido(client, running.port(), atendenteId, sequencia);
+                        criadoEmNanos.put(pedidoId, enviadoEm);
+                        return null;
+                    }));
+                }
+                largada.countDown();
+                for (Future<?> envio : envios) {
+                    envio.get(30, TimeUnit.SECONDS);
+                }
+                Thread.sleep(INTERVALO_MS);
+            }
+
+            drenarOutbox(worker);
+            observador.get(60, TimeUnit.SECONDS);
+            long totalNanos = System.nanoTime() - inicioTotal;
+            aguardarWorkers(workersEmVoo);
+
+            assertEquals(RAJADAS * PEDIDOS_POR_RAJADA, criadoEmNanos.size());
+            assertTrue(planejadoEmNanos.keySet().containsAll(criadoEmNanos.keySet()), "todo pedido entra no plano");
+            Map<String, Integer> jobs = contarJobsPorStatus();
+            int concluidos = jobs.getOrDefault("CONCLUIDO", 0);
+            assertTrue(concluidos >= 1);
+            SimuladorSolverGateway.Estatisticas solver = simulador.estatisticas();
+            assertEquals(
+                    solver.iniciados(),
+                    solver.concluidos() + solver.falhas() + solver.cancelados(),
+                    "chamada pendente");
+
+            if (VERBOSE) {
+                long[] frescor = criadoEmNanos.entrySet().stream()
+                        .mapToLong(e -> planejadoEmNanos.get(e.getKey()) - e.getValue())
+                        .sorted()
+                        .toArray();
+                System.out.printf(
+                        "benchmark=replanejamento_preempcao rajadas=%d pedidos_por_rajada=%d latencia_mediana_ms=%d"
+                                + " taxa_falha=%.2f total_ms=%.1f replans_concluidos=%d replans_preemptados=%d"
+                                + " replans_falhos=%d solver_chamadas=%d solver_canceladas=%d solver_falhas=%d"
+                                + " solver_ms_descartados=%d frescor_p50_ms=%.1f frescor_p95_ms=%.1f"
+                                + " frescor_max_ms=%.1f%n",
+                        RAJADAS,
+                        PEDIDOS_POR_RAJADA,
+                        LATENCIA_MS,
+                        TAXA_FALHA,
+                        totalNanos / 1e6,
+                        concluidos,
+                        jobs.getOrDefault("CANCELADO", 0),
+                        jobs.getOrDefault("FALHOU", 0),
+                        solver.iniciados(),
+                        solver.cancelados(),
+                        solver.falhas(),
+                        solver.msDescartados(),
+                        percentilMs(frescor, 0.50),
+                        percentilMs(frescor, 0.95),
+                        frescor[frescor.length - 1] / 1e6);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int criarPedido(HttpClient client, int port, int atendenteId, int sequencia) throws Exception {
+        String payload = GSON.toJson(Map.ofEntries(
+                Map.entry("origemCanal", "MANUAL"),
+                Map.entry("manualRequestId", "bench-preempcao-" + sequencia),
+                Map.entry("telefone", String.format("(38) 99700-%04d", sequencia)),
+                Map.entry("quantidadeGaloes", 1),
+                Map.entry("atendenteId", atendenteId),
+                Map.entry("nomeCliente", "Cliente Bench " + sequencia),
+                Map.entry("endereco", "Rua Bench, " + sequencia),
+                Map.entry("latitude", -16.70 - (sequencia % 8) * 0.01),
+                Map.entry("longitude", -43.82 - (sequencia % 5) * 0.01)));
+        HttpResponse<String> resposta = client.send(
+                HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:" + port + "/api/atendimento/pedidos"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(payload))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, resposta.statusCode(), resposta.body());
+        return GSON.fromJson(resposta.body(), JsonObject.class).get("pedidoId").getAsInt();
+    }
+
+    /** Registra o primeiro instante em que cada pedido aparece numa entrega planejada. */
+    private static Void observarPlano(Map<Integer, Long> planejadoEmNanos, int esperados) throws Exception {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (planejadoEmNanos.size() < esperados && System.nanoTime() < limite) {
+            try (Connection conn = factory.getConnection();
+                    Statement stmt = conn.createStatement();
+                    ResultSet rs =
+                            stmt.executeQuery("SELECT pedido_id FROM entregas WHERE status::text = 'PENDENTE'")) {
+                long agora = System.nanoTime();
+                while (rs.next()) {
+                    planejadoEmNanos.putIfAbsent(rs.getInt("pedido_id"), agora);
+                }
+            }
+            Thread.sleep(20);
+        }
+        return null;
+    }
+
+    /**
+     * Falha sorteada do solver devolve os eventos ao outbox sem novo gatilho: fora das rajadas o benchmark aciona o
+     * worker ate o outbox esvaziar, como faria o proximo evento operacional.
+     */
+    private static void drenarOutbox(ReplanejamentoWorkerService worker) throws Exception {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < limite) {
+            if (contar("SELECT COUNT(*) FROM dispatch_events WHERE status::text = 'PENDENTE'") == 0
+                    && contar("SELECT COUNT(*) FROM solver_jobs WHERE status::text IN ('PENDENTE', 'EM_EXECUCAO')")
+                            == 0) {
+                return;
+            }
+            try {
+                worker.processarPendentes(0, 100);
+            } catch (IllegalStateException e) {
+                // Falha simulada: o evento volta ao outbox e a proxima volta tenta de novo.
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static void aguardarWorkers(AtomicInteger workersEmVoo) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (workersEmVoo.get() > 0 && System.nanoTime() < limite) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, workersEmVoo.get(), "rodada do worker ainda em andamento");
+    }
+
+    private static Map<String, Integer> contarJobsPorStatus() throws Exception {
+        Map<String, Integer> jobs = new ConcurrentHashMap<>();
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT status::text, COUNT(*) FROM solver_jobs GROUP BY status")) {
+            while (rs.next()) {
+                jobs.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        return jobs;
+    }
+
+    private static int contar(String sql) throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static double percentilMs(long[] ordenadas, double percentil) {
+        int indice = (int) Math.ceil(percentil * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, Math.min(indice, ordenadas.length - 1))] / 1e6;
+    }
+
+    private static void atualizarConfiguracao(String chave, String valor) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("UPDATE configuracoes SET valor = ? WHERE chave = ?")) {
+            stmt.setString(1, valor);
+            stmt.setString(2, chave);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void limparBanco() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE solver_jobs, atendimentos_idempotencia, dispatch_events, sessions, entregas, "
+                    + "rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users RESTART IDENTITY CASCADE");
+        }
+    }
+}
@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -95,4 +96,48 @@ class ApiRuntimeConfigTest {
 
         assertTrue(ex.getMessage().contains("configuracao nao encontrado"));
     }
+
+    @Test
+    void deveCarregarMultiplasReplicasDoSolverComOrcamentoEHedge() {
+        ApiRuntimeConfig config = ApiRuntimeConfig.fromSources(
+                Map.of(
+                        "SOLVER_URL", "http://solver-a:8080, http://solver-b:8080",
+                        "SOLVER_PLANNING_BUDGET_MS", "8000",
+                        "SOLVER_HEDGE_AFTER_MS", "1500"),
+                key -> null);
+
+        assertEquals(
+                List.of("http://solver-a:8080", "http://solver-b:8080"),
+                config.solverPool().urls());
+        assertEquals(8000L, config.solverPool().planningBudgetMs());
+        assertEquals(1500L, config.solverPool().hedgeAfterMs());
+    }
+
+    @Test
+    void deveFalharQuandoOrcamentoDePlanejamentoDoSolverForZero() {
+        IllegalStateException ex = assertThrows(
+                IllegalStateException.class,
+                () -> ApiRuntimeConfig.fromSources(Map.of("SOLVER_PLANNING_BUDGET_MS", "0"), key -> null));
+
+        assertTrue(ex.getMessage().contains("SOLVER_PLANNING_BUDGET_MS deve ser maior que zero"));
+    }
+
+    @Test
+    void deveFalharEmAmbienteEstritoQuandoAlgumaReplicaDoSolverForLocal() {
+        IllegalStateException ex = assertThrows(
+                IllegalStateException.class,
+                () -> ApiRuntimeConfig.fromSources(
+                        Map.of(
+                                "APP_ENV", "prod",
+                                "API_PORT", "8082",
+                                "SOLVER_URL", "https://solver.internal,http://localhost:8080",
+                                "POSTGRES_HOST", "postgres.internal",
+                                "POSTGRES_PORT", "5432",
+                                "POSTGRES_DB", "agua_viva",
+                                "POSTGRES_USER", "agua_viva_app",
+                                "POSTGRES_PASSWORD", "segredo-forte"),
+                        key -> null));
+
+        assertTrue(ex.getMessage().contains("SOLVER_URL local"));
+    }
 }
@@ -60,6 +60,9 @@ class ContractsV1Test {
                 () -> assertTrue(
                         openApi.contains("/api/operacao/replanejamento/jobs/{jobId}:"),
                         "Contrato deve expor endpoint de detalhe de job de replanejamento"),
+                () -> assertTrue(
+                        openApi.contains("/api/operacao/planejamento/simulacoes:"),
+                        "Contrato deve expor endpoint de simulacao de planejamento"),
                 () -> assertTrue(
                         openApi.contains("externalEventId:"),
                         "Contrato deve mapear chave de idempotencia externalEventId"),
@@ -157,7 +160,9 @@ class ContractsV1Test {
             "operacao-eventos.response.json",
             "operacao-mapa.response.json",
             "operacao-replanejamento-jobs.response.json",
-            "operacao-replanejamento-job-detalhe.response.json"
+            "operacao-replanejamento-job-detalhe.response.json",
+            "operacao-planejamento-simulacao.request.json",
+            "operacao-planejamento-simulacao.response.json"
         };
 
         for (String nomeArquivo : exemplosObrigatorios) {
@@ -214,6 +219,25 @@ class ContractsV1Test {
                 "Semantica invalida: taxaSucessoPercentual deve refletir entregasConcluidas/totalFinalizadas");
     }
 
+    @Test
+    void deveManterCamposObrigatoriosNoExemploDeDetalheDeJobDeReplanejamento() throws Exception {
+        Map<String, Object> openApiDocument = OpenApiYamlSupport.load(CONTRACTS_V1_DIR.resolve("openapi.yaml"));
+        JsonObject detalheExemplo = JsonParser.parseString(Files.readString(CONTRACTS_V1_DIR.resolve(
+                        Path.of("examples", "operacao-replanejamento-job-detalhe.response.json"))))
+                .getAsJsonObject();
+
+        assertObjectContainsRequiredFields(
+                detalheExemplo,
+                extractSchemaRequired(openApiDocument, "OperacaoReplanejamentoJobDetalheResponse"),
+                "OperacaoReplanejamentoJobDetalheResponse");
+        JsonObject job = detalheExemplo.getAsJsonObject("job");
+        assertNotNull(job, "Exemplo deve incluir objeto job");
+        assertObjectContainsRequiredFields(
+                job,
+                extractSchemaRequired(openApiDocument, "OperacaoReplanejamentoJobDetalhe"),
+                "OperacaoReplanejamentoJobDetalheResponse.job");
+    }
+
     private static Set<String> extractSchemaRequired(Map<String, Object> openApiDocument, String schemaName) {
         Map<String, Object> components = OpenApiYamlSupport.requiredMap(openApiDocument, "components", "openapi");
         Map<String, Object> schemas = OpenApiYamlSupport.requiredMap(components, "schemas", "openapi.components");
@@ -0,0 +1,148 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.domain.user.Password;
+import com.aguaviva.domain.user.User;
+import com.aguaviva.domain.user.UserPapel;
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.repository.UserRepository;
+import com.aguaviva.support.TestConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("integration")
+class ConfiguracaoSnapshotServiceTest {
+
+    private static ConnectionFactory factory;
+    private static UserRepository userRepository;
+
+    private ConfiguracaoSnapshotService snapshotService;
+
+    @BeforeAll
+    static void setUp() {
+        factory = TestConnectionFactory.newConnectionFactory();
+        userRepository = new UserRepository(factory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void limparAntes() throws Exception {
+        limparBanco();
+        snapshotService = new ConfiguracaoSnapshotService();
+    }
+
+    @AfterEach
+    void limparDepois() throws Exception {
+        limparBanco();
+        atualizarConfiguracao("capacidade_veiculo", "5");
+    }
+
+    private void limparBanco() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute(
+                    "TRUNCATE TABLE sessions, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users RESTART IDENTITY CASCADE");
+        }
+    }
+
+    @Test
+    void deveReutilizarSnapshotEnquantoVersaoNaoMudar() throws Exception {
+        try (Connection conn = factory.getConnection()) {
+            ConfiguracaoSnapshot primeiro = snapshotService.obter(conn);
+            ConfiguracaoSnapshot segundo = snapshotService.obter(conn);
+
+            assertSame(primeiro, segundo);
+            assertEquals("5", primeiro.valor("capacidade_veiculo"));
+            assertSame(
+                    primeiro.derivar("teste.capacidade", s -> Integer.valueOf(s.valor("capacidade_veiculo"))),
+                    segundo.derivar("teste.capacidade", s -> Integer.valueOf(-1)));
+        }
+    }
+
+    @Test
+    void deveRecarregarSnapshotQuandoConfiguracaoForAlterada() throws Exception {
+        ConfiguracaoSnapshot antes;
+        try (Connection conn = factory.getConnection()) {
+            antes = snapshotService.obter(conn);
+        }
+
+        atualizarConfiguracao("capacidade_veiculo", "7");
+
+        try (Connection conn = factory.getConnection()) {
+            ConfiguracaoSnapshot depois = snapshotService.obter(conn);
+            assertNotSame(antes, depois);
+            assertTrue(depois.versao() > antes.versao());
+            assertEquals("7", depois.valor("capacidade_veiculo"));
+        }
+    }
+
+    @Test
+    void deveRecarregarFrotaQuandoEntregadorForCriadoOuDesativado() throws Exception {
+        try (Connection conn = factory.getConnection()) {
+            assertEquals(List.of(), snapshotService.obter(conn).entregadoresAtivos());
+        }
+
+        User entregador = userRepository.save(
+                new User("Entregador", "snapshot@teste.com", Password.fromPlainText("senha123"), UserPapel.ENTREGADOR));
+
+        try (Connection conn = factory.getConnection()) {
+            assertEquals(
+                    List.of(entregador.getId()), snapshotService.obter(conn).entregadoresAtivos());
+        }
+
+        userRepository.desativar(entregador.getId());
+
+        try (Connection conn = factory.getConnection()) {
+            assertEquals(List.of(), snapshotService.obter(conn).entregadoresAtivos());
+        }
+    }
+
+    @Test
+    void naoDevePublicarNoCacheSnapshotDeEscritaNaoCommitada() throws Exception {
+        try (Connection conn = factory.getConnection()) {
+            snapshotService.obter(conn);
+        }
+
+        try (Connection conn = factory.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt =
+                    conn.prepareStatement("UPDATE configuracoes SET valor = '9' WHERE chave = 'capacidade_veiculo'")) {
+                stmt.executeUpdate();
+            }
+            assertEquals("9", snapshotService.obter(conn).valor("capacidade_veiculo"));
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+
+        try (Connection conn = factory.getConnection()) {
+            assertEquals("5", snapshotService.obter(conn).valor("capacidade_veiculo"));
+        }
+    }
+
+    private void atualizarConfiguracao(String chave, String valor) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("UPDATE configuracoes SET valor = ? WHERE chave = ?")) {
+            stmt.setString(1, valor);
+            stmt.setString(2, chave);
+            stmt.executeUpdate();
+        }
+    }
+}
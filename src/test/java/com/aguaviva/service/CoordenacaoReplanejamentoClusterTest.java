@@ -0,0 +1,133 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.support.TestConnectionFactory;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("integration")
+class CoordenacaoReplanejamentoClusterTest {
+
+    private static ConnectionFactory factory;
+
+    @BeforeAll
+    static void setUp() {
+        factory = TestConnectionFactory.newConnectionFactory();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void limparAntes() throws Exception {
+        limparLeases();
+    }
+
+    @AfterEach
+    void limparDepois() throws Exception {
+        limparLeases();
+    }
+
+    @Test
+    void deveManterUmUnicoLiderAteOLeaseVencer() throws Exception {
+        try (CoordenacaoReplanejamentoCluster noA =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-a", Duration.ofSeconds(1));
+                CoordenacaoReplanejamentoCluster noB =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-b", Duration.ofSeconds(1))) {
+            assertTrue(noA.renovar());
+            assertFalse(noB.renovar());
+            assertFalse(noB.isLider());
+            assertTrue(noA.renovar(), "dono renova o proprio lease");
+
+            Thread.sleep(1_300);
+
+            assertTrue(noB.renovar(), "lease vencido passa para outra instancia");
+            assertFalse(noA.renovar());
+        }
+    }
+
+    @Test
+    void deveLiberarLeaseAoFecharSemEsperarVencimento() throws Exception {
+        CoordenacaoReplanejamentoCluster noA =
+                new CoordenacaoReplanejamentoCluster(factory, "no-a", Duration.ofSeconds(30));
+        try (CoordenacaoReplanejamentoCluster noB =
+                new CoordenacaoReplanejamentoCluster(factory, "no-b", Duration.ofSeconds(30))) {
+            assertTrue(noA.renovar());
+            assertFalse(noB.renovar());
+
+            noA.close();
+
+            assertTrue(noB.renovar());
+        } finally {
+            noA.close();
+        }
+    }
+
+    @Test
+    void deveEncaminharGatilhoDoSeguidorAoLiderPorNotify() throws Exception {
+        // Uma contagem ao assumir a lideranca e outra pelo gatilho encaminhado.
+        CountDownLatch gatilhos = new CountDownLatch(2);
+        try (CoordenacaoReplanejamentoCluster lider =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-a", Duration.ofSeconds(5));
+                CoordenacaoReplanejamentoCluster seguidor =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-b", Duration.ofSeconds(5))) {
+            lider.iniciar(gatilhos::countDown, jobId -> {});
+            assertTrue(lider.aguardarOuvinte(Duration.ofSeconds(5)));
+            assertTrue(lider.isLider());
+            assertFalse(seguidor.isLider());
+
+            seguidor.encaminharAoLider();
+
+            assertTrue(gatilhos.await(5, TimeUnit.SECONDS), "lider deve receber o gatilho encaminhado");
+        }
+    }
+
+    @Test
+    void deveEntregarCancelamentoDeJobATodasAsInstancias() throws Exception {
+        BlockingQueue<String> canceladosA = new LinkedBlockingQueue<>();
+        BlockingQueue<String> canceladosB = new LinkedBlockingQueue<>();
+        try (CoordenacaoReplanejamentoCluster noA =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-a", Duration.ofSeconds(5));
+                CoordenacaoReplanejamentoCluster noB =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-b", Duration.ofSeconds(5))) {
+            noA.iniciar(() -> {}, canceladosA::add);
+            noB.iniciar(() -> {}, canceladosB::add);
+            assertTrue(noA.aguardarOuvinte(Duration.ofSeconds(5)));
+            assertTrue(noB.aguardarOuvinte(Duration.ofSeconds(5)));
+
+            try (Connection conn = factory.getConnection()) {
+                RotaSolverJobSupport.notificarCancelamento(conn, List.of("job-cluster-1"));
+            }
+
+            assertEquals("job-cluster-1", canceladosA.poll(5, TimeUnit.SECONDS));
+            assertEquals("job-cluster-1", canceladosB.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private void limparLeases() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM worker_leases");
+        }
+    }
+}
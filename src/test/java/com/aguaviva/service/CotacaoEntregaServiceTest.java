@@ -0,0 +1,224 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.support.TestConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("integration")
+class CotacaoEntregaServiceTest {
+
+    private static final LocalDateTime AGORA = LocalDate.now().atTime(10, 0);
+
+    private static final Map<String, String> CONFIGURACAO_FIXA = Map.of(
+            "capacidade_veiculo", "5",
+            "frota_perfil_ativo", "PADRAO",
+            "deposito_latitude", "-16.734440968489228",
+            "deposito_longitude", "-43.877211192130325",
+            "horario_fim_expediente", "18:00");
+
+    private static ConnectionFactory factory;
+    private static final Map<String, String> configuracaoOriginal = new LinkedHashMap<>();
+
+    private CotacaoEntregaService service;
+    private int atendenteId;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        factory = TestConnectionFactory.newConnectionFactory();
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT valor FROM configuracoes WHERE chave = ?")) {
+            for (String chave : CONFIGURACAO_FIXA.keySet()) {
+                stmt.setString(1, chave);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        configuracaoOriginal.put(chave, rs.getString(1));
+                    }
+                }
+            }
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        if (factory != null) {
+            // Devolve a configuracao que o cenario fixou, para nao vazar estado para as proximas classes.
+            for (Map.Entry<String, String> original : configuracaoOriginal.entrySet()) {
+                atualizarConfiguracao(original.getKey(), original.getValue());
+            }
+            configuracaoOriginal.clear();
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void prepararCenario() throws Exception {
+        limparBanco();
+        // Fixa o que a cotacao le; os valores originais voltam no @AfterAll.
+        for (Map.Entry<String, String> fixa : CONFIGURACAO_FIXA.entrySet()) {
+            atualizarConfiguracao(fixa.getKey(), fixa.getValue());
+        }
+        atendenteId = inserirUsuario("atendente-cotacao@teste.com", "atendente");
+        service = new CotacaoEntregaService(factory, new ConfiguracaoSnapshotService(), Duration.ZERO, () -> AGORA);
+    }
+
+    @AfterEach
+    void limparDepois() throws Exception {
+        limparBanco();
+    }
+
+    @Test
+    void deveCotarNoEntregadorCujaRotaPassaPertoDoNovoPedido() throws Exception {
+        int entregadorLeste = inserirUsuario("entregador-leste@teste.com", "entregador");
+        inserirUsuario("entregador-ocioso@teste.com", "entregador");
+        int rotaId = inserirRota(entregadorLeste, "EM_ANDAMENTO");
+        // Rota segue para o norte, longe da linha do deposito: inserir no fim custaria a volta inteira.
+        inserirParada(rotaId, 1, -16.7300, -43.8500, 2, AGORA.plusMinutes(10));
+        inserirParada(rotaId, 2, -16.7100, -43.8500, 2, AGORA.plusMinutes(20));
+
+        Optional<CotacaoEntregaService.CotacaoEntrega> cotacao = service.cotar(-16.7200, -43.8505, 1, null, null);
+
+        assertTrue(cotacao.isPresent());
+        assertEquals(entregadorLeste, cotacao.get().entregadorId());
+        LocalDateTime inicio = LocalDateTime.parse(cotacao.get().previsaoInicio());
+        LocalDateTime fim = LocalDateTime.parse(cotacao.get().previsaoFim());
+        assertTrue(inicio.isAfter(AGORA.plusMinutes(10)), "nova parada entra depois da primeira: " + inicio);
+        assertTrue(inicio.isBefore(AGORA.plusMinutes(20)), "e antes da segunda: " + inicio);
+        assertTrue(!fim.isBefore(inicio.plusMinutes(10)), "faixa tem margem minima de 10 minutos");
+    }
+
+    @Test
+    void deveIgnorarRotaSemCapacidadeLivreECotarNoEntregadorOcioso() throws Exception {
+        int entregadorCheio = inserirUsuario("entregador-cheio@teste.com", "entregador");
+        int entregadorOcioso = inserirUsuario("entregador-livre@teste.com", "entregador");
+        int rotaId = inserirRota(entregadorCheio, "EM_ANDAMENTO");
+        inserirParada(rotaId, 1, -16.7300, -43.8500, 5, AGORA.plusMinutes(10));
+
+        Optional<CotacaoEntregaService.CotacaoEntrega> cotacao = service.cotar(-16.7305, -43.8490, 1, null, null);
+
+        assertTrue(cotacao.isPresent());
+        assertEquals(entregadorOcioso, cotacao.get().entregadorId());
+    }
+
+    @Test
+    void naoDeveCotarQuandoJanelaHardDoPedidoFechaAntesDaChegadaPossivel() throws Exception {
+        inserirUsuario("entregador-janela@teste.com", "entregador");
+
+        // ~8 km do deposito a 30 km/h: nao chega antes das 10:05.
+        Optional<CotacaoEntregaService.CotacaoEntrega> cotacao =
+                service.cotar(-16.7344, -43.8000, 1, LocalTime.of(9, 30), LocalTime.of(10, 5));
+
+        assertFalse(cotacao.isPresent());
+    }
+
+    private int inserirRota(int entregadorId, String status) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt =
+                        conn.prepareStatement("INSERT INTO rotas (entregador_id, data, numero_no_dia, status) "
+                                + "VALUES (?, CURRENT_DATE, 1, ?) RETURNING id")) {
+            stmt.setInt(1, entregadorId);
+            stmt.setObject(2, status, Types.OTHER);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt("id");
+            }
+        }
+    }
+
+    private void inserirParada(int rotaId, int ordem, double lat, double lon, int galoes, LocalDateTime prevista)
+            throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmtCliente = conn.prepareStatement(
+                        "INSERT INTO clientes (nome, telefone, tipo, endereco, latitude, longitude) "
+                                + "VALUES (?, ?, ?, ?, ?, ?) RETURNING id");
+                PreparedStatement stmtPedido = conn.prepareStatement(
+                        "INSERT INTO pedidos (cliente_id, quantidade_galoes, janela_tipo, status, criado_por) "
+                                + "VALUES (?, ?, ?, ?, ?) RETURNING id");
+                PreparedStatement stmtEntrega = conn.prepareStatement(
+                        "INSERT INTO entregas (pedido_id, rota_id, ordem_na_rota, status, hora_prevista) "
+                                + "VALUES (?, ?, ?, ?, ?)")) {
+            stmtCliente.setString(1, "Cliente Cotacao " + rotaId + "-" + ordem);
+            stmtCliente.setString(2, "3898" + rotaId + "00" + ordem);
+            stmtCliente.setObject(3, "PF", Types.OTHER);
+            stmtCliente.setString(4, "Rua Cotacao " + ordem);
+            stmtCliente.setDouble(5, lat);
+            stmtCliente.setDouble(6, lon);
+            int clienteId;
+            try (ResultSet rs = stmtCliente.executeQuery()) {
+                rs.next();
+                clienteId = rs.getInt("id");
+            }
+
+            stmtPedido.setInt(1, clienteId);
+            stmtPedido.setInt(2, galoes);
+            stmtPedido.setObject(3, "ASAP", Types.OTHER);
+            stmtPedido.setObject(4, "CONFIRMADO", Types.OTHER);
+            stmtPedido.setInt(5, atendenteId);
+            int pedidoId;
+            try (ResultSet rs = stmtPedido.executeQuery()) {
+                rs.next();
+                pedidoId = rs.getInt("id");
+            }
+
+            stmtEntrega.setInt(1, pedidoId);
+            stmtEntrega.setInt(2, rotaId);
+            stmtEntrega.setInt(3, ordem);
+            stmtEntrega.setObject(4, "PENDENTE", Types.OTHER);
+            stmtEntrega.setTimestamp(5, Timestamp.valueOf(prevista));
+            stmtEntrega.executeUpdate();
+        }
+    }
+
+    private void limparBanco() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE dispatch_events, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, "
+                    + "clientes, users RESTART IDENTITY CASCADE");
+        }
+    }
+
+    private static void atualizarConfiguracao(String chave, String valor) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("UPDATE configuracoes SET valor = ? WHERE chave = ?")) {
+            stmt.setString(1, valor);
+            stmt.setString(2, chave);
+            stmt.executeUpdate();
+        }
+    }
+
+    private int inserirUsuario(String email, String papel) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO users (nome, email, senha_hash, papel, ativo) VALUES (?, ?, ?, ?, true) RETURNING id")) {
+            stmt.setString(1, "Usuario Cotacao");
+            stmt.setString(2, email);
+            stmt.setString(3, "$2a$10$abcdefghijklmnopqrstuv");
+            stmt.setObject(4, papel, Types.OTHER);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt("id");
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.Parada;
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.RotaInicial;
+import com.aguaviva.solver.RotaSolver;
+import com.aguaviva.solver.SolverGateway;
+import com.aguaviva.solver.SolverRequest;
+import com.aguaviva.solver.SolverResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class DecomposicaoTerritorialTest {
+
+    private static final Coordenada DEPOSITO = new Coordenada(-16.7344, -43.8772);
+
+    @Test
+    void naoDeveDecomporQuandoDesligadoOuAbaixoDoLimite() {
+        SolverRequest request = request(pedidosEmQuadrantes(8), List.of(1, 2), null);
+
+        assertSame(request, DecomposicaoTerritorial.dividir(request, 0).get(0));
+        assertSame(request, DecomposicaoTerritorial.dividir(request, 8).get(0));
+    }
+
+    @Test
+    void deveDividirEmTerritoriosDisjuntosCobrindoTodosOsPedidosEEntregadores() {
+        List<PedidoSolver> pedidos = pedidosEmQuadrantes(40);
+        SolverRequest request = request(pedidos, List.of(11, 12, 13, 14, 15), List.of(5, 5, 3, 5, 2));
+
+        List<SolverRequest> territorios = DecomposicaoTerritorial.dividir(request, 10);
+
+        assertEquals(4, territorios.size());
+        Set<Integer> pedidosVistos = new HashSet<>();
+        List<Integer> entregadoresVistos = new ArrayList<>();
+        List<Integer> capacidadesVistas = new ArrayList<>();
+        for (SolverRequest territorio : territorios) {
+            assertTrue(!territorio.getEntregadores().isEmpty());
+            assertEquals(
+                    territorio.getEntregadores().size(),
+                    territorio.getCapacidadesEntregadores().size());
+            territorio.getPedidos().forEach(p -> assertTrue(pedidosVistos.add(p.getPedidoId())));
+            entregadoresVistos.addAll(territorio.getEntregadores());
+            capacidadesVistas.addAll(territorio.getCapacidadesEntregadores());
+            assertTrue(territorio.getJobId().startsWith("job-plan-1-t"));
+        }
+        assertEquals(40, pedidosVistos.size());
+        assertEquals(List.of(11, 12, 13, 14, 15), entregadoresVistos);
+        assertEquals(List.of(5, 5, 3, 5, 2), capacidadesVistas);
+        // Quadrantes tem a mesma carga: a varredura nao deve misturar quadrantes num mesmo territorio.
+        for (SolverRequest territorio : territorios) {
+            assertEquals(
+                    1,
+                    territorio.getPedidos().stream()
+                            .map(p -> p.getPedidoId() / 100)
+                            .distinct()
+                            .count());
+        }
+    }
+
+    @Test
+    void deveRepassarACadaTerritorioApenasOTrechoDoPlanoAnteriorQueCabeNele() {
+        List<PedidoSolver> pedidos = pedidosEmQuadrantes(8);
+        List<Integer> todos = pedidos.stream().map(PedidoSolver::getPedidoId).toList();
+        SolverRequest request = request(pedidos, List.of(1, 2), null)
+                .comRotasIniciais(List.of(new RotaInicial(1, 1, todos), new RotaInicial(99, 1, todos)));
+
+        List<SolverRequest> territorios = DecomposicaoTerritorial.dividir(request, 4);
+
+        assertEquals(2, territorios.size());
+        for (SolverRequest territorio : territorios) {
+            Set<Integer> pedidosDoTerritorio = new HashSet<>();
+            territorio.getPedidos().forEach(p -> pedidosDoTerritorio.add(p.getPedidoId()));
+            List<RotaInicial> rotas = territorio.getRotasIniciais();
+            if (territorio.getEntregadores().contains(1)) {
+                assertEquals(1, rotas.size());
+                assertEquals(pedidosDoTerritorio, new HashSet<>(rotas.get(0).getPedidos()));
+            } else {
+                assertNull(rotas);
+            }
+        }
+    }
+
+    @Test
+    void deveResolverTerritoriosEmParaleloEReenviarNaoAtendidosAosEntregadoresOciosos() throws Exception {
+        List<PedidoSolver> pedidos = pedidosEmQuadrantes(8);
+        SolverRequest request = request(pedidos, List.of(1, 2, 3), null);
+        CountDownLatch todosEmAndamento = new CountDownLatch(2);
+        List<SolverRequest> recebidos = new CopyOnWriteArrayList<>();
+
+        // Territorio com mais de um entregador atende com o primeiro e devolve o ultimo pedido como nao atendido;
+        // os demais entregadores ficam ociosos e recebem o reparo.
+        Function<SolverRequest, SolverResponse> solver = territorio -> {
+            List<PedidoSolver> atendidos = territorio.getPedidos();
+            List<Integer> naoAtendidos = List.of();
+            if (territorio.getJobId().endsWith("-t1") || territorio.getJobId().endsWith("-t2")) {
+                atendidos = territorio
+                        .getPedidos()
+                        .subList(0, territorio.getPedidos().size() - 1);
+                naoAtendidos = List.of(territorio.getPedidos().getLast().getPedidoId());
+            }
+            return new SolverResponse(List.of(rota(territorio.getEntregadores().get(0), atendidos)), naoAtendidos);
+        };
+        SolverGateway gateway = new SolverGateway() {
+            @Override
+            public SolverResponse solve(SolverRequest territorio) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<SolverResponse> solveAsync(SolverRequest territorio) {
+                recebidos.add(territorio);
+                if (territorio.getJobId().endsWith("-reparo")) {
+                    return CompletableFuture.completedFuture(solver.apply(territorio));
+                }
+                return CompletableFuture.supplyAsync(
+                        () -> {
+                            todosEmAndamento.countDown();
+                            try {
+                                // So completa quando todos os territorios estiverem em execucao ao mesmo tempo.
+                                assertTrue(todosEmAndamento.await(5, TimeUnit.SECONDS));
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                            return solver.apply(territorio);
+                        },
+                        tarefa -> Thread.ofVirtual().start(tarefa));
+            }
+
+            @Override
+            public void cancelBestEffort(String jobId) {}
+        };
+
+        SolverResponse response =
+                DecomposicaoTerritorial.resolver(gateway, request, 4).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, recebidos.size());
+        SolverRequest reparo = recebidos.stream()
+                .filter(r -> r.getJobId().endsWith("-reparo"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(2, reparo.getPedidos().size());
+        assertEquals(1, reparo.getEntregadores().size());
+        assertEquals(List.of(), response.getNaoAtendidos());
+        assertEquals(3, response.getRotas().size());
+        assertEquals(
+                8,
+                response.getRotas().stream()
+                        .mapToInt(r -> r.getParadas().size())
+                        .sum());
+    }
+
+    private static SolverRequest request(List<PedidoSolver> pedidos, List<Integer> entregadores, List<Integer> caps) {
+        return new SolverRequest("job-plan-1", 1L, DEPOSITO, 5, caps, "08:00", "18:00", entregadores, pedidos);
+    }
+
+    /** Pedidos distribuidos igualmente em 4 quadrantes ao redor do deposito; id = quadrante * 100 + n. */
+    private static List<PedidoSolver> pedidosEmQuadrantes(int total) {
+        double[][] direcoes = {{1, 1}, {1, -1}, {-1, -1}, {-1, 1}};
+        List<PedidoSolver> pedidos = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            int quadrante = i % 4;
+            double deslocamento = 0.01 + (i / 4) * 0.0005;
+            pedidos.add(new PedidoSolver(
+                    (quadrante + 1) * 100 + i,
+                    DEPOSITO.getLat() + direcoes[quadrante][0] * deslocamento,
+                    DEPOSITO.getLon() + direcoes[quadrante][1] * (deslocamento + (i / 4) * 0.0002),
+                    1,
+                    "ASAP",
+                    null,
+                    null,
+                    2));
+        }
+        return pedidos;
+    }
+
+    private static RotaSolver rota(int entregadorId, List<PedidoSolver> pedidos) {
+        List<Parada> paradas = new ArrayList<>();
+        for (int i = 0; i < pedidos.size(); i++) {
+            PedidoSolver pedido = pedidos.get(i);
+            paradas.add(new Parada(i + 1, pedido.getPedidoId(), pedido.getLat(), pedido.getLon(), "09:00"));
+        }
+        return new RotaSolver(entregadorId, 1, paradas);
+    }
+}
@@ -0,0 +1,136 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.support.TestConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("integration")
+class DispatchEventServiceTest {
+
+    private static ConnectionFactory factory;
+    private static DispatchEventService dispatchEventService;
+
+    @BeforeAll
+    static void setUp() {
+        factory = TestConnectionFactory.newConnectionFactory();
+        dispatchEventService = new DispatchEventService();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void limparAntes() throws Exception {
+        limparBanco();
+    }
+
+    @AfterEach
+    void limparDepois() throws Exception {
+        limparBanco();
+    }
+
+    private void limparBanco() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE dispatch_events RESTART IDENTITY");
+        }
+    }
+
+    @Test
+    void devePublicarLoteEmUmUnicoInsertPreservandoOrdem() throws Exception {
+        List<Long> ids;
+        try (Connection conn = factory.getConnection()) {
+            conn.setAutoCommit(false);
+            DispatchEventService.Lote lote = dispatchEventService
+                    .novoLote()
+                    .adicionar(DispatchEventTypes.PEDIDO_ENTREGUE, "PEDIDO", 10L, Map.of("pedidoId", 10))
+                    .adicionar(DispatchEventTypes.ROTA_CONCLUIDA, "ROTA", 3L, Map.of("rotaId", 3))
+                    .adicionar(DispatchEventTypes.PEDIDO_CRIADO, "PEDIDO", null, null);
+            ids = dispatchEventService.publicarLote(conn, lote);
+            conn.commit();
+            assertTrue(lote.isEmpty());
+        }
+
+        assertEquals(3, ids.size());
+        assertEquals(
+                List.of(
+                        DispatchEventTypes.PEDIDO_ENTREGUE,
+                        DispatchEventTypes.ROTA_CONCLUIDA,
+                        DispatchEventTypes.PEDIDO_CRIADO),
+                eventTypesPorId(ids));
+        assertEquals("{\"rotaId\": 3}", payloadPorId(ids.get(1)));
+        assertEquals("{}", payloadPorId(ids.get(2)));
+    }
+
+    @Test
+    void naoDeveInserirNadaQuandoLoteVazio() throws Exception {
+        try (Connection conn = factory.getConnection()) {
+            assertEquals(List.of(), dispatchEventService.publicarLote(conn, dispatchEventService.novoLote()));
+        }
+        assertEquals(0, contarEventos());
+    }
+
+    @Test
+    void deveRejeitarEventoSemTipoAoAdicionarNoLote() {
+        DispatchEventService.Lote lote = dispatchEventService.novoLote();
+        assertThrows(IllegalArgumentException.class, () -> lote.adicionar(" ", "PEDIDO", 1L, null));
+        assertEquals(0, lote.tamanho());
+    }
+
+    private List<String> eventTypesPorId(List<Long> ids) throws Exception {
+        List<String> result = new ArrayList<>();
+        for (Long id : ids) {
+            try (Connection conn = factory.getConnection();
+                    PreparedStatement stmt =
+                            conn.prepareStatement("SELECT event_type FROM dispatch_events WHERE id = ?")) {
+                stmt.setLong(1, id);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    result.add(rs.getString(1));
+                }
+            }
+        }
+        return result;
+    }
+
+    private String payloadPorId(long id) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt =
+                        conn.prepareStatement("SELECT payload::text FROM dispatch_events WHERE id = ?")) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private int contarEventos() throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM dispatch_events");
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
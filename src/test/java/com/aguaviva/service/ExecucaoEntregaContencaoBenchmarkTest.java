@@ -0,0 +1,259 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.aguaviva.domain.cliente.Cliente;
+import com.aguaviva.domain.cliente.ClienteTipo;
+import com.aguaviva.domain.pedido.JanelaTipo;
+import com.aguaviva.domain.pedido.Pedido;
+import com.aguaviva.domain.pedido.PedidoStatus;
+import com.aguaviva.domain.user.Password;
+import com.aguaviva.domain.user.User;
+import com.aguaviva.domain.user.UserPapel;
+import com.aguaviva.repository.ClienteRepository;
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.repository.PedidoRepository;
+import com.aguaviva.repository.UserRepository;
+import com.aguaviva.support.TestConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmark de contencao: eventos terminais paralelos para paradas distintas da mesma rota, contra o controle com
+ * uma rota por entrega.
+ * Tamanho ajustavel via -Dbenchmark.contencao.entregas e -Dbenchmark.contencao.threads; os numeros so sao
+ * impressos com -Daguaviva.test.verbose=true.
+ */
+@Tag("integration")
+class ExecucaoEntregaContencaoBenchmarkTest {
+
+    private static final int ENTREGAS = Integer.getInteger("benchmark.contencao.entregas", 40);
+    private static final int THREADS = Integer.getInteger("benchmark.contencao.threads", 4);
+    private static final boolean VERBOSE = Boolean.getBoolean("aguaviva.test.verbose");
+
+    private static ConnectionFactory factory;
+    private static UserRepository userRepository;
+    private static ClienteRepository clienteRepository;
+    private static PedidoRepository pedidoRepository;
+    private static ExecucaoEntregaService execucaoService;
+
+    @BeforeAll
+    static void setUp() {
+        factory = TestConnectionFactory.newConnectionFactory();
+        userRepository = new UserRepository(factory);
+        clienteRepository = new ClienteRepository(factory);
+        pedidoRepository = new PedidoRepository(factory);
+        execucaoService = new ExecucaoEntregaService(factory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void limparAntes() throws Exception {
+        limparBanco();
+    }
+
+    @AfterEach
+    void limparDepois() throws Exception {
+        limparBanco();
+    }
+
+    @Test
+    void deveFinalizarParadasParalelasDaMesmaRotaConcluindoUmaUnicaVez() throws Exception {
+        Medicao medicao = finalizarEmParalelo(1);
+
+        assertEquals("CONCLUIDA", statusRota(medicao.rotas().get(0)));
+        assertEquals(1, contarEventos("ROTA_CONCLUIDA"));
+        assertEquals(ENTREGAS, contarEventos("PEDIDO_ENTREGUE") + contarEventos("PEDIDO_FALHOU"));
+        imprimir("execucao_contencao_rota", medicao);
+    }
+
+    /**
+     * Controle do cenario acima: mesmas entregas, uma rota por entrega. A diferenca entre os dois cenarios e o custo
+     * da serializacao por rota que sobra: paradas irmas gravadas por ETA/resequenciamento, fatias de contadores
+     * coincidentes e o lock da rota quando ela pode concluir.
+     */
+    @Test
+    void deveFinalizarParadasParalelasDeRotasDistintasSemSerializarPorRota() throws Exception {
+        Medicao medicao = finalizarEmParalelo(ENTREGAS);
+
+        for (int rotaId : medicao.rotas()) {
+            assertEquals("CONCLUIDA", statusRota(rotaId));
+        }
+        assertEquals(ENTREGAS, contarEventos("ROTA_CONCLUIDA"));
+        imprimir("execucao_contencao_rotas_distintas", medicao);
+    }
+
+    private Medicao finalizarEmParalelo(int quantidadeRotas) throws Exception {
+        int atendenteId = userRepository
+                .save(new User("Atendente", "bench@teste.com", Password.fromPlainText("senha123"), UserPapel.ATENDENTE))
+                .getId();
+        int clienteId = clienteRepository
+                .save(new Cliente("Cliente bench", "(38) 99999-9300", ClienteTipo.PF, "Rua A, 10"))
+                .getId();
+        List<Integer> rotas = new ArrayList<>(quantidadeRotas);
+        for (int r = 1; r <= quantidadeRotas; r++) {
+            int entregadorId = userRepository
+                    .save(new User(
+                            "Entregador " + r,
+                            "bench-ent-" + r + "@teste.com",
+                            Password.fromPlainText("senha123"),
+                            UserPapel.ENTREGADOR))
+                    .getId();
+            rotas.add(criarRotaEmAndamento(entregadorId));
+        }
+        List<Integer> entregas = new ArrayList<>(ENTREGAS);
+        for (int i = 1; i <= ENTREGAS; i++) {
+            Pedido pedido = new Pedido(
+                    0,
+                    clienteId,
+                    1,
+                    JanelaTipo.HARD,
+                    LocalTime.of(9, 0),
+                    LocalTime.of(11, 0),
+                    PedidoStatus.EM_ROTA,
+                    atendenteId);
+            int rotaId = rotas.get((i - 1) % quantidadeRotas);
+            entregas.add(criarEntregaEmExecucao(pedidoRepository.save(pedido).getId(), rotaId, i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] latenciasNanos = new long[ENTREGAS];
+        try {
+            List<Future<ExecucaoEntregaResultado>> futures = new ArrayList<>(ENTREGAS);
+            for (int i = 0; i < ENTREGAS; i++) {
+                int indice = i;
+                int entregaId = entregas.get(i);
+                futures.add(executor.submit(() -> {
+                    start.await(3, TimeUnit.SECONDS);
+                    long inicio = System.nanoTime();
+                    ExecucaoEntregaResultado resultado = indice % 2 == 0
+                            ? execucaoService.registrarPedidoEntregue(entregaId)
+                            : execucaoService.registrarPedidoFalhou(entregaId, "benchmark");
+                    latenciasNanos[indice] = System.nanoTime() - inicio;
+                    return resultado;
+                }));
+            }
+
+            long inicioTotal = System.nanoTime();
+            start.countDown();
+            for (Future<ExecucaoEntregaResultado> future : futures) {
+                assertFalse(future.get(60, TimeUnit.SECONDS).idempotente());
+            }
+            long totalNanos = System.nanoTime() - inicioTotal;
+            Arrays.sort(latenciasNanos);
+            return new Medicao(rotas, totalNanos, latenciasNanos);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void imprimir(String nome, Medicao medicao) {
+        if (!VERBOSE) {
+            return;
+        }
+        long[] ordenadas = medicao.latenciasOrdenadasNanos();
+        System.out.printf(
+                "benchmark=%s entregas=%d rotas=%d threads=%d total_ms=%.1f eventos_por_s=%.1f"
+                        + " p50_ms=%.2f p95_ms=%.2f max_ms=%.2f%n",
+                nome,
+                ENTREGAS,
+                medicao.rotas().size(),
+                THREADS,
+                medicao.totalNanos() / 1e6,
+                ENTREGAS / (medicao.totalNanos() / 1e9),
+                percentilMs(ordenadas, 0.50),
+                percentilMs(ordenadas, 0.95),
+                ordenadas[ordenadas.length - 1] / 1e6);
+    }
+
+    private static double percentilMs(long[] ordenadas, double percentil) {
+        int indice = (int) Math.ceil(percentil * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, indice)] / 1e6;
+    }
+
+    private void limparBanco() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute(
+                    "TRUNCATE TABLE dispatch_events, sessions, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users RESTART IDENTITY CASCADE");
+        }
+    }
+
+    private int criarRotaEmAndamento(int entregadorId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt =
+                        conn.prepareStatement("INSERT INTO rotas (entregador_id, data, numero_no_dia, status, inicio) "
+                                + "VALUES (?, CURRENT_DATE, 1, 'EM_ANDAMENTO', CURRENT_TIMESTAMP) RETURNING id")) {
+            stmt.setInt(1, entregadorId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private int criarEntregaEmExecucao(int pedidoId, int rotaId, int ordem) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt =
+                        conn.prepareStatement("INSERT INTO entregas (pedido_id, rota_id, ordem_na_rota, status) "
+                                + "VALUES (?, ?, ?, 'EM_EXECUCAO') RETURNING id")) {
+            stmt.setInt(1, pedidoId);
+            stmt.setInt(2, rotaId);
+            stmt.setInt(3, ordem);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private String statusRota(int rotaId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT status::text FROM rotas WHERE id = ?")) {
+            stmt.setInt(1, rotaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private record Medicao(List<Integer> rotas, long totalNanos, long[] latenciasOrdenadasNanos) {}
+
+    private int contarEventos(String eventType) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt =
+                        conn.prepareStatement("SELECT COUNT(*) FROM dispatch_events WHERE event_type = ?")) {
+            stmt.setString(1, eventType);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
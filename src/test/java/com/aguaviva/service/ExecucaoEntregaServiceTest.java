@@ -1,8 +1,10 @@
 package com.aguaviva.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -21,10 +23,12 @@ import com.aguaviva.repository.UserRepository;
 import com.aguaviva.support.TestConnectionFactory;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -120,6 +124,18 @@ class ExecucaoEntregaServiceTest {
         return clienteRepository.save(cliente).getId();
     }
 
+    private int criarClienteId(String telefone, double latitude, double longitude) throws Exception {
+        Cliente cliente = new Cliente(
+                "Cliente " + telefone,
+                telefone,
+                ClienteTipo.PF,
+                "Rua A, 10",
+                BigDecimal.valueOf(latitude),
+                BigDecimal.valueOf(longitude),
+                null);
+        return clienteRepository.save(cliente).getId();
+    }
+
     private int criarPedido(int clienteId, int atendenteId, PedidoStatus status) throws Exception {
         Pedido pedido = new Pedido(
                 0, clienteId, 1, JanelaTipo.HARD, LocalTime.of(9, 0), LocalTime.of(11, 0), status, atendenteId);
@@ -221,6 +237,182 @@ class ExecucaoEntregaServiceTest {
         assertEquals(1, contarEventos(DispatchEventTypes.ROTA_CONCLUIDA));
     }
 
+    @Test
+    void deveManterContadoresDeEntregasAbertasDaRotaAoLongoDaExecucao() throws Exception {
+        int atendenteId = criarAtendenteId("exec2c@teste.com");
+        int entregadorId = criarEntregadorId("ent2c@teste.com");
+        int clienteId = criarClienteId("(38) 99999-9162");
+        int pedidoA = criarPedido(clienteId, atendenteId, PedidoStatus.CONFIRMADO);
+        int pedidoB = criarPedido(clienteId, atendenteId, PedidoStatus.CONFIRMADO);
+        int rotaId = criarRota(entregadorId, "PLANEJADA");
+        int entregaA = criarEntrega(pedidoA, rotaId, "PENDENTE");
+        int entregaB = criarEntrega(pedidoB, rotaId, "PENDENTE");
+
+        assertArrayEquals(new int[] {2, 0, 2}, contadoresRota(rotaId));
+
+        execucaoService.registrarRotaIniciada(rotaId);
+        assertArrayEquals(new int[] {0, 2, 2}, contadoresRota(rotaId));
+
+        execucaoService.registrarPedidoEntregue(entregaA);
+        assertArrayEquals(new int[] {0, 1, 1}, contadoresRota(rotaId));
+        assertEquals("EM_ANDAMENTO", statusRota(rotaId));
+
+        execucaoService.registrarPedidoFalhou(entregaB, "cliente ausente");
+        assertArrayEquals(new int[] {0, 0, 0}, contadoresRota(rotaId));
+        assertEquals("CONCLUIDA", statusRota(rotaId));
+        assertEquals(1, contarEventos(DispatchEventTypes.ROTA_CONCLUIDA));
+    }
+
+    @Test
+    void deveAjustarCargaComprometidaQuandoQuantidadeDoPedidoRoteadoMudar() throws Exception {
+        int atendenteId = criarAtendenteId("exec2g@teste.com");
+        int entregadorId = criarEntregadorId("ent2g@teste.com");
+        int clienteId = criarClienteId("(38) 99999-9163");
+        int pedidoA = criarPedido(clienteId, atendenteId, PedidoStatus.CONFIRMADO);
+        int pedidoB = criarPedido(clienteId, atendenteId, PedidoStatus.CONFIRMADO);
+        int rotaId = criarRota(entregadorId, "PLANEJADA");
+        criarEntrega(pedidoA, rotaId, "PENDENTE");
+        criarEntrega(pedidoB, rotaId, "PENDENTE");
+
+        pedidoRepository.update(new Pedido(
+                pedidoA,
+                clienteId,
+                3,
+                JanelaTipo.HARD,
+                LocalTime.of(9, 0),
+                LocalTime.of(11, 0),
+                PedidoStatus.CONFIRMADO,
+                atendenteId));
+
+        assertArrayEquals(new int[] {2, 0, 4}, contadoresRota(rotaId));
+    }
+
+    @Test
+    void deveRecalcularEtaDasParadasSeguintesAPartirDaHoraRealDeTermino() throws Exception {
+        int atendenteId = criarAtendenteId("exec-eta@teste.com");
+        int entregadorId = criarEntregadorId("ent-eta@teste.com");
+        int rotaId = criarRota(entregadorId, "EM_ANDAMENTO");
+        int[] entregas = new int[3];
+        for (int i = 0; i < entregas.length; i++) {
+            // Paradas a ~4 km uma da outra: 8 min de deslocamento a 30 km/h.
+            int clienteId = criarClienteId("(38) 99999-917" + i, -16.7300 - 0.036 * i, -43.8700);
+            int pedidoId = criarPedido(clienteId, atendenteId, PedidoStatus.EM_ROTA);
+            executar("UPDATE pedidos SET janela_tipo = 'ASAP', janela_inicio = NULL, janela_fim = NULL WHERE id = "
+                    + pedidoId);
+            entregas[i] = criarEntrega(pedidoId, rotaId, "EM_EXECUCAO");
+            // Plano atrasado em 1h: paradas a cada 15 min a partir de agora + 60 min.
+            executar("UPDATE entregas SET ordem_na_rota = " + (i + 1)
+                    + ", hora_prevista = LOCALTIMESTAMP + INTERVAL '" + (60 + 15 * i) + " minutes' WHERE id = "
+                    + entregas[i]);
+        }
+
+        LocalDateTime estimativaDoSolver = horaPrevistaDoSolver(entregas[1]);
+
+        execucaoService.registrarPedidoEntregue(entregas[0]);
+
+        assertEquals(8, minutosAposHoraReal(entregas[1], entregas[0]));
+        assertEquals(18, minutosAposHoraReal(entregas[2], entregas[0]), "8 de deslocamento + 2 de servico + 8");
+        assertEquals(
+                estimativaDoSolver, horaPrevistaDoSolver(entregas[1]), "desvio do relatorio segue contra o solver");
+
+        execucaoService.registrarPedidoFalhou(entregas[1], "cliente ausente");
+
+        assertEquals(8, minutosAposHoraReal(entregas[2], entregas[1]));
+    }
+
+    @Test
+    void devePularParadaIrmaTravadaPorOutraFinalizacaoSemEsperarPeloLock() throws Exception {
+        int atendenteId = criarAtendenteId("exec-eta-lock@teste.com");
+        int entregadorId = criarEntregadorId("ent-eta-lock@teste.com");
+        int rotaId = criarRota(entregadorId, "EM_ANDAMENTO");
+        int[] entregas = new int[3];
+        for (int i = 0; i < entregas.length; i++) {
+            int clienteId = criarClienteId("(38) 99999-916" + i, -16.7300 - 0.036 * i, -43.8700);
+            int pedidoId = criarPedido(clienteId, atendenteId, PedidoStatus.EM_ROTA);
+            executar("UPDATE pedidos SET janela_tipo = 'ASAP', janela_inicio = NULL, janela_fim = NULL WHERE id = "
+                    + pedidoId);
+            entregas[i] = criarEntrega(pedidoId, rotaId, "EM_EXECUCAO");
+            executar("UPDATE entregas SET ordem_na_rota = " + (i + 1)
+                    + ", hora_prevista = LOCALTIMESTAMP + INTERVAL '" + (60 + 15 * i) + " minutes' WHERE id = "
+                    + entregas[i]);
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Connection outraFinalizacao = factory.getConnection()) {
+            outraFinalizacao.setAutoCommit(false);
+            try (Statement stmt = outraFinalizacao.createStatement()) {
+                stmt.execute("SELECT id FROM entregas WHERE id = " + entregas[1] + " FOR UPDATE");
+            }
+
+            Future<ExecucaoEntregaResultado> termino =
+                    executor.submit(() -> execucaoService.registrarPedidoEntregue(entregas[0]));
+
+            assertFalse(termino.get(5, TimeUnit.SECONDS).idempotente());
+            outraFinalizacao.rollback();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertNull(horaPrevistaAtual(entregas[1]), "parada travada por outra transacao fica como estava");
+        assertEquals(16, minutosAposHoraReal(entregas[2], entregas[0]), "cadeia segue direto ate a proxima livre");
+    }
+
+    @Test
+    void deveRecalcularEtaSemEsperaDoPlanoPulandoParadasFinalizadasComInicioDaJanelaHardComoPiso() throws Exception {
+        int atendenteId = criarAtendenteId("exec-eta-hard@teste.com");
+        int entregadorId = criarEntregadorId("ent-eta-hard@teste.com");
+        int rotaId = criarRota(entregadorId, "EM_ANDAMENTO");
+        double[] latitudes = {-16.7300, -16.7660, -17.1000, -16.8020};
+        String[] status = {"EM_EXECUCAO", "EM_EXECUCAO", "CANCELADA", "EM_EXECUCAO"};
+        int[] entregas = new int[latitudes.length];
+        for (int i = 0; i < entregas.length; i++) {
+            int clienteId = criarClienteId("(38) 99999-918" + i, latitudes[i], -43.8700);
+            int pedidoId = criarPedido(clienteId, atendenteId, PedidoStatus.EM_ROTA);
+            executar("UPDATE pedidos SET janela_tipo = 'ASAP', janela_inicio = NULL, janela_fim = NULL WHERE id = "
+                    + pedidoId);
+            entregas[i] = criarEntrega(pedidoId, rotaId, status[i]);
+            executar("UPDATE entregas SET ordem_na_rota = " + (i + 1)
+                    + ", hora_prevista = LOCALTIMESTAMP + INTERVAL '" + (90 + 15 * i) + " minutes' WHERE id = "
+                    + entregas[i]);
+        }
+        // A segunda parada so abre daqui a 1h: o plano embutia essa espera no trecho seguinte.
+        executar("UPDATE pedidos SET janela_tipo = 'HARD', janela_inicio = LOCALTIME + INTERVAL '60 minutes', "
+                + "janela_fim = LOCALTIME + INTERVAL '120 minutes' "
+                + "WHERE id = (SELECT pedido_id FROM entregas WHERE id = " + entregas[1] + ")");
+
+        execucaoService.registrarPedidoEntregue(entregas[0]);
+
+        assertEquals(60, minutosAposHoraReal(entregas[1], entregas[0]));
+        assertEquals(
+                70,
+                minutosAposHoraReal(entregas[3], entregas[0]),
+                "abertura + 2 de servico + 8 direto ate a proxima aberta, sem passar pela cancelada");
+    }
+
+    @Test
+    void deveResequenciarAPartirDaUltimaParadaVisitadaQuandoEntregaForCancelada() throws Exception {
+        int atendenteId = criarAtendenteId("exec-reseq@teste.com");
+        int entregadorId = criarEntregadorId("ent-reseq@teste.com");
+        int rotaId = criarRota(entregadorId, "EM_ANDAMENTO");
+        // Entregue no norte, cancelada no extremo sul: a partir da entregue compensa visitar antes a mais proxima.
+        double[] latitudes = {-16.7300, -16.9000, -16.8000, -16.7500};
+        int[] entregas = new int[latitudes.length];
+        for (int i = 0; i < entregas.length; i++) {
+            int clienteId = criarClienteId("(38) 99999-919" + i, latitudes[i], -43.8700);
+            int pedidoId = criarPedido(clienteId, atendenteId, PedidoStatus.EM_ROTA);
+            executar("UPDATE pedidos SET janela_tipo = 'ASAP', janela_inicio = NULL, janela_fim = NULL WHERE id = "
+                    + pedidoId);
+            entregas[i] = criarEntrega(pedidoId, rotaId, "EM_EXECUCAO");
+            executar("UPDATE entregas SET ordem_na_rota = " + (i + 1) + " WHERE id = " + entregas[i]);
+        }
+        executar("UPDATE entregas SET status = 'ENTREGUE', hora_real = LOCALTIMESTAMP WHERE id = " + entregas[0]);
+
+        execucaoService.registrarPedidoCancelado(entregas[1], "cliente cancelou", null);
+
+        assertEquals(3, ordemNaRota(entregas[3]));
+        assertEquals(4, ordemNaRota(entregas[2]));
+    }
+
     @Test
     void deveDebitarSaldoValeQuandoConcluirEntregaDePedidoPagoComVale() throws Exception {
         int atendenteId = criarAtendenteId("exec2b@teste.com");
@@ -553,6 +745,19 @@ class ExecucaoEntregaServiceTest {
         }
     }
 
+    private int[] contadoresRota(int rotaId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT COALESCE(SUM(entregas_pendentes), 0), COALESCE(SUM(entregas_em_execucao), 0), "
+                                + "COALESCE(SUM(carga_comprometida_galoes), 0) FROM rotas_contadores WHERE rota_id = ?")) {
+            stmt.setInt(1, rotaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new int[] {rs.getInt(1), rs.getInt(2), rs.getInt(3)};
+            }
+        }
+    }
+
     private String statusEntrega(int entregaId) throws Exception {
         try (Connection conn = factory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement("SELECT status::text FROM entregas WHERE id = ?")) {
@@ -576,6 +781,61 @@ class ExecucaoEntregaServiceTest {
         }
     }
 
+    private int ordemNaRota(int entregaId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT ordem_na_rota FROM entregas WHERE id = ?")) {
+            stmt.setInt(1, entregaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private long minutosAposHoraReal(int entregaId, int entregaReferenciaId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT ROUND(EXTRACT(EPOCH FROM (e.hora_prevista_atual - r.hora_real)) / 60) "
+                                + "FROM entregas e, entregas r WHERE e.id = ? AND r.id = ?")) {
+            stmt.setInt(1, entregaId);
+            stmt.setInt(2, entregaReferenciaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private LocalDateTime horaPrevistaDoSolver(int entregaId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT hora_prevista FROM entregas WHERE id = ?")) {
+            stmt.setInt(1, entregaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getObject(1, LocalDateTime.class);
+            }
+        }
+    }
+
+    private LocalDateTime horaPrevistaAtual(int entregaId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt =
+                        conn.prepareStatement("SELECT hora_prevista_atual FROM entregas WHERE id = ?")) {
+            stmt.setInt(1, entregaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getObject(1, LocalDateTime.class);
+            }
+        }
+    }
+
+    private void executar(String sql) throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
     private String statusPedido(int pedidoId) throws Exception {
         try (Connection conn = factory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement("SELECT status::text FROM pedidos WHERE id = ?")) {
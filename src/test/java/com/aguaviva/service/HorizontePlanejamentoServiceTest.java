@@ -0,0 +1,162 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.support.TestConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Types;
+import java.time.LocalTime;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("integration")
+class HorizontePlanejamentoServiceTest {
+
+    private static ConnectionFactory factory;
+    private static HorizontePlanejamentoService service;
+
+    @BeforeAll
+    static void setUp() {
+        factory = TestConnectionFactory.newConnectionFactory();
+        service = new HorizontePlanejamentoService(factory, new ConfiguracaoSnapshotService());
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void limparAntes() throws Exception {
+        limparBanco();
+        atualizarHorizonte("60");
+    }
+
+    @AfterEach
+    void limparDepois() throws Exception {
+        limparBanco();
+        atualizarHorizonte("0");
+    }
+
+    @Test
+    void devePublicarUmaVezQuandoHorizonteAlcancarPedidoAdiado() throws Exception {
+        int pedidoId = inserirPedidoHard(LocalTime.of(8, 0), LocalTime.of(17, 0), LocalTime.of(17, 30));
+
+        assertEquals(0, service.puxarPedidosQueEntraramNoHorizonte(LocalTime.of(9, 0)));
+        assertEquals(1, service.puxarPedidosQueEntraramNoHorizonte(LocalTime.of(16, 0)));
+        assertEquals(0, service.puxarPedidosQueEntraramNoHorizonte(LocalTime.of(16, 1)));
+
+        assertEquals(1, contarEventosDoHorizonte(pedidoId));
+    }
+
+    @Test
+    void naoDevePublicarPedidoQueJaNasceuDentroDoHorizonte() throws Exception {
+        inserirPedidoHard(LocalTime.of(16, 30), LocalTime.of(17, 0), LocalTime.of(17, 30));
+
+        assertEquals(0, service.puxarPedidosQueEntraramNoHorizonte(LocalTime.of(16, 40)));
+    }
+
+    @Test
+    void naoDevePublicarComHorizonteDesligado() throws Exception {
+        atualizarHorizonte("0");
+        inserirPedidoHard(LocalTime.of(8, 0), LocalTime.of(17, 0), LocalTime.of(17, 30));
+
+        assertEquals(0, service.puxarPedidosQueEntraramNoHorizonte(LocalTime.of(16, 30)));
+    }
+
+    @Test
+    void limiteDeveSerNuloQuandoHorizonteCruzarMeiaNoite() {
+        assertEquals(LocalTime.of(10, 30), HorizontePlanejamentoService.calcularLimite(LocalTime.of(9, 0), 90));
+        assertNull(HorizontePlanejamentoService.calcularLimite(LocalTime.of(23, 0), 90));
+        assertNull(HorizontePlanejamentoService.calcularLimite(LocalTime.of(9, 0), 0));
+    }
+
+    private int inserirPedidoHard(LocalTime criadoAs, LocalTime janelaInicio, LocalTime janelaFim) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmtUser = conn.prepareStatement(
+                        "INSERT INTO users (nome, email, senha_hash, papel, ativo) VALUES (?, ?, ?, ?, true) RETURNING id");
+                PreparedStatement stmtCliente = conn.prepareStatement(
+                        "INSERT INTO clientes (nome, telefone, tipo, endereco) VALUES (?, ?, ?, ?) RETURNING id");
+                PreparedStatement stmtPedido = conn.prepareStatement(
+                        "INSERT INTO pedidos (cliente_id, quantidade_galoes, janela_tipo, janela_inicio, janela_fim, status, criado_por, criado_em) "
+                                + "VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_DATE + CAST(? AS TIME)) RETURNING id")) {
+            stmtUser.setString(1, "Atendente Horizonte");
+            stmtUser.setString(2, "horizonte@teste.com");
+            stmtUser.setString(3, "$2a$10$abcdefghijklmnopqrstuv");
+            stmtUser.setObject(4, "atendente", Types.OTHER);
+            int userId;
+            try (ResultSet rs = stmtUser.executeQuery()) {
+                rs.next();
+                userId = rs.getInt("id");
+            }
+
+            stmtCliente.setString(1, "Cliente Horizonte");
+            stmtCliente.setString(2, "38999996666");
+            stmtCliente.setObject(3, "PF", Types.OTHER);
+            stmtCliente.setString(4, "Rua do Horizonte");
+            int clienteId;
+            try (ResultSet rs = stmtCliente.executeQuery()) {
+                rs.next();
+                clienteId = rs.getInt("id");
+            }
+
+            stmtPedido.setInt(1, clienteId);
+            stmtPedido.setInt(2, 1);
+            stmtPedido.setObject(3, "HARD", Types.OTHER);
+            stmtPedido.setTime(4, Time.valueOf(janelaInicio));
+            stmtPedido.setTime(5, Time.valueOf(janelaFim));
+            stmtPedido.setObject(6, "PENDENTE", Types.OTHER);
+            stmtPedido.setInt(7, userId);
+            stmtPedido.setTime(8, Time.valueOf(criadoAs));
+            try (ResultSet rs = stmtPedido.executeQuery()) {
+                rs.next();
+                return rs.getInt("id");
+            }
+        }
+    }
+
+    private int contarEventosDoHorizonte(int pedidoId) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT COUNT(*) FROM dispatch_events WHERE event_type = ? AND aggregate_id = ?")) {
+            stmt.setString(1, DispatchEventTypes.PEDIDO_ENTROU_NO_HORIZONTE);
+            stmt.setLong(2, pedidoId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private void atualizarHorizonte(String valor) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO configuracoes (chave, valor, descricao) VALUES (?, ?, ?) "
+                                + "ON CONFLICT (chave) DO UPDATE SET valor = EXCLUDED.valor, atualizado_em = CURRENT_TIMESTAMP")) {
+            stmt.setString(1, RotaService.CHAVE_HORIZONTE_MINUTOS);
+            stmt.setString(2, valor);
+            stmt.setString(3, "Configuracao de teste");
+            stmt.executeUpdate();
+        }
+    }
+
+    private void limparBanco() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute(
+                    "TRUNCATE TABLE dispatch_events, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users RESTART IDENTITY CASCADE");
+        }
+    }
+}
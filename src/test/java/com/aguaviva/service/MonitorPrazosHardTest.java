@@ -0,0 +1,249 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.repository.ConnectionFactory;
+import com.aguaviva.support.TestConnectionFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("integration")
+class MonitorPrazosHardTest {
+
+    private static ConnectionFactory factory;
+
+    private final AtomicReference<LocalDateTime> agora = new AtomicReference<>();
+    private final AtomicInteger disparos = new AtomicInteger();
+    private MonitorPrazosHard monitor;
+
+    @BeforeAll
+    static void setUp() {
+        factory = TestConnectionFactory.newConnectionFactory();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    @BeforeEach
+    void limparBanco() throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE dispatch_events, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, "
+                    + "clientes, users RESTART IDENTITY CASCADE");
+        }
+        agora.set(LocalDate.now().atTime(9, 0));
+        disparos.set(0);
+        monitor = new MonitorPrazosHard(factory, Duration.ofMinutes(30), agora::get);
+    }
+
+    @Test
+    void deveDispararGatilhoUmaUnicaVezQuandoPedidoHardEntraNoHorizonteDeRisco() throws Exception {
+        inserirPedidoHard(LocalTime.of(9, 30), LocalTime.of(10, 0));
+        // Sem agendador: o teste controla o relogio e chama os passos diretamente.
+        monitor.definirGatilho(disparos::incrementAndGet);
+        monitor.carregar();
+
+        monitor.verificarAlarmes();
+        assertEquals(0, disparos.get());
+        assertFalse(monitor.consumirRisco());
+
+        agora.set(LocalDate.now().atTime(9, 31));
+        monitor.verificarAlarmes();
+        assertEquals(1, disparos.get());
+        assertTrue(monitor.consumirRisco());
+        assertFalse(monitor.consumirRisco());
+
+        monitor.verificarAlarmes();
+        assertEquals(1, disparos.get());
+    }
+
+    @Test
+    void deveIncluirERemoverPrazosAPartirDoOutbox() throws Exception {
+        monitor.carregar();
+        assertEquals(0, monitor.prazosMonitorados());
+
+        int pedidoId = inserirPedidoHard(LocalTime.of(14, 0), LocalTime.of(15, 0));
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, pedidoId);
+        monitor.sincronizarOutbox();
+        assertEquals(1, monitor.prazosMonitorados());
+
+        executar("UPDATE pedidos SET status = 'CANCELADO' WHERE id = " + pedidoId);
+        inserirEvento(DispatchEventTypes.PEDIDO_CANCELADO, pedidoId);
+        monitor.sincronizarOutbox();
+        assertEquals(0, monitor.prazosMonitorados());
+    }
+
+    @Test
+    void naoDeveDispararQuandoPedidoJaTemEntregaAbertaNoAlarme() throws Exception {
+        int pedidoId = inserirPedidoHard(LocalTime.of(9, 30), LocalTime.of(10, 0));
+        int entregadorId = inserirUsuario("entregador-prazo@teste.com", "entregador");
+        executar("INSERT INTO rotas (entregador_id, data, numero_no_dia, status) VALUES (" + entregadorId
+                + ", CURRENT_DATE, 1, 'PLANEJADA')");
+        executar("INSERT INTO entregas (pedido_id, rota_id, ordem_na_rota, status) VALUES (" + pedidoId
+                + ", 1, 1, 'PENDENTE')");
+        // Sem agendador: o teste controla o relogio e chama os passos diretamente.
+        monitor.definirGatilho(disparos::incrementAndGet);
+        monitor.carregar();
+
+        agora.set(LocalDate.now().atTime(9, 45));
+        monitor.verificarAlarmes();
+
+        assertEquals(0, disparos.get());
+        assertFalse(monitor.consumirRisco());
+    }
+
+    @Test
+    void deveManterRiscoReservadoAteAConfirmacaoDoPlano() throws Exception {
+        inserirPedidoHard(LocalTime.of(9, 30), LocalTime.of(10, 0));
+        monitor.definirGatilho(disparos::incrementAndGet);
+        monitor.carregar();
+        agora.set(LocalDate.now().atTime(9, 31));
+        monitor.verificarAlarmes();
+
+        assertTrue(monitor.consumirRisco());
+        monitor.devolverRisco();
+        assertTrue(monitor.consumirRisco(), "rodada falhou: a proxima consome o mesmo risco");
+        monitor.confirmarRisco();
+        assertFalse(monitor.consumirRisco());
+        assertEquals(1, disparos.get());
+    }
+
+    @Test
+    void deveLerEventoDoOutboxQueCommitaDepoisDeUmIdMaior() throws Exception {
+        monitor.carregar();
+        try (Connection transacaoLenta = factory.getConnection()) {
+            transacaoLenta.setAutoCommit(false);
+            int pedidoLento = inserirPedidoHard(transacaoLenta, LocalTime.of(14, 0), LocalTime.of(15, 0));
+            inserirEvento(transacaoLenta, DispatchEventTypes.PEDIDO_CRIADO, pedidoLento);
+
+            int pedidoRapido = inserirPedidoHard(LocalTime.of(14, 0), LocalTime.of(15, 0));
+            inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, pedidoRapido);
+            monitor.sincronizarOutbox();
+            assertEquals(1, monitor.prazosMonitorados());
+
+            transacaoLenta.commit();
+        }
+
+        monitor.sincronizarOutbox();
+        assertEquals(2, monitor.prazosMonitorados(), "id menor commitado depois do cursor ainda e aplicado");
+    }
+
+    @Test
+    void deveReconferirSaltoGrandeDaSequenciaDoOutboxComoFaixa() throws Exception {
+        monitor.carregar();
+        executar("SELECT setval(pg_get_serial_sequence('dispatch_events', 'id'), "
+                + "nextval(pg_get_serial_sequence('dispatch_events', 'id')) + 50000)");
+        int pedidoRapido = inserirPedidoHard(LocalTime.of(14, 0), LocalTime.of(15, 0));
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, pedidoRapido);
+        monitor.sincronizarOutbox();
+        assertEquals(1, monitor.prazosMonitorados());
+
+        int pedidoAtrasado = inserirPedidoHard(LocalTime.of(14, 0), LocalTime.of(15, 0));
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO dispatch_events (id, event_type, aggregate_type, aggregate_id, payload) "
+                                + "SELECT MAX(id) - 25000, ?, 'PEDIDO', ?, '{}'::jsonb FROM dispatch_events")) {
+            stmt.setString(1, DispatchEventTypes.PEDIDO_CRIADO);
+            stmt.setLong(2, pedidoAtrasado);
+            stmt.executeUpdate();
+        }
+
+        monitor.sincronizarOutbox();
+        assertEquals(2, monitor.prazosMonitorados(), "id no meio do salto ainda e aplicado");
+    }
+
+    private int inserirPedidoHard(LocalTime janelaInicio, LocalTime janelaFim) throws Exception {
+        try (Connection conn = factory.getConnection()) {
+            return inserirPedidoHard(conn, janelaInicio, janelaFim);
+        }
+    }
+
+    private int inserirPedidoHard(Connection conn, LocalTime janelaInicio, LocalTime janelaFim) throws Exception {
+        int userId = inserirUsuario("atendente-prazo-" + System.nanoTime() + "@teste.com", "atendente");
+        int clienteId;
+        try (PreparedStatement stmtCliente = conn.prepareStatement(
+                        "INSERT INTO clientes (nome, telefone, tipo, endereco) VALUES (?, ?, ?, ?) RETURNING id");
+                PreparedStatement stmtPedido = conn.prepareStatement(
+                        "INSERT INTO pedidos (cliente_id, quantidade_galoes, janela_tipo, janela_inicio, janela_fim, status, criado_por) "
+                                + "VALUES (?, 1, ?, ?, ?, ?, ?) RETURNING id")) {
+            stmtCliente.setString(1, "Cliente Prazo HARD");
+            stmtCliente.setString(2, "3899" + (System.nanoTime() % 10_000_000));
+            stmtCliente.setObject(3, "PF", Types.OTHER);
+            stmtCliente.setString(4, "Rua Prazo Hard");
+            try (ResultSet rs = stmtCliente.executeQuery()) {
+                rs.next();
+                clienteId = rs.getInt("id");
+            }
+
+            stmtPedido.setInt(1, clienteId);
+            stmtPedido.setObject(2, "HARD", Types.OTHER);
+            stmtPedido.setTime(3, Time.valueOf(janelaInicio));
+            stmtPedido.setTime(4, Time.valueOf(janelaFim));
+            stmtPedido.setObject(5, "PENDENTE", Types.OTHER);
+            stmtPedido.setInt(6, userId);
+            try (ResultSet rs = stmtPedido.executeQuery()) {
+                rs.next();
+                return rs.getInt("id");
+            }
+        }
+    }
+
+    private int inserirUsuario(String email, String papel) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO users (nome, email, senha_hash, papel, ativo) VALUES (?, ?, ?, ?, true) RETURNING id")) {
+            stmt.setString(1, "Usuario Prazo");
+            stmt.setString(2, email);
+            stmt.setString(3, "$2a$10$abcdefghijklmnopqrstuv");
+            stmt.setObject(4, papel, Types.OTHER);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt("id");
+            }
+        }
+    }
+
+    private void inserirEvento(String eventType, int pedidoId) throws Exception {
+        try (Connection conn = factory.getConnection()) {
+            inserirEvento(conn, eventType, pedidoId);
+        }
+    }
+
+    private void inserirEvento(Connection conn, String eventType, int pedidoId) throws Exception {
+        try (PreparedStatement stmt =
+                conn.prepareStatement("INSERT INTO dispatch_events (event_type, aggregate_type, aggregate_id, payload) "
+                        + "VALUES (?, 'PEDIDO', ?, '{}'::jsonb)")) {
+            stmt.setString(1, eventType);
+            stmt.setLong(2, pedidoId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void executar(String sql) throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -15,13 +15,22 @@ import com.aguaviva.repository.ClienteRepository;
 import com.aguaviva.repository.ConnectionFactory;
 import com.aguaviva.repository.PedidoRepository;
 import com.aguaviva.repository.UserRepository;
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.SolverRequest;
+import com.aguaviva.solver.SolverResponse;
 import com.aguaviva.support.TestConnectionFactory;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.List;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -102,6 +111,52 @@ class OperacaoReplanejamentoServiceTest {
         assertEquals(entregaId, detalhe.pedidosImpactados().getFirst().entregaId());
     }
 
+    @Test
+    void deveArmazenarPayloadsPorHashUmaUnicaVezECarregarSomenteNoDetalhe() throws Exception {
+        Gson gson = new GsonBuilder()
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .serializeNulls()
+                .create();
+        List<PedidoSolver> pedidos = List.of(new PedidoSolver(7, -16.721, -43.861, 2, "ASAP", null, null, 2));
+
+        for (int versao = 1; versao <= 2; versao++) {
+            String jobId = "job-payload-" + versao;
+            SolverRequest request = new SolverRequest(
+                    jobId, (long) versao, new Coordenada(-16.72, -43.86), 5, "08:00", "18:00", List.of(1), pedidos);
+            RotaSolverJobSupport.registrarSolverJobEmExecucao(factory, gson, jobId, versao, request);
+            RotaSolverJobSupport.finalizarSolverJob(
+                    factory, gson, jobId, "CONCLUIDO", null, new SolverResponse(List.of(), List.of(7)));
+        }
+
+        assertEquals(2, contarLinhas("solver_payloads"));
+
+        OperacaoReplanejamentoService.SolverJobResumo resumo =
+                service.listarJobs(10).jobs().getFirst();
+        assertTrue(resumo.hasRequestPayload());
+        assertTrue(resumo.hasResponsePayload());
+
+        OperacaoReplanejamentoService.SolverJobDetalhe detalhe =
+                service.detalharJob("job-payload-2").job();
+        JsonObject requestPayload = detalhe.requestPayload().getAsJsonObject();
+        assertEquals("job-payload-2", requestPayload.get("job_id").getAsString());
+        assertEquals(2L, requestPayload.get("plan_version").getAsLong());
+        assertEquals(
+                7,
+                requestPayload
+                        .getAsJsonArray("pedidos")
+                        .get(0)
+                        .getAsJsonObject()
+                        .get("pedido_id")
+                        .getAsInt());
+        assertEquals(
+                7,
+                detalhe.responsePayload()
+                        .getAsJsonObject()
+                        .getAsJsonArray("nao_atendidos")
+                        .get(0)
+                        .getAsInt());
+    }
+
     @Test
     void deveValidarLimiteDeListagem() {
         IllegalArgumentException limiteZero = assertThrows(IllegalArgumentException.class, () -> service.listarJobs(0));
@@ -142,7 +197,7 @@ class OperacaoReplanejamentoServiceTest {
         try (Connection conn = factory.getConnection();
                 Statement stmt = conn.createStatement()) {
             stmt.execute(
-                    "TRUNCATE TABLE solver_jobs, sessions, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users RESTART IDENTITY CASCADE");
+                    "TRUNCATE TABLE solver_jobs, solver_payloads, sessions, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users RESTART IDENTITY CASCADE");
         }
     }
 
@@ -217,4 +272,13 @@ class OperacaoReplanejamentoServiceTest {
             }
         }
     }
+
+    private int contarLinhas(String tabela) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM " + tabela);
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
 }
@@ -25,6 +25,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -157,6 +159,96 @@ class PedidoLifecycleServiceTest {
         }
     }
 
+    @Test
+    void deveTransicionarLoteDePedidosRetornandoResultadoPorPedido() throws Exception {
+        int userId = criarAtendenteId("lifecycle4@teste.com");
+        int clienteId = criarClienteId("(38) 99999-8104");
+        int pedidoA = criarPedidoComStatus(clienteId, userId, PedidoStatus.CONFIRMADO);
+        int pedidoB = criarPedidoComStatus(clienteId, userId, PedidoStatus.CONFIRMADO);
+        int pedidoC = criarPedidoComStatus(clienteId, userId, PedidoStatus.CONFIRMADO);
+
+        Map<Integer, PedidoTransitionResult> resultados;
+        try (Connection conn = factory.getConnection()) {
+            conn.setAutoCommit(false);
+            resultados =
+                    lifecycleService.transicionarEmLote(conn, List.of(pedidoC, pedidoA, pedidoB), PedidoStatus.EM_ROTA);
+            conn.commit();
+        }
+
+        assertEquals(List.of(pedidoC, pedidoA, pedidoB), List.copyOf(resultados.keySet()));
+        assertTrue(resultados.values().stream().allMatch(r -> r.novoStatus() == PedidoStatus.EM_ROTA));
+        assertEquals("EM_ROTA", statusDoPedido(pedidoA));
+        assertEquals("EM_ROTA", statusDoPedido(pedidoB));
+        assertEquals("EM_ROTA", statusDoPedido(pedidoC));
+    }
+
+    @Test
+    void deveAbortarLoteInteiroQuandoAlgumaTransicaoForInvalida() throws Exception {
+        int userId = criarAtendenteId("lifecycle5@teste.com");
+        int clienteId = criarClienteId("(38) 99999-8105");
+        int confirmado = criarPedidoComStatus(clienteId, userId, PedidoStatus.CONFIRMADO);
+        int entregue = criarPedidoComStatus(clienteId, userId, PedidoStatus.ENTREGUE);
+
+        try (Connection conn = factory.getConnection()) {
+            conn.setAutoCommit(false);
+            assertThrows(
+                    IllegalStateException.class,
+                    () -> lifecycleService.transicionarEmLote(
+                            conn, List.of(confirmado, entregue), PedidoStatus.EM_ROTA));
+            conn.rollback();
+        }
+
+        assertEquals("CONFIRMADO", statusDoPedido(confirmado));
+        assertEquals("ENTREGUE", statusDoPedido(entregue));
+    }
+
+    @Test
+    void deveAplicarCobrancaDeCancelamentoPorPedidoNoLote() throws Exception {
+        int userId = criarAtendenteId("lifecycle6@teste.com");
+        int clienteId = criarClienteId("(38) 99999-8106");
+        int emRota = criarPedidoComStatus(clienteId, userId, PedidoStatus.EM_ROTA);
+        int pendente = criarPedidoComStatus(clienteId, userId, PedidoStatus.PENDENTE);
+
+        Map<Integer, PedidoTransitionResult> resultados;
+        try (Connection conn = factory.getConnection()) {
+            conn.setAutoCommit(false);
+            resultados = lifecycleService.transicionarEmLote(
+                    conn,
+                    List.of(emRota, pendente),
+                    PedidoStatus.CANCELADO,
+                    new PedidoLifecycleService.TransitionContext("cancelamento em massa", 1500));
+            conn.commit();
+        }
+
+        assertTrue(resultados.get(emRota).geraCobrancaCancelamento());
+        assertFalse(resultados.get(pendente).geraCobrancaCancelamento());
+        assertEquals("CANCELADO", statusDoPedido(emRota));
+        assertEquals("CANCELADO", statusDoPedido(pendente));
+
+        if (hasColumn("pedidos", "cancelado_em")) {
+            assertEquals(1500, cobrancaCancelamentoDoPedido(emRota));
+            assertEquals("PENDENTE", cobrancaStatusDoPedido(emRota));
+            assertEquals(0, cobrancaCancelamentoDoPedido(pendente));
+            assertEquals("NAO_APLICAVEL", cobrancaStatusDoPedido(pendente));
+            assertEquals("cancelamento em massa", motivoCancelamentoDoPedido(pendente));
+        }
+    }
+
+    @Test
+    void deveRejeitarLoteComPedidoDuplicado() throws Exception {
+        try (Connection conn = factory.getConnection()) {
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> lifecycleService.transicionarEmLote(conn, List.of(1, 1), PedidoStatus.EM_ROTA));
+        }
+    }
+
+    private int criarPedidoComStatus(int clienteId, int userId, PedidoStatus status) throws Exception {
+        return pedidoRepository
+                .save(new Pedido(0, clienteId, 1, JanelaTipo.ASAP, null, null, status, userId))
+                .getId();
+    }
+
     private boolean hasColumn(String tabela, String coluna) throws Exception {
         String sql = "SELECT 1 FROM information_schema.columns WHERE table_name = ? AND column_name = ?";
         try (Connection conn = factory.getConnection();
@@ -0,0 +1,69 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.aguaviva.solver.Parada;
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.RotaSolver;
+import com.aguaviva.solver.SolverResponse;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class PontuacaoPlanoTest {
+
+    @Test
+    void deveContarViolacoesHardETempoTotalAteAUltimaParadaDeCadaRota() {
+        PedidoSolver hard = new PedidoSolver(1, -16.72, -43.86, 1, "HARD", "09:00", "09:30", 1);
+        PedidoSolver asap = new PedidoSolver(2, -16.73, -43.87, 1, "ASAP", null, null, 2);
+        PedidoSolver outro = new PedidoSolver(3, -16.74, -43.88, 1, "ASAP", null, null, 2);
+        SolverResponse response = new SolverResponse(
+                List.of(
+                        new RotaSolver(
+                                10,
+                                1,
+                                List.of(
+                                        new Parada(1, 1, -16.72, -43.86, "09:45"),
+                                        new Parada(2, 2, -16.73, -43.87, "10:00"))),
+                        new RotaSolver(11, 1, List.of(new Parada(1, 3, -16.74, -43.88, "08:30")))),
+                List.of(4));
+
+        PontuacaoPlano.Pontuacao pontuacao =
+                PontuacaoPlano.pontuar(response, Map.of(1, hard, 2, asap, 3, outro), "08:00");
+
+        assertEquals(new PontuacaoPlano.Pontuacao(1, 1, 150), pontuacao);
+    }
+
+    @Test
+    void deveContarComoNaoAtendidoPedidoElegivelQueOCenarioNemLevouAoSolver() {
+        PedidoSolver atendido = new PedidoSolver(1, -16.72, -43.86, 1, "ASAP", null, null, 2);
+        PedidoSolver foraDoRequest = new PedidoSolver(2, -16.73, -43.87, 1, "ASAP", null, null, 2);
+        SolverResponse response = new SolverResponse(
+                List.of(new RotaSolver(10, 1, List.of(new Parada(1, 1, -16.72, -43.86, "08:30")))), List.of());
+
+        PontuacaoPlano.Pontuacao pontuacao =
+                PontuacaoPlano.pontuar(response, Map.of(1, atendido, 2, foraDoRequest), "08:00");
+
+        assertEquals(new PontuacaoPlano.Pontuacao(1, 0, 30), pontuacao);
+    }
+
+    @Test
+    void devePriorizarMenosNaoAtendidosDepoisViolacoesDepoisTempoEManterOPrimeiroNoEmpate() {
+        assertEquals(
+                1,
+                PontuacaoPlano.melhor(
+                        List.of(new PontuacaoPlano.Pontuacao(1, 0, 100), new PontuacaoPlano.Pontuacao(0, 2, 400))));
+        assertEquals(
+                2,
+                PontuacaoPlano.melhor(List.of(
+                        new PontuacaoPlano.Pontuacao(0, 1, 100),
+                        new PontuacaoPlano.Pontuacao(0, 0, 300),
+                        new PontuacaoPlano.Pontuacao(0, 0, 200))));
+        assertEquals(
+                0,
+                PontuacaoPlano.melhor(
+                        List.of(new PontuacaoPlano.Pontuacao(0, 0, 200), new PontuacaoPlano.Pontuacao(0, 0, 200))));
+    }
+}
@@ -0,0 +1,116 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.aguaviva.solver.Coordenada;
+import com.aguaviva.solver.Parada;
+import com.aguaviva.solver.PedidoSolver;
+import com.aguaviva.solver.RotaSolver;
+import com.aguaviva.solver.SolverRequest;
+import com.aguaviva.solver.SolverResponse;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class ReducaoProblemaTest {
+
+    private static final Coordenada DEPOSITO = new Coordenada(-16.7344, -43.8772);
+
+    @Test
+    void deveManterRequestQuandoNaoHaNadaParaReduzir() {
+        SolverRequest request = request(List.of(asap(1, -16.7300, -43.8700, 1), asap(2, -16.7400, -43.8800, 2)));
+
+        ReducaoProblema.Reducao reducao = ReducaoProblema.reduzir(request);
+
+        assertSame(request, reducao.request());
+        assertEquals(0, reducao.pedidosRemovidos());
+    }
+
+    @Test
+    void deveJuntarPedidosNoMesmoPontoComJanelasCompativeisEExpandirNaResposta() {
+        SolverRequest request = request(List.of(
+                asap(10, -16.7300, -43.8700, 1),
+                hard(11, -16.7300, -43.8700, 1, "09:00", "11:00"),
+                hard(12, -16.7300, -43.8700, 1, "14:00", "15:00"),
+                asap(13, -16.7400, -43.8800, 1),
+                asap(14, -16.7300, -43.8700, 5)));
+
+        ReducaoProblema.Reducao reducao = ReducaoProblema.reduzir(request);
+
+        // 10 e 11 viram uma parada HARD 09:00-11:00; 12 nao intersecta a janela; 14 estouraria a capacidade.
+        List<PedidoSolver> nos = reducao.request().getPedidos();
+        assertEquals(
+                List.of(10, 12, 13, 14),
+                nos.stream().map(PedidoSolver::getPedidoId).toList());
+        PedidoSolver composta = nos.get(0);
+        assertEquals(2, composta.getGaloes());
+        assertEquals("HARD", composta.getJanelaTipo());
+        assertEquals("09:00", composta.getJanelaInicio());
+        assertEquals("11:00", composta.getJanelaFim());
+        assertEquals(1, composta.getPrioridade());
+
+        SolverResponse resposta = new SolverResponse(
+                List.of(new RotaSolver(
+                        1,
+                        1,
+                        List.of(
+                                new Parada(1, 13, -16.7400, -43.8800, "08:20"),
+                                new Parada(2, 10, -16.7300, -43.8700, "09:05")))),
+                List.of(12, 14));
+
+        SolverResponse expandida = reducao.expandir(resposta);
+
+        List<Parada> paradas = expandida.getRotas().get(0).getParadas();
+        assertEquals(
+                List.of(13, 10, 11), paradas.stream().map(Parada::getPedidoId).toList());
+        assertEquals(List.of(1, 2, 3), paradas.stream().map(Parada::getOrdem).toList());
+        assertEquals("09:05", paradas.get(2).getHoraPrevista());
+        assertEquals(List.of(12, 14), expandida.getNaoAtendidos());
+    }
+
+    @Test
+    void deveDescartarPedidosComprovadamenteInviaveisComMotivo() {
+        SolverRequest request = request(List.of(
+                asap(1, -16.7300, -43.8700, 9),
+                hard(2, -16.7300, -43.8700, 1, "11:00", "10:00"),
+                hard(3, -16.7300, -43.8700, 1, "06:00", "07:30"),
+                // ~110 km do deposito: nem em linha reta a 100 km/h chega ate 08:30.
+                hard(4, -15.7344, -43.8772, 1, "08:00", "08:30"),
+                hard(5, -16.7300, -43.8700, 1, "08:00", "08:30")));
+
+        ReducaoProblema.Reducao reducao = ReducaoProblema.reduzir(request);
+
+        assertEquals(
+                Map.of(
+                        1, ReducaoProblema.MOTIVO_CARGA_ACIMA_DA_CAPACIDADE,
+                        2, ReducaoProblema.MOTIVO_JANELA_INVALIDA,
+                        3, ReducaoProblema.MOTIVO_JANELA_FORA_DO_EXPEDIENTE,
+                        4, ReducaoProblema.MOTIVO_JANELA_INALCANCAVEL),
+                reducao.descartados());
+        assertEquals(
+                List.of(5),
+                reducao.request().getPedidos().stream()
+                        .map(PedidoSolver::getPedidoId)
+                        .toList());
+        assertTrue(reducao.expandir(new SolverResponse(List.of(), List.of()))
+                .getNaoAtendidos()
+                .containsAll(List.of(1, 2, 3, 4)));
+    }
+
+    private static SolverRequest request(List<PedidoSolver> pedidos) {
+        return new SolverRequest(
+                "job-plan-1", 1L, DEPOSITO, 5, List.of(5, 5), "08:00", "18:00", List.of(1, 2), pedidos);
+    }
+
+    private static PedidoSolver asap(int id, double lat, double lon, int galoes) {
+        return new PedidoSolver(id, lat, lon, galoes, "ASAP", null, null, 2);
+    }
+
+    private static PedidoSolver hard(int id, double lat, double lon, int galoes, String inicio, String fim) {
+        return new PedidoSolver(id, lat, lon, galoes, "HARD", inicio, fim, 1);
+    }
+}
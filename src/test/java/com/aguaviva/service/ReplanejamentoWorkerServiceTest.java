@@ -2,6 +2,8 @@ package com.aguaviva.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.aguaviva.repository.ConnectionFactory;
@@ -12,12 +14,14 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalTime;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.AfterAll;
@@ -205,6 +209,176 @@ class ReplanejamentoWorkerServiceTest {
         assertFalse(workerService.existePedidoHardEmRisco(LocalTime.of(0, 30), 30));
     }
 
+    @Test
+    void naoDeveConsumirOutboxQuandoOutraInstanciaDetemOLeaseDoCluster() throws Exception {
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 30);
+        try (CoordenacaoReplanejamentoCluster lider =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-lider", Duration.ofSeconds(30));
+                CoordenacaoReplanejamentoCluster seguidor =
+                        new CoordenacaoReplanejamentoCluster(factory, "no-seguidor", Duration.ofSeconds(30))) {
+            assertTrue(lider.renovar());
+            ReplanejamentoWorkerService workerSeguidor = new ReplanejamentoWorkerService(
+                    factory,
+                    capacidadePolicy -> {
+                        replanejamentoCalls.incrementAndGet();
+                        return new PlanejamentoResultado(0, 0, 0);
+                    },
+                    () -> {},
+                    () -> false,
+                    seguidor);
+
+            ReplanejamentoWorkerResultado resultado = workerSeguidor.processarPendentes(0, 100);
+
+            assertFalse(resultado.replanejou());
+            assertEquals(0, resultado.eventosProcessados());
+            assertEquals(0, replanejamentoCalls.get());
+            assertEquals(1, contarPendentes());
+        } finally {
+            try (Connection conn = factory.getConnection();
+                    Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM worker_leases");
+            }
+        }
+    }
+
+    @Test
+    void naoDeveSegurarLockDeLinhaDoOutboxDuranteOSolver() throws Exception {
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 30);
+        AtomicReference<String> donoDuranteSolver = new AtomicReference<>();
+        ReplanejamentoWorkerService workerObservado = new ReplanejamentoWorkerService(factory, capacidadePolicy -> {
+            // NOWAIT falharia se a rodada mantivesse FOR UPDATE aberto durante o solver.
+            try (Connection conn = factory.getConnection();
+                    Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT claimed_by FROM dispatch_events "
+                            + "WHERE status::text = 'PENDENTE' FOR UPDATE NOWAIT")) {
+                rs.next();
+                donoDuranteSolver.set(rs.getString("claimed_by"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return new PlanejamentoResultado(1, 1, 0);
+        });
+
+        ReplanejamentoWorkerResultado resultado = workerObservado.processarPendentes(0, 100);
+
+        assertTrue(resultado.replanejou());
+        assertNotNull(donoDuranteSolver.get(), "evento fica reivindicado pela rodada durante o solver");
+        assertEquals(1, contarProcessados());
+    }
+
+    @Test
+    void deveReivindicarEventoCujoLeaseVenceuSemConfirmacao() throws Exception {
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 30);
+        reivindicarEventos("rodada-morta", -5);
+
+        ReplanejamentoWorkerResultado resultado = workerService.processarPendentes(0, 100);
+
+        assertTrue(resultado.replanejou());
+        assertEquals(1, resultado.eventosProcessados());
+        assertEquals(1, contarProcessados());
+    }
+
+    @Test
+    void naoDeveReivindicarEventoComLeaseVigenteDeOutraRodada() throws Exception {
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 30);
+        reivindicarEventos("rodada-viva", 60);
+
+        ReplanejamentoWorkerResultado resultado = workerService.processarPendentes(0, 100);
+
+        assertFalse(resultado.replanejou());
+        assertEquals(0, resultado.eventosProcessados());
+        assertEquals(0, replanejamentoCalls.get());
+        assertEquals(1, contarPendentes());
+    }
+
+    @Test
+    void deveDevolverEventosAoOutboxQuandoReplanejamentoFalhar() throws Exception {
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 30);
+        ReplanejamentoWorkerService workerComFalha = new ReplanejamentoWorkerService(factory, capacidadePolicy -> {
+            throw new IllegalStateException("solver indisponivel");
+        });
+
+        assertThrows(IllegalStateException.class, () -> workerComFalha.processarPendentes(0, 100));
+
+        assertEquals(1, contarPendentes());
+        ReplanejamentoWorkerResultado retentativa = workerService.processarPendentes(0, 100);
+        assertTrue(retentativa.replanejou(), "evento e lease da rodada liberados sem esperar vencimento");
+        assertEquals(1, retentativa.eventosProcessados());
+    }
+
+    @Test
+    void deveDevolverEventosAoOutboxQuandoPlanejamentoForPreemptado() throws Exception {
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 30);
+        ReplanejamentoWorkerService workerPreemptado = new ReplanejamentoWorkerService(
+                factory, capacidadePolicy -> PlanejamentoResultado.descartadoPorPreempcao());
+
+        ReplanejamentoWorkerResultado resultado = workerPreemptado.processarPendentes(0, 100);
+
+        assertFalse(resultado.replanejou());
+        assertEquals(0, resultado.eventosProcessados());
+        assertEquals(1, contarPendentes(), "quem preemptou precisa ver o evento na rodada seguinte");
+        assertTrue(workerService.processarPendentes(0, 100).replanejou());
+    }
+
+    @Test
+    void deveRepetirRodadaSemPreemptarQuandoPlanejamentoPedirNovaTentativa() throws Exception {
+        inserirEvento(DispatchEventTypes.PEDIDO_ENTREGUE, 31);
+        inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 32);
+        AtomicInteger chamadas = new AtomicInteger();
+        AtomicInteger preempcoes = new AtomicInteger();
+        ReplanejamentoWorkerService workerComRetentativa = new ReplanejamentoWorkerService(
+                factory,
+                capacidadePolicy -> chamadas.incrementAndGet() == 1
+                        ? PlanejamentoResultado.adiadoParaNovaTentativa()
+                        : new PlanejamentoResultado(1, 1, 0),
+                preempcoes::incrementAndGet);
+
+        ReplanejamentoWorkerResultado resultado = workerComRetentativa.processarPendentes(0, 100);
+
+        assertTrue(resultado.replanejou(), "a propria rodada replaneja, sem esperar outro gatilho");
+        assertEquals(2, resultado.eventosProcessados());
+        assertEquals(2, chamadas.get());
+        assertEquals(0, preempcoes.get());
+        assertEquals(0, contarPendentes());
+    }
+
+    @Test
+    void deveDevolverRiscoHardAoMonitorQuandoPlanejamentoForPreemptadoEConfirmarAposPlanoGravado() {
+        AtomicBoolean riscoPendente = new AtomicBoolean(true);
+        AtomicInteger confirmacoes = new AtomicInteger();
+        ReplanejamentoWorkerService.RiscoJanelaHard risco = new ReplanejamentoWorkerService.RiscoJanelaHard() {
+            @Override
+            public boolean consumirRisco() {
+                return riscoPendente.getAndSet(false);
+            }
+
+            @Override
+            public void confirmarRisco() {
+                confirmacoes.incrementAndGet();
+            }
+
+            @Override
+            public void devolverRisco() {
+                riscoPendente.set(true);
+            }
+        };
+        AtomicBoolean preemptar = new AtomicBoolean(true);
+        ReplanejamentoWorkerService workerComRisco = new ReplanejamentoWorkerService(
+                factory,
+                capacidadePolicy -> preemptar.getAndSet(false)
+                        ? PlanejamentoResultado.descartadoPorPreempcao()
+                        : new PlanejamentoResultado(0, 0, 0),
+                () -> {},
+                risco);
+
+        assertFalse(workerComRisco.processarPendentes(0, 100).replanejou());
+        assertTrue(riscoPendente.get(), "risco volta ao monitor sem plano gravado");
+
+        assertTrue(workerComRisco.processarPendentes(0, 100).replanejou());
+        assertFalse(riscoPendente.get());
+        assertEquals(1, confirmacoes.get());
+    }
+
     @Test
     void deveGarantirUmUnicoLiderQuandoWorkersConcorremPeloMesmoLote() throws Exception {
         inserirEvento(DispatchEventTypes.PEDIDO_CRIADO, 40);
@@ -390,6 +564,16 @@ class ReplanejamentoWorkerServiceTest {
         }
     }
 
+    private void reivindicarEventos(String rodadaId, int leaseSegundos) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("UPDATE dispatch_events SET claimed_by = ?, "
+                        + "lease_until = LOCALTIMESTAMP + (? * INTERVAL '1 second') WHERE status::text = 'PENDENTE'")) {
+            stmt.setString(1, rodadaId);
+            stmt.setInt(2, leaseSegundos);
+            stmt.executeUpdate();
+        }
+    }
+
     private int contarPendentes() throws Exception {
         try (Connection conn = factory.getConnection();
                 PreparedStatement stmt =
@@ -0,0 +1,55 @@
+package com.aguaviva.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class ResequenciadorRotaTest {
+
+    private static final LocalDateTime INICIO = LocalDate.of(2026, 3, 2).atTime(10, 0);
+    private static final ResequenciadorRota.Parada ORIGEM = asap(0, 0, -16.7300, -43.8700);
+
+    @Test
+    void deveDesfazerZigueZagueDasParadasRestantes() {
+        // Pontos em linha para o leste, planejados fora de ordem.
+        List<ResequenciadorRota.Parada> paradas = List.of(
+                asap(1, 2, -16.7300, -43.8500),
+                asap(2, 3, -16.7300, -43.8650),
+                asap(3, 4, -16.7300, -43.8400),
+                asap(4, 5, -16.7300, -43.8600));
+
+        List<ResequenciadorRota.Parada> melhor = ResequenciadorRota.melhorarSequencia(ORIGEM, paradas, INICIO);
+
+        assertEquals(
+                List.of(2, 4, 1, 3),
+                melhor.stream().map(ResequenciadorRota.Parada::entregaId).toList());
+    }
+
+    @Test
+    void naoDeveTrocarOrdemQuandoEncurtarOPercursoEstouraJanelaHard() {
+        // A parada distante fecha em 10:14 e a chegada direta e ~10:13: passar antes na vizinha encurtaria o
+        // percurso, mas a atrasaria.
+        List<ResequenciadorRota.Parada> paradas = List.of(
+                hard(1, 2, -16.7300, -43.8100, LocalTime.of(10, 14)),
+                asap(2, 3, -16.7300, -43.8650),
+                asap(3, 4, -16.7300, -43.7900));
+
+        List<ResequenciadorRota.Parada> melhor = ResequenciadorRota.melhorarSequencia(ORIGEM, paradas, INICIO);
+
+        assertEquals(1, melhor.get(0).entregaId());
+    }
+
+    private static ResequenciadorRota.Parada asap(int entregaId, int ordem, double lat, double lon) {
+        return new ResequenciadorRota.Parada(entregaId, ordem, lat, lon, null, null);
+    }
+
+    private static ResequenciadorRota.Parada hard(int entregaId, int ordem, double lat, double lon, LocalTime fim) {
+        return new ResequenciadorRota.Parada(entregaId, ordem, lat, lon, LocalTime.of(8, 0), fim);
+    }
+}
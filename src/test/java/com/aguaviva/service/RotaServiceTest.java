@@ -1,6 +1,7 @@
 package com.aguaviva.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -21,10 +22,12 @@ import com.aguaviva.repository.PedidoRepository;
 import com.aguaviva.repository.UserRepository;
 import com.aguaviva.solver.SolverClient;
 import com.aguaviva.support.TestConnectionFactory;
+import com.google.gson.JsonElement;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.net.InetSocketAddress;
@@ -35,6 +38,7 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -44,12 +48,15 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
@@ -108,7 +115,8 @@ class RotaServiceTest {
         try (Connection conn = factory.getConnection();
                 Statement stmt = conn.createStatement()) {
             stmt.execute(
-                    "TRUNCATE TABLE sessions, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users RESTART IDENTITY CASCADE");
+                    "TRUNCATE TABLE sessions, entregas, rotas, movimentacao_vales, saldo_vales, pedidos, clientes, users, "
+                            + "regioes_planejamento RESTART IDENTITY CASCADE");
             limparSolverJobsSeExistir(conn);
         }
     }
@@ -134,12 +142,14 @@ class RotaServiceTest {
     }
 
     private int criarClienteComSaldo(String telefone, int saldo) throws Exception {
+        // Cada cliente num ponto proprio: pedidos no mesmo ponto seriam unidos numa parada composta pelo pre-passe.
+        long deslocamento = Long.parseLong(telefone.replaceAll("\\D", "")) % 10_000;
         Cliente cliente = new Cliente(
                 "Cliente " + telefone,
                 telefone,
                 ClienteTipo.PF,
                 "Rua Teste",
-                BigDecimal.valueOf(-16.7210),
+                BigDecimal.valueOf(-16.7210).add(BigDecimal.valueOf(deslocamento, 6)),
                 BigDecimal.valueOf(-43.8610),
                 null);
         int clienteId = clienteRepository.save(cliente).getId();
@@ -434,6 +444,8 @@ class RotaServiceTest {
         assertEquals(1, primeiraExecucao.entregasCriadas());
         assertEquals(1, primeiraExecucao.pedidosNaoAtendidos());
 
+        // Muda uma entrada do planejamento para que o ciclo seguinte nao reaproveite o plano anterior.
+        atualizarConfiguracao("capacidade_veiculo", "4");
         solverStub.setSolveResponse("""
                 {
                   "rotas": [
@@ -674,6 +686,316 @@ class RotaServiceTest {
         assertTrue(payloadSolver.get().contains("\"capacidades_entregadores\":[2,5]"));
     }
 
+    @Test
+    void deveGravarPlanoDaPoliticaComMelhorPontuacaoQuandoResolveCenariosEmParalelo() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-what-if@teste.com");
+        int entregadorId = criarEntregadorId("entregador-what-if@teste.com", true);
+        int clienteExecucao = criarClienteComSaldo("(38) 99999-7731", 10);
+        int clienteA = criarClienteComSaldo("(38) 99999-7732", 10);
+        int clienteB = criarClienteComSaldo("(38) 99999-7733", 10);
+
+        Pedido pedidoExecucao =
+                pedidoRepository.save(new Pedido(clienteExecucao, 4, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoA = pedidoRepository.save(new Pedido(clienteA, 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoB = pedidoRepository.save(new Pedido(clienteB, 1, JanelaTipo.ASAP, null, null, atendenteId));
+        atualizarStatusPedido(pedidoExecucao.getId(), "EM_ROTA");
+        int rotaEmAndamento = inserirRotaComStatus(entregadorId, "EM_ANDAMENTO", 1);
+        inserirEntregaComStatus(pedidoExecucao.getId(), rotaEmAndamento, 1, "EM_EXECUCAO");
+
+        // REMANESCENTE (capacidade 1) so atende um pedido; CHEIA (capacidade 5) atende os dois.
+        solverStub.setDynamicSolveHandler(requestBody -> requestBody.contains("\"capacidades_entregadores\":[5]")
+                ? """
+                        {"rotas": [{"entregador_id": %d, "numero_no_dia": 2, "paradas": [
+                          {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "09:30"},
+                          {"ordem": 2, "pedido_id": %d, "lat": -16.7220, "lon": -43.8620, "hora_prevista": "09:50"}
+                        ]}], "nao_atendidos": []}
+                        """.formatted(entregadorId, pedidoA.getId(), pedidoB.getId())
+                : """
+                        {"rotas": [{"entregador_id": %d, "numero_no_dia": 2, "paradas": [
+                          {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "09:30"}
+                        ]}], "nao_atendidos": [%d]}
+                        """.formatted(entregadorId, pedidoA.getId(), pedidoB.getId()));
+
+        PlanejamentoResultado resultado =
+                criarService().planejarRotasPendentes(List.of(CapacidadePolicy.REMANESCENTE, CapacidadePolicy.CHEIA));
+
+        assertEquals(2, solverStub.requestCount());
+        assertEquals(1, resultado.rotasCriadas());
+        assertEquals(2, resultado.entregasCriadas());
+        assertEquals(0, resultado.pedidosNaoAtendidos());
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoB.getId()));
+    }
+
+    @Test
+    void devePontuarCenariosContraAUniaoDosPedidosElegiveisEGravarORequestDoVencedor() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-what-if-uniao@teste.com");
+        int entregadorId = criarEntregadorId("entregador-what-if-uniao@teste.com", true);
+        int clienteExecucao = criarClienteComSaldo("(38) 99999-7734", 10);
+        int clienteA = criarClienteComSaldo("(38) 99999-7735", 10);
+        int clienteB = criarClienteComSaldo("(38) 99999-7736", 10);
+
+        Pedido pedidoExecucao =
+                pedidoRepository.save(new Pedido(clienteExecucao, 4, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoA = pedidoRepository.save(new Pedido(clienteA, 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoB = pedidoRepository.save(new Pedido(clienteB, 1, JanelaTipo.ASAP, null, null, atendenteId));
+        atualizarStatusPedido(pedidoExecucao.getId(), "EM_ROTA");
+        int rotaEmAndamento = inserirRotaComStatus(entregadorId, "EM_ANDAMENTO", 1);
+        inserirEntregaComStatus(pedidoExecucao.getId(), rotaEmAndamento, 1, "EM_EXECUCAO");
+
+        // REMANESCENTE (capacidade 1) nem leva o pedido B ao solver e atende tudo que pediu; CHEIA atende os dois.
+        solverStub.setDynamicSolveHandler(requestBody -> requestBody.contains("\"capacidades_entregadores\":[5]")
+                ? """
+                        {"rotas": [{"entregador_id": %d, "numero_no_dia": 2, "paradas": [
+                          {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "09:30"},
+                          {"ordem": 2, "pedido_id": %d, "lat": -16.7220, "lon": -43.8620, "hora_prevista": "09:50"}
+                        ]}], "nao_atendidos": []}
+                        """.formatted(entregadorId, pedidoA.getId(), pedidoB.getId())
+                : """
+                        {"rotas": [{"entregador_id": %d, "numero_no_dia": 2, "paradas": [
+                          {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "09:30"}
+                        ]}], "nao_atendidos": []}
+                        """.formatted(entregadorId, pedidoA.getId()));
+
+        PlanejamentoResultado resultado =
+                criarService().planejarRotasPendentes(List.of(CapacidadePolicy.REMANESCENTE, CapacidadePolicy.CHEIA));
+
+        assertEquals(2, resultado.entregasCriadas());
+        String requestPayload = obterPayloadSolverJobMaisRecente("CONCLUIDO", "request_payload");
+        if (requestPayload != null) {
+            assertTrue(requestPayload.contains("\"capacidades_entregadores\":[5]"), requestPayload);
+        }
+    }
+
+    @Test
+    void deveSimularCenariosSemGravarNemApagarRotas() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-simulacao@teste.com");
+        int entregadorId = criarEntregadorId("entregador-simulacao@teste.com", true);
+        int clienteA = criarClienteComSaldo("(38) 99999-7741", 10);
+        int clienteB = criarClienteComSaldo("(38) 99999-7742", 10);
+
+        Pedido pedidoA = pedidoRepository.save(new Pedido(clienteA, 2, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoB = pedidoRepository.save(new Pedido(clienteB, 2, JanelaTipo.ASAP, null, null, atendenteId));
+        atualizarStatusPedido(pedidoA.getId(), "CONFIRMADO");
+        int rotaPlanejada = inserirRotaComStatus(entregadorId, "PLANEJADA", 1);
+        inserirEntregaComStatus(pedidoA.getId(), rotaPlanejada, 1, "PENDENTE");
+
+        solverStub.setDynamicSolveHandler(requestBody -> requestBody.contains("\"capacidades_entregadores\":[5]")
+                ? """
+                        {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                          {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "09:30"},
+                          {"ordem": 2, "pedido_id": %d, "lat": -16.7220, "lon": -43.8620, "hora_prevista": "09:50"}
+                        ]}], "nao_atendidos": []}
+                        """.formatted(entregadorId, pedidoA.getId(), pedidoB.getId())
+                : """
+                        {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                          {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "09:30"}
+                        ]}], "nao_atendidos": [%d]}
+                        """.formatted(entregadorId, pedidoA.getId(), pedidoB.getId()));
+
+        SimulacaoPlanejamentoResultado simulacao = criarService()
+                .simularCenarios(List.of(
+                        new CenarioPlanejamento(CapacidadePolicy.CHEIA, 2, null),
+                        new CenarioPlanejamento(CapacidadePolicy.CHEIA)));
+
+        assertEquals(2, solverStub.requestCount());
+        assertEquals(1, simulacao.melhorCenario());
+        SimulacaoPlanejamentoResultado.AvaliacaoCenario restrito =
+                simulacao.cenarios().get(0);
+        assertEquals(2, restrito.capacidadeVeiculo());
+        // O pedido ja na camada PLANEJADA entra na simulacao, como no ciclo real que a refaz.
+        assertEquals(2, restrito.pedidos());
+        assertEquals(1, restrito.naoAtendidos());
+        assertEquals(0, simulacao.cenarios().get(1).naoAtendidos());
+        assertEquals(2, simulacao.cenarios().get(1).entregas());
+
+        assertEquals(1, contarLinhas("rotas"));
+        assertEquals(1, contarLinhas("entregas"));
+        assertEquals(rotaPlanejada, rotaDaEntregaDoPedido(pedidoA.getId()));
+        assertEquals("PENDENTE", statusDoPedido(pedidoB.getId()));
+    }
+
+    @Test
+    void devePlanejarCadaRegiaoSoComSeusEntregadoresEPedidos() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-regioes@teste.com");
+        int entregadorNorte = criarEntregadorId("entregador-norte@teste.com", true);
+        int entregadorSul = criarEntregadorId("entregador-sul@teste.com", true);
+        configurarRegiao("NORTE", -16.7100, -43.8610, entregadorNorte);
+        configurarRegiao("SUL", -16.7250, -43.8610, entregadorSul);
+        // Deslocamento pelo telefone: 9000 fica perto do ponto NORTE, 0100 perto do SUL.
+        Pedido pedidoNorte = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-9000", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoSul = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-0100", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        List<String> payloads = Collections.synchronizedList(new ArrayList<>());
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            payloads.add(requestBody);
+            boolean norte = requestBody.contains("\"entregadores\":[" + entregadorNorte + "]");
+            return """
+                    {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                      {"ordem": 1, "pedido_id": %d, "lat": -16.7150, "lon": -43.8610, "hora_prevista": "09:10"}
+                    ]}], "nao_atendidos": []}
+                    """.formatted(
+                            norte ? entregadorNorte : entregadorSul, norte ? pedidoNorte.getId() : pedidoSul.getId());
+        });
+
+        PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+        assertEquals(2, resultado.rotasCriadas());
+        assertEquals(2, resultado.entregasCriadas());
+        assertEquals(2, solverStub.requestCount());
+        for (String payload : payloads) {
+            boolean norte = payload.contains("\"entregadores\":[" + entregadorNorte + "]");
+            assertTrue(norte || payload.contains("\"entregadores\":[" + entregadorSul + "]"));
+            int pedidoDaRegiao = norte ? pedidoNorte.getId() : pedidoSul.getId();
+            int pedidoDeFora = norte ? pedidoSul.getId() : pedidoNorte.getId();
+            assertTrue(payload.contains("\"pedido_id\":" + pedidoDaRegiao + ","));
+            assertFalse(payload.contains("\"pedido_id\":" + pedidoDeFora + ","));
+        }
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoNorte.getId()));
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoSul.getId()));
+    }
+
+    @Test
+    void devePlanejarEntregadorSemRegiaoEPedidoDeRegiaoSemFrotaNoEscopoResidual() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-sem-regiao@teste.com");
+        int entregadorNorte = criarEntregadorId("entregador-norte-residual@teste.com", true);
+        int entregadorSemRegiao = criarEntregadorId("entregador-sem-regiao@teste.com", true);
+        configurarRegiao("NORTE", -16.7100, -43.8610, entregadorNorte);
+        configurarRegiao("SUL", -16.7250, -43.8610);
+        Pedido pedidoNorte = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-9002", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoSul = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-0102", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        List<String> payloads = Collections.synchronizedList(new ArrayList<>());
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            payloads.add(requestBody);
+            boolean norte = requestBody.contains("\"entregadores\":[" + entregadorNorte + "]");
+            return """
+                    {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                      {"ordem": 1, "pedido_id": %d, "lat": -16.7150, "lon": -43.8610, "hora_prevista": "09:10"}
+                    ]}], "nao_atendidos": []}
+                    """.formatted(
+                    norte ? entregadorNorte : entregadorSemRegiao, norte ? pedidoNorte.getId() : pedidoSul.getId());
+        });
+
+        PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+        assertEquals(2, resultado.rotasCriadas());
+        assertEquals(2, solverStub.requestCount());
+        for (String payload : payloads) {
+            boolean norte = payload.contains("\"entregadores\":[" + entregadorNorte + "]");
+            assertTrue(norte || payload.contains("\"entregadores\":[" + entregadorSemRegiao + "]"));
+            int pedidoDoEscopo = norte ? pedidoNorte.getId() : pedidoSul.getId();
+            int pedidoDeFora = norte ? pedidoSul.getId() : pedidoNorte.getId();
+            assertTrue(payload.contains("\"pedido_id\":" + pedidoDoEscopo + ","));
+            assertFalse(payload.contains("\"pedido_id\":" + pedidoDeFora + ","));
+        }
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoSul.getId()));
+
+        // Com o escopo residual ocupado, replanejar NORTE nao pode apagar a camada do entregador sem regiao.
+        Pedido outroPedidoNorte = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-9003", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        solverStub.setDynamicSolveHandler(
+                requestBody -> """
+                {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                  {"ordem": 1, "pedido_id": %d, "lat": -16.7150, "lon": -43.8610, "hora_prevista": "09:10"},
+                  {"ordem": 2, "pedido_id": %d, "lat": -16.7150, "lon": -43.8610, "hora_prevista": "09:20"}
+                ]}], "nao_atendidos": []}
+                """.formatted(entregadorNorte, pedidoNorte.getId(), outroPedidoNorte.getId()));
+        try (Connection concorrente = factory.getConnection();
+                PreparedStatement stmt = concorrente.prepareStatement("SELECT pg_advisory_lock(?, hashtext(?))")) {
+            stmt.setInt(1, (int) RotaService.PLANEJAMENTO_LOCK_KEY);
+            stmt.setString(2, RotaService.ESCOPO_SEM_REGIAO);
+            stmt.execute();
+            try {
+                criarService().planejarRotasPendentes();
+            } finally {
+                try (PreparedStatement unlock =
+                        concorrente.prepareStatement("SELECT pg_advisory_unlock(?, hashtext(?))")) {
+                    unlock.setInt(1, (int) RotaService.PLANEJAMENTO_LOCK_KEY);
+                    unlock.setString(2, RotaService.ESCOPO_SEM_REGIAO);
+                    unlock.execute();
+                }
+            }
+        }
+        assertEquals(3, solverStub.requestCount());
+        assertEquals("CONFIRMADO", statusDoPedido(outroPedidoNorte.getId()));
+        assertEquals(1, contarEntregasPorPedido(pedidoSul.getId()));
+        assertEquals(2, contarRotasPorStatus("PLANEJADA"));
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoSul.getId()));
+    }
+
+    @Test
+    void devePlanejarPedidoDeRegiaoSemFrotaNaRegiaoAtendidaMaisProxima() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-regiao-sem-frota@teste.com");
+        int entregadorNorte = criarEntregadorId("entregador-norte-sem-frota@teste.com", true);
+        configurarRegiao("NORTE", -16.7100, -43.8610, entregadorNorte);
+        configurarRegiao("SUL", -16.7250, -43.8610);
+        Pedido pedidoSul = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-0103", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        AtomicReference<String> payload = new AtomicReference<>();
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            payload.set(requestBody);
+            return """
+                    {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                      {"ordem": 1, "pedido_id": %d, "lat": -16.7250, "lon": -43.8610, "hora_prevista": "09:10"}
+                    ]}], "nao_atendidos": []}
+                    """.formatted(entregadorNorte, pedidoSul.getId());
+        });
+
+        PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+        assertEquals(1, resultado.rotasCriadas());
+        assertEquals(1, solverStub.requestCount());
+        assertTrue(payload.get().contains("\"entregadores\":[" + entregadorNorte + "]"));
+        assertTrue(payload.get().contains("\"pedido_id\":" + pedidoSul.getId() + ","));
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoSul.getId()));
+    }
+
+    @Test
+    void devePlanejarRegiaoLivreQuandoOutraRegiaoEstiverComLockOcupado() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-regiao-lock@teste.com");
+        int entregadorNorte = criarEntregadorId("entregador-norte-lock@teste.com", true);
+        int entregadorSul = criarEntregadorId("entregador-sul-lock@teste.com", true);
+        configurarRegiao("NORTE", -16.7100, -43.8610, entregadorNorte);
+        configurarRegiao("SUL", -16.7250, -43.8610, entregadorSul);
+        Pedido pedidoNorte = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-9001", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoSul = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-0101", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        solverStub.setSolveResponse("""
+                {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                  {"ordem": 1, "pedido_id": %d, "lat": -16.7200, "lon": -43.8610, "hora_prevista": "09:10"}
+                ]}], "nao_atendidos": []}
+                """.formatted(entregadorSul, pedidoSul.getId()));
+
+        try (Connection concorrente = factory.getConnection();
+                PreparedStatement stmt = concorrente.prepareStatement("SELECT pg_advisory_lock(?, hashtext(?))")) {
+            stmt.setInt(1, (int) RotaService.PLANEJAMENTO_LOCK_KEY);
+            stmt.setString(2, "NORTE");
+            stmt.execute();
+            try {
+                PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+                assertEquals(1, resultado.rotasCriadas());
+                assertEquals(1, solverStub.requestCount());
+                assertEquals("CONFIRMADO", statusDoPedido(pedidoSul.getId()));
+                assertEquals("PENDENTE", statusDoPedido(pedidoNorte.getId()));
+            } finally {
+                try (PreparedStatement unlock =
+                        concorrente.prepareStatement("SELECT pg_advisory_unlock(?, hashtext(?))")) {
+                    unlock.setInt(1, (int) RotaService.PLANEJAMENTO_LOCK_KEY);
+                    unlock.setString(2, "NORTE");
+                    unlock.execute();
+                }
+            }
+        }
+    }
+
     @Test
     void deveDistribuirPlanejamentoEntreMultiplosEntregadoresRespeitandoCapacidade() throws Exception {
         int atendenteId = criarAtendenteId("atendente-multi-entregador@teste.com");
@@ -972,6 +1294,90 @@ class RotaServiceTest {
         assertEquals(1, contarEntregasPorPedido(pedidoNovo.getId()));
     }
 
+    @Test
+    void deveEnviarPlanoPlanejadoAnteriorComoRotasIniciaisDoSolver() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-warm-start@teste.com");
+        int entregadorId = criarEntregadorId("entregador-warm-start@teste.com", true);
+        int clienteA = criarClienteComSaldo("(38) 99999-7731", 10);
+        int clienteB = criarClienteComSaldo("(38) 99999-7732", 10);
+        int clienteC = criarClienteComSaldo("(38) 99999-7733", 10);
+
+        Pedido pedidoA = pedidoRepository.save(new Pedido(clienteA, 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoB = pedidoRepository.save(new Pedido(clienteB, 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        java.util.concurrent.atomic.AtomicReference<String> payloadSolver =
+                new java.util.concurrent.atomic.AtomicReference<>("");
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            payloadSolver.set(requestBody);
+            return """
+                    {
+                      "rotas": [
+                        {
+                          "entregador_id": %d,
+                          "numero_no_dia": 1,
+                          "paradas": [
+                            {"ordem": 1, "pedido_id": %d, "lat": -16.7310, "lon": -43.8710, "hora_prevista": "09:10"},
+                            {"ordem": 2, "pedido_id": %d, "lat": -16.7320, "lon": -43.8720, "hora_prevista": "09:20"}
+                          ]
+                        }
+                      ],
+                      "nao_atendidos": []
+                    }
+                    """.formatted(entregadorId, pedidoB.getId(), pedidoA.getId());
+        });
+
+        criarService().planejarRotasPendentes();
+        assertFalse(payloadSolver.get().contains("rotas_iniciais"));
+
+        pedidoRepository.save(new Pedido(clienteC, 1, JanelaTipo.ASAP, null, null, atendenteId));
+        criarService().planejarRotasPendentes();
+
+        assertEquals(2, solverStub.requestCount());
+        assertTrue(payloadSolver
+                .get()
+                .contains("\"rotas_iniciais\":[{\"entregador_id\":" + entregadorId
+                        + ",\"numero_no_dia\":1,\"pedidos\":[" + pedidoB.getId()
+                        + "," + pedidoA.getId() + "]}]"));
+    }
+
+    @Test
+    void deveAdiarPedidoHardComJanelaAlemDoHorizonteDePlanejamento() throws Exception {
+        // Com horizonte de 1 minuto, a janela das 23:58 so entra no planejamento perto da meia-noite.
+        Assumptions.assumeTrue(java.time.LocalTime.now().isBefore(java.time.LocalTime.of(23, 50)));
+        int atendenteId = criarAtendenteId("atendente-horizonte@teste.com");
+        criarEntregadorId("entregador-horizonte@teste.com", true);
+        int clienteProximo = criarClienteComSaldo("(38) 99999-7741", 10);
+        int clienteDistante = criarClienteComSaldo("(38) 99999-7742", 10);
+        Pedido pedidoAsap =
+                pedidoRepository.save(new Pedido(clienteProximo, 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoNoite = pedidoRepository.save(new Pedido(
+                clienteDistante,
+                1,
+                JanelaTipo.HARD,
+                java.time.LocalTime.of(23, 58),
+                java.time.LocalTime.of(23, 59),
+                atendenteId));
+        java.util.concurrent.atomic.AtomicReference<String> payloadSolver =
+                new java.util.concurrent.atomic.AtomicReference<>("");
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            payloadSolver.set(requestBody);
+            return "{\"rotas\":[],\"nao_atendidos\":[]}";
+        });
+
+        atualizarConfiguracao("horario_fim_expediente", "23:59");
+        atualizarConfiguracao(RotaService.CHAVE_HORIZONTE_MINUTOS, "1");
+        try {
+            criarService().planejarRotasPendentes();
+        } finally {
+            atualizarConfiguracao(RotaService.CHAVE_HORIZONTE_MINUTOS, "0");
+            atualizarConfiguracao("horario_fim_expediente", "18:00");
+        }
+
+        assertEquals(1, solverStub.requestCount());
+        assertTrue(payloadSolver.get().contains("\"pedido_id\":" + pedidoAsap.getId() + ","));
+        assertFalse(payloadSolver.get().contains("\"pedido_id\":" + pedidoNoite.getId() + ","));
+    }
+
     @Test
     void deveFalharComMensagemClaraQuandoSolverRetornarMaisDeUmaRotaPlanejadaParaMesmoEntregador() throws Exception {
         int atendenteId = criarAtendenteId("atendente-contrato-solver@teste.com");
@@ -1330,6 +1736,148 @@ class RotaServiceTest {
         }
     }
 
+    @Test
+    void deveResolverSemSegurarLockNemApagarCamadaPlanejadaAntesDaGravacao() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-solver-sem-lock@teste.com");
+        int entregadorId = criarEntregadorId("entregador-solver-sem-lock@teste.com", true);
+        Pedido pedidoPlanejado = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-7951", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        int rotaAnterior = inserirRotaComStatus(entregadorId, "PLANEJADA", 1);
+        inserirEntregaComStatus(pedidoPlanejado.getId(), rotaAnterior, 1, "PENDENTE");
+        atualizarStatusPedido(pedidoPlanejado.getId(), "CONFIRMADO");
+        Pedido pedidoNovo = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-7952", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        AtomicInteger lockLivreDuranteSolver = new AtomicInteger(-1);
+        AtomicInteger entregasDuranteSolver = new AtomicInteger(-1);
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            try (Connection outra = factory.getConnection()) {
+                outra.setAutoCommit(false);
+                try (PreparedStatement stmt = outra.prepareStatement("SELECT pg_try_advisory_xact_lock(?)")) {
+                    stmt.setLong(1, RotaService.PLANEJAMENTO_LOCK_KEY);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        rs.next();
+                        lockLivreDuranteSolver.set(rs.getBoolean(1) ? 1 : 0);
+                    }
+                }
+                outra.rollback();
+                entregasDuranteSolver.set(contarLinhas("entregas"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return """
+                    {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                      {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "08:30"},
+                      {"ordem": 2, "pedido_id": %d, "lat": -16.7220, "lon": -43.8620, "hora_prevista": "08:45"}
+                    ]}], "nao_atendidos": []}
+                    """.formatted(entregadorId, pedidoPlanejado.getId(), pedidoNovo.getId());
+        });
+
+        PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+        assertEquals(1, lockLivreDuranteSolver.get(), "Lock de planejamento nao pode ficar preso durante o solver");
+        assertEquals(1, entregasDuranteSolver.get(), "Camada PLANEJADA so pode ser trocada na gravacao");
+        assertEquals(1, resultado.rotasCriadas());
+        assertEquals(2, resultado.entregasCriadas());
+        assertEquals(1, contarLinhas("rotas"));
+        assertEquals(2, contarLinhas("entregas"));
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoNovo.getId()));
+    }
+
+    @Test
+    void deveDescartarPlanoEPedirNovaTentativaQuandoMudancaDuranteOSolverEstouraACapacidade() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-solver-snapshot@teste.com");
+        int entregadorId = criarEntregadorId("entregador-solver-snapshot@teste.com", true);
+        Pedido pedidoPlanejado = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-7953", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        int rotaAnterior = inserirRotaComStatus(entregadorId, "PLANEJADA", 1);
+        inserirEntregaComStatus(pedidoPlanejado.getId(), rotaAnterior, 1, "PENDENTE");
+        atualizarStatusPedido(pedidoPlanejado.getId(), "CONFIRMADO");
+        Pedido pedidoNovo = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-7954", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            try (Connection outra = factory.getConnection();
+                    PreparedStatement stmt =
+                            outra.prepareStatement("UPDATE pedidos SET quantidade_galoes = 5 WHERE id = ?")) {
+                stmt.setInt(1, pedidoNovo.getId());
+                stmt.executeUpdate();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return """
+                    {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                      {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "08:30"},
+                      {"ordem": 2, "pedido_id": %d, "lat": -16.7220, "lon": -43.8620, "hora_prevista": "08:45"}
+                    ]}], "nao_atendidos": []}
+                    """.formatted(entregadorId, pedidoPlanejado.getId(), pedidoNovo.getId());
+        });
+
+        PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+        assertTrue(resultado.repetir());
+        assertFalse(resultado.preemptado());
+        assertEquals(0, resultado.rotasCriadas());
+        assertEquals(1, contarSolverJobsPorStatus("CANCELADO"));
+        assertEquals(rotaAnterior, rotaDaEntregaDoPedido(pedidoPlanejado.getId()));
+        assertEquals(1, contarLinhas("entregas"));
+        assertEquals("PENDENTE", statusDoPedido(pedidoNovo.getId()));
+    }
+
+    @Test
+    void deveGravarPlanoQuandoMudancaDuranteOSolverNaoViolaOPlano() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-solver-snapshot-ok@teste.com");
+        int entregadorId = criarEntregadorId("entregador-solver-snapshot-ok@teste.com", true);
+        Pedido pedidoA = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-7955", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoB = pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-7956", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        // Muda a entrada do solver (quantidade) sem estourar a capacidade do veiculo.
+        solverStub.setDynamicSolveHandler(requestBody -> {
+            try (Connection outra = factory.getConnection();
+                    PreparedStatement stmt =
+                            outra.prepareStatement("UPDATE pedidos SET quantidade_galoes = 2 WHERE id = ?")) {
+                stmt.setInt(1, pedidoB.getId());
+                stmt.executeUpdate();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return """
+                    {"rotas": [{"entregador_id": %d, "numero_no_dia": 1, "paradas": [
+                      {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "08:30"},
+                      {"ordem": 2, "pedido_id": %d, "lat": -16.7220, "lon": -43.8620, "hora_prevista": "08:45"}
+                    ]}], "nao_atendidos": []}
+                    """.formatted(entregadorId, pedidoA.getId(), pedidoB.getId());
+        });
+
+        PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+        assertFalse(resultado.preemptado());
+        assertFalse(resultado.repetir());
+        assertEquals(2, resultado.entregasCriadas());
+        assertEquals("CONFIRMADO", statusDoPedido(pedidoB.getId()));
+    }
+
+    @Test
+    void devePedirNovaTentativaSemChamarSolverQuandoEscopoJaEstaEmPlanejamento() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-escopo-ocupado@teste.com");
+        criarEntregadorId("entregador-escopo-ocupado@teste.com", true);
+        pedidoRepository.save(
+                new Pedido(criarClienteComSaldo("(38) 99999-7957", 10), 1, JanelaTipo.ASAP, null, null, atendenteId));
+        executarSql("INSERT INTO planejamento_ciclos (escopo, plan_version, job_id, lease_ate) "
+                + "VALUES ('', 1, 'outro-no', LOCALTIMESTAMP + INTERVAL '1 minute') "
+                + "ON CONFLICT (escopo) DO UPDATE SET job_id = 'outro-no', lease_ate = EXCLUDED.lease_ate");
+        try {
+            PlanejamentoResultado resultado = criarService().planejarRotasPendentes();
+
+            assertTrue(resultado.repetir(), "eventos do worker nao podem ser confirmados sem plano que os cubra");
+            assertEquals(0, solverStub.requestCount());
+        } finally {
+            executarSql("DELETE FROM planejamento_ciclos WHERE job_id = 'outro-no'");
+        }
+    }
+
     @Test
     void deveRegistrarSolverJobComoConcluidoQuandoPlanejamentoFinalizaComSucesso() throws Exception {
         int atendenteId = criarAtendenteId("atendente-solver-job-ok@teste.com");
@@ -1364,6 +1912,57 @@ class RotaServiceTest {
         assertTrue(responsePayload != null && responsePayload.contains("\"rotas\""));
     }
 
+    @Test
+    void deveReaproveitarPlanoSemChamarSolverQuandoEntradasNaoMudaram() throws Exception {
+        int atendenteId = criarAtendenteId("atendente-fingerprint@teste.com");
+        int entregadorId = criarEntregadorId("entregador-fingerprint@teste.com", true);
+        int cliente1 = criarClienteComSaldo("(38) 99999-7911", 10);
+        int cliente2 = criarClienteComSaldo("(38) 99999-7912", 10);
+
+        Pedido pedidoAtendido =
+                pedidoRepository.save(new Pedido(cliente1, 2, JanelaTipo.ASAP, null, null, atendenteId));
+        Pedido pedidoNaoAtendido =
+                pedidoRepository.save(new Pedido(cliente2, 2, JanelaTipo.ASAP, null, null, atendenteId));
+
+        solverStub.setSolveResponse("""
+                {
+                  "rotas": [
+                    {
+                      "entregador_id": %d,
+                      "numero_no_dia": 1,
+                      "paradas": [
+                        {"ordem": 1, "pedido_id": %d, "lat": -16.7210, "lon": -43.8610, "hora_prevista": "09:30"}
+                      ]
+                    }
+                  ],
+                  "nao_atendidos": [%d]
+                }
+                """.formatted(entregadorId, pedidoAtendido.getId(), pedidoNaoAtendido.getId()));
+
+        RotaService service = criarService();
+        PlanejamentoResultado primeiro = service.planejarRotasPendentes();
+        PlanejamentoResultado segundo = service.planejarRotasPendentes();
+
+        assertEquals(1, primeiro.rotasCriadas());
+        assertFalse(primeiro.planoReaproveitado());
+        assertTrue(segundo.planoReaproveitado());
+        assertEquals(0, segundo.rotasCriadas());
+        assertEquals(1, segundo.pedidosNaoAtendidos());
+        assertEquals(1, solverStub.requestCount());
+        assertEquals(1, contarRotasPorStatus("PLANEJADA"));
+        assertEquals(1, contarEntregasPorPedido(pedidoAtendido.getId()));
+        assertEquals(1, contarSolverJobsPorStatus("CONCLUIDO"));
+
+        int cliente3 = criarClienteComSaldo("(38) 99999-7913", 10);
+        pedidoRepository.save(new Pedido(cliente3, 1, JanelaTipo.ASAP, null, null, atendenteId));
+
+        PlanejamentoResultado terceiro = service.planejarRotasPendentes();
+
+        assertFalse(terceiro.planoReaproveitado());
+        assertEquals(2, solverStub.requestCount());
+        assertEquals(2, contarSolverJobsPorStatus("CONCLUIDO"));
+    }
+
     @Test
     void devePermitirPreempcaoDistribuidaViaSolverJobsEntreInstancias() throws Exception {
         int atendenteId = criarAtendenteId("atendente-solver-job-preempt@teste.com");
@@ -1409,6 +2008,7 @@ class RotaServiceTest {
             assertEquals(0, resultado.rotasCriadas());
             assertEquals(0, resultado.entregasCriadas());
             assertEquals(0, resultado.pedidosNaoAtendidos());
+            assertTrue(resultado.preemptado());
             assertEquals(1, solverStub.cancelCount());
             assertEquals(1, contarSolverJobsPorStatus("CANCELADO"));
             String requestPayload = obterPayloadSolverJobMaisRecente("CANCELADO", "request_payload");
@@ -1770,6 +2370,25 @@ class RotaServiceTest {
         throw new AssertionError(erro);
     }
 
+    private void configurarRegiao(String codigo, double lat, double lon, int... entregadores) throws Exception {
+        try (Connection conn = factory.getConnection();
+                PreparedStatement regiao = conn.prepareStatement(
+                        "INSERT INTO regioes_planejamento (codigo, nome, latitude, longitude) VALUES (?, ?, ?, ?)");
+                PreparedStatement entregador =
+                        conn.prepareStatement("UPDATE users SET regiao_planejamento = ? WHERE id = ?")) {
+            regiao.setString(1, codigo);
+            regiao.setString(2, "Regiao " + codigo);
+            regiao.setDouble(3, lat);
+            regiao.setDouble(4, lon);
+            regiao.executeUpdate();
+            for (int entregadorId : entregadores) {
+                entregador.setString(1, codigo);
+                entregador.setInt(2, entregadorId);
+                entregador.executeUpdate();
+            }
+        }
+    }
+
     private int contarLinhas(String tabela) throws Exception {
         try (Connection conn = factory.getConnection();
                 Statement stmt = conn.createStatement();
@@ -1918,6 +2537,13 @@ class RotaServiceTest {
         }
     }
 
+    private void executarSql(String sql) throws Exception {
+        try (Connection conn = factory.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
     private void atualizarConfiguracao(String chave, String valor) throws Exception {
         try (Connection conn = factory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(
@@ -1938,16 +2564,6 @@ class RotaServiceTest {
         }
     }
 
-    private boolean solverJobsColumnExists(Connection conn, String coluna) throws Exception {
-        try (PreparedStatement stmt = conn.prepareStatement(
-                "SELECT 1 FROM information_schema.columns WHERE table_name = 'solver_jobs' AND column_name = ?")) {
-            stmt.setString(1, coluna);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
-            }
-        }
-    }
-
     private int contarSolverJobsPorStatus(String status) throws Exception {
         try (Connection conn = factory.getConnection()) {
             if (!solverJobsTableExists(conn)) {
@@ -1980,22 +2596,28 @@ class RotaServiceTest {
     }
 
     private String obterPayloadSolverJobMaisRecente(String status, String coluna) throws Exception {
+        String jobId;
         try (Connection conn = factory.getConnection()) {
-            if (!solverJobsTableExists(conn) || !solverJobsColumnExists(conn, coluna)) {
+            if (!solverJobsTableExists(conn)) {
                 return null;
             }
-            String sql = "SELECT " + coluna
-                    + "::text FROM solver_jobs WHERE status::text = ? ORDER BY solicitado_em DESC LIMIT 1";
+            String sql = "SELECT job_id FROM solver_jobs WHERE status::text = ? ORDER BY solicitado_em DESC LIMIT 1";
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setString(1, status);
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (!rs.next()) {
                         return null;
                     }
-                    return rs.getString(1);
+                    jobId = rs.getString(1);
                 }
             }
         }
+
+        // Payloads ficam em solver_payloads (gzip, por hash); le pelo detalhe do job, como a operacao.
+        OperacaoReplanejamentoService.SolverJobDetalhe detalhe =
+                new OperacaoReplanejamentoService(factory).detalharJob(jobId).job();
+        JsonElement payload = "request_payload".equals(coluna) ? detalhe.requestPayload() : detalhe.responsePayload();
+        return payload == null || payload.isJsonNull() ? null : payload.toString();
     }
 
     private static final class SolverStubServer {
@@ -2006,10 +2628,14 @@ class RotaServiceTest {
         private volatile Function<String, String> dynamicHandler = null;
         private final AtomicInteger requestCount = new AtomicInteger(0);
         private final AtomicInteger cancelCount = new AtomicInteger(0);
+        private final ConcurrentHashMap<String, String> statusJobsAsync = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, String> respostasJobsAsync = new ConcurrentHashMap<>();
 
         void start() throws IOException {
             server = HttpServer.create(new InetSocketAddress(0), 0);
             server.createContext("/solve", new SolveHandler());
+            server.createContext("/solve/async", new SolveAsyncHandler());
+            server.createContext("/result", new ResultHandler());
             server.createContext("/cancel", new CancelHandler());
             server.start();
         }
@@ -2062,27 +2688,77 @@ class RotaServiceTest {
             @Override
             public void handle(HttpExchange exchange) throws IOException {
                 requestCount.incrementAndGet();
-                if (solveDelayMillis > 0) {
-                    try {
-                        Thread.sleep(solveDelayMillis);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
+                String requestBody = lerCorpo(exchange);
+                responder(exchange, statusCode, resolverResposta(requestBody));
+            }
+        }
+
+        private String resolverResposta(String requestBody) {
+            if (solveDelayMillis > 0) {
+                try {
+                    Thread.sleep(solveDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
-                String response;
-                Function<String, String> handler = dynamicHandler;
-                if (handler != null) {
-                    String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-                    response = handler.apply(requestBody);
-                } else {
-                    response = solveResponse;
+            }
+            Function<String, String> handler = dynamicHandler;
+            return handler != null ? handler.apply(requestBody) : solveResponse;
+        }
+
+        private String lerCorpo(HttpExchange exchange) throws IOException {
+            InputStream corpo = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                corpo = new GZIPInputStream(corpo);
+            }
+            return new String(corpo.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        private void responder(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+
+        private final class SolveAsyncHandler implements HttpHandler {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                String requestBody = lerCorpo(exchange);
+                if (statusCode != 200) {
+                    responder(exchange, statusCode, solveResponse);
+                    return;
                 }
-                byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-                exchange.getResponseHeaders().add("Content-Type", "application/json");
-                exchange.sendResponseHeaders(statusCode, bytes.length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(bytes);
+                Matcher matcher = Pattern.compile("\"job_id\":\"([^\"]+)\"").matcher(requestBody);
+                String jobId = matcher.find() ? matcher.group(1) : "job-stub-" + requestCount.get();
+                statusJobsAsync.put(jobId, "EM_EXECUCAO");
+                Thread.ofVirtual().start(() -> {
+                    String resposta = resolverResposta(requestBody);
+                    respostasJobsAsync.put(jobId, resposta);
+                    statusJobsAsync.replace(jobId, "EM_EXECUCAO", "CONCLUIDO");
+                });
+                responder(exchange, 202, "{\"job_id\":\"" + jobId + "\",\"status\":\"PENDENTE\"}");
+            }
+        }
+
+        private final class ResultHandler implements HttpHandler {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String jobId = path.substring(path.lastIndexOf('/') + 1);
+                String status = statusJobsAsync.get(jobId);
+                if (status == null) {
+                    responder(exchange, 404, "{\"detail\":\"job_id nao encontrado\"}");
+                    return;
                 }
+                String response = "CONCLUIDO".equals(status) ? respostasJobsAsync.get(jobId) : "null";
+                responder(
+                        exchange,
+                        200,
+                        "{\"job_id\":\"" + jobId + "\",\"status\":\"" + status + "\",\"response\":" + response
+                                + ",\"erro\":null}");
             }
         }
 
@@ -2090,6 +2766,8 @@ class RotaServiceTest {
             @Override
             public void handle(HttpExchange exchange) throws IOException {
                 cancelCount.incrementAndGet();
+                String path = exchange.getRequestURI().getPath();
+                statusJobsAsync.replace(path.substring(path.lastIndexOf('/') + 1), "EM_EXECUCAO", "CANCELADO");
                 byte[] bytes = "{\"cancelado\":true}".getBytes(StandardCharsets.UTF_8);
                 exchange.getResponseHeaders().add("Content-Type", "application/json");
                 exchange.sendResponseHeaders(200, bytes.length);
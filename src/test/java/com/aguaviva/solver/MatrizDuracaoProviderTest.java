@@ -0,0 +1,185 @@
+package com.aguaviva.solver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@Tag("unit")
+class MatrizDuracaoProviderTest {
+
+    private static final Coordenada DEPOSITO = new Coordenada(-16.7344, -43.8772);
+    private static final Coordenada CENTRO = new Coordenada(-16.7210, -43.8610);
+    private static final Coordenada MAJOR_PRATES = new Coordenada(-16.7050, -43.8600);
+    private static final Coordenada IBITURUNA = new Coordenada(-16.7200, -43.8800);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void deveCalcularSomenteCelulasFaltantesEReaproveitarCacheAposReabrirArquivo() throws Exception {
+        Path arquivo = tempDir.resolve("matriz.bin");
+        FonteContadora fonte = new FonteContadora();
+
+        int[][] primeira;
+        try (MatrizDuracaoProvider provider = new MatrizDuracaoProvider(arquivo, fonte)) {
+            primeira = provider.montar(List.of(DEPOSITO, CENTRO, MAJOR_PRATES));
+            assertEquals(6, fonte.celulas.get());
+
+            int[][] comNovoCliente = provider.montar(List.of(DEPOSITO, CENTRO, MAJOR_PRATES, IBITURUNA));
+            // Apenas linha e coluna do cliente novo: 3 + 3 celulas.
+            assertEquals(12, fonte.celulas.get());
+            assertEquals(primeira[1][2], comNovoCliente[1][2]);
+            assertEquals(FonteDuracao.duracaoHaversine(IBITURUNA, DEPOSITO), comNovoCliente[3][0]);
+        }
+
+        FonteContadora fonteAposRestart = new FonteContadora();
+        try (MatrizDuracaoProvider provider = new MatrizDuracaoProvider(arquivo, fonteAposRestart)) {
+            int[][] recarregada = provider.montar(List.of(DEPOSITO, CENTRO, MAJOR_PRATES, IBITURUNA));
+
+            assertEquals(0, fonteAposRestart.celulas.get());
+            assertEquals(0, recarregada[2][2]);
+            assertEquals(primeira[0][2], recarregada[0][2]);
+        }
+    }
+
+    @Test
+    void deveCrescerCapacidadeDoArquivoSemPerderEntradas() throws Exception {
+        Path arquivo = tempDir.resolve("matriz-pequena.bin");
+        List<Coordenada> pontos = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            pontos.add(new Coordenada(-16.70 - i * 0.001, -43.85 - i * 0.001));
+        }
+
+        int[][] montada;
+        try (MatrizDuracaoProvider provider =
+                new MatrizDuracaoProvider(new MatrizDuracaoCache(arquivo, "haversine", 8), FonteDuracao.haversine())) {
+            montada = provider.montar(pontos);
+        }
+
+        try (MatrizDuracaoCache cache = new MatrizDuracaoCache(arquivo, "haversine")) {
+            assertEquals(12 * 11, cache.tamanho());
+            long origem = MatrizDuracaoCache.chave(
+                    pontos.get(3).getLat(), pontos.get(3).getLon());
+            long destino = MatrizDuracaoCache.chave(
+                    pontos.get(7).getLat(), pontos.get(7).getLon());
+            assertEquals(montada[3][7], cache.buscar(origem, destino));
+        }
+    }
+
+    @Test
+    void deveDescartarCacheGravadoPorOutraFonteDeDuracao() throws Exception {
+        Path arquivo = tempDir.resolve("matriz-fonte.bin");
+        try (MatrizDuracaoProvider provider = new MatrizDuracaoProvider(arquivo, FonteDuracao.haversine())) {
+            provider.montar(List.of(DEPOSITO, CENTRO, MAJOR_PRATES));
+        }
+
+        FonteContadora osrm = new FonteContadora();
+        try (MatrizDuracaoProvider provider = new MatrizDuracaoProvider(arquivo, osrm)) {
+            provider.montar(List.of(DEPOSITO, CENTRO, MAJOR_PRATES));
+        }
+
+        assertEquals(6, osrm.celulas.get());
+    }
+
+    @Test
+    void naoDevePersistirCelulaSemRotaNaFonte() throws Exception {
+        Path arquivo = tempDir.resolve("matriz-sem-rota.bin");
+        FonteDuracao semRotaAteOCentro = (origens, destinos) -> {
+            int[][] duracoes = FonteDuracao.haversine().calcular(origens, destinos);
+            for (int i = 0; i < origens.size(); i++) {
+                for (int j = 0; j < destinos.size(); j++) {
+                    if (destinos.get(j) == CENTRO && origens.get(i) != CENTRO) {
+                        duracoes[i][j] = FonteDuracao.SEM_ROTA;
+                    }
+                }
+            }
+            return duracoes;
+        };
+
+        try (MatrizDuracaoProvider provider =
+                new MatrizDuracaoProvider(new MatrizDuracaoCache(arquivo, "osrm teste"), semRotaAteOCentro)) {
+            int[][] matriz = provider.montar(List.of(DEPOSITO, CENTRO));
+            assertEquals(FonteDuracao.duracaoHaversine(DEPOSITO, CENTRO), matriz[0][1]);
+        }
+
+        try (MatrizDuracaoCache cache = new MatrizDuracaoCache(arquivo, "osrm teste")) {
+            assertEquals(1, cache.tamanho());
+            assertEquals(
+                    -1,
+                    cache.buscar(
+                            MatrizDuracaoCache.chave(DEPOSITO.getLat(), DEPOSITO.getLon()),
+                            MatrizDuracaoCache.chave(CENTRO.getLat(), CENTRO.getLon())));
+        }
+    }
+
+    @Test
+    void gatewayDeveAnexarMatrizAoRequestEManterRequestOriginalQuandoFonteFalhar() throws Exception {
+        AtomicReference<SolverRequest> recebido = new AtomicReference<>();
+        SolverGateway delegate = new SolverGateway() {
+            @Override
+            public SolverResponse solve(SolverRequest request) {
+                recebido.set(request);
+                return new SolverResponse(List.of(), List.of());
+            }
+
+            @Override
+            public void cancelBestEffort(String jobId) {}
+        };
+        SolverRequest request = new SolverRequest(
+                "job-matriz",
+                1L,
+                DEPOSITO,
+                5,
+                "08:00",
+                "18:00",
+                List.of(1),
+                List.of(new PedidoSolver(1, CENTRO.getLat(), CENTRO.getLon(), 1, "ASAP", null, null, 2)));
+
+        try (MatrizDuracaoProvider provider =
+                new MatrizDuracaoProvider(tempDir.resolve("gateway.bin"), FonteDuracao.haversine())) {
+            new MatrizDuracaoGateway(delegate, provider).solve(request);
+        }
+        int[][] matriz = recebido.get().getMatrizDuracoes();
+        assertEquals(2, matriz.length);
+        assertEquals(FonteDuracao.duracaoHaversine(DEPOSITO, CENTRO), matriz[0][1]);
+
+        FonteDuracao indisponivel = (origens, destinos) -> {
+            throw new IOException("OSRM fora");
+        };
+        try (MatrizDuracaoProvider provider =
+                new MatrizDuracaoProvider(tempDir.resolve("gateway-falha.bin"), indisponivel)) {
+            new MatrizDuracaoGateway(delegate, provider).solve(request);
+        }
+        assertSame(request, recebido.get());
+    }
+
+    private static final class FonteContadora implements FonteDuracao {
+        private final AtomicInteger celulas = new AtomicInteger();
+
+        @Override
+        public int[][] calcular(List<Coordenada> origens, List<Coordenada> destinos)
+                throws IOException, InterruptedException {
+            int[][] duracoes = FonteDuracao.haversine().calcular(origens, destinos);
+            for (int i = 0; i < origens.size(); i++) {
+                for (int j = 0; j < destinos.size(); j++) {
+                    if (!mesmoPonto(origens.get(i), destinos.get(j))) {
+                        celulas.incrementAndGet();
+                    }
+                }
+            }
+            return duracoes;
+        }
+
+        private static boolean mesmoPonto(Coordenada a, Coordenada b) {
+            return a.getLat() == b.getLat() && a.getLon() == b.getLon();
+        }
+    }
+}
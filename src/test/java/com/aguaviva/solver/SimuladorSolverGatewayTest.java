@@ -0,0 +1,91 @@
+package com.aguaviva.solver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class SimuladorSolverGatewayTest {
+
+    @Test
+    void deveResponderComoOMockDepoisDaLatenciaSorteada() throws Exception {
+        SimuladorSolverGateway simulador = new SimuladorSolverGateway(new SimuladorSolverGateway.Config(
+                SimuladorSolverGateway.Latencia.fixa(Duration.ofMillis(150)), 0.0, 7L));
+
+        long inicio = System.nanoTime();
+        SolverResponse resposta = simulador.solve(request("job-sim-ok"));
+        long decorridoMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        assertTrue(decorridoMs >= 140, "resposta antes da latencia: " + decorridoMs + "ms");
+        assertEquals(2, resposta.getRotas().size());
+        assertEquals(new SimuladorSolverGateway.Estatisticas(1, 1, 0, 0, 0), simulador.estatisticas());
+    }
+
+    @Test
+    void deveFalharQuandoTaxaDeFalhaForTotal() {
+        SimuladorSolverGateway simulador = new SimuladorSolverGateway(new SimuladorSolverGateway.Config(
+                SimuladorSolverGateway.Latencia.fixa(Duration.ofMillis(10)), 1.0, 7L));
+
+        assertThrows(IOException.class, () -> simulador.solve(request("job-sim-falha")));
+
+        SimuladorSolverGateway.Estatisticas estatisticas = simulador.estatisticas();
+        assertEquals(1, estatisticas.falhas());
+        assertEquals(0, estatisticas.concluidos());
+    }
+
+    @Test
+    void deveEncerrarChamadaSemRespostaAoCancelarPeloJobId() throws Exception {
+        SimuladorSolverGateway simulador = new SimuladorSolverGateway(new SimuladorSolverGateway.Config(
+                SimuladorSolverGateway.Latencia.fixa(Duration.ofSeconds(5)), 0.0, 7L));
+
+        CompletableFuture<SolverResponse> chamada = simulador.solveAsync(request("job-sim-cancelado"));
+        Thread.sleep(50);
+        simulador.cancelBestEffort("job-sim-cancelado");
+
+        assertTrue(chamada.isCancelled());
+        SimuladorSolverGateway.Estatisticas estatisticas = simulador.estatisticas();
+        assertEquals(1, estatisticas.cancelados());
+        assertEquals(0, estatisticas.concluidos());
+        assertTrue(estatisticas.msDescartados() >= 40, "tempo ate o cancelamento conta como descartado");
+    }
+
+    @Test
+    void deveSortearLatenciasReprodutiveisComAMesmaSemente() {
+        SimuladorSolverGateway.Latencia uniforme =
+                SimuladorSolverGateway.Latencia.uniforme(Duration.ofMillis(100), Duration.ofMillis(900));
+        SimuladorSolverGateway.Latencia logNormal =
+                SimuladorSolverGateway.Latencia.logNormal(Duration.ofMillis(400), 0.8);
+        Random a = new Random(42L);
+        Random b = new Random(42L);
+
+        for (int i = 0; i < 20; i++) {
+            Duration sorteada = uniforme.sortear(a);
+            assertEquals(sorteada, uniforme.sortear(b));
+            assertFalse(sorteada.toMillis() < 100 || sorteada.toMillis() > 900, "fora do intervalo: " + sorteada);
+            assertEquals(logNormal.sortear(a), logNormal.sortear(b));
+        }
+    }
+
+    private static SolverRequest request(String jobId) {
+        return new SolverRequest(
+                jobId,
+                1L,
+                new Coordenada(-16.72, -43.86),
+                5,
+                "08:00",
+                "18:00",
+                List.of(10, 20),
+                List.of(
+                        new PedidoSolver(101, -16.70, -43.80, 1, "ASAP", null, null, 2),
+                        new PedidoSolver(102, -16.71, -43.81, 1, "ASAP", null, null, 2)));
+    }
+}
@@ -5,12 +5,23 @@ import static org.junit.jupiter.api.Assertions.*;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
@@ -94,6 +105,17 @@ class SolverClientTest {
         assertTrue(json.contains("-43.877211192130325"));
     }
 
+    @Test
+    void deveSerializarMatrizDeDuracoesSomenteQuandoAnexada() {
+        var req = requestSimples("job-matriz");
+
+        assertFalse(gson().toJson(req).contains("matriz_duracoes"));
+
+        String json = gson().toJson(req.comMatrizDuracoes(new int[][] {{0, 120}, {130, 0}}));
+        assertTrue(json.contains("\"matriz_duracoes\":[[0,120],[130,0]]"));
+        assertThrows(IllegalArgumentException.class, () -> req.comMatrizDuracoes(new int[][] {{0}}));
+    }
+
     // ========================================================================
     // Deserializacao: JSON → Java (resposta do solver)
     // ========================================================================
@@ -288,8 +310,7 @@ class SolverClientTest {
         AtomicReference<String> bodyRecebido = new AtomicReference<>("");
         HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
         server.createContext("/solve", exchange -> {
-            byte[] body = exchange.getRequestBody().readAllBytes();
-            bodyRecebido.set(new String(body, StandardCharsets.UTF_8));
+            bodyRecebido.set(lerCorpo(exchange));
             upgradeHeader.set(exchange.getRequestHeaders().getFirst("Upgrade"));
 
             byte[] responseBody;
@@ -336,4 +357,140 @@ class SolverClientTest {
             server.stop(0);
         }
     }
+
+    @Test
+    void deveResolverViaApiAssincronaComPollingAteConcluir() throws Exception {
+        AtomicInteger consultas = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/solve/async", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            responder(exchange, 202, "{\"job_id\":\"job-async-1\",\"status\":\"PENDENTE\"}");
+        });
+        server.createContext("/result", exchange -> {
+            if (consultas.incrementAndGet() < 3) {
+                responder(exchange, 200, "{\"job_id\":\"job-async-1\",\"status\":\"EM_EXECUCAO\"}");
+                return;
+            }
+            responder(exchange, 200, """
+                    {"job_id":"job-async-1","status":"CONCLUIDO","response":{"rotas":[],"nao_atendidos":[42]}}
+                    """);
+        });
+        server.start();
+
+        try {
+            SolverClient client =
+                    new SolverClient("http://localhost:" + server.getAddress().getPort());
+
+            SolverResponse response =
+                    client.solveAsync(requestSimples("job-async-1")).get(5, TimeUnit.SECONDS);
+
+            assertEquals(List.of(42), response.getNaoAtendidos());
+            assertEquals(3, consultas.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void devePropagarCancelamentoDoFutureParaOSolver() throws Exception {
+        CountDownLatch cancelamentoRecebido = new CountDownLatch(1);
+        AtomicReference<String> pathCancelado = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/solve/async", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            responder(exchange, 202, "{\"job_id\":\"job-async-2\",\"status\":\"PENDENTE\"}");
+        });
+        server.createContext(
+                "/result",
+                exchange -> responder(exchange, 200, "{\"job_id\":\"job-async-2\",\"status\":\"EM_EXECUCAO\"}"));
+        server.createContext("/cancel", exchange -> {
+            pathCancelado.set(exchange.getRequestURI().getPath());
+            responder(exchange, 200, "{\"job_id\":\"job-async-2\",\"status\":\"CANCELADO\"}");
+            cancelamentoRecebido.countDown();
+        });
+        server.start();
+
+        try {
+            SolverClient client =
+                    new SolverClient("http://localhost:" + server.getAddress().getPort());
+            CompletableFuture<SolverResponse> future = client.solveAsync(requestSimples("job-async-2"));
+            Thread.sleep(200);
+
+            assertTrue(future.cancel(true));
+            assertTrue(cancelamentoRecebido.await(5, TimeUnit.SECONDS));
+            assertEquals("/cancel/job-async-2", pathCancelado.get());
+            assertThrows(CancellationException.class, future::join);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void deveEnviarCorpoGzipELerRespostaComprimidaEmStreaming() throws Exception {
+        AtomicReference<String> contentEncoding = new AtomicReference<>();
+        AtomicReference<String> acceptEncoding = new AtomicReference<>();
+        AtomicReference<String> bodyRecebido = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/solve", exchange -> {
+            contentEncoding.set(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            acceptEncoding.set(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            bodyRecebido.set(lerCorpo(exchange));
+
+            ByteArrayOutputStream comprimido = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(comprimido)) {
+                gzip.write("{\"rotas\":[],\"nao_atendidos\":[42]}".getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] bytes = comprimido.toByteArray();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+
+        try {
+            SolverClient client =
+                    new SolverClient("http://localhost:" + server.getAddress().getPort());
+
+            SolverResponse response = client.solve(requestSimples("job-gzip"));
+
+            assertEquals(List.of(42), response.getNaoAtendidos());
+            assertEquals("gzip", contentEncoding.get());
+            assertEquals("gzip", acceptEncoding.get());
+            assertTrue(bodyRecebido.get().contains("\"job_id\":\"job-gzip\""));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String lerCorpo(HttpExchange exchange) throws IOException {
+        InputStream corpo = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            corpo = new GZIPInputStream(corpo);
+        }
+        return new String(corpo.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static SolverRequest requestSimples(String jobId) {
+        return new SolverRequest(
+                jobId,
+                1L,
+                new Coordenada(-16.7344, -43.8772),
+                5,
+                "08:00",
+                "18:00",
+                List.of(1),
+                List.of(new PedidoSolver(42, -16.71, -43.85, 1, "ASAP", null, null, 2)));
+    }
+
+    private static void responder(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
 }
@@ -0,0 +1,170 @@
+package com.aguaviva.solver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class SolverPoolTest {
+
+    private final List<ReplicaStub> stubs = new ArrayList<>();
+
+    @AfterEach
+    void pararStubs() {
+        stubs.forEach(stub -> stub.server.stop(0));
+    }
+
+    @Test
+    void deveCalcularPrazoDaChamadaAPartirDoOrcamentoDePlanejamento() {
+        assertEquals(Duration.ofSeconds(20), SolverPool.prazoParaOrcamento(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void deveEncerrarChamadaTravadaNoPrazoEFazerFailoverParaOutraReplica() throws Exception {
+        ReplicaStub travada = iniciarStub(Comportamento.TRAVADA);
+        ReplicaStub saudavel = iniciarStub(Comportamento.SAUDAVEL);
+        SolverPool pool = new SolverPool(List.of(travada.client(), saudavel.client()), Duration.ofMillis(300), null);
+
+        SolverResponse response = pool.solve(requestSimples("job-pool-1"));
+
+        assertEquals(List.of(42), response.getNaoAtendidos());
+        assertEquals(1, travada.solves.get());
+        assertEquals(1, saudavel.solves.get());
+        assertTrue(travada.cancelamentos.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deveAbrirCircuitoAposFalhasConsecutivasEFalharRapidoAteAEsperaPassar() throws Exception {
+        ReplicaStub quebrada = iniciarStub(Comportamento.ERRO);
+        AtomicLong relogio = new AtomicLong();
+        SolverPool pool = new SolverPool(List.of(quebrada.client()), Duration.ofSeconds(5), null, relogio::get);
+
+        for (int i = 0; i < SolverPool.FALHAS_PARA_ABRIR_CIRCUITO; i++) {
+            assertThrows(IOException.class, () -> pool.solve(requestSimples("job-pool-2")));
+        }
+        assertTrue(pool.isCircuitoAberto(0));
+
+        IOException falhaRapida = assertThrows(IOException.class, () -> pool.solve(requestSimples("job-pool-2")));
+        assertTrue(falhaRapida.getMessage().contains("Nenhuma replica"));
+        assertEquals(SolverPool.FALHAS_PARA_ABRIR_CIRCUITO, quebrada.solves.get());
+
+        relogio.addAndGet(SolverPool.ESPERA_CIRCUITO_ABERTO.toNanos());
+        assertThrows(IOException.class, () -> pool.solve(requestSimples("job-pool-2")));
+        assertEquals(SolverPool.FALHAS_PARA_ABRIR_CIRCUITO + 1, quebrada.solves.get());
+        assertTrue(pool.isCircuitoAberto(0));
+    }
+
+    @Test
+    void deveDispararHedgeEmOutraReplicaECancelarATentativaMaisLenta() throws Exception {
+        ReplicaStub lenta = iniciarStub(Comportamento.TRAVADA);
+        ReplicaStub rapida = iniciarStub(Comportamento.SAUDAVEL);
+        SolverPool pool = new SolverPool(
+                List.of(lenta.client(), rapida.client()), Duration.ofSeconds(30), Duration.ofMillis(100));
+
+        SolverResponse response = pool.solveAsync(requestSimples("job-pool-3")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(42), response.getNaoAtendidos());
+        assertEquals(1, rapida.solves.get());
+        assertTrue(lenta.cancelamentos.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deveDistribuirChamadasPelaReplicaComMenosChamadasEmAndamento() throws Exception {
+        ReplicaStub primeira = iniciarStub(Comportamento.TRAVADA);
+        ReplicaStub segunda = iniciarStub(Comportamento.TRAVADA);
+        SolverPool pool = new SolverPool(List.of(primeira.client(), segunda.client()), Duration.ofSeconds(30), null);
+
+        CompletableFuture<SolverResponse> a = pool.solveAsync(requestSimples("job-pool-4a"));
+        CompletableFuture<SolverResponse> b = pool.solveAsync(requestSimples("job-pool-4b"));
+
+        try {
+            assertEquals(1, pool.chamadasEmAndamento(0));
+            assertEquals(1, pool.chamadasEmAndamento(1));
+        } finally {
+            a.cancel(true);
+            b.cancel(true);
+        }
+    }
+
+    private ReplicaStub iniciarStub(Comportamento comportamento) throws IOException {
+        ReplicaStub stub = new ReplicaStub(HttpServer.create(new InetSocketAddress(0), 0));
+        stub.server.createContext("/solve/async", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            stub.solves.incrementAndGet();
+            if (comportamento == Comportamento.ERRO) {
+                responder(exchange, 500, "{\"detail\":\"indisponivel\"}");
+                return;
+            }
+            responder(exchange, 202, "{\"job_id\":\"job\",\"status\":\"PENDENTE\"}");
+        });
+        stub.server.createContext("/result", exchange -> {
+            if (comportamento == Comportamento.SAUDAVEL) {
+                responder(exchange, 200, """
+                        {"job_id":"job","status":"CONCLUIDO","response":{"rotas":[],"nao_atendidos":[42]}}
+                        """);
+                return;
+            }
+            responder(exchange, 200, "{\"job_id\":\"job\",\"status\":\"EM_EXECUCAO\"}");
+        });
+        stub.server.createContext("/cancel", exchange -> {
+            stub.cancelamentos.countDown();
+            responder(exchange, 200, "{\"job_id\":\"job\",\"status\":\"CANCELADO\"}");
+        });
+        stub.server.start();
+        stubs.add(stub);
+        return stub;
+    }
+
+    private static SolverRequest requestSimples(String jobId) {
+        return new SolverRequest(
+                jobId,
+                1L,
+                new Coordenada(-16.7344, -43.8772),
+                5,
+                "08:00",
+                "18:00",
+                List.of(1),
+                List.of(new PedidoSolver(42, -16.71, -43.85, 1, "ASAP", null, null, 2)));
+    }
+
+    private static void responder(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private enum Comportamento {
+        SAUDAVEL,
+        TRAVADA,
+        ERRO
+    }
+
+    private record ReplicaStub(HttpServer server, AtomicInteger solves, CountDownLatch cancelamentos) {
+        ReplicaStub(HttpServer server) {
+            this(server, new AtomicInteger(), new CountDownLatch(1));
+        }
+
+        SolverClient client() {
+            return new SolverClient("http://localhost:" + server.getAddress().getPort(), Duration.ofSeconds(5));
+        }
+    }
+}